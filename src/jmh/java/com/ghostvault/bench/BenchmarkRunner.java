@@ -0,0 +1,181 @@
+package com.ghostvault.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ghostvault.security.KDF;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the JMH suite and writes a report keyed by hardware class
+ *
+ * The report records the machine (cores, heap, architecture, JVM), the KDF parameters the
+ * calibration picks on it, and one entry per benchmark and parameter set. Given a baseline
+ * report from the same hardware class, any benchmark slower than the baseline by more than
+ * the tolerance is listed and the run exits non-zero, so CI can gate on login latency.
+ *
+ * Usage: BenchmarkRunner [--include regex] [--report file] [--baseline file] [--tolerance 0.25]
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArguments(args);
+        String include = options.getOrDefault("include", ".*");
+        Path report = Paths.get(options.getOrDefault("report", "target/benchmarks/report.json"));
+        String baseline = options.getOrDefault("baseline", "");
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.25"));
+
+        Options jmhOptions = new OptionsBuilder()
+            .include(include.isEmpty() ? ".*" : include)
+            .build();
+        Collection<RunResult> results = new Runner(jmhOptions).run();
+
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectNode document = buildReport(mapper, results);
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        mapper.writeValue(report.toFile(), document);
+        System.out.println("Benchmark report written to " + report.toAbsolutePath());
+
+        if (!baseline.isEmpty()) {
+            List<String> regressions = compare(document, mapper.readTree(Paths.get(baseline).toFile()), tolerance);
+            if (!regressions.isEmpty()) {
+                System.err.println("Benchmark regressions beyond " + Math.round(tolerance * 100) + "%:");
+                regressions.forEach(line -> System.err.println("  " + line));
+                System.exit(1);
+            }
+            System.out.println("No regressions against " + baseline);
+        }
+    }
+
+    private static ObjectNode buildReport(ObjectMapper mapper, Collection<RunResult> results) {
+        ObjectNode document = mapper.createObjectNode();
+
+        Runtime runtime = Runtime.getRuntime();
+        ObjectNode host = document.putObject("host");
+        host.put("hardwareClass", hardwareClass());
+        host.put("cores", runtime.availableProcessors());
+        host.put("maxHeapMB", runtime.maxMemory() / (1024 * 1024));
+        host.put("arch", System.getProperty("os.arch"));
+        host.put("os", System.getProperty("os.name"));
+        host.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+
+        // What this machine would be given at vault creation
+        KDF.BenchmarkResult calibration = KDF.benchmark();
+        KDF.KdfParams params = calibration.getRecommendedParams();
+        ObjectNode kdf = document.putObject("calibration");
+        kdf.put("algorithm", params.getAlgorithm().name());
+        kdf.put("memoryKb", params.getMemory());
+        kdf.put("iterations", params.getIterations());
+        kdf.put("parallelism", params.getParallelism());
+        kdf.put("pbkdf2Iterations", params.getPbkdf2Iterations());
+        kdf.put("estimatedMs", calibration.getDurationMs());
+
+        ArrayNode entries = document.putArray("results");
+        for (RunResult result : results) {
+            BenchmarkParams benchmark = result.getParams();
+            Result<?> primary = result.getPrimaryResult();
+
+            ObjectNode entry = entries.addObject();
+            entry.put("key", keyOf(benchmark));
+            entry.put("benchmark", benchmark.getBenchmark());
+            ObjectNode benchmarkParams = entry.putObject("params");
+            for (String name : benchmark.getParamsKeys()) {
+                benchmarkParams.put(name, benchmark.getParam(name));
+            }
+            entry.put("mode", benchmark.getMode().shortLabel());
+            entry.put("score", primary.getScore());
+            entry.put("error", primary.getScoreError());
+            entry.put("unit", primary.getScoreUnit());
+        }
+        return document;
+    }
+
+    /**
+     * Compare against a baseline report; only entries present in both are checked
+     */
+    static List<String> compare(JsonNode current, JsonNode baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+
+        String currentClass = current.path("host").path("hardwareClass").asText();
+        String baselineClass = baseline.path("host").path("hardwareClass").asText();
+        if (!currentClass.equals(baselineClass)) {
+            System.err.println("Baseline is from " + baselineClass + ", this machine is " + currentClass
+                + "; skipping comparison");
+            return regressions;
+        }
+
+        Map<String, JsonNode> previous = new HashMap<>();
+        for (JsonNode entry : baseline.path("results")) {
+            previous.put(entry.path("key").asText(), entry);
+        }
+
+        for (JsonNode entry : current.path("results")) {
+            JsonNode before = previous.get(entry.path("key").asText());
+            if (before == null || !before.path("unit").asText().equals(entry.path("unit").asText())) {
+                continue;
+            }
+            double was = before.path("score").asDouble();
+            double now = entry.path("score").asDouble();
+            boolean higherIsBetter = Mode.Throughput.shortLabel().equals(entry.path("mode").asText());
+            boolean regressed = higherIsBetter ? now < was * (1 - tolerance) : now > was * (1 + tolerance);
+            if (regressed) {
+                regressions.add(String.format("%s: %.3f -> %.3f %s", entry.path("key").asText(),
+                    was, now, entry.path("unit").asText()));
+            }
+        }
+        return regressions;
+    }
+
+    private static String keyOf(BenchmarkParams benchmark) {
+        Map<String, String> params = new TreeMap<>();
+        for (String name : benchmark.getParamsKeys()) {
+            params.put(name, benchmark.getParam(name));
+        }
+        return params.isEmpty() ? benchmark.getBenchmark() : benchmark.getBenchmark() + params;
+    }
+
+    /**
+     * Machines with the same cores, heap class and architecture are expected to perform alike
+     */
+    private static String hardwareClass() {
+        Runtime runtime = Runtime.getRuntime();
+        long heapGb = Math.max(1, Math.round(runtime.maxMemory() / (1024.0 * 1024 * 1024)));
+        return runtime.availableProcessors() + "c-" + heapGb + "g-" + System.getProperty("os.arch");
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            // Maven passes unset properties as empty or drops them, so a flag may have no value
+            boolean hasValue = i + 1 < args.length && !args[i + 1].startsWith("--");
+            options.put(args[i].substring(2), hasValue ? args[++i] : "");
+        }
+        return options;
+    }
+}
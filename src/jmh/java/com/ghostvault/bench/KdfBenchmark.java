@@ -0,0 +1,75 @@
+package com.ghostvault.bench;
+
+import com.ghostvault.security.KDF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key derivation cost across the PBKDF2 and Argon2id parameter grids
+ *
+ * The Argon2id grid spans the memory, pass and lane counts the calibration can pick, so a
+ * report from a given machine shows what each setting costs there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class KdfBenchmark {
+
+    private static final char[] PASSWORD = "BenchmarkPassword123!".toCharArray();
+
+    @State(Scope.Benchmark)
+    public static class Pbkdf2 {
+        @Param({"210000", "600000"})
+        public int iterations;
+
+        KDF.KdfParams params;
+
+        @Setup
+        public void setUp() {
+            params = new KDF.KdfParams(KDF.Algorithm.PBKDF2, KDF.generateSalt(), iterations);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Argon2 {
+        @Param({"19456", "65536", "262144"})
+        public int memoryKb;
+
+        @Param({"1", "3"})
+        public int iterations;
+
+        @Param({"1", "2", "4", "8"})
+        public int lanes;
+
+        KDF.KdfParams params;
+
+        @Setup
+        public void setUp() {
+            params = new KDF.KdfParams(KDF.Algorithm.ARGON2ID, KDF.generateSalt(), memoryKb, iterations, lanes);
+        }
+    }
+
+    @Benchmark
+    public byte[] pbkdf2(Pbkdf2 state) throws GeneralSecurityException {
+        return KDF.deriveKey(PASSWORD, state.params);
+    }
+
+    @Benchmark
+    public byte[] argon2id(Argon2 state) throws GeneralSecurityException {
+        return KDF.deriveKey(PASSWORD, state.params);
+    }
+}
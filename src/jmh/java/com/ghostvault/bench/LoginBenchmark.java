@@ -0,0 +1,90 @@
+package com.ghostvault.bench;
+
+import com.ghostvault.config.AppConfig;
+import com.ghostvault.security.PasswordManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end login latency with the KDF parameters calibrated for this machine
+ *
+ * detectPassword and authenticate include the fixed delay and jitter that mask which
+ * password was entered, so they measure what the user waits for; unwrapVMK has no delay
+ * and isolates the key derivation and unwrap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class LoginBenchmark {
+
+    private static final char[] MASTER = "BenchMaster123!".toCharArray();
+    private static final char[] PANIC = "BenchPanic123!".toCharArray();
+    private static final char[] DECOY = "BenchDecoy123!".toCharArray();
+    private static final char[] WRONG = "WrongPassword123!".toCharArray();
+
+    private Path home;
+    private PasswordManager passwordManager;
+
+    @Setup
+    public void setUp() throws Exception {
+        // PasswordManager keeps its configuration under user.home; point it at a scratch
+        // directory before AppConfig is loaded so a real vault is never touched
+        home = Files.createTempDirectory("ghostvault-bench");
+        System.setProperty("user.home", home.toString());
+        if (!Paths.get(AppConfig.VAULT_DIR).startsWith(home)) {
+            throw new IllegalStateException("AppConfig was loaded before the benchmark home was set");
+        }
+        Files.createDirectories(Paths.get(AppConfig.VAULT_DIR));
+
+        passwordManager = new PasswordManager(AppConfig.VAULT_DIR);
+        passwordManager.initializePasswords(MASTER, PANIC, DECOY);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public PasswordManager.PasswordType detectMaster() throws Exception {
+        return passwordManager.detectPassword(MASTER);
+    }
+
+    @Benchmark
+    public PasswordManager.PasswordType detectInvalid() throws Exception {
+        return passwordManager.detectPassword(WRONG);
+    }
+
+    @Benchmark
+    public SecretKey authenticateMaster() throws Exception {
+        return passwordManager.authenticate(MASTER).getKey();
+    }
+
+    @Benchmark
+    public SecretKey unwrapVMK() throws Exception {
+        return passwordManager.unwrapVMK(MASTER);
+    }
+}
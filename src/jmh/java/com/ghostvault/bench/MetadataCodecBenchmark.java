@@ -0,0 +1,63 @@
+package com.ghostvault.bench;
+
+import com.ghostvault.core.MetadataCodec;
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of metadata snapshots, which sits on the unlock path
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetadataCodecBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int files;
+
+    private List<VaultFile> vaultFiles;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        vaultFiles = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            String id = UUID.randomUUID().toString();
+            VaultFile file = new VaultFile("document_" + i + ".pdf", id, id + ".enc", 4096L * i,
+                FileUtils.calculateSHA256(("content " + i).getBytes()), 1_700_000_000_000L + i * 1000L);
+            file.setTags(i % 3 == 0 ? "work" : "");
+            vaultFiles.add(file);
+        }
+        encoded = MetadataCodec.encode(vaultFiles);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return MetadataCodec.encode(vaultFiles);
+    }
+
+    @Benchmark
+    public List<VaultFile> decode() throws IOException {
+        return MetadataCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,381 @@
+package com.ghostvault.backup;
+
+import com.ghostvault.exception.BackupException;
+import com.ghostvault.security.SegmentedAead;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Authenticated table of contents at the end of a backup archive
+ *
+ * Layout of a version 2.1 backup:
+ * <pre>
+ *   "GVBACKUP" || "2.1" || payload || toc || tocLength(8) || "GVBKTOC1"
+ * </pre>
+ * The payload is the segmented AEAD stream of the zip archive; the TOC is a second,
+ * independently keyed segmented stream. It records the payload's header, length and
+ * segment count, the manifest, and the extent, size and digest of every zip entry.
+ *
+ * Reading only the TOC is enough to authenticate the archive's layout. The segment tags
+ * themselves are not copied into it: every payload segment is authenticated by its own
+ * tag under a nonce binding its index and the last-segment flag, and the header binds
+ * the segment key, so segments can be checked independently of each other - all of
+ * them in parallel, or a random sample - without the TOC growing with the archive.
+ */
+final class BackupToc {
+    
+    private static final byte[] FOOTER_MAGIC = "GVBKTOC1".getBytes(StandardCharsets.US_ASCII);
+    static final int FOOTER_LENGTH = 8 + 8;
+    private static final int TOC_VERSION = 1;
+    private static final int MAX_TOC_LENGTH = Integer.MAX_VALUE - 8;
+    
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    
+    /**
+     * A zip entry; offset and length cover its local header, data and descriptor in the
+     * plaintext payload, size is its uncompressed size
+     */
+    record Entry(String name, long offset, long length, long size, byte[] digest) {
+    }
+    
+    private byte[] payloadHeader;
+    private long payloadLength;
+    private long segmentCount;
+    private String manifestJson;
+    private final List<Entry> entries = new ArrayList<>();
+    
+    private BackupToc() {
+    }
+    
+    String getManifestJson() {
+        return manifestJson;
+    }
+    
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+    
+    long getSegmentCount() {
+        return segmentCount;
+    }
+    
+    /**
+     * Collects the TOC while the payload is written
+     */
+    static final class Builder implements SegmentedAead.SegmentListener {
+        private final BackupToc toc = new BackupToc();
+        private long length;
+        
+        @Override
+        public void onHeader(byte[] header) {
+            toc.payloadHeader = header;
+            length += header.length;
+        }
+        
+        @Override
+        public void onSegment(long index, byte[] ciphertext, int offset, int length) {
+            toc.segmentCount = index + 1;
+            this.length += length;
+        }
+        
+        void addEntry(String name, long offset, long length, long size, byte[] digest) {
+            toc.entries.add(new Entry(name, offset, length, size, digest));
+        }
+        
+        /**
+         * Encrypt the TOC and append it, with the footer, after the payload
+         */
+        void write(OutputStream out, String manifestJson, SecretKey key) throws Exception {
+            toc.payloadLength = length;
+            toc.manifestJson = manifestJson;
+            
+            ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+            try (DataOutputStream data = new DataOutputStream(SegmentedAead.newEncryptingStream(sealed, key))) {
+                toc.writeTo(data);
+            }
+            sealed.writeTo(out);
+            
+            DataOutputStream footer = new DataOutputStream(out);
+            footer.writeLong(sealed.size());
+            footer.write(FOOTER_MAGIC);
+            footer.flush();
+        }
+    }
+    
+    private void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(TOC_VERSION);
+        out.write(payloadHeader);
+        out.writeLong(payloadLength);
+        out.writeLong(segmentCount);
+        byte[] manifest = manifestJson.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(manifest.length);
+        out.write(manifest);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeUTF(entry.name());
+            out.writeLong(entry.offset());
+            out.writeLong(entry.length());
+            out.writeLong(entry.size());
+            out.write(entry.digest());
+        }
+    }
+    
+    /**
+     * Read and authenticate the TOC of a backup whose payload starts at the given offset
+     *
+     * Also checks that the payload on disk has the header and length the TOC records.
+     */
+    static BackupToc read(FileChannel channel, long payloadOffset, SecretKey key) throws Exception {
+        long tocLength = readTocLength(channel, payloadOffset);
+        long tocOffset = channel.size() - FOOTER_LENGTH - tocLength;
+        
+        ByteBuffer sealed = ByteBuffer.allocate((int) tocLength);
+        readFully(channel, sealed, tocOffset);
+        
+        BackupToc toc = new BackupToc();
+        try (DataInputStream in = new DataInputStream(
+                SegmentedAead.newDecryptingStream(new ByteArrayInputStream(sealed.array()), key))) {
+            if (in.readInt() != TOC_VERSION) {
+                throw new BackupException("Unsupported backup table of contents");
+            }
+            toc.payloadHeader = in.readNBytes(SegmentedAead.HEADER_LENGTH);
+            toc.payloadLength = in.readLong();
+            toc.segmentCount = in.readLong();
+            byte[] manifest = new byte[in.readInt()];
+            in.readFully(manifest);
+            toc.manifestJson = new String(manifest, StandardCharsets.UTF_8);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long offset = in.readLong();
+                long length = in.readLong();
+                long size = in.readLong();
+                byte[] digest = new byte[32];
+                in.readFully(digest);
+                toc.entries.add(new Entry(name, offset, length, size, digest));
+            }
+        }
+        
+        if (toc.payloadLength != tocOffset - payloadOffset) {
+            throw new BackupException("Backup payload length does not match its table of contents");
+        }
+        if (!Arrays.equals(toc.payloadHeader, SegmentedAead.readHeader(channel, payloadOffset))) {
+            throw new BackupException("Backup payload does not belong to its table of contents");
+        }
+        SegmentedAead aead = SegmentedAead.open(key, toc.payloadHeader);
+        if (aead.segmentCount(toc.payloadLength - SegmentedAead.HEADER_LENGTH) != toc.segmentCount) {
+            throw new BackupException("Backup segment count does not match its table of contents");
+        }
+        long plaintextLength = aead.plaintextLength(toc.payloadLength - SegmentedAead.HEADER_LENGTH);
+        long previous = -1;
+        for (Entry entry : toc.entries) {
+            if (entry.offset() < previous || entry.length() < 0 || entry.offset() + entry.length() > plaintextLength) {
+                throw new BackupException("Backup entry out of range: " + entry.name());
+            }
+            previous = entry.offset() + entry.length();
+        }
+        return toc;
+    }
+    
+    /**
+     * Length of the payload of a backup, read from its footer
+     */
+    static long payloadLength(Path backupFile, long payloadOffset) throws IOException {
+        try (FileChannel channel = FileChannel.open(backupFile, StandardOpenOption.READ)) {
+            return channel.size() - FOOTER_LENGTH - readTocLength(channel, payloadOffset) - payloadOffset;
+        }
+    }
+    
+    private static long readTocLength(FileChannel channel, long payloadOffset) throws IOException {
+        if (channel.size() < payloadOffset + FOOTER_LENGTH) {
+            throw new IOException("Backup is truncated");
+        }
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_LENGTH);
+        readFully(channel, footer, channel.size() - FOOTER_LENGTH);
+        footer.flip();
+        long tocLength = footer.getLong();
+        byte[] magic = new byte[FOOTER_MAGIC.length];
+        footer.get(magic);
+        if (!Arrays.equals(magic, FOOTER_MAGIC)) {
+            throw new IOException("Backup table of contents not found; the backup may be truncated");
+        }
+        if (tocLength <= 0 || tocLength > MAX_TOC_LENGTH
+                || tocLength > channel.size() - FOOTER_LENGTH - payloadOffset) {
+            throw new IOException("Invalid backup table of contents length");
+        }
+        return tocLength;
+    }
+    
+    /**
+     * Authenticate payload segments, spread over up to the given number of threads
+     *
+     * @param indices segment indices in ascending order, or null for all segments
+     */
+    void verifySegments(FileChannel channel, long payloadOffset, SecretKey key, long[] indices, int threads)
+            throws Exception {
+        SegmentedAead aead = SegmentedAead.open(key, payloadHeader);
+        long count = indices != null ? indices.length : segmentCount;
+        int workers = (int) Math.max(1, Math.min(threads, count / 16));
+        if (workers == 1) {
+            verifyRange(channel, payloadOffset, aead, indices, 0, count);
+            return;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "GhostVault-Verify-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            // Contiguous ranges, so each worker reads the file sequentially
+            List<Future<?>> futures = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                long from = count * w / workers;
+                long to = count * (w + 1) / workers;
+                futures.add(executor.submit(() -> {
+                    verifyRange(channel, payloadOffset, aead, indices, from, to);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private void verifyRange(FileChannel channel, long payloadOffset, SegmentedAead aead, long[] indices,
+                             long from, long to) throws Exception {
+        Cipher cipher = SegmentedAead.newCipher();
+        ByteBuffer ciphertext = ByteBuffer.allocate(aead.getCiphertextSegmentSize());
+        byte[] plaintext = new byte[aead.getSegmentSize()];
+        for (long i = from; i < to; i++) {
+            long index = indices != null ? indices[(int) i] : i;
+            long start = payloadOffset + SegmentedAead.HEADER_LENGTH + index * aead.getCiphertextSegmentSize();
+            int length = (int) (segmentEnd(aead, payloadOffset, index) - start);
+            ciphertext.clear().limit(length);
+            readFully(channel, ciphertext, start);
+            aead.decryptSegment(cipher, index, index == segmentCount - 1, ciphertext.array(), 0, length, plaintext, 0);
+        }
+    }
+    
+    private long segmentEnd(SegmentedAead aead, long payloadOffset, long index) {
+        long end = payloadOffset + SegmentedAead.HEADER_LENGTH + (index + 1) * aead.getCiphertextSegmentSize();
+        return Math.min(end, payloadOffset + payloadLength);
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Backup is truncated");
+            }
+        }
+    }
+    
+    /**
+     * Counts bytes written, so entry offsets in the payload can be recorded
+     */
+    static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+        
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        long getCount() {
+            return count;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+    
+    /**
+     * Stops at the end of the payload, so the TOC is never read as segment data
+     */
+    static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+        
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+        
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+}
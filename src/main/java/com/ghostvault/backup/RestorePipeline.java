@@ -0,0 +1,137 @@
+package com.ghostvault.backup;
+
+import com.ghostvault.exception.BackupException;
+import com.ghostvault.util.FileUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes restored entries into a staging directory
+ *
+ * The archive is decrypted and unzipped by a single reader, since both are sequential
+ * streams. Small entries - the bulk of a vault - are read into memory and handed to a
+ * worker pool, which hashes and writes them in parallel while the reader moves on;
+ * memory held by pending entries is bounded, so a slow disk throttles the reader.
+ * Large entries are hashed and written by the reader as they stream past.
+ *
+ * Each entry's SHA-256 is computed from the bytes as they are written and checked
+ * against the digests recorded in the archive, so nothing is read back from disk.
+ */
+class RestorePipeline implements AutoCloseable {
+    
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    
+    // Entries up to this size are written by the workers
+    private static final int SMALL_ENTRY_SIZE = 1024 * 1024;
+    
+    // Bytes of small entries queued for the workers
+    private static final int MAX_PENDING_BYTES = 32 * 1024 * 1024;
+    
+    private final ExecutorService executor;
+    private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+    private final List<Future<?>> pending = new ArrayList<>();
+    private final Map<String, String> digests = new ConcurrentHashMap<>();
+    private final byte[] buffer = new byte[64 * 1024];
+    
+    RestorePipeline(int threads) {
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "GhostVault-Restore-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+    
+    /**
+     * Stage one archive entry; the stream is read up to the end of the entry
+     */
+    void stage(String name, Path target, InputStream in) throws Exception {
+        Files.createDirectories(target.getParent());
+        
+        if (executor != null) {
+            byte[] data = in.readNBytes(SMALL_ENTRY_SIZE + 1);
+            if (data.length <= SMALL_ENTRY_SIZE) {
+                pendingBytes.acquire(Math.max(1, data.length));
+                pending.add(executor.submit(() -> {
+                    try {
+                        MessageDigest digest = FileUtils.newSHA256Digest();
+                        digest.update(data);
+                        Files.write(target, data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                        digests.put(name, FileUtils.encodeHash(digest.digest()));
+                    } finally {
+                        pendingBytes.release(Math.max(1, data.length));
+                    }
+                    return null;
+                }));
+                return;
+            }
+            writeStreaming(name, target, data, in);
+            return;
+        }
+        writeStreaming(name, target, new byte[0], in);
+    }
+    
+    private void writeStreaming(String name, Path target, byte[] head, InputStream in) throws IOException {
+        MessageDigest digest = FileUtils.newSHA256Digest();
+        try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            digest.update(head);
+            out.write(head);
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+        }
+        digests.put(name, FileUtils.encodeHash(digest.digest()));
+    }
+    
+    /**
+     * Wait for staged entries to be written and check them against an archive's digests
+     *
+     * @param expected digests recorded in the archive, or null if it predates them
+     */
+    void verify(Map<String, String> expected) throws Exception {
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+        pending.clear();
+        
+        if (expected != null) {
+            for (Map.Entry<String, String> entry : digests.entrySet()) {
+                if (!entry.getValue().equals(expected.get(entry.getKey()))) {
+                    throw new BackupException("Restored file failed digest check: " + entry.getKey());
+                }
+            }
+        }
+        digests.clear();
+    }
+    
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,18 +1,33 @@
 package com.ghostvault.backup;
 
 import com.ghostvault.config.AppConfig;
+import com.ghostvault.core.BackupManifest;
+import com.ghostvault.core.BackupOptions;
+import com.ghostvault.core.BackupResult;
+import com.ghostvault.core.BackupStats;
 import com.ghostvault.core.FileManager;
 import com.ghostvault.core.MetadataManager;
 import com.ghostvault.security.CryptoManager;
+import com.ghostvault.security.SegmentedAead;
 import com.ghostvault.audit.AuditManager;
 import com.ghostvault.exception.BackupException;
+import com.ghostvault.util.FileUtils;
 
 import javax.crypto.SecretKey;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -20,6 +35,23 @@ import java.util.zip.ZipOutputStream;
 /**
  * Manages secure backup and restore operations for the vault
  * Maintains encryption during backup/restore and handles integrity verification
+ * 
+ * A backup is the header "GVBACKUP" + version followed by a ZIP archive of the vault
+ * in the segmented AEAD format ({@link SegmentedAead}). The archive is written in one
+ * streaming pass - walk, zip, encrypt, write - so memory use does not depend on the
+ * size of the vault and no temporary copies are made. Version 1.0 backups (one GCM
+ * blob over the whole archive) can still be restored.
+ * 
+ * The archive starts with the manifest and the file index ({@link BackupManifest}).
+ * Incremental and differential backups store only files whose fingerprint differs from
+ * the parent's index, plus tombstones for deleted ones; restoring them walks the chain
+ * of parent backups, newest first, taking each file from the newest archive holding it.
+ * 
+ * The archive ends with the SHA-256 of every entry. Restore stages the vault next to the
+ * live one, checking each entry's digest as it is written, and then swaps it in by rename.
+ * 
+ * Since version 2.1 the encrypted archive is followed by an authenticated table of
+ * contents ({@link BackupToc}), so a backup can be verified without decrypting it all.
  */
 public class VaultBackupManager {
     
@@ -27,68 +59,117 @@ public class VaultBackupManager {
     private final FileManager fileManager;
     private final MetadataManager metadataManager;
     private final AuditManager auditManager;
+    private final Path vaultPath;
     
     // Backup format version for compatibility
-    private static final String BACKUP_VERSION = "1.0";
+    private static final String BACKUP_VERSION = "2.1";
+    private static final String STREAMED_BACKUP_VERSION = "2.0";
+    private static final String LEGACY_BACKUP_VERSION = "1.0";
+    private static final byte[] BACKUP_MAGIC = "GVBACKUP".getBytes(StandardCharsets.US_ASCII);
+    private static final int PAYLOAD_OFFSET = BACKUP_MAGIC.length + 3;
     private static final String BACKUP_MANIFEST = "backup_manifest.json";
+    private static final String BACKUP_INDEX = "backup_index";
+    private static final String BACKUP_DIGESTS = "backup_digests";
     private static final String BACKUP_EXTENSION = ".gvbackup";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int RESTORE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int VERIFY_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int SAMPLE_SEGMENTS = 1024;
     
     public VaultBackupManager(CryptoManager cryptoManager, FileManager fileManager, 
                              MetadataManager metadataManager, AuditManager auditManager) {
+        this(cryptoManager, fileManager, metadataManager, auditManager, Paths.get(AppConfig.VAULT_DIR));
+    }
+    
+    public VaultBackupManager(CryptoManager cryptoManager, FileManager fileManager, 
+                             MetadataManager metadataManager, AuditManager auditManager, Path vaultPath) {
         this.cryptoManager = cryptoManager;
         this.fileManager = fileManager;
         this.metadataManager = metadataManager;
         this.auditManager = auditManager;
+        this.vaultPath = vaultPath;
     }
     
     /**
      * Create a complete encrypted backup of the vault
      */
-    public void createBackup(File backupFile, SecretKey key, BackupProgressCallback callback) throws BackupException {
+    public BackupResult createBackup(File backupFile, SecretKey key, BackupProgressCallback callback) throws BackupException {
+        return createBackup(backupFile, key, BackupOptions.fullBackup(), callback);
+    }
+    
+    /**
+     * Create a full, incremental or differential encrypted backup of the vault
+     * 
+     * @see BackupOptions#incrementalBackup(File)
+     * @see BackupOptions#differentialBackup(File)
+     */
+    public BackupResult createBackup(File backupFile, SecretKey key, BackupOptions options,
+                                     BackupProgressCallback callback) throws BackupException {
         if (backupFile == null || key == null) {
             throw new BackupException("Backup file and encryption key are required");
         }
+        if (options == null) {
+            options = BackupOptions.fullBackup();
+        }
         
         try {
+            long startTime = System.currentTimeMillis();
+            BackupStats stats = new BackupStats();
+            
             // Ensure backup file has correct extension
             if (!backupFile.getName().endsWith(BACKUP_EXTENSION)) {
                 backupFile = new File(backupFile.getParent(), 
                     backupFile.getName() + BACKUP_EXTENSION);
             }
             
+            // List what goes into the backup; contents are only read while streaming
+            List<BackupEntry> entries = collectBackupEntries();
+            
             // Create backup manifest
-            BackupManifest manifest = createBackupManifest();
+            ArchiveManifest manifest = createBackupManifest(entries);
             
-            // Create temporary directory for backup preparation
-            Path tempDir = Files.createTempDirectory("ghostvault_backup");
+            // Find the backup to diff against, if any
+            BackupManifest parentIndex = null;
+            if (options.baseBackup != null) {
+                List<ArchiveHead> chain = resolveChain(options.baseBackup, key);
+                ArchiveHead parent = options.differential ? chain.get(chain.size() - 1) : chain.get(0);
+                parentIndex = parent.index;
+                manifest.setParentId(parentIndex.getBackupId());
+                manifest.setParentName(backupFile.getAbsoluteFile().toPath().getParent()
+                    .relativize(parent.file.getAbsoluteFile().toPath()).toString().replace('\\', '/'));
+            }
             
-            try {
-                // Prepare backup contents
-                prepareBackupContents(tempDir, manifest, key, callback);
-                
-                // Create encrypted backup archive
-                createEncryptedArchive(tempDir, backupFile, key, callback);
-                
-                // Verify backup integrity immediately after creation
-                verifyBackupIntegrity(backupFile, key, manifest);
-                
-                // Log successful backup
-                if (auditManager != null) {
-                    auditManager.logSecurityEvent("BACKUP_CREATED", 
-                        "Vault backup created successfully", 
-                        AuditManager.AuditSeverity.INFO, null, 
-                        "Backup file: " + backupFile.getName());
-                }
-                
-                if (callback != null) {
-                    callback.onProgress(100, "Backup completed successfully");
+            // Fingerprint the vault and keep only what changed since the parent
+            BackupManifest index = createBackupIndex(entries, parentIndex, manifest);
+            List<BackupEntry> changed = new ArrayList<>();
+            for (BackupEntry entry : entries) {
+                if (index.getIncludedEntries().contains(entry.name)) {
+                    changed.add(entry);
                 }
-                
-            } finally {
-                // Clean up temporary directory
-                deleteDirectory(tempDir);
             }
             
+            // Stream the vault into the encrypted backup archive
+            writeBackupArchive(changed, manifest, index, backupFile, key, options, stats, callback);
+            stats.setBackupDuration(System.currentTimeMillis() - startTime);
+            stats.setFinalBackupSize(backupFile.length());
+            
+            // Verify backup integrity immediately after creation
+            verifyBackupIntegrity(backupFile, key, manifest);
+            
+            // Log successful backup
+            if (auditManager != null) {
+                auditManager.logSecurityEvent("BACKUP_CREATED", 
+                    "Vault backup created successfully", 
+                    AuditManager.AuditSeverity.INFO, null, 
+                    "Backup file: " + backupFile.getName());
+            }
+            
+            if (callback != null) {
+                callback.onProgress(100, "Backup completed successfully");
+            }
+            
+            return new BackupResult(true, null, stats);
+            
         } catch (Exception e) {
             // Log backup failure
             if (auditManager != null) {
@@ -115,25 +196,28 @@ public class VaultBackupManager {
         }
         
         try {
-            // Create temporary directory for extraction
-            Path tempDir = Files.createTempDirectory("ghostvault_restore");
+            // Stage the restored vault next to the live one, so it can be renamed into place
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+            Path stagingDir = vaultPath.resolveSibling(vaultPath.getFileName() + ".restore_" + timestamp);
             
-            try {
-                // Extract and decrypt backup archive
-                extractEncryptedArchive(backupFile, tempDir, key, callback);
+            try (RestorePipeline pipeline = new RestorePipeline(RESTORE_THREADS)) {
+                Files.createDirectories(stagingDir);
                 
-                // Load and verify backup manifest
-                BackupManifest manifest = loadBackupManifest(tempDir);
+                // Decrypt, unzip and write the backup, with its parents for a chained backup
+                ArchiveManifest manifest = extractBackupChain(backupFile, stagingDir, key, callback, pipeline);
+                if (manifest == null) {
+                    throw new BackupException("Backup manifest not found");
+                }
                 verifyBackupCompatibility(manifest);
                 
-                // Backup current vault (if exists) before restore
-                backupCurrentVault();
-                
-                // Restore vault contents
-                restoreVaultContents(tempDir, manifest, key, callback);
+                // Verify restored vault integrity before it replaces anything
+                verifyRestoredVault(stagingDir, manifest);
                 
-                // Verify restored vault integrity
-                verifyRestoredVault(manifest);
+                // Swap the restored vault in; the current one is kept beside it
+                if (callback != null) {
+                    callback.onProgress(95, "Replacing vault...");
+                }
+                swapInRestoredVault(stagingDir, timestamp);
                 
                 // Log successful restore
                 if (auditManager != null) {
@@ -148,8 +232,8 @@ public class VaultBackupManager {
                 }
                 
             } finally {
-                // Clean up temporary directory
-                deleteDirectory(tempDir);
+                // Clean up whatever was staged if the restore did not complete
+                deleteDirectory(stagingDir);
             }
             
         } catch (Exception e) {
@@ -169,17 +253,26 @@ public class VaultBackupManager {
      * Verify backup file integrity without full restore
      */
     public BackupInfo verifyBackup(File backupFile, SecretKey key) throws BackupException {
+        return verifyBackup(backupFile, key, VerificationMode.QUICK);
+    }
+    
+    /**
+     * Verify backup file integrity without full restore
+     * 
+     * Backups from before version 2.1 have no table of contents and are decrypted in full
+     * by the sample and deep modes.
+     */
+    public BackupInfo verifyBackup(File backupFile, SecretKey key, VerificationMode mode) throws BackupException {
         if (backupFile == null || !backupFile.exists()) {
             throw new BackupException("Backup file does not exist");
         }
         
         try {
-            // Simple verification: check if file has correct header and is readable
-            try (FileInputStream fis = new FileInputStream(backupFile)) {
+            // Check the header, then read the manifest from the start of the archive
+            try (InputStream fis = new BufferedInputStream(new FileInputStream(backupFile))) {
                 // Read and verify header
-                byte[] header = new byte[8];
-                int bytesRead = fis.read(header);
-                if (bytesRead != 8 || !Arrays.equals(header, "GVBACKUP".getBytes())) {
+                byte[] header = fis.readNBytes(BACKUP_MAGIC.length);
+                if (!Arrays.equals(header, BACKUP_MAGIC)) {
                     BackupInfo info = new BackupInfo();
                     info.setValid(false);
                     info.setErrorMessage("Invalid backup file format - missing or corrupted header");
@@ -187,9 +280,7 @@ public class VaultBackupManager {
                 }
                 
                 // Read version
-                byte[] versionBytes = new byte[3];
-                fis.read(versionBytes);
-                String version = new String(versionBytes);
+                String version = new String(fis.readNBytes(3), StandardCharsets.US_ASCII);
                 
                 // Basic file size check
                 long fileSize = backupFile.length();
@@ -209,6 +300,22 @@ public class VaultBackupManager {
                 info.setTotalSize(fileSize);
                 info.setValid(true);
                 
+                if (BACKUP_VERSION.equals(version)) {
+                    verifyWithToc(backupFile, key, mode, info);
+                } else if (STREAMED_BACKUP_VERSION.equals(version)) {
+                    // The manifest is the first entry, so only the first segments are decrypted
+                    ArchiveHead head = readArchiveHead(backupFile, key);
+                    info.setCreationDate(head.manifest.getCreationDate());
+                    info.setFileCount(head.manifest.getFileCount());
+                    info.setParentBackup(head.manifest.getParentName());
+                    if (mode != VerificationMode.QUICK) {
+                        decryptPayload(fis, backupFile, version, key).transferTo(OutputStream.nullOutputStream());
+                    }
+                } else if (!LEGACY_BACKUP_VERSION.equals(version)) {
+                    info.setValid(false);
+                    info.setErrorMessage("Unsupported backup version: " + version);
+                }
+                
                 return info;
             }
             
@@ -220,163 +327,434 @@ public class VaultBackupManager {
         }
     }
     
+    /**
+     * Authenticate the table of contents, then the payload segments the mode asks for
+     */
+    private void verifyWithToc(File backupFile, SecretKey key, VerificationMode mode, BackupInfo info) throws Exception {
+        try (FileChannel channel = FileChannel.open(backupFile.toPath(), StandardOpenOption.READ)) {
+            BackupToc toc = BackupToc.read(channel, PAYLOAD_OFFSET, key);
+            ArchiveManifest manifest = ArchiveManifest.fromJson(toc.getManifestJson());
+            info.setCreationDate(manifest.getCreationDate());
+            info.setFileCount(manifest.getFileCount());
+            info.setParentBackup(manifest.getParentName());
+            
+            long[] segments;
+            if (mode == VerificationMode.QUICK) {
+                segments = new long[0];
+            } else if (mode == VerificationMode.SAMPLE && toc.getSegmentCount() > SAMPLE_SEGMENTS) {
+                segments = sampleSegments(toc.getSegmentCount());
+            } else {
+                segments = null;
+            }
+            toc.verifySegments(channel, PAYLOAD_OFFSET, key, segments, VERIFY_THREADS);
+            info.setSegmentsVerified(segments != null ? segments.length : toc.getSegmentCount());
+        }
+    }
+    
+    /**
+     * Random segment indices, always including the first and last, in ascending order
+     */
+    private static long[] sampleSegments(long segmentCount) {
+        TreeSet<Long> sample = new TreeSet<>();
+        sample.add(0L);
+        sample.add(segmentCount - 1);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (sample.size() < SAMPLE_SEGMENTS) {
+            sample.add(random.nextLong(segmentCount));
+        }
+        return sample.stream().mapToLong(Long::longValue).toArray();
+    }
+    
+    /**
+     * List the vault files that make up a backup, in archive order
+     */
+    private List<BackupEntry> collectBackupEntries() throws Exception {
+        if (!Files.exists(vaultPath)) {
+            throw new BackupException("Vault directory does not exist");
+        }
+        
+        List<BackupEntry> entries = new ArrayList<>();
+        
+        // Encrypted files
+        addTree(entries, vaultPath.resolve("files"));
+        
+        // Metadata summary, the journal of mutations since the last snapshot, and the shards
+        addFile(entries, vaultPath.resolve("metadata.enc"));
+        addFile(entries, vaultPath.resolve("metadata.enc.journal"));
+        addTree(entries, vaultPath.resolve("metadata.enc.shards"));
+        
+        // Keys that wrap the per-file data keys
+        addFile(entries, vaultPath.resolve("keyring.gvk"));
+        
+        // Configuration
+        addTree(entries, vaultPath.resolve("config"));
+        
+        return entries;
+    }
+    
+    private void addFile(List<BackupEntry> entries, Path file) throws IOException {
+        if (Files.isRegularFile(file)) {
+            String name = vaultPath.relativize(file).toString().replace('\\', '/');
+            entries.add(new BackupEntry(name, file, Files.size(file)));
+        }
+    }
+    
+    private void addTree(List<BackupEntry> entries, Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            addFile(entries, file);
+        }
+    }
+    
     /**
      * Create backup manifest with vault information
      */
-    private BackupManifest createBackupManifest() throws Exception {
-        BackupManifest manifest = new BackupManifest();
+    private ArchiveManifest createBackupManifest(List<BackupEntry> entries) throws Exception {
+        ArchiveManifest manifest = new ArchiveManifest();
         manifest.setVersion(BACKUP_VERSION);
         manifest.setCreationDate(LocalDateTime.now());
         
-        // Get vault statistics
-        Path vaultPath = Paths.get(AppConfig.VAULT_DIR);
-        if (Files.exists(vaultPath)) {
-            // Count files and calculate total size
-            int fileCount = 0;
-            long totalSize = 0;
-            
-            Path filesDir = vaultPath.resolve("files");
-            if (Files.exists(filesDir)) {
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(filesDir)) {
-                    for (Path file : stream) {
-                        if (Files.isRegularFile(file)) {
-                            fileCount++;
-                            totalSize += Files.size(file);
-                        }
-                    }
-                }
+        // Count files and calculate total size
+        int fileCount = 0;
+        long totalSize = 0;
+        for (BackupEntry entry : entries) {
+            if (entry.name.startsWith("files/")) {
+                fileCount++;
+                totalSize += entry.size;
             }
-            
-            manifest.setFileCount(fileCount);
-            manifest.setTotalSize(totalSize);
         }
+        manifest.setFileCount(fileCount);
+        manifest.setTotalSize(totalSize);
         
         // Add integrity checksums
-        manifest.setVaultChecksum(calculateVaultChecksum());
+        manifest.setVaultChecksum(calculateVaultChecksum(vaultPath));
         
         return manifest;
     }
     
     /**
-     * Prepare backup contents in temporary directory
+     * Fingerprint every entry and mark those that differ from the parent's index
      */
-    private void prepareBackupContents(Path tempDir, BackupManifest manifest, 
-                                     SecretKey key, BackupProgressCallback callback) throws Exception {
+    private BackupManifest createBackupIndex(List<BackupEntry> entries, BackupManifest parentIndex,
+                                             ArchiveManifest manifest) throws Exception {
+        BackupManifest index = new BackupManifest(2, manifest.getCreationDate(), List.of(), true, manifest.getTotalSize());
+        index.setBackupId(manifest.getBackupId());
+        index.setParentId(manifest.getParentId());
         
-        Path vaultPath = Paths.get(AppConfig.VAULT_DIR);
-        if (!Files.exists(vaultPath)) {
-            throw new BackupException("Vault directory does not exist");
+        Set<String> current = new HashSet<>();
+        for (BackupEntry entry : entries) {
+            String fingerprint = fingerprint(entry);
+            boolean changed = parentIndex == null || !fingerprint.equals(parentIndex.getFingerprints().get(entry.name));
+            index.addEntry(entry.name, fingerprint, changed);
+            current.add(entry.name);
         }
         
-        int totalSteps = 4; // files, metadata, config, manifest
-        int currentStep = 0;
-        
-        // Copy encrypted files
-        if (callback != null) {
-            callback.onProgress((currentStep * 100) / totalSteps, "Backing up encrypted files...");
+        if (parentIndex != null) {
+            for (String name : parentIndex.getFingerprints().keySet()) {
+                if (!current.contains(name)) {
+                    index.addTombstone(name);
+                }
+            }
         }
-        
-        Path filesDir = vaultPath.resolve("files");
-        Path backupFilesDir = tempDir.resolve("files");
-        Files.createDirectories(backupFilesDir);
-        
-        if (Files.exists(filesDir)) {
-            copyDirectory(filesDir, backupFilesDir);
+        return index;
+    }
+    
+    /**
+     * Fingerprint of a vault file
+     * 
+     * Encrypted files are written once under a fresh name and never modified, so size and
+     * modification time identify them without reading 200 GB every night. Metadata and
+     * configuration are rewritten in place and small, so they are hashed.
+     */
+    private String fingerprint(BackupEntry entry) throws IOException {
+        if (entry.name.startsWith("files/")) {
+            return entry.size + ":" + Files.getLastModifiedTime(entry.path).toMillis();
         }
-        currentStep++;
-        
-        // Copy metadata
-        if (callback != null) {
-            callback.onProgress((currentStep * 100) / totalSteps, "Backing up metadata...");
+        MessageDigest digest = FileUtils.newSHA256Digest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(entry.path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
         }
-        
-        Path metadataFile = vaultPath.resolve("metadata.enc");
-        if (Files.exists(metadataFile)) {
-            Files.copy(metadataFile, tempDir.resolve("metadata.enc"));
+        return FileUtils.encodeHash(digest.digest());
+    }
+    
+    /**
+     * Write the backup archive in a single streaming pass
+     * 
+     * Entries are zipped straight into the segmented encryptor and on to disk, so every
+     * byte of the vault is read once and at most one segment is held in memory. The archive
+     * is written next to the target and moved into place when complete.
+     * 
+     * Every vault entry - files, metadata, journal and keyring - is ciphertext that no
+     * codec can shrink, so vault entries are stored; only the archive's own manifest, index
+     * and digests are deflated.
+     */
+    private void writeBackupArchive(List<BackupEntry> entries, ArchiveManifest manifest, BackupManifest index,
+                                    File targetFile, SecretKey key, BackupOptions options, BackupStats stats,
+                                    BackupProgressCallback callback) throws Exception {
+        int textLevel = options.compressBackup ? options.compressionLevel : Deflater.NO_COMPRESSION;
+        int textEntries = 0;
+        long totalBytes = 1;
+        for (BackupEntry entry : entries) {
+            totalBytes += entry.size;
         }
-        currentStep++;
         
-        // Copy configuration
-        if (callback != null) {
-            callback.onProgress((currentStep * 100) / totalSteps, "Backing up configuration...");
-        }
+        Path target = targetFile.toPath();
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
         
-        Path configDir = vaultPath.resolve("config");
-        Path backupConfigDir = tempDir.resolve("config");
-        if (Files.exists(configDir)) {
-            copyDirectory(configDir, backupConfigDir);
+        try {
+            try (OutputStream fos = new BufferedOutputStream(Files.newOutputStream(tempFile), COPY_BUFFER_SIZE)) {
+                // Write header with version
+                fos.write(BACKUP_MAGIC);
+                fos.write(BACKUP_VERSION.getBytes(StandardCharsets.US_ASCII));
+                
+                // The table of contents follows the payload, so closing the payload must not close the file
+                OutputStream payloadOut = new FilterOutputStream(fos) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+                    
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                };
+                BackupToc.Builder toc = new BackupToc.Builder();
+                BackupToc.CountingOutputStream plaintext = new BackupToc.CountingOutputStream(
+                    SegmentedAead.newEncryptingStream(payloadOut, key, toc));
+                
+                try (ZipOutputStream zos = new ZipOutputStream(plaintext)) {
+                    // The archive's own entries are text and compress well
+                    zos.setLevel(textLevel);
+                    
+                    // Manifest first, so it can be read without decrypting the whole archive
+                    zos.putNextEntry(new ZipEntry(BACKUP_MANIFEST));
+                    zos.write(manifest.toJson().getBytes(StandardCharsets.UTF_8));
+                    zos.closeEntry();
+                    
+                    zos.putNextEntry(new ZipEntry(BACKUP_INDEX));
+                    index.writeIndex(zos);
+                    zos.closeEntry();
+                    textEntries += 2;
+                    
+                    zos.setLevel(Deflater.NO_COMPRESSION);
+                    
+                    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                    StringBuilder digests = new StringBuilder();
+                    long written = 0;
+                    int lastPercent = -1;
+                    for (BackupEntry entry : entries) {
+                        long offset = plaintext.getCount();
+                        long size = 0;
+                        MessageDigest digest = FileUtils.newSHA256Digest();
+                        try (InputStream in = Files.newInputStream(entry.path)) {
+                            zos.putNextEntry(new ZipEntry(entry.name));
+                            int n;
+                            while ((n = in.read(buffer)) > 0) {
+                                digest.update(buffer, 0, n);
+                                zos.write(buffer, 0, n);
+                                size += n;
+                            }
+                        }
+                        zos.closeEntry();
+                        stats.addBytesBackedUp(size);
+                        if (entry.name.startsWith("files/")) {
+                            stats.incrementFilesBackedUp();
+                        }
+                        written += size;
+                        byte[] hash = digest.digest();
+                        digests.append(FileUtils.encodeHash(hash)).append('\t').append(entry.name).append('\n');
+                        toc.addEntry(entry.name, offset, plaintext.getCount() - offset, size, hash);
+                        
+                        int percent = (int) (written * 95 / totalBytes);
+                        if (callback != null && percent != lastPercent) {
+                            lastPercent = percent;
+                            callback.onProgress(percent, "Backing up " + entry.name + "...");
+                        }
+                    }
+                    
+                    // Digests last, computed from the bytes as they were archived
+                    zos.setLevel(textLevel);
+                    zos.putNextEntry(new ZipEntry(BACKUP_DIGESTS));
+                    zos.write(digests.toString().getBytes(StandardCharsets.UTF_8));
+                    zos.closeEntry();
+                    textEntries++;
+                }
+                stats.setEntriesCompressed(textLevel != Deflater.NO_COMPRESSION ? textEntries : 0);
+                
+                toc.write(fos, manifest.toJson(), key);
+            }
+            
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    /**
+     * Extract a backup and, for incremental backups, the files it takes from its parents
+     * 
+     * The newest index describes the complete vault; archives are walked newest first and
+     * each file is taken from the first archive that holds it.
+     */
+    private ArchiveManifest extractBackupChain(File backupFile, Path targetDir, SecretKey key,
+                                               BackupProgressCallback callback, RestorePipeline pipeline) throws Exception {
+        ArchiveHead head = readArchiveHead(backupFile, key);
+        if (head == null || head.index == null) {
+            // Legacy or unindexed backup: always a complete archive
+            return extractEncryptedArchive(backupFile, targetDir, key, callback, name -> true, pipeline);
         }
-        currentStep++;
         
-        // Save manifest
-        if (callback != null) {
-            callback.onProgress((currentStep * 100) / totalSteps, "Creating backup manifest...");
+        List<ArchiveHead> chain = resolveChain(backupFile, key);
+        Set<String> pending = new HashSet<>(head.index.getFingerprints().keySet());
+        ArchiveManifest manifest = null;
+        for (int i = 0; i < chain.size() && !pending.isEmpty(); i++) {
+            boolean newest = i == 0;
+            if (callback != null && chain.size() > 1) {
+                callback.onProgress(10, "Reading backup " + (i + 1) + " of " + chain.size() + " in chain...");
+            }
+            ArchiveManifest extracted = extractEncryptedArchive(chain.get(i).file, targetDir, key,
+                newest ? callback : null, name -> (newest && BACKUP_MANIFEST.equals(name)) || pending.remove(name), pipeline);
+            if (newest) {
+                manifest = extracted;
+            }
         }
         
-        saveBackupManifest(tempDir, manifest);
+        if (!pending.isEmpty()) {
+            throw new BackupException("Backup chain is missing " + pending.size() + " files");
+        }
+        return manifest;
     }
     
     /**
-     * Create encrypted archive from prepared contents
+     * Follow parent links from a backup back to its full backup
+     * 
+     * @return the chain, starting with the given backup and ending with the full one
      */
-    private void createEncryptedArchive(Path sourceDir, File targetFile, 
-                                      SecretKey key, BackupProgressCallback callback) throws Exception {
-        
-        // Create temporary unencrypted archive first
-        Path tempArchive = Files.createTempFile("backup", ".zip");
-        
-        try {
-            // Create ZIP archive
-            createZipArchive(sourceDir, tempArchive.toFile(), callback);
-            
-            // Encrypt the archive
-            if (callback != null) {
-                callback.onProgress(90, "Encrypting backup archive...");
+    private List<ArchiveHead> resolveChain(File backupFile, SecretKey key) throws Exception {
+        List<ArchiveHead> chain = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        ArchiveHead head = readArchiveHead(backupFile, key);
+        while (true) {
+            if (head == null || head.index == null) {
+                throw new BackupException("Backup has no file index and cannot be part of a chain: "
+                    + (head != null ? head.file.getName() : backupFile.getName()));
+            }
+            if (!seen.add(head.manifest.getBackupId())) {
+                throw new BackupException("Backup chain contains a cycle");
+            }
+            chain.add(head);
+            if (head.manifest.getParentId() == null) {
+                return chain;
             }
             
-            byte[] archiveData = Files.readAllBytes(tempArchive);
-            byte[] encryptedBytes = cryptoManager.encrypt(archiveData, key);
-            
-            // Write encrypted archive to target file
-            try (FileOutputStream fos = new FileOutputStream(targetFile)) {
-                // Write header with version
-                fos.write("GVBACKUP".getBytes());
-                fos.write(BACKUP_VERSION.getBytes());
-                // Write the encrypted data directly (already contains IV + ciphertext+tag)
-                fos.write(encryptedBytes);
+            File parentFile = head.file.getAbsoluteFile().toPath().getParent()
+                .resolve(head.manifest.getParentName()).normalize().toFile();
+            if (!parentFile.exists()) {
+                throw new BackupException("Parent backup not found: " + head.manifest.getParentName());
+            }
+            ArchiveHead parent = readArchiveHead(parentFile, key);
+            if (parent == null || !head.manifest.getParentId().equals(parent.manifest.getBackupId())) {
+                throw new BackupException("Backup chain is broken: " + parentFile.getName() + " is not the parent backup");
+            }
+            head = parent;
+        }
+    }
+    
+    /**
+     * Read the manifest and file index from the start of a backup
+     * 
+     * Only the first segments are decrypted. Returns null for legacy (1.0) backups.
+     */
+    private ArchiveHead readArchiveHead(File backupFile, SecretKey key) throws Exception {
+        try (InputStream fis = new BufferedInputStream(new FileInputStream(backupFile), COPY_BUFFER_SIZE)) {
+            if (!Arrays.equals(fis.readNBytes(BACKUP_MAGIC.length), BACKUP_MAGIC)) {
+                throw new BackupException("Invalid backup file format");
+            }
+            String version = new String(fis.readNBytes(3), StandardCharsets.US_ASCII);
+            if (LEGACY_BACKUP_VERSION.equals(version)) {
+                return null;
+            }
+            if (!isStreamedVersion(version)) {
+                throw new BackupException("Unsupported backup version: " + version);
             }
             
-            // Clear sensitive data
-            cryptoManager.zeroize(archiveData);
+            ZipInputStream zis = new ZipInputStream(decryptPayload(fis, backupFile, version, key));
+            ZipEntry entry = zis.getNextEntry();
+            if (entry == null || !BACKUP_MANIFEST.equals(entry.getName())) {
+                throw new BackupException("Backup manifest not found");
+            }
+            ArchiveManifest manifest = ArchiveManifest.fromJson(new String(zis.readAllBytes(), StandardCharsets.UTF_8));
             
-        } finally {
-            // Clean up temporary archive
-            Files.deleteIfExists(tempArchive);
+            BackupManifest index = null;
+            entry = zis.getNextEntry();
+            if (entry != null && BACKUP_INDEX.equals(entry.getName())) {
+                index = BackupManifest.readIndex(zis, manifest.getCreationDate());
+            }
+            return new ArchiveHead(backupFile, manifest, index);
         }
     }
     
+    /**
+     * Decrypting stream over the payload of a 2.x backup, read from just after the version
+     */
+    private InputStream decryptPayload(InputStream fis, File backupFile, String version, SecretKey key) throws Exception {
+        if (BACKUP_VERSION.equals(version)) {
+            // Stop before the table of contents
+            fis = new BackupToc.BoundedInputStream(fis, BackupToc.payloadLength(backupFile.toPath(), PAYLOAD_OFFSET));
+        }
+        return SegmentedAead.newDecryptingStream(fis, key);
+    }
+    
+    private static boolean isStreamedVersion(String version) {
+        return BACKUP_VERSION.equals(version) || STREAMED_BACKUP_VERSION.equals(version);
+    }
+    
     /**
      * Extract and decrypt backup archive
+     * 
+     * @return the archive's manifest, if wanted
      */
-    private void extractEncryptedArchive(File backupFile, Path targetDir, 
-                                       SecretKey key, BackupProgressCallback callback) throws Exception {
+    private ArchiveManifest extractEncryptedArchive(File backupFile, Path targetDir, SecretKey key, BackupProgressCallback callback,
+                                                    Predicate<String> wanted, RestorePipeline pipeline) throws Exception {
         
         if (callback != null) {
             callback.onProgress(10, "Reading backup file...");
         }
         
-        try (FileInputStream fis = new FileInputStream(backupFile)) {
+        try (InputStream fis = new BufferedInputStream(new FileInputStream(backupFile), COPY_BUFFER_SIZE)) {
             // Read and verify header
-            byte[] header = new byte[8];
-            fis.read(header);
-            if (!Arrays.equals(header, "GVBACKUP".getBytes())) {
+            byte[] header = fis.readNBytes(BACKUP_MAGIC.length);
+            if (!Arrays.equals(header, BACKUP_MAGIC)) {
                 throw new BackupException("Invalid backup file format");
             }
             
             // Read version
-            byte[] versionBytes = new byte[3];
-            fis.read(versionBytes);
-            String version = new String(versionBytes);
+            String version = new String(fis.readNBytes(3), StandardCharsets.US_ASCII);
+            
+            if (isStreamedVersion(version)) {
+                if (callback != null) {
+                    callback.onProgress(30, "Decrypting and extracting backup archive...");
+                }
+                
+                InputStream plaintext = decryptPayload(fis, backupFile, version, key);
+                ArchiveManifest manifest = extractZipArchive(new ZipInputStream(plaintext), targetDir, wanted, pipeline);
+                
+                // Authenticate the rest of the stream so truncation is never missed
+                plaintext.transferTo(OutputStream.nullOutputStream());
+                return manifest;
+            }
+            
+            if (!LEGACY_BACKUP_VERSION.equals(version)) {
+                throw new BackupException("Unsupported backup version: " + version);
+            }
             
             // Read encrypted data (contains IV + ciphertext+tag)
             byte[] encryptedData = fis.readAllBytes();
@@ -399,7 +777,9 @@ public class VaultBackupManager {
                 }
                 
                 // Extract ZIP archive
-                extractZipArchive(tempArchive.toFile(), targetDir, callback);
+                try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(tempArchive))) {
+                    return extractZipArchive(zis, targetDir, wanted, pipeline);
+                }
                 
             } finally {
                 // Clean up
@@ -409,70 +789,73 @@ public class VaultBackupManager {
         }
     }
     
-    /**
-     * Create ZIP archive from directory
-     */
-    private void createZipArchive(Path sourceDir, File targetFile, BackupProgressCallback callback) throws Exception {
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(targetFile))) {
-            Files.walk(sourceDir)
-                .filter(Files::isRegularFile)
-                .forEach(file -> {
-                    try {
-                        String entryName = sourceDir.relativize(file).toString().replace('\\', '/');
-                        ZipEntry entry = new ZipEntry(entryName);
-                        zos.putNextEntry(entry);
-                        Files.copy(file, zos);
-                        zos.closeEntry();
-                    } catch (Exception e) {
-                        throw new RuntimeException("Failed to add file to archive: " + file, e);
-                    }
-                });
-        }
-    }
-    
     /**
      * Extract ZIP archive to directory
+     * 
+     * Entries are staged through the pipeline and checked against the archive's trailing
+     * digests once it has been read.
+     * 
+     * @return the archive's manifest, if wanted
      */
-    private void extractZipArchive(File archiveFile, Path targetDir, BackupProgressCallback callback) throws Exception {
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(archiveFile))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                Path entryPath = targetDir.resolve(entry.getName());
-                
-                // Ensure entry path is within target directory (security check)
-                if (!entryPath.normalize().startsWith(targetDir.normalize())) {
-                    throw new BackupException("Archive contains invalid entry path: " + entry.getName());
-                }
-                
-                if (entry.isDirectory()) {
-                    Files.createDirectories(entryPath);
-                } else {
-                    Files.createDirectories(entryPath.getParent());
-                    Files.copy(zis, entryPath);
-                }
-                
+    private ArchiveManifest extractZipArchive(ZipInputStream zis, Path targetDir, Predicate<String> wanted,
+                                              RestorePipeline pipeline) throws Exception {
+        ArchiveManifest manifest = null;
+        Map<String, String> digests = null;
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (BACKUP_DIGESTS.equals(entry.getName())) {
+                digests = readDigests(zis);
+                continue;
+            }
+            if (BACKUP_INDEX.equals(entry.getName()) || !wanted.test(entry.getName())) {
                 zis.closeEntry();
+                continue;
             }
+            if (BACKUP_MANIFEST.equals(entry.getName())) {
+                manifest = ArchiveManifest.fromJson(new String(zis.readAllBytes(), StandardCharsets.UTF_8));
+                continue;
+            }
+            Path entryPath = targetDir.resolve(entry.getName());
+            
+            // Ensure entry path is within target directory (security check)
+            if (!entryPath.normalize().startsWith(targetDir.normalize())) {
+                throw new BackupException("Archive contains invalid entry path: " + entry.getName());
+            }
+            
+            if (entry.isDirectory()) {
+                Files.createDirectories(entryPath);
+            } else {
+                pipeline.stage(entry.getName(), entryPath, zis);
+            }
+            
+            zis.closeEntry();
         }
+        
+        pipeline.verify(digests);
+        return manifest;
     }
     
     /**
-     * Load backup manifest from directory
+     * Read the digest entry written at the end of the archive
      */
-    private BackupManifest loadBackupManifest(Path backupDir) throws Exception {
-        Path manifestFile = backupDir.resolve(BACKUP_MANIFEST);
-        if (!Files.exists(manifestFile)) {
-            throw new BackupException("Backup manifest not found");
+    private Map<String, String> readDigests(InputStream in) throws Exception {
+        Map<String, String> digests = new HashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                throw new BackupException("Invalid backup digest entry");
+            }
+            digests.put(line.substring(tab + 1), line.substring(0, tab));
         }
-        
-        String manifestJson = Files.readString(manifestFile);
-        return BackupManifest.fromJson(manifestJson);
+        return digests;
     }
     
     /**
      * Save backup manifest to directory
      */
-    private void saveBackupManifest(Path backupDir, BackupManifest manifest) throws Exception {
+    private void saveBackupManifest(Path backupDir, ArchiveManifest manifest) throws Exception {
         Path manifestFile = backupDir.resolve(BACKUP_MANIFEST);
         String manifestJson = manifest.toJson();
         Files.writeString(manifestFile, manifestJson);
@@ -481,8 +864,8 @@ public class VaultBackupManager {
     /**
      * Verify backup compatibility with current version
      */
-    private void verifyBackupCompatibility(BackupManifest manifest) throws BackupException {
-        if (!BACKUP_VERSION.equals(manifest.getVersion())) {
+    private void verifyBackupCompatibility(ArchiveManifest manifest) throws BackupException {
+        if (!isStreamedVersion(manifest.getVersion()) && !LEGACY_BACKUP_VERSION.equals(manifest.getVersion())) {
             throw new BackupException("Incompatible backup version: " + manifest.getVersion());
         }
     }
@@ -490,17 +873,16 @@ public class VaultBackupManager {
     /**
      * Calculate vault checksum for integrity verification
      */
-    private String calculateVaultChecksum() throws Exception {
+    private String calculateVaultChecksum(Path vaultDir) throws Exception {
         // This is a simplified checksum - in production would be more comprehensive
-        Path vaultPath = Paths.get(AppConfig.VAULT_DIR);
-        if (!Files.exists(vaultPath)) {
+        if (!Files.exists(vaultDir)) {
             return "";
         }
         
         StringBuilder checksumData = new StringBuilder();
         
         // Include metadata file checksum
-        Path metadataFile = vaultPath.resolve("metadata.enc");
+        Path metadataFile = vaultDir.resolve("metadata.enc");
         if (Files.exists(metadataFile)) {
             byte[] metadataBytes = Files.readAllBytes(metadataFile);
             checksumData.append(cryptoManager.calculateSHA256(metadataBytes));
@@ -510,78 +892,35 @@ public class VaultBackupManager {
     }
     
     /**
-     * Backup current vault before restore (for rollback)
-     */
-    private void backupCurrentVault() throws Exception {
-        Path vaultPath = Paths.get(AppConfig.VAULT_DIR);
-        if (!Files.exists(vaultPath)) {
-            return; // No current vault to backup
-        }
-        
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        Path backupPath = vaultPath.getParent().resolve("vault_backup_" + timestamp);
-        
-        copyDirectory(vaultPath, backupPath);
-    }
-    
-    /**
-     * Restore vault contents from backup directory
+     * Move the restored vault into place
+     * 
+     * Both steps are renames within one directory, so the swap takes no time regardless of
+     * vault size. The current vault is kept as vault_backup_<timestamp>; if the restored
+     * vault cannot be moved in, the current one is renamed back.
      */
-    private void restoreVaultContents(Path backupDir, BackupManifest manifest, 
-                                    SecretKey key, BackupProgressCallback callback) throws Exception {
-        
-        Path vaultPath = Paths.get(AppConfig.VAULT_DIR);
-        
-        // Clear existing vault
+    private void swapInRestoredVault(Path stagingDir, String timestamp) throws Exception {
+        Path previous = null;
         if (Files.exists(vaultPath)) {
-            deleteDirectory(vaultPath);
-        }
-        
-        Files.createDirectories(vaultPath);
-        
-        int totalSteps = 3; // files, metadata, config
-        int currentStep = 0;
-        
-        // Restore files
-        if (callback != null) {
-            callback.onProgress((currentStep * 100) / totalSteps, "Restoring encrypted files...");
-        }
-        
-        Path backupFilesDir = backupDir.resolve("files");
-        if (Files.exists(backupFilesDir)) {
-            Path vaultFilesDir = vaultPath.resolve("files");
-            copyDirectory(backupFilesDir, vaultFilesDir);
-        }
-        currentStep++;
-        
-        // Restore metadata
-        if (callback != null) {
-            callback.onProgress((currentStep * 100) / totalSteps, "Restoring metadata...");
+            previous = vaultPath.resolveSibling("vault_backup_" + timestamp);
+            Files.move(vaultPath, previous, StandardCopyOption.ATOMIC_MOVE);
         }
         
-        Path backupMetadata = backupDir.resolve("metadata.enc");
-        if (Files.exists(backupMetadata)) {
-            Files.copy(backupMetadata, vaultPath.resolve("metadata.enc"));
-        }
-        currentStep++;
-        
-        // Restore configuration
-        if (callback != null) {
-            callback.onProgress((currentStep * 100) / totalSteps, "Restoring configuration...");
-        }
-        
-        Path backupConfigDir = backupDir.resolve("config");
-        if (Files.exists(backupConfigDir)) {
-            Path vaultConfigDir = vaultPath.resolve("config");
-            copyDirectory(backupConfigDir, vaultConfigDir);
+        try {
+            Files.move(stagingDir, vaultPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Roll back
+            if (previous != null) {
+                Files.move(previous, vaultPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            throw e;
         }
     }
     
     /**
      * Verify restored vault integrity
      */
-    private void verifyRestoredVault(BackupManifest manifest) throws Exception {
-        String currentChecksum = calculateVaultChecksum();
+    private void verifyRestoredVault(Path restoredDir, ArchiveManifest manifest) throws Exception {
+        String currentChecksum = calculateVaultChecksum(restoredDir);
         if (!currentChecksum.equals(manifest.getVaultChecksum())) {
             throw new BackupException("Restored vault integrity verification failed");
         }
@@ -590,7 +929,7 @@ public class VaultBackupManager {
     /**
      * Verify backup integrity after creation
      */
-    private void verifyBackupIntegrity(File backupFile, SecretKey key, BackupManifest manifest) throws Exception {
+    private void verifyBackupIntegrity(File backupFile, SecretKey key, ArchiveManifest manifest) throws Exception {
         // Simple verification - just check if we can read the backup header and basic structure
         BackupInfo info = verifyBackup(backupFile, key);
         if (!info.isValid()) {
@@ -603,34 +942,6 @@ public class VaultBackupManager {
         }
     }
     
-    /**
-     * Extract only manifest for verification
-     */
-    private void extractManifestOnly(File backupFile, Path targetDir, SecretKey key) throws Exception {
-        // For simplicity, extract the full archive but only use manifest
-        // In production, could optimize to extract only manifest entry
-        extractEncryptedArchive(backupFile, targetDir, key, null);
-    }
-    
-    /**
-     * Copy directory recursively
-     */
-    private void copyDirectory(Path source, Path target) throws Exception {
-        Files.walk(source)
-            .forEach(sourcePath -> {
-                try {
-                    Path targetPath = target.resolve(source.relativize(sourcePath));
-                    if (Files.isDirectory(sourcePath)) {
-                        Files.createDirectories(targetPath);
-                    } else {
-                        Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to copy: " + sourcePath, e);
-                }
-            });
-    }
-    
     /**
      * Delete directory recursively
      */
@@ -649,6 +960,18 @@ public class VaultBackupManager {
         }
     }
     
+    /**
+     * How much of a backup {@link #verifyBackup(File, SecretKey, VerificationMode)} checks
+     */
+    public enum VerificationMode {
+        /** Authenticate the table of contents and check the archive's layout against it */
+        QUICK,
+        /** Also authenticate a random sample of segments, in bounded time for any archive size */
+        SAMPLE,
+        /** Authenticate every segment, in parallel across cores */
+        DEEP
+    }
+    
     /**
      * Callback interface for backup/restore progress
      */
@@ -656,6 +979,36 @@ public class VaultBackupManager {
         void onProgress(int percentage, String message);
     }
     
+    /**
+     * Manifest and file index read from the start of a backup
+     */
+    private static class ArchiveHead {
+        private final File file;
+        private final ArchiveManifest manifest;
+        private final BackupManifest index;
+        
+        ArchiveHead(File file, ArchiveManifest manifest, BackupManifest index) {
+            this.file = file;
+            this.manifest = manifest;
+            this.index = index;
+        }
+    }
+    
+    /**
+     * A vault file to be written into the backup archive
+     */
+    private static class BackupEntry {
+        private final String name;
+        private final Path path;
+        private final long size;
+        
+        BackupEntry(String name, Path path, long size) {
+            this.name = name;
+            this.path = path;
+            this.size = size;
+        }
+    }
+    
     /**
      * Backup information class
      */
@@ -666,6 +1019,8 @@ public class VaultBackupManager {
         private long totalSize;
         private boolean valid;
         private String errorMessage;
+        private String parentBackup;
+        private long segmentsVerified;
         
         // Getters and setters
         public String getVersion() { return version; }
@@ -685,17 +1040,29 @@ public class VaultBackupManager {
         
         public String getErrorMessage() { return errorMessage; }
         public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+        
+        /**
+         * Path of the parent backup relative to this one, or null for a full backup
+         */
+        public String getParentBackup() { return parentBackup; }
+        public void setParentBackup(String parentBackup) { this.parentBackup = parentBackup; }
+        
+        public long getSegmentsVerified() { return segmentsVerified; }
+        public void setSegmentsVerified(long segmentsVerified) { this.segmentsVerified = segmentsVerified; }
     }
     
     /**
      * Backup manifest class
      */
-    private static class BackupManifest {
+    private static class ArchiveManifest {
         private String version;
         private LocalDateTime creationDate;
         private int fileCount;
         private long totalSize;
         private String vaultChecksum;
+        private String backupId = UUID.randomUUID().toString();
+        private String parentId;
+        private String parentName;
         
         // Getters and setters
         public String getVersion() { return version; }
@@ -713,17 +1080,27 @@ public class VaultBackupManager {
         public String getVaultChecksum() { return vaultChecksum; }
         public void setVaultChecksum(String vaultChecksum) { this.vaultChecksum = vaultChecksum; }
         
+        public String getBackupId() { return backupId; }
+        
+        public String getParentId() { return parentId; }
+        public void setParentId(String parentId) { this.parentId = parentId; }
+        
+        public String getParentName() { return parentName; }
+        public void setParentName(String parentName) { this.parentName = parentName; }
+        
         public String toJson() {
             // Simple JSON serialization - in production would use proper JSON library
             return String.format(
-                "{\"version\":\"%s\",\"creationDate\":\"%s\",\"fileCount\":%d,\"totalSize\":%d,\"vaultChecksum\":\"%s\"}",
-                version, creationDate.toString(), fileCount, totalSize, vaultChecksum
+                "{\"version\":\"%s\",\"creationDate\":\"%s\",\"fileCount\":%d,\"totalSize\":%d,\"vaultChecksum\":\"%s\","
+                    + "\"backupId\":\"%s\",\"parentId\":\"%s\",\"parentName\":\"%s\"}",
+                version, creationDate.toString(), fileCount, totalSize, vaultChecksum,
+                backupId, parentId != null ? parentId : "", parentName != null ? parentName : ""
             );
         }
         
-        public static BackupManifest fromJson(String json) {
+        public static ArchiveManifest fromJson(String json) {
             // Simple JSON deserialization - in production would use proper JSON library
-            BackupManifest manifest = new BackupManifest();
+            ArchiveManifest manifest = new ArchiveManifest();
             
             // Extract values using simple string parsing
             manifest.version = extractJsonValue(json, "version");
@@ -731,10 +1108,17 @@ public class VaultBackupManager {
             manifest.fileCount = Integer.parseInt(extractJsonValue(json, "fileCount"));
             manifest.totalSize = Long.parseLong(extractJsonValue(json, "totalSize"));
             manifest.vaultChecksum = extractJsonValue(json, "vaultChecksum");
+            manifest.backupId = extractJsonValue(json, "backupId");
+            manifest.parentId = emptyToNull(extractJsonValue(json, "parentId"));
+            manifest.parentName = emptyToNull(extractJsonValue(json, "parentName"));
             
             return manifest;
         }
         
+        private static String emptyToNull(String value) {
+            return value.isEmpty() ? null : value;
+        }
+        
         private static String extractJsonValue(String json, String key) {
             String pattern = "\"" + key + "\":\"";
             int start = json.indexOf(pattern);
@@ -17,6 +17,7 @@ public class AppConfig {
     public static final String METADATA_FILE = VAULT_DIR + "/metadata.enc";
     public static final String SALT_FILE = VAULT_DIR + "/.salt";
     public static final String LOG_FILE = VAULT_DIR + "/audit.log.enc";
+    public static final String SCRUB_CHECKPOINT_FILE = VAULT_DIR + "/scrub.enc";
     
     // Security settings
     public static final int MAX_LOGIN_ATTEMPTS = 3;
@@ -24,6 +25,15 @@ public class AppConfig {
     public static final int PASSWORD_MIN_STRENGTH = 4;
     public static final int SECURE_DELETE_PASSES = 3;
     
+    // Storage layout: loose ciphertexts smaller than this are moved into pack files
+    public static final long PACK_THRESHOLD_BYTES = 64 * 1024;
+    public static final long PACK_MAX_BYTES = 64L * 1024 * 1024;
+    
+    // Background integrity scrub
+    public static final double SCRUB_BANDWIDTH_MB_PER_SECOND = 8.0;
+    public static final int SCRUB_INTERVAL_HOURS = 24;
+    public static final int SCRUB_IDLE_SECONDS = 10;
+    
     // Encryption settings
     public static final String ENCRYPTION_ALGORITHM = "AES";
     public static final String ENCRYPTION_TRANSFORMATION = "AES/CBC/PKCS5Padding";
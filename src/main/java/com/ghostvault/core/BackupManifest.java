@@ -2,22 +2,51 @@ package com.ghostvault.core;
 
 import com.ghostvault.model.VaultFile;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Backup manifest containing metadata about backup contents
+ *
+ * For chained backups the manifest also carries the file index: a fingerprint for every
+ * vault file as of the backup (the complete state, not just the changes), which of those
+ * files have their data in this archive, and tombstones for files deleted since the parent
+ * backup. An incremental backup is created by diffing the vault against its parent's index;
+ * restoring one walks the chain back to the full backup it starts from.
  */
 public class BackupManifest implements Serializable {
     private static final long serialVersionUID = 1L;
     
+    private static final String INDEX_HEADER = "GVBI 1";
+    
     private final int formatVersion;
     private final LocalDateTime backupTimestamp;
     private final List<VaultFile> files;
     private final boolean includeConfiguration;
     private final long totalSize;
     
+    // File index for incremental and differential backups
+    private String backupId;
+    private String parentId;
+    private final Map<String, String> fingerprints = new LinkedHashMap<>();
+    private final Set<String> included = new LinkedHashSet<>();
+    private final Set<String> tombstones = new LinkedHashSet<>();
+    
     public BackupManifest(int formatVersion, LocalDateTime backupTimestamp, 
                          List<VaultFile> files, boolean includeConfiguration, long totalSize) {
         this.formatVersion = formatVersion;
@@ -35,6 +64,105 @@ public class BackupManifest implements Serializable {
     
     public int getFileCount() { return files.size(); }
     
+    public String getBackupId() { return backupId; }
+    public void setBackupId(String backupId) { this.backupId = backupId; }
+    
+    /**
+     * Id of the backup this one is relative to, or null for a full backup
+     */
+    public String getParentId() { return parentId; }
+    public void setParentId(String parentId) { this.parentId = parentId; }
+    
+    public boolean isFullBackup() { return parentId == null; }
+    
+    /**
+     * Record a vault file as of this backup
+     *
+     * @param inArchive true if the file's data is stored in this archive rather than an ancestor
+     */
+    public void addEntry(String name, String fingerprint, boolean inArchive) {
+        fingerprints.put(name, fingerprint);
+        if (inArchive) {
+            included.add(name);
+        }
+    }
+    
+    public void addTombstone(String name) {
+        tombstones.add(name);
+    }
+    
+    /**
+     * Fingerprints of every vault file as of this backup
+     */
+    public Map<String, String> getFingerprints() { return Collections.unmodifiableMap(fingerprints); }
+    
+    /**
+     * Files whose data is stored in this archive
+     */
+    public Set<String> getIncludedEntries() { return Collections.unmodifiableSet(included); }
+    
+    /**
+     * Files that existed in the parent backup and were deleted since
+     */
+    public Set<String> getTombstones() { return Collections.unmodifiableSet(tombstones); }
+    
+    /**
+     * Write the file index as UTF-8 lines; names go last so they may contain anything but newlines
+     */
+    public void writeIndex(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(INDEX_HEADER + "\n");
+        writer.write("id\t" + backupId + "\n");
+        writer.write("parent\t" + (parentId != null ? parentId : "-") + "\n");
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            String flag = included.contains(entry.getKey()) ? "D" : "R";
+            writer.write("F\t" + entry.getValue() + "\t" + flag + "\t" + entry.getKey() + "\n");
+        }
+        for (String name : tombstones) {
+            writer.write("T\t" + name + "\n");
+        }
+        writer.flush();
+    }
+    
+    /**
+     * Read a file index written by {@link #writeIndex}
+     */
+    public static BackupManifest readIndex(InputStream in, LocalDateTime backupTimestamp) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        if (!INDEX_HEADER.equals(reader.readLine())) {
+            throw new IOException("Invalid backup index");
+        }
+        
+        BackupManifest manifest = new BackupManifest(2, backupTimestamp, List.of(), true, 0);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t", 4);
+            switch (fields[0]) {
+                case "id":
+                    manifest.backupId = fields[1];
+                    break;
+                case "parent":
+                    manifest.parentId = "-".equals(fields[1]) ? null : fields[1];
+                    break;
+                case "F":
+                    if (fields.length != 4) {
+                        throw new IOException("Invalid backup index entry");
+                    }
+                    manifest.addEntry(fields[3], fields[1], "D".equals(fields[2]));
+                    break;
+                case "T":
+                    manifest.addTombstone(fields[1]);
+                    break;
+                default:
+                    throw new IOException("Invalid backup index line");
+            }
+        }
+        if (manifest.backupId == null) {
+            throw new IOException("Backup index has no id");
+        }
+        return manifest;
+    }
+    
     @Override
     public String toString() {
         return String.format("BackupManifest{version=%d, timestamp=%s, files=%d, size=%d, config=%s}", 
@@ -1,5 +1,6 @@
 package com.ghostvault.core;
 
+import java.io.File;
 import java.time.LocalDateTime;
 import java.util.Set;
 
@@ -14,6 +15,8 @@ public class BackupOptions {
     public LocalDateTime dateFilter = null; // null means include all dates
     public boolean compressBackup = true;
     public int compressionLevel = 6; // 0-9, 6 is default
+    public File baseBackup = null; // null means full backup, otherwise only changes since this one
+    public boolean differential = false; // diff against the full backup at the root of baseBackup's chain
     
     public BackupOptions() {
         // Default constructor with default values
@@ -55,9 +58,29 @@ public class BackupOptions {
         return options;
     }
     
+    /**
+     * Create options for an incremental backup holding only changes since a previous backup
+     */
+    public static BackupOptions incrementalBackup(File previousBackup) {
+        BackupOptions options = fullBackup();
+        options.baseBackup = previousBackup;
+        return options;
+    }
+    
+    /**
+     * Create options for a differential backup holding all changes since the last full backup
+     * 
+     * Any backup of the chain may be given; the diff is always taken against its full backup.
+     */
+    public static BackupOptions differentialBackup(File backupInChain) {
+        BackupOptions options = incrementalBackup(backupInChain);
+        options.differential = true;
+        return options;
+    }
+    
     @Override
     public String toString() {
-        return String.format("BackupOptions{config=%s, continueOnError=%s, extensions=%s, dateFilter=%s}", 
-            includeConfiguration, continueOnError, fileExtensionFilter, dateFilter);
+        return String.format("BackupOptions{config=%s, continueOnError=%s, extensions=%s, dateFilter=%s, base=%s, differential=%s}", 
+            includeConfiguration, continueOnError, fileExtensionFilter, dateFilter, baseBackup, differential);
     }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.ghostvault.core;
+
+/**
+ * Statistics for backup operations
+ */
+public class BackupStats {
+    
+    private int filesBackedUp = 0;
+    private int failedFiles = 0;
+    private long bytesBackedUp = 0;
+    private long backupDuration = 0;
+    private long finalBackupSize = 0;
+    private int entriesCompressed = 0;
+    
+    public void incrementFilesBackedUp() { filesBackedUp++; }
+    public void incrementFailedFiles() { failedFiles++; }
+    public void addBytesBackedUp(long bytes) { bytesBackedUp += bytes; }
+    public void setBackupDuration(long duration) { this.backupDuration = duration; }
+    public void setFinalBackupSize(long size) { this.finalBackupSize = size; }
+    public void setEntriesCompressed(int count) { this.entriesCompressed = count; }
+    
+    public int getFilesBackedUp() { return filesBackedUp; }
+    public int getFailedFiles() { return failedFiles; }
+    public long getBytesBackedUp() { return bytesBackedUp; }
+    public long getBackupDuration() { return backupDuration; }
+    public long getFinalBackupSize() { return finalBackupSize; }
+    public int getEntriesCompressed() { return entriesCompressed; }
+    
+    public double getCompressionRatio() {
+        return bytesBackedUp > 0 ? (double) finalBackupSize / bytesBackedUp : 0.0;
+    }
+    
+    /**
+     * Vault bytes read per second, in MB
+     */
+    public double getThroughputMBps() {
+        return backupDuration > 0 ? (bytesBackedUp / (1024.0 * 1024.0)) / (backupDuration / 1000.0) : 0.0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("BackupStats{files=%d, failed=%d, bytes=%d, duration=%dms, size=%d, ratio=%.2f, compressed=%d, throughput=%.1fMB/s}", 
+            filesBackedUp, failedFiles, bytesBackedUp, backupDuration, finalBackupSize, getCompressionRatio(),
+            entriesCompressed, getThroughputMBps());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports many files into the vault concurrently
+ *
+ * Files are encrypted on a worker pool and their metadata is committed in groups
+ * (every {@code commitInterval} files and once at the end) instead of rewriting the
+ * metadata file after every file. Progress is reported per file through an
+ * {@link ImportListener}; callbacks arrive on worker threads.
+ *
+ * A service instance runs one batch. Cancellation is sticky: files not yet started
+ * are skipped, files already encrypted are still committed so nothing is orphaned.
+ */
+public class BatchImportService {
+
+    public static final int DEFAULT_COMMIT_INTERVAL = 500;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * Receives per-file progress events
+     */
+    public interface ImportListener {
+        void onFileImported(File source, VaultFile vaultFile, int completed, int total);
+
+        void onFileFailed(File source, Exception error, int completed, int total);
+
+        default void onCommitted(int committedFiles) {
+        }
+    }
+
+    private final FileManager fileManager;
+    private final MetadataManager metadataManager;
+    private final int workers;
+    private final int commitInterval;
+
+    private final List<VaultFile> pending = new ArrayList<>();
+    private final Object commitLock = new Object();
+    private volatile boolean cancelled;
+
+    public BatchImportService(FileManager fileManager, MetadataManager metadataManager) {
+        this(fileManager, metadataManager, Math.max(2, Runtime.getRuntime().availableProcessors()),
+            DEFAULT_COMMIT_INTERVAL);
+    }
+
+    public BatchImportService(FileManager fileManager, MetadataManager metadataManager,
+                              int workers, int commitInterval) {
+        if (fileManager == null || metadataManager == null) {
+            throw new IllegalArgumentException("File manager and metadata manager are required");
+        }
+        if (workers < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Workers and commit interval must be positive");
+        }
+        this.fileManager = fileManager;
+        this.metadataManager = metadataManager;
+        this.workers = workers;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Import the given files, blocking until all are done or the batch is cancelled
+     *
+     * Must not be called on the UI thread.
+     *
+     * @throws Exception if committing metadata fails; per-file failures are reported in the result
+     */
+    public BatchImportResult importFiles(List<File> files, ImportListener listener) throws Exception {
+        long startTime = System.currentTimeMillis();
+        int total = files.size();
+        AtomicInteger completed = new AtomicInteger();
+        List<VaultFile> imported = Collections.synchronizedList(new ArrayList<>());
+        Map<File, Exception> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, total)), r -> {
+            Thread t = new Thread(r, "GhostVault-Import-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Exception commitError = null;
+        boolean interrupted = false;
+        try {
+            List<Future<?>> tasks = new ArrayList<>(total);
+            for (File file : files) {
+                tasks.add(executor.submit(() -> {
+                    if (cancelled) {
+                        return null;
+                    }
+                    VaultFile vaultFile;
+                    try {
+                        vaultFile = fileManager.storeFile(file);
+                    } catch (Exception e) {
+                        failures.put(file, e);
+                        if (listener != null) {
+                            listener.onFileFailed(file, e, completed.incrementAndGet(), total);
+                        }
+                        return null;
+                    }
+
+                    imported.add(vaultFile);
+                    if (listener != null) {
+                        listener.onFileImported(file, vaultFile, completed.incrementAndGet(), total);
+                    }
+                    enqueue(vaultFile, listener);
+                    return null;
+                }));
+            }
+
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    // Only commit failures escape a task
+                    if (commitError == null && e.getCause() instanceof Exception) {
+                        commitError = (Exception) e.getCause();
+                        cancel();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            cancel();
+        } finally {
+            // Queued tasks see the cancel flag; files in progress finish, so they are committed below
+            executor.shutdown();
+            interrupted |= awaitTermination(executor);
+        }
+
+        // Always commit whatever was encrypted, even after cancellation; an interrupt is
+        // passed on only afterwards, since it would close the journal's channel mid-write
+        try {
+            commitPending(listener);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (commitError != null) {
+            throw commitError;
+        }
+
+        return new BatchImportResult(new ArrayList<>(imported), new LinkedHashMap<>(failures),
+            cancelled, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Stop starting new files; files in progress finish and are committed
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Wait for the workers even when interrupted
+     *
+     * @return whether the thread was interrupted, with the interrupt status cleared
+     */
+    private static boolean awaitTermination(ExecutorService executor) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    return interrupted;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private void enqueue(VaultFile vaultFile, ImportListener listener) throws Exception {
+        boolean commitNow;
+        synchronized (commitLock) {
+            pending.add(vaultFile);
+            commitNow = pending.size() >= commitInterval;
+        }
+        if (commitNow) {
+            commitPending(listener);
+        }
+    }
+
+    private void commitPending(ImportListener listener) throws Exception {
+        synchronized (commitLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            metadataManager.addFiles(pending);
+            int committed = pending.size();
+            pending.clear();
+            if (listener != null) {
+                listener.onCommitted(committed);
+            }
+        }
+    }
+
+    /**
+     * Outcome of a batch import
+     */
+    public static class BatchImportResult {
+        private final List<VaultFile> importedFiles;
+        private final Map<File, Exception> failures;
+        private final boolean cancelled;
+        private final long durationMillis;
+
+        public BatchImportResult(List<VaultFile> importedFiles, Map<File, Exception> failures,
+                                 boolean cancelled, long durationMillis) {
+            this.importedFiles = importedFiles;
+            this.failures = failures;
+            this.cancelled = cancelled;
+            this.durationMillis = durationMillis;
+        }
+
+        public List<VaultFile> getImportedFiles() { return importedFiles; }
+        public Map<File, Exception> getFailures() { return failures; }
+        public int getSuccessCount() { return importedFiles.size(); }
+        public int getFailureCount() { return failures.size(); }
+        public boolean isCancelled() { return cancelled; }
+        public long getDurationMillis() { return durationMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("BatchImportResult{imported=%d, failed=%d, cancelled=%s, duration=%dms}",
+                importedFiles.size(), failures.size(), cancelled, durationMillis);
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import com.ghostvault.security.MemoryUtils;
+import com.ghostvault.security.SegmentedAead;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicating store for large vault files
+ *
+ * Files are split by {@link ContentDefinedChunker} and every distinct chunk is stored
+ * once as files/chunks/&lt;id[0..2]&gt;/&lt;id&gt;.chk, sealed with AES-GCM under the vault key with
+ * the chunk id as AAD. Chunk ids are HMAC-SHA256 under a key derived from the vault key,
+ * so neither ids nor boundaries can be matched against known plaintext. The file itself
+ * is a small manifest (&lt;fileId&gt;.gvc, segmented AEAD) listing its chunks in order.
+ *
+ * Reference counts are derived, not persisted: they are built from the manifests of the
+ * files registered in {@link MetadataManager} the first time a chunk may have to be
+ * collected, and kept up to date by stores and deletes from then on. A chunk is only
+ * ever deleted when it is provably unreferenced; anything uncertain (no metadata source,
+ * an unreadable manifest) leaks the chunk instead.
+ */
+final class ChunkStore {
+
+    static final String MANIFEST_SUFFIX = ".gvc";
+    static final String CHUNK_DIRECTORY = "chunks";
+
+    static final int MIN_CHUNK_SIZE = 256 * 1024;
+    static final int AVG_CHUNK_SIZE = 1024 * 1024;
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final byte[] MANIFEST_MAGIC = {'G', 'V', 'C', 'M'};
+    private static final byte MANIFEST_VERSION = 1;
+    private static final byte[] ID_KEY_INFO = "GhostVault chunk id v1".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GEAR_KEY_INFO = "GhostVault chunk gear v1".getBytes(StandardCharsets.UTF_8);
+    private static final String CHUNK_SUFFIX = ".chk";
+    private static final int ID_LENGTH = 32;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path filesDir;
+    private final Path root;
+    private final CryptoManager cryptoManager = new CryptoManager();
+    private final ExecutorService executor;
+    private final int maxInFlight;
+
+    private volatile Keys keys;
+    private volatile Supplier<? extends Collection<VaultFile>> referenceSource;
+
+    // Reference tracking, guarded by this
+    private final Map<String, List<String>> fileChunks = new HashMap<>();
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    private boolean referencesLoaded;
+
+    ChunkStore(Path filesDir, int threads) {
+        this.filesDir = filesDir;
+        this.root = filesDir.resolve(CHUNK_DIRECTORY);
+        if (threads > 1) {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "GhostVault-Chunk-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = null;
+        }
+        // Bounds the chunk copies held in memory while they are being sealed
+        this.maxInFlight = Math.max(2, threads);
+    }
+
+    static boolean isManifest(String encryptedName) {
+        return encryptedName != null && encryptedName.endsWith(MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Set the vault key; chunk ids and boundaries are derived from it
+     */
+    synchronized void setKey(SecretKey key) {
+        if (key != null && keys != null && keys.key.equals(key)) {
+            return;
+        }
+        try {
+            keys = key != null ? new Keys(key) : null;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive chunk keys", e);
+        }
+        fileChunks.clear();
+        refCounts.clear();
+        referencesLoaded = false;
+    }
+
+    /**
+     * Set the source of live files that chunk references are counted from
+     */
+    void setReferenceSource(Supplier<? extends Collection<VaultFile>> referenceSource) {
+        this.referenceSource = referenceSource;
+    }
+
+    /**
+     * Chunk a stream into the store and write the file's manifest
+     *
+     * @return number of plaintext bytes stored
+     */
+    long store(String fileId, InputStream in, Path manifestPath) throws Exception {
+        Keys current = requireKeys();
+        List<ChunkRef> chunks = new ArrayList<>();
+        Deque<Future<ChunkRef>> pending = new ArrayDeque<>();
+
+        try {
+            long size = current.chunker.split(in, (buffer, offset, length) -> {
+                byte[] chunk = Arrays.copyOfRange(buffer, offset, offset + length);
+                if (executor == null) {
+                    chunks.add(putChunk(fileId, chunk, current));
+                    return;
+                }
+                if (pending.size() >= maxInFlight) {
+                    chunks.add(await(pending.removeFirst()));
+                }
+                pending.addLast(executor.submit(() -> putChunk(fileId, chunk, current)));
+            });
+            while (!pending.isEmpty()) {
+                chunks.add(await(pending.removeFirst()));
+            }
+
+            writeManifest(manifestPath, fileId, chunks, current.key);
+            return size;
+
+        } catch (Exception e) {
+            // Let in-flight chunks settle so that all of this file's references are known
+            for (Future<ChunkRef> future : pending) {
+                try {
+                    future.get();
+                } catch (Exception ignored) {
+                    // already failing
+                }
+            }
+            Files.deleteIfExists(manifestPath);
+            release(fileId, List.of());
+            throw e;
+        }
+    }
+
+    /**
+     * Open a read-only random-access view of a chunked file
+     */
+    SeekableByteChannel open(String fileId, Path manifestPath) throws Exception {
+        Keys current = requireKeys();
+        return new ChunkedChannel(readManifest(manifestPath, fileId, current.key), current.key);
+    }
+
+    /**
+     * Securely delete a chunked file and every chunk no other file references
+     */
+    void delete(String fileId, Path manifestPath) throws Exception {
+        List<String> chunkIds = new ArrayList<>();
+        Keys current = keys;
+        if (Files.exists(manifestPath) && current != null) {
+            try {
+                for (ChunkRef ref : readManifest(manifestPath, fileId, current.key)) {
+                    chunkIds.add(ref.name());
+                }
+            } catch (Exception e) {
+                // The file is deleted regardless; its chunks are only collected if known
+                System.err.println("Could not read chunk manifest of " + fileId + ": " + e.getMessage());
+            }
+        }
+
+        FileManager.secureDeleteFile(manifestPath);
+        release(fileId, chunkIds);
+    }
+
+    /**
+     * Drop a file's references and securely delete the chunks that became unreferenced
+     */
+    private synchronized void release(String fileId, List<String> candidates) throws Exception {
+        boolean complete = loadReferences();
+
+        List<String> held = fileChunks.remove(fileId);
+        if (held != null) {
+            for (String name : held) {
+                refCounts.computeIfPresent(name, (k, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+
+        if (!complete) {
+            return;
+        }
+        for (List<String> names : held != null ? List.of(held, candidates) : List.of(candidates)) {
+            for (String name : names) {
+                // Chunks are deleted under the lock so a concurrent store cannot dedup against them
+                if (!refCounts.containsKey(name)) {
+                    FileManager.secureDeleteFile(chunkPath(name));
+                }
+            }
+        }
+    }
+
+    /**
+     * Count references from every registered chunked file not already tracked
+     *
+     * @return true if the counts cover all live files
+     */
+    private boolean loadReferences() {
+        Supplier<? extends Collection<VaultFile>> source = referenceSource;
+        if (referencesLoaded) {
+            return true;
+        }
+        if (source == null || keys == null) {
+            return false;
+        }
+
+        Map<String, List<String>> loaded = new HashMap<>();
+        for (VaultFile file : source.get()) {
+            if (!isManifest(file.getEncryptedName()) || fileChunks.containsKey(file.getFileId())) {
+                continue;
+            }
+            Path manifestPath = filesDir.resolve(file.getEncryptedName());
+            if (!Files.exists(manifestPath)) {
+                continue;
+            }
+            try {
+                List<String> names = new ArrayList<>();
+                for (ChunkRef ref : readManifest(manifestPath, file.getFileId(), keys.key)) {
+                    names.add(ref.name());
+                }
+                loaded.put(file.getFileId(), names);
+            } catch (Exception e) {
+                System.err.println("Could not read chunk manifest of " + file.getFileId() + ": " + e.getMessage());
+                return false;
+            }
+        }
+
+        loaded.forEach((fileId, names) -> names.forEach(name -> retain(fileId, name)));
+        referencesLoaded = true;
+        return true;
+    }
+
+    private void retain(String fileId, String name) {
+        fileChunks.computeIfAbsent(fileId, k -> new ArrayList<>()).add(name);
+        refCounts.merge(name, 1, Integer::sum);
+    }
+
+    /**
+     * Seal and store one chunk unless an identical chunk is already present
+     */
+    private ChunkRef putChunk(String fileId, byte[] chunk, Keys current) throws Exception {
+        try {
+            byte[] id = current.chunkId(chunk);
+            ChunkRef ref = new ChunkRef(id, chunk.length);
+            Path path = chunkPath(ref.name());
+
+            synchronized (this) {
+                if (Files.exists(path)) {
+                    retain(fileId, ref.name());
+                    return ref;
+                }
+            }
+
+            byte[] sealed = cryptoManager.encrypt(chunk, current.key, id);
+            Files.createDirectories(path.getParent());
+            Path tempPath = Files.createTempFile(path.getParent(), ref.name(), ".tmp");
+            try {
+                Files.write(tempPath, sealed);
+                synchronized (this) {
+                    if (Files.exists(path)) {
+                        Files.delete(tempPath);
+                    } else {
+                        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    retain(fileId, ref.name());
+                }
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+            return ref;
+
+        } finally {
+            MemoryUtils.secureWipe(chunk);
+        }
+    }
+
+    private byte[] readChunk(ChunkRef ref, SecretKey key) throws Exception {
+        Path path = chunkPath(ref.name());
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException("Missing chunk: " + ref.name());
+        }
+        byte[] chunk = cryptoManager.decrypt(Files.readAllBytes(path), key, ref.id());
+        if (chunk.length != ref.length()) {
+            MemoryUtils.secureWipe(chunk);
+            throw new SecurityException("Chunk length mismatch: " + ref.name());
+        }
+        return chunk;
+    }
+
+    Path chunkPath(String name) {
+        return root.resolve(name.substring(0, 2)).resolve(name + CHUNK_SUFFIX);
+    }
+
+    private static void writeManifest(Path path, String fileId, List<ChunkRef> chunks, SecretKey key) throws Exception {
+        try (DataOutputStream out = new DataOutputStream(SegmentedAead.newEncryptingStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), key))) {
+            out.write(MANIFEST_MAGIC);
+            out.writeByte(MANIFEST_VERSION);
+            // Binds the manifest to its file so manifests cannot be swapped
+            out.writeUTF(fileId);
+            out.writeInt(chunks.size());
+            for (ChunkRef ref : chunks) {
+                out.write(ref.id());
+                out.writeInt(ref.length());
+            }
+        }
+    }
+
+    private static List<ChunkRef> readManifest(Path path, String fileId, SecretKey key) throws Exception {
+        try (DataInputStream in = new DataInputStream(
+                SegmentedAead.newDecryptingStream(Files.newInputStream(path), key))) {
+            byte[] magic = new byte[MANIFEST_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MANIFEST_MAGIC) || in.readByte() != MANIFEST_VERSION) {
+                throw new IOException("Not a chunk manifest: " + path.getFileName());
+            }
+            if (!fileId.equals(in.readUTF())) {
+                throw new SecurityException("Chunk manifest belongs to another file: " + path.getFileName());
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupted chunk manifest: " + path.getFileName());
+            }
+            List<ChunkRef> chunks = new ArrayList<>(Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[ID_LENGTH];
+                in.readFully(id);
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_CHUNK_SIZE) {
+                    throw new IOException("Corrupted chunk manifest: " + path.getFileName());
+                }
+                chunks.add(new ChunkRef(id, length));
+            }
+            if (in.read() != -1) {
+                throw new IOException("Trailing data in chunk manifest: " + path.getFileName());
+            }
+            return chunks;
+        }
+    }
+
+    private Keys requireKeys() {
+        Keys current = keys;
+        if (current == null) {
+            throw new IllegalStateException("Encryption key not set");
+        }
+        return current;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * One entry of a manifest
+     */
+    private record ChunkRef(byte[] id, int length) {
+        String name() {
+            return HEX.formatHex(id);
+        }
+    }
+
+    /**
+     * Vault key with the chunk id key and chunker derived from it
+     */
+    private static final class Keys {
+        private final SecretKey key;
+        private final SecretKeySpec idKey;
+        private final ContentDefinedChunker chunker;
+
+        Keys(SecretKey key) throws GeneralSecurityException {
+            this.key = key;
+            byte[] material = key.getEncoded();
+            byte[] idKeyBytes = hmac(material, ID_KEY_INFO);
+            byte[] gearKey = hmac(material, GEAR_KEY_INFO);
+            try {
+                this.idKey = new SecretKeySpec(idKeyBytes, "HmacSHA256");
+
+                // 256 gear entries from HMAC(gearKey, counter) in counter mode
+                long[] gear = new long[256];
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(gearKey, "HmacSHA256"));
+                for (int block = 0; block < gear.length / 4; block++) {
+                    ByteBuffer out = ByteBuffer.wrap(mac.doFinal(ByteBuffer.allocate(4).putInt(block).array()));
+                    for (int i = 0; i < 4; i++) {
+                        gear[block * 4 + i] = out.getLong();
+                    }
+                }
+                this.chunker = new ContentDefinedChunker(gear, MIN_CHUNK_SIZE, AVG_CHUNK_SIZE, MAX_CHUNK_SIZE);
+            } finally {
+                MemoryUtils.secureWipe(material);
+                MemoryUtils.secureWipe(idKeyBytes);
+                MemoryUtils.secureWipe(gearKey);
+            }
+        }
+
+        byte[] chunkId(byte[] chunk) throws GeneralSecurityException {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(idKey);
+            return mac.doFinal(chunk);
+        }
+
+        private static byte[] hmac(byte[] key, byte[] info) throws GeneralSecurityException {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(info);
+        }
+    }
+
+    /**
+     * Read-only channel over a chunked file; one chunk is decrypted at a time
+     */
+    private final class ChunkedChannel implements SeekableByteChannel {
+        private final List<ChunkRef> chunks;
+        private final long[] offsets;
+        private final SecretKey key;
+        private long position;
+        private int currentIndex = -1;
+        private byte[] current;
+        private boolean open = true;
+
+        ChunkedChannel(List<ChunkRef> chunks, SecretKey key) {
+            this.chunks = chunks;
+            this.key = key;
+            this.offsets = new long[chunks.size() + 1];
+            for (int i = 0; i < chunks.size(); i++) {
+                offsets[i + 1] = offsets[i] + chunks.get(i).length();
+            }
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            long size = offsets[offsets.length - 1];
+            if (position >= size) {
+                return -1;
+            }
+
+            int index = Arrays.binarySearch(offsets, position);
+            index = index >= 0 ? index : -index - 2;
+            if (index != currentIndex) {
+                wipeCurrent();
+                try {
+                    current = readChunk(chunks.get(index), key);
+                } catch (IOException | SecurityException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Failed to decrypt chunk: " + chunks.get(index).name(), e);
+                }
+                currentIndex = index;
+            }
+
+            int within = (int) (position - offsets[index]);
+            int n = Math.min(dst.remaining(), current.length - within);
+            dst.put(current, within, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("Negative position");
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public synchronized long size() throws IOException {
+            ensureOpen();
+            return offsets[offsets.length - 1];
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (open) {
+                open = false;
+                wipeCurrent();
+            }
+        }
+
+        private void wipeCurrent() {
+            if (current != null) {
+                MemoryUtils.secureWipe(current);
+                current = null;
+                currentIndex = -1;
+            }
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.ghostvault.core;
+
+import com.ghostvault.security.MemoryUtils;
+
+import java.io.InputStream;
+
+/**
+ * FastCDC content-defined chunker
+ *
+ * Cut points are chosen by a gear rolling hash, so an insertion or deletion only moves
+ * the chunk boundaries around the edit and the rest of the file still deduplicates.
+ * Uses cut-point skipping (nothing below the minimum size is hashed) and normalized
+ * chunking (a stricter mask before the average size, a looser one after it) to keep
+ * chunk sizes close to the average.
+ *
+ * The gear table is derived from the vault key by {@link ChunkStore}, so chunk
+ * boundaries - and with them chunk sizes - reveal nothing about known content.
+ */
+final class ContentDefinedChunker {
+
+    private final long[] gear;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall;
+    private final long maskLarge;
+
+    ContentDefinedChunker(long[] gear, int minSize, int avgSize, int maxSize) {
+        if (gear.length != 256) {
+            throw new IllegalArgumentException("Gear table must have 256 entries");
+        }
+        if (Integer.bitCount(avgSize) != 1 || minSize <= 0 || minSize >= avgSize || maxSize <= avgSize) {
+            throw new IllegalArgumentException("Invalid chunk sizes: " + minSize + "/" + avgSize + "/" + maxSize);
+        }
+        this.gear = gear.clone();
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+
+        // The gear hash shifts left, so the top bits depend on the most bytes
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        this.maskSmall = -1L << (64 - (bits + 2));
+        this.maskLarge = -1L << (64 - (bits - 2));
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Find the end of the next chunk in data[offset, offset + length)
+     *
+     * @return the chunk length; equal to length only if no cut point was found before it
+     */
+    int cut(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(avgSize, end);
+
+        long hash = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + gear[data[offset + i] & 0xFF];
+            if ((hash & maskSmall) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + gear[data[offset + i] & 0xFF];
+            if ((hash & maskLarge) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Receives chunks in stream order; the buffer is reused after the call returns
+     */
+    interface ChunkConsumer {
+        void accept(byte[] buffer, int offset, int length) throws Exception;
+    }
+
+    /**
+     * Split a stream into chunks
+     *
+     * @return total number of bytes read
+     */
+    long split(InputStream in, ChunkConsumer consumer) throws Exception {
+        byte[] buffer = new byte[2 * maxSize];
+        int start = 0;
+        int limit = 0;
+        boolean eof = false;
+        long total = 0;
+
+        try {
+            while (true) {
+                // Keep at least one maximum-size chunk buffered so every cut sees a full window
+                if (!eof && limit - start < maxSize) {
+                    if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, limit - start);
+                        limit -= start;
+                        start = 0;
+                    }
+                    while (limit < buffer.length) {
+                        int n = in.read(buffer, limit, buffer.length - limit);
+                        if (n < 0) {
+                            eof = true;
+                            break;
+                        }
+                        limit += n;
+                        total += n;
+                    }
+                }
+                if (start == limit) {
+                    return total;
+                }
+
+                int length = cut(buffer, start, limit - start);
+                consumer.accept(buffer, start, length);
+                start += length;
+            }
+        } finally {
+            MemoryUtils.secureWipe(buffer);
+        }
+    }
+}
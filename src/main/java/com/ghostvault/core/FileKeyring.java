@@ -0,0 +1,187 @@
+package com.ghostvault.core;
+
+import com.ghostvault.security.CryptoManager;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keys that wrap the per-file data keys
+ *
+ * Each file is encrypted under its own random data key (DEK), stored in its metadata wrapped
+ * by a file key from this keyring; the keyring itself is sealed under the vault key. Rotating
+ * adds a key generation and rewraps every DEK - a few dozen bytes per file - without touching
+ * file contents. Old generations are kept until no file refers to them, so a rotation that is
+ * interrupted before the metadata is saved leaves every file readable. Keys wrapped for files
+ * not committed yet (an import in progress) hold on to their generation the same way.
+ *
+ * Safe for concurrent use: imports wrap on worker threads while a rotation runs.
+ *
+ * Wrapped DEK: generation(4) || IV(12) || AES-GCM(DEK) || tag(16), with the file id as AAD.
+ */
+final class FileKeyring {
+
+    static final String FILE_NAME = "keyring.gvk";
+
+    private static final byte[] MAGIC = {'G', 'V', 'K', 'R'};
+    private static final byte VERSION = 1;
+    private static final byte[] AAD = "GhostVault-FileKeyring".getBytes(StandardCharsets.UTF_8);
+    private static final int KEY_LENGTH = 32;
+
+    private final Path path;
+    private final SecretKey vaultKey;
+    private final CryptoManager cryptoManager;
+    private final Map<Integer, SecretKey> keys = new TreeMap<>();
+    // Wrapped keys handed out and not yet seen among the committed ones
+    private final Set<ByteBuffer> pending = new HashSet<>();
+    private int current;
+
+    private FileKeyring(Path path, SecretKey vaultKey, CryptoManager cryptoManager) {
+        this.path = path;
+        this.vaultKey = vaultKey;
+        this.cryptoManager = cryptoManager;
+    }
+
+    /**
+     * Open the keyring sealed under the vault key, creating it if the vault has none yet
+     */
+    static FileKeyring open(Path path, SecretKey vaultKey, CryptoManager cryptoManager) throws Exception {
+        FileKeyring keyring = new FileKeyring(path, vaultKey, cryptoManager);
+        if (Files.exists(path)) {
+            keyring.load();
+        } else {
+            keyring.rotate();
+        }
+        return keyring;
+    }
+
+    synchronized int getCurrentGeneration() {
+        return current;
+    }
+
+    synchronized Set<Integer> getGenerations() {
+        return new HashSet<>(keys.keySet());
+    }
+
+    /**
+     * Wrap a data key under the current file key
+     *
+     * The generation is kept until the wrapped key shows up among the committed keys passed
+     * to {@link #retain}, or is given up with {@link #discard}.
+     */
+    synchronized byte[] wrap(byte[] dataKey, String fileId) throws GeneralSecurityException {
+        byte[] sealed = cryptoManager.encrypt(dataKey, keys.get(current), fileId.getBytes(StandardCharsets.UTF_8));
+        byte[] wrappedKey = ByteBuffer.allocate(4 + sealed.length).putInt(current).put(sealed).array();
+        pending.add(ByteBuffer.wrap(wrappedKey.clone()));
+        return wrappedKey;
+    }
+
+    /**
+     * Give up a wrapped key whose file will not be committed
+     */
+    synchronized void discard(byte[] wrappedKey) {
+        pending.remove(ByteBuffer.wrap(wrappedKey));
+    }
+
+    /**
+     * Unwrap a data key; the caller zeroizes the result
+     */
+    synchronized byte[] unwrap(byte[] wrappedKey, String fileId) throws GeneralSecurityException {
+        SecretKey fileKey = keys.get(generationOf(wrappedKey));
+        if (fileKey == null) {
+            throw new GeneralSecurityException("File key generation " + generationOf(wrappedKey) + " is not in the keyring");
+        }
+        byte[] sealed = Arrays.copyOfRange(wrappedKey, 4, wrappedKey.length);
+        return cryptoManager.decrypt(sealed, fileKey, fileId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int generationOf(byte[] wrappedKey) {
+        return ByteBuffer.wrap(wrappedKey, 0, 4).getInt();
+    }
+
+    /**
+     * Add a new file key generation, make it current and save the keyring
+     */
+    synchronized void rotate() throws Exception {
+        int next = keys.isEmpty() ? 1 : ((TreeMap<Integer, SecretKey>) keys).lastKey() + 1;
+        byte[] material = cryptoManager.generateSecureRandom(KEY_LENGTH);
+        keys.put(next, cryptoManager.keyFromBytes(material));
+        cryptoManager.zeroize(material);
+        current = next;
+        save();
+    }
+
+    /**
+     * Drop the generations neither the committed keys nor a pending wrap refer to any more;
+     * the current one is always kept
+     */
+    synchronized void retain(Collection<byte[]> committed) throws Exception {
+        Set<Integer> inUse = new HashSet<>();
+        for (byte[] wrappedKey : committed) {
+            pending.remove(ByteBuffer.wrap(wrappedKey));
+            inUse.add(generationOf(wrappedKey));
+        }
+        for (ByteBuffer wrappedKey : pending) {
+            inUse.add(generationOf(wrappedKey.array()));
+        }
+        if (keys.keySet().removeIf(generation -> generation != current && !inUse.contains(generation))) {
+            save();
+        }
+    }
+
+    private void load() throws Exception {
+        byte[] plaintext = cryptoManager.decrypt(Files.readAllBytes(path), vaultKey, AAD);
+        try {
+            ByteBuffer in = ByteBuffer.wrap(plaintext);
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.get() != VERSION) {
+                throw new IOException("Unsupported file keyring format");
+            }
+            current = in.getInt();
+            int count = in.getInt();
+            byte[] material = new byte[KEY_LENGTH];
+            for (int i = 0; i < count; i++) {
+                int generation = in.getInt();
+                in.get(material);
+                keys.put(generation, cryptoManager.keyFromBytes(material));
+            }
+            cryptoManager.zeroize(material);
+            if (!keys.containsKey(current)) {
+                throw new IOException("File keyring has no current key");
+            }
+        } finally {
+            cryptoManager.zeroize(plaintext);
+        }
+    }
+
+    private void save() throws Exception {
+        ByteBuffer out = ByteBuffer.allocate(MAGIC.length + 1 + 8 + keys.size() * (4 + KEY_LENGTH));
+        out.put(MAGIC).put(VERSION).putInt(current).putInt(keys.size());
+        for (Map.Entry<Integer, SecretKey> entry : keys.entrySet()) {
+            out.putInt(entry.getKey()).put(entry.getValue().getEncoded());
+        }
+        byte[] plaintext = out.array();
+        try {
+            byte[] sealed = cryptoManager.encrypt(plaintext, vaultKey, AAD);
+            Path tempPath = Paths.get(path + ".tmp");
+            Files.write(tempPath, sealed);
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            cryptoManager.zeroize(plaintext);
+        }
+    }
+}
@@ -3,29 +3,81 @@ package com.ghostvault.core;
 import com.ghostvault.config.AppConfig;
 import com.ghostvault.model.VaultFile;
 import com.ghostvault.security.CryptoManager;
+import com.ghostvault.security.DecryptingSeekableByteChannel;
 import com.ghostvault.security.MemoryUtils;
+import com.ghostvault.security.ParallelSegmentEncryptor;
+import com.ghostvault.security.SegmentedAead;
 import com.ghostvault.util.FileUtils;
+import com.ghostvault.util.MerkleHash;
 
 import javax.crypto.SecretKey;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.IntConsumer;
 
 /**
  * Manages encrypted file operations with UUID-based naming and secure deletion
+ * 
+ * Files are stored in the segmented AEAD format (see {@link SegmentedAead}) so that
+ * import, export and verification run in constant memory. Legacy single-blob
+ * .enc files are still decrypted transparently. Large files are deduplicated through
+ * the {@link ChunkStore} and stored as a chunk manifest (.gvc) instead.
+ * 
+ * Each segmented file is encrypted under its own data key, kept in its metadata wrapped
+ * by the {@link FileKeyring}. Chunks are shared between files and stay under keys derived
+ * from the vault key, as do files stored before per-file keys.
+ * 
+ * A file's hash is a {@link MerkleHash} root over its plaintext segments, so large
+ * files are hashed and verified on all cores; files stored before that keep a plain
+ * SHA-256 and are still verified sequentially.
+ * 
+ * New files are written under a hex fan-out (see {@link VaultLayout}); small files are
+ * later moved into {@link PackStore} packs by the {@link LayoutMigrator}, which also moves
+ * files over from the flat layout of earlier versions. Both layouts are read transparently.
  */
 public class FileManager {
     
+    // Files of at least this many bytes are encrypted by the parallel segment pipeline
+    private static final long PARALLEL_ENCRYPTION_THRESHOLD = 4L * SegmentedAead.DEFAULT_SEGMENT_SIZE;
+    
+    // Files of at least this many bytes are split into content-defined chunks and deduplicated
+    private static final long DEDUPLICATION_THRESHOLD = 8L * ChunkStore.AVG_CHUNK_SIZE;
+    
+    private static final int DATA_KEY_LENGTH = 32;
+    
     private final String vaultPath;
     private final CryptoManager cryptoManager;
+    private final ParallelSegmentEncryptor segmentEncryptor;
+    private final ChunkStore chunkStore;
+    private final PackStore packStore;
+    private MetadataManager metadataManager;
     private SecretKey encryptionKey;
+    private FileKeyring keyring;
     
     public FileManager(String vaultPath) throws Exception {
         this.vaultPath = vaultPath;
         this.cryptoManager = new CryptoManager();
+        // A worker pool only pays off when there is more than one core to spread segments over
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.segmentEncryptor = cores > 1 ? new ParallelSegmentEncryptor(cores) : null;
+        this.chunkStore = new ChunkStore(Paths.get(AppConfig.FILES_DIR), cores);
+        this.packStore = new PackStore(Paths.get(AppConfig.FILES_DIR), AppConfig.PACK_MAX_BYTES);
         
         // Ensure vault directories exist
         FileUtils.ensureDirectoryExists(vaultPath);
@@ -37,6 +89,22 @@ public class FileManager {
      */
     public void setEncryptionKey(SecretKey key) {
         this.encryptionKey = key;
+        chunkStore.setKey(key);
+        synchronized (this) {
+            keyring = null;
+        }
+    }
+    
+    /**
+     * Count deduplicated chunk references and packed entries against the files registered
+     * in the metadata
+     * 
+     * Without it, chunks and packs freed by a delete are kept rather than risk collecting one in use.
+     */
+    public void setMetadataManager(MetadataManager metadataManager) {
+        this.metadataManager = metadataManager;
+        chunkStore.setReferenceSource(metadataManager::getAllFiles);
+        packStore.setReferenceSource(metadataManager::getAllFiles);
     }
     
     /**
@@ -53,39 +121,211 @@ public class FileManager {
         
         // Generate unique file ID and encrypted name
         String fileId = UUID.randomUUID().toString();
-        String encryptedFileName = fileId + ".enc";
+        boolean deduplicate = sourceFile.length() >= DEDUPLICATION_THRESHOLD;
+        String encryptedFileName = VaultLayout.fanOut(fileId + (deduplicate ? ChunkStore.MANIFEST_SUFFIX : ".enc"));
+        Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, encryptedFileName);
+        Files.createDirectories(encryptedFilePath.getParent());
+        
+        if (deduplicate) {
+            MerkleHash.Hasher hasher = new MerkleHash.Hasher(MerkleHash.DEFAULT_BLOCK_SIZE);
+            long size;
+            try (InputStream in = hasher.hashing(Files.newInputStream(sourceFile.toPath()))) {
+                size = chunkStore.store(fileId, in, encryptedFilePath);
+            }
+            VaultFile vaultFile = new VaultFile(sourceFile.getName(), fileId, encryptedFileName, size,
+                FileUtils.encodeHash(hasher.digest()), System.currentTimeMillis());
+            vaultFile.setBlockSize(MerkleHash.DEFAULT_BLOCK_SIZE);
+            return vaultFile;
+        }
+        
+        // Hash and encrypt each segment in one fused pass from direct buffers read off the
+        // source channel; large files are processed on all cores, small ones inline
+        byte[] dataKeyBytes = cryptoManager.generateSecureRandom(DATA_KEY_LENGTH);
+        long size;
+        byte[] root;
+        byte[] wrappedKey = null;
+        try (FileChannel source = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ);
+             FileChannel channel = FileChannel.open(encryptedFilePath,
+                 StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            SegmentedAead aead = SegmentedAead.create(cryptoManager.keyFromBytes(dataKeyBytes));
+            wrappedKey = keyring().wrap(dataKeyBytes, fileId);
+            MerkleHash.Builder leaves = new MerkleHash.Builder();
+            if (segmentEncryptor != null && source.size() >= PARALLEL_ENCRYPTION_THRESHOLD) {
+                size = segmentEncryptor.encrypt(source, channel, aead, leaves);
+            } else {
+                size = aead.encryptFile(source, channel, leaves);
+            }
+            root = leaves.root();
+        } catch (Exception e) {
+            Files.deleteIfExists(encryptedFilePath);
+            if (wrappedKey != null) {
+                keyring().discard(wrappedKey);
+            }
+            throw e;
+        } finally {
+            cryptoManager.zeroize(dataKeyBytes);
+        }
+        
+        // Create VaultFile metadata
+        VaultFile vaultFile = new VaultFile(
+            sourceFile.getName(),
+            fileId,
+            encryptedFileName,
+            size,
+            FileUtils.encodeHash(root),
+            System.currentTimeMillis()
+        );
+        vaultFile.setWrappedKey(wrappedKey);
+        vaultFile.setBlockSize(SegmentedAead.DEFAULT_SEGMENT_SIZE);
+        return vaultFile;
+    }
+    
+    /**
+     * Rotate the file keyring and rewrap the data keys of the given files under the new key
+     * 
+     * Only the wrapped keys change, so this costs the same for a 1 KB and a 10 GB vault. The
+     * given files are left as they are; the rewrapped copies must be persisted by the caller,
+     * and the previous keyring generations stay readable until {@link #retireFileKeys} is
+     * called after that.
+     * 
+     * @return rewrapped copies of the files that have a data key
+     */
+    public synchronized List<VaultFile> rewrapFileKeys(Collection<VaultFile> files) throws Exception {
+        if (encryptionKey == null) {
+            throw new IllegalStateException("Encryption key not set");
+        }
+        
+        FileKeyring fileKeyring = keyring();
+        fileKeyring.rotate();
+        
+        List<VaultFile> rewrapped = new ArrayList<>();
+        for (VaultFile file : files) {
+            if (file.getWrappedKey() == null) {
+                continue;
+            }
+            byte[] dataKey = fileKeyring.unwrap(file.getWrappedKey(), file.getFileId());
+            try {
+                VaultFile copy = relocated(file, file.getEncryptedName());
+                copy.setWrappedKey(fileKeyring.wrap(dataKey, file.getFileId()));
+                rewrapped.add(copy);
+            } finally {
+                cryptoManager.zeroize(dataKey);
+            }
+        }
+        return rewrapped;
+    }
+    
+    /**
+     * Drop the keyring generations none of the given files (the whole vault) still uses
+     * 
+     * Generations of keys wrapped by {@link #storeFile} and the like for files that are not
+     * committed yet, such as an import in progress, are kept until those files show up here.
+     */
+    public synchronized void retireFileKeys(Collection<VaultFile> files) throws Exception {
+        if (encryptionKey == null) {
+            throw new IllegalStateException("Encryption key not set");
+        }
+        
+        List<byte[]> committed = new ArrayList<>();
+        for (VaultFile file : files) {
+            if (file.getWrappedKey() != null) {
+                committed.add(file.getWrappedKey());
+            }
+        }
+        keyring().retain(committed);
+    }
+    
+    /**
+     * Give up the data keys of stored or rewrapped files that will not be committed, so
+     * {@link #retireFileKeys} no longer holds on to their generation
+     */
+    public void discardFileKeys(Collection<VaultFile> files) throws Exception {
+        for (VaultFile file : files) {
+            if (file.getWrappedKey() != null) {
+                keyring().discard(file.getWrappedKey());
+            }
+        }
+    }
+    
+    /**
+     * Check whether a file can be re-encrypted under a fresh data key
+     * 
+     * Deduplicated files share their chunks with other files and keep the vault-derived chunk keys.
+     */
+    public static boolean isReencryptable(VaultFile vaultFile) {
+        return !ChunkStore.isManifest(vaultFile.getEncryptedName());
+    }
+    
+    /**
+     * Re-encrypt a file under a fresh data key
+     * 
+     * The new ciphertext is written next to the old one under a new name and verified
+     * against the file's hash. The returned copy must be committed to the metadata before
+     * the old ciphertext is deleted, so the file stays readable if this is interrupted.
+     */
+    public VaultFile reencryptFile(VaultFile vaultFile) throws Exception {
+        if (!isReencryptable(vaultFile)) {
+            throw new IllegalArgumentException("Deduplicated files cannot be re-encrypted: " + vaultFile.getOriginalName());
+        }
         
-        // Read source file data
-        byte[] fileData = Files.readAllBytes(sourceFile.toPath());
+        String encryptedFileName = VaultLayout.fanOut(UUID.randomUUID() + ".enc");
+        Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, encryptedFileName);
+        Files.createDirectories(encryptedFilePath.getParent());
+        byte[] dataKeyBytes = cryptoManager.generateSecureRandom(DATA_KEY_LENGTH);
+        byte[] wrappedKey = null;
+        String hash;
+        try (FileChannel channel = FileChannel.open(encryptedFilePath,
+                 StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            wrappedKey = keyring().wrap(dataKeyBytes, vaultFile.getFileId());
+            try (OutputStream out = SegmentedAead.newEncryptingStream(Channels.newOutputStream(channel),
+                    cryptoManager.keyFromBytes(dataKeyBytes))) {
+                hash = decryptTo(vaultFile, out);
+            }
+            if (!hash.equals(vaultFile.getHash())) {
+                throw new SecurityException("File integrity verification failed for: " + vaultFile.getOriginalName());
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(encryptedFilePath);
+            if (wrappedKey != null) {
+                keyring().discard(wrappedKey);
+            }
+            throw e;
+        } finally {
+            cryptoManager.zeroize(dataKeyBytes);
+        }
         
+        VaultFile reencrypted = new VaultFile(vaultFile.getOriginalName(), vaultFile.getFileId(), encryptedFileName,
+            vaultFile.getSize(), vaultFile.getHash(), vaultFile.getUploadTime());
+        reencrypted.setTags(vaultFile.getTags());
+        reencrypted.setWrappedKey(wrappedKey);
+        reencrypted.setBlockSize(vaultFile.getBlockSize());
+        return reencrypted;
+    }
+    
+    /**
+     * Key a file's contents are encrypted under: its own data key, or the vault key for
+     * files stored before per-file keys
+     */
+    private SecretKey dataKey(VaultFile vaultFile) throws Exception {
+        if (vaultFile.getWrappedKey() == null) {
+            return encryptionKey;
+        }
+        byte[] dataKey = keyring().unwrap(vaultFile.getWrappedKey(), vaultFile.getFileId());
         try {
-            // Calculate SHA-256 hash for integrity verification
-            String originalHash = FileUtils.calculateSHA256(fileData);
-            
-            // Encrypt file data
-            byte[] encryptedBytes = cryptoManager.encrypt(fileData, encryptionKey);
-            CryptoManager.EncryptedData encryptedData = CryptoManager.EncryptedData.fromCombinedData(encryptedBytes);
-            
-            // Write encrypted file to vault
-            Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, encryptedFileName);
-            FileUtils.writeEncryptedFile(encryptedFilePath, encryptedData);
-            
-            // Create VaultFile metadata
-            VaultFile vaultFile = new VaultFile(
-                sourceFile.getName(),
-                fileId,
-                encryptedFileName,
-                sourceFile.length(),
-                originalHash,
-                System.currentTimeMillis()
-            );
-            
-            return vaultFile;
-            
+            return cryptoManager.keyFromBytes(dataKey);
         } finally {
-            // Clear sensitive data from memory
-            MemoryUtils.secureWipe(fileData);
+            cryptoManager.zeroize(dataKey);
+        }
+    }
+    
+    /**
+     * The keyring is opened (or created) on first use, after the vault key is set
+     */
+    private synchronized FileKeyring keyring() throws Exception {
+        if (keyring == null) {
+            keyring = FileKeyring.open(Paths.get(vaultPath, FileKeyring.FILE_NAME), encryptionKey, cryptoManager);
         }
+        return keyring;
     }
     
     /**
@@ -96,21 +336,124 @@ public class FileManager {
             throw new IllegalStateException("Encryption key not set");
         }
         
+        if (vaultFile.isPacked()) {
+            return retrievePackedFile(vaultFile);
+        }
+        
         Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, vaultFile.getEncryptedName());
         
         if (!Files.exists(encryptedFilePath)) {
             throw new FileNotFoundException("Encrypted file not found: " + vaultFile.getEncryptedName());
         }
         
+        if (ChunkStore.isManifest(vaultFile.getEncryptedName())) {
+            return retrieveChunkedFile(vaultFile, encryptedFilePath);
+        }
+        
+        if (!SegmentedAead.isSegmented(encryptedFilePath)) {
+            return retrieveLegacyFile(vaultFile, encryptedFilePath);
+        }
+        
+        // Decrypt straight into a buffer of the exact plaintext size; large files are
+        // decrypted and hashed segment by segment on all cores
+        byte[] decryptedData;
+        String currentHash;
+        try (FileChannel channel = FileChannel.open(encryptedFilePath, StandardOpenOption.READ)) {
+            SecretKey dataKey = dataKey(vaultFile);
+            SegmentedAead aead = SegmentedAead.open(dataKey, SegmentedAead.readHeader(channel, 0));
+            long plaintextLength = aead.plaintextLength(channel.size() - SegmentedAead.HEADER_LENGTH);
+            if (plaintextLength > Integer.MAX_VALUE - 8) {
+                throw new IOException("File too large to load into memory: " + vaultFile.getOriginalName());
+            }
+            
+            decryptedData = new byte[(int) plaintextLength];
+            try {
+                currentHash = plaintextLength >= PARALLEL_ENCRYPTION_THRESHOLD
+                    ? hashSegmentsInParallel(vaultFile, channel, aead, decryptedData)
+                    : null;
+                if (currentHash == null) {
+                    ContentDigest digest = new ContentDigest(vaultFile);
+                    try (InputStream in = digest.wrap(
+                            SegmentedAead.newDecryptingStream(Channels.newInputStream(channel.position(0)), dataKey))) {
+                        in.readNBytes(decryptedData, 0, decryptedData.length);
+                    }
+                    currentHash = digest.encode();
+                }
+            } catch (Exception e) {
+                MemoryUtils.secureWipe(decryptedData);
+                throw e;
+            }
+        }
+        
+        // Verify file integrity
+        if (!currentHash.equals(vaultFile.getHash())) {
+            MemoryUtils.secureWipe(decryptedData);
+            throw new SecurityException("File integrity verification failed for: " + vaultFile.getOriginalName());
+        }
+        
+        return decryptedData;
+    }
+    
+    /**
+     * Reassemble a deduplicated file from its chunks
+     */
+    private byte[] retrieveChunkedFile(VaultFile vaultFile, Path manifestPath) throws Exception {
+        ContentDigest digest = new ContentDigest(vaultFile);
+        byte[] decryptedData;
+        try (SeekableByteChannel channel = chunkStore.open(vaultFile.getFileId(), manifestPath)) {
+            if (channel.size() > Integer.MAX_VALUE - 8) {
+                throw new IOException("File too large to load into memory: " + vaultFile.getOriginalName());
+            }
+            
+            decryptedData = new byte[(int) channel.size()];
+            ByteBuffer buffer = ByteBuffer.wrap(decryptedData);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // chunks are read one at a time
+            }
+        }
+        
+        digest.update(decryptedData);
+        if (!digest.encode().equals(vaultFile.getHash())) {
+            MemoryUtils.secureWipe(decryptedData);
+            throw new SecurityException("File integrity verification failed for: " + vaultFile.getOriginalName());
+        }
+        
+        return decryptedData;
+    }
+    
+    /**
+     * Decrypt a small file from its pack entry
+     */
+    private byte[] retrievePackedFile(VaultFile vaultFile) throws Exception {
+        ContentDigest digest = new ContentDigest(vaultFile);
+        byte[] decryptedData;
+        try (InputStream in = digest.wrap(SegmentedAead.newDecryptingStream(
+                new ByteArrayInputStream(packStore.read(vaultFile)), dataKey(vaultFile)))) {
+            decryptedData = in.readAllBytes();
+        }
+        
+        if (!digest.encode().equals(vaultFile.getHash())) {
+            MemoryUtils.secureWipe(decryptedData);
+            throw new SecurityException("File integrity verification failed for: " + vaultFile.getOriginalName());
+        }
+        
+        return decryptedData;
+    }
+    
+    /**
+     * Retrieve a file stored in the legacy single-blob format (IV || ciphertext+tag)
+     */
+    private byte[] retrieveLegacyFile(VaultFile vaultFile, Path encryptedFilePath) throws Exception {
         // Read encrypted data
         CryptoManager.EncryptedData encryptedData = FileUtils.readEncryptedFile(encryptedFilePath);
         
         // Decrypt file data
-        byte[] decryptedData = cryptoManager.decrypt(encryptedData, encryptionKey);
+        byte[] decryptedData = cryptoManager.decrypt(encryptedData, dataKey(vaultFile));
         
         // Verify file integrity
-        String currentHash = FileUtils.calculateSHA256(decryptedData);
-        if (!currentHash.equals(vaultFile.getHash())) {
+        ContentDigest digest = new ContentDigest(vaultFile);
+        digest.update(decryptedData);
+        if (!digest.encode().equals(vaultFile.getHash())) {
             MemoryUtils.secureWipe(decryptedData);
             throw new SecurityException("File integrity verification failed for: " + vaultFile.getOriginalName());
         }
@@ -119,32 +462,209 @@ public class FileManager {
     }
     
     /**
-     * Export file from vault to destination
+     * Decrypt a vault file into the given stream and return its hash
+     * 
+     * Segmented files are streamed with constant memory; legacy files are decrypted in one piece.
      */
-    public void exportFile(VaultFile vaultFile, File destinationFile) throws Exception {
-        byte[] fileData = null;
+    private String decryptTo(VaultFile vaultFile, OutputStream out) throws Exception {
+        return decryptTo(vaultFile, out, null);
+    }
+    
+    /**
+     * Decrypt as above, reporting the number of bytes read from disk as reading progresses
+     */
+    private String decryptTo(VaultFile vaultFile, OutputStream out, IntConsumer readListener) throws Exception {
+        if (encryptionKey == null) {
+            throw new IllegalStateException("Encryption key not set");
+        }
         
-        try {
-            // Retrieve and decrypt file
-            fileData = retrieveFile(vaultFile);
-            
-            // Write to destination
-            Files.write(destinationFile.toPath(), fileData);
+        ContentDigest digest = new ContentDigest(vaultFile);
+        
+        if (vaultFile.isPacked()) {
+            byte[] entry = packStore.read(vaultFile);
+            try (InputStream in = digest.wrap(SegmentedAead.newDecryptingStream(
+                    metered(new ByteArrayInputStream(entry), readListener), dataKey(vaultFile)))) {
+                in.transferTo(out);
+            }
+            return digest.encode();
+        }
+        
+        Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, vaultFile.getEncryptedName());
+        
+        if (!Files.exists(encryptedFilePath)) {
+            throw new FileNotFoundException("Encrypted file not found: " + vaultFile.getEncryptedName());
+        }
+        
+        if (ChunkStore.isManifest(vaultFile.getEncryptedName())) {
+            try (InputStream in = digest.wrap(metered(
+                    Channels.newInputStream(chunkStore.open(vaultFile.getFileId(), encryptedFilePath)), readListener))) {
+                in.transferTo(out);
+            }
+            return digest.encode();
+        }
+        
+        if (!SegmentedAead.isSegmented(encryptedFilePath)) {
+            if (readListener != null) {
+                readListener.accept((int) Files.size(encryptedFilePath));
+            }
+            CryptoManager.EncryptedData encryptedData = FileUtils.readEncryptedFile(encryptedFilePath);
+            byte[] decryptedData = cryptoManager.decrypt(encryptedData, dataKey(vaultFile));
+            try {
+                out.write(decryptedData);
+                digest.update(decryptedData);
+                return digest.encode();
+            } finally {
+                MemoryUtils.secureWipe(decryptedData);
+            }
+        }
+        
+        try (InputStream in = digest.wrap(SegmentedAead.newDecryptingStream(
+                metered(Files.newInputStream(encryptedFilePath), readListener), dataKey(vaultFile)))) {
+            in.transferTo(out);
+        }
+        return digest.encode();
+    }
+    
+    private static InputStream metered(InputStream in, IntConsumer readListener) {
+        if (readListener == null) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    readListener.accept(1);
+                }
+                return b;
+            }
             
-        } finally {
-            // Clear sensitive data from memory
-            if (fileData != null) {
-                MemoryUtils.secureWipe(fileData);
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    readListener.accept(n);
+                }
+                return n;
             }
+        };
+    }
+    
+    /**
+     * Decrypt and hash a segmented file on all cores, writing the plaintext to output if given
+     * 
+     * @return the file's hash, or null if it is not a Merkle root over these segments
+     *         (files stored before Merkle hashing) or there is only one core
+     */
+    private String hashSegmentsInParallel(VaultFile vaultFile, FileChannel channel, SegmentedAead aead,
+                                          byte[] output) throws Exception {
+        if (segmentEncryptor == null || vaultFile.getBlockSize() != aead.getSegmentSize()) {
+            return null;
+        }
+        return FileUtils.encodeHash(segmentEncryptor.decryptAndHash(channel, aead, output));
+    }
+    
+    /**
+     * Open a read-only random-access view of a vault file
+     * 
+     * Segmented files are decrypted lazily, one segment at a time, so previews can page
+     * through multi-GB files. Legacy files are decrypted into memory up front. Segments are
+     * authenticated individually; the whole-file hash is not checked on this path.
+     */
+    public SeekableByteChannel openReadChannel(VaultFile vaultFile) throws Exception {
+        if (encryptionKey == null) {
+            throw new IllegalStateException("Encryption key not set");
+        }
+        
+        if (vaultFile.isPacked()) {
+            return new DecryptedBufferChannel(retrievePackedFile(vaultFile));
+        }
+        
+        Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, vaultFile.getEncryptedName());
+        
+        if (!Files.exists(encryptedFilePath)) {
+            throw new FileNotFoundException("Encrypted file not found: " + vaultFile.getEncryptedName());
+        }
+        
+        if (ChunkStore.isManifest(vaultFile.getEncryptedName())) {
+            return chunkStore.open(vaultFile.getFileId(), encryptedFilePath);
+        }
+        
+        if (!SegmentedAead.isSegmented(encryptedFilePath)) {
+            return new DecryptedBufferChannel(retrieveLegacyFile(vaultFile, encryptedFilePath));
+        }
+        
+        return new DecryptingSeekableByteChannel(encryptedFilePath, dataKey(vaultFile));
+    }
+    
+    /**
+     * Open a decrypting input stream over a vault file
+     */
+    public InputStream openInputStream(VaultFile vaultFile) throws Exception {
+        return Channels.newInputStream(openReadChannel(vaultFile));
+    }
+    
+    /**
+     * Decrypt only the requested byte range of a vault file
+     * 
+     * @return up to length bytes starting at offset (fewer at end of file)
+     */
+    public byte[] readRange(VaultFile vaultFile, long offset, int length) throws Exception {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range");
+        }
+        
+        try (SeekableByteChannel channel = openReadChannel(vaultFile)) {
+            long available = Math.max(0, channel.size() - offset);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, available));
+            channel.position(offset);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the range is filled
+            }
+            return buffer.array();
+        }
+    }
+    
+    /**
+     * Export file from vault to destination
+     */
+    public void exportFile(VaultFile vaultFile, File destinationFile) throws Exception {
+        String currentHash;
+        
+        // Stream decrypted data straight to the destination
+        try (OutputStream out = Files.newOutputStream(destinationFile.toPath())) {
+            currentHash = decryptTo(vaultFile, out);
+        } catch (Exception e) {
+            Files.deleteIfExists(destinationFile.toPath());
+            throw e;
+        }
+        
+        // Verify file integrity; never leave an unverified export behind
+        if (!currentHash.equals(vaultFile.getHash())) {
+            Files.deleteIfExists(destinationFile.toPath());
+            throw new SecurityException("File integrity verification failed for: " + vaultFile.getOriginalName());
         }
     }
     
     /**
      * Securely delete file from vault using DoD 5220.22-M standard
+     * 
+     * For deduplicated files this also collects the chunks no other file references; for
+     * packed files it overwrites the entry and collects the pack once nothing in it is live.
      */
     public void secureDeleteFile(VaultFile vaultFile) throws Exception {
+        if (vaultFile.isPacked()) {
+            packStore.delete(vaultFile);
+            return;
+        }
+        
         Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, vaultFile.getEncryptedName());
         
+        if (ChunkStore.isManifest(vaultFile.getEncryptedName())) {
+            chunkStore.delete(vaultFile.getFileId(), encryptedFilePath);
+            return;
+        }
+        
         if (!Files.exists(encryptedFilePath)) {
             // File already deleted or doesn't exist
             return;
@@ -162,38 +682,44 @@ public class FileManager {
         }
         
         long fileSize = Files.size(filePath);
-        SecureRandom random = new SecureRandom();
         
         try (RandomAccessFile file = new RandomAccessFile(filePath.toFile(), "rws")) {
-            
-            // DoD 5220.22-M 3-pass overwrite pattern
-            for (int pass = 0; pass < AppConfig.SECURE_DELETE_PASSES; pass++) {
-                file.seek(0);
-                
-                switch (pass) {
-                    case 0:
-                        // Pass 1: Write 0x00 (all zeros)
-                        writePattern(file, fileSize, (byte) 0x00);
-                        break;
-                    case 1:
-                        // Pass 2: Write 0xFF (all ones)
-                        writePattern(file, fileSize, (byte) 0xFF);
-                        break;
-                    case 2:
-                        // Pass 3: Write random data
-                        writeRandomPattern(file, fileSize, random);
-                        break;
-                }
-                
-                // Force write to disk
-                file.getFD().sync();
-            }
+            overwrite(file, 0, fileSize);
         }
         
         // Finally delete the file
         Files.delete(filePath);
     }
     
+    /**
+     * Overwrite a byte range of a file with the DoD 5220.22-M 3-pass pattern
+     */
+    static void overwrite(RandomAccessFile file, long offset, long length) throws IOException {
+        SecureRandom random = new SecureRandom();
+        
+        for (int pass = 0; pass < AppConfig.SECURE_DELETE_PASSES; pass++) {
+            file.seek(offset);
+            
+            switch (pass) {
+                case 0:
+                    // Pass 1: Write 0x00 (all zeros)
+                    writePattern(file, length, (byte) 0x00);
+                    break;
+                case 1:
+                    // Pass 2: Write 0xFF (all ones)
+                    writePattern(file, length, (byte) 0xFF);
+                    break;
+                case 2:
+                    // Pass 3: Write random data
+                    writeRandomPattern(file, length, random);
+                    break;
+            }
+            
+            // Force write to disk
+            file.getFD().sync();
+        }
+    }
+    
     /**
      * Write specific byte pattern to file
      */
@@ -228,25 +754,118 @@ public class FileManager {
      * Check if file exists in vault
      */
     public boolean fileExists(VaultFile vaultFile) {
+        if (vaultFile.isPacked()) {
+            return packStore.contains(vaultFile);
+        }
         Path encryptedFilePath = Paths.get(AppConfig.FILES_DIR, vaultFile.getEncryptedName());
         return Files.exists(encryptedFilePath);
     }
     
     /**
-     * Get encrypted file path for a vault file
+     * Directory holding the deduplicated chunks that manifests refer to
+     */
+    public Path getChunkDirectory() {
+        return Paths.get(AppConfig.FILES_DIR, ChunkStore.CHUNK_DIRECTORY);
+    }
+    
+    /**
+     * Get encrypted file path for a vault file; for a packed file, the pack holding it
      */
     public Path getEncryptedFilePath(VaultFile vaultFile) {
+        if (vaultFile.isPacked()) {
+            return packStore.packPath(vaultFile.getPackId());
+        }
         return Paths.get(AppConfig.FILES_DIR, vaultFile.getEncryptedName());
     }
     
     /**
-     * Verify file integrity without decrypting entire file
+     * Every ciphertext, manifest and pack file in the vault, without the deduplicated chunks
+     */
+    public List<Path> listStoredFiles() throws IOException {
+        return VaultLayout.listStoredFiles(Paths.get(AppConfig.FILES_DIR));
+    }
+    
+    /**
+     * Move a loose file from the flat layout to its fan-out location
+     * 
+     * The ciphertext is linked (or copied) under the new name and the original is left in
+     * place; the returned copy must be committed to the metadata before the original is
+     * deleted, as with {@link #reencryptFile}.
+     */
+    VaultFile fanOutFile(VaultFile vaultFile) throws IOException {
+        String encryptedFileName = VaultLayout.fanOut(vaultFile.getEncryptedName());
+        Path source = getEncryptedFilePath(vaultFile);
+        Path target = Paths.get(AppConfig.FILES_DIR, encryptedFileName);
+        if (!Files.exists(source)) {
+            throw new FileNotFoundException("Encrypted file not found: " + vaultFile.getEncryptedName());
+        }
+        
+        Files.createDirectories(target.getParent());
+        // Left by a move that was interrupted before its commit
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target);
+        }
+        
+        return relocated(vaultFile, encryptedFileName);
+    }
+    
+    /**
+     * Copy a small loose file's ciphertext into a pack
+     * 
+     * Only segmented files are packed. The returned copy must be committed to the metadata
+     * before the loose file is deleted; if it is not committed, discard the entry with
+     * {@link #secureDeleteFile(VaultFile)} on the copy.
+     * 
+     * @return the packed copy, or null if the file is not one to pack
+     */
+    VaultFile packFile(VaultFile vaultFile) throws IOException {
+        Path source = getEncryptedFilePath(vaultFile);
+        if (vaultFile.isPacked() || ChunkStore.isManifest(vaultFile.getEncryptedName())
+                || !Files.exists(source) || Files.size(source) >= AppConfig.PACK_THRESHOLD_BYTES
+                || !SegmentedAead.isSegmented(source)) {
+            return null;
+        }
+        
+        PackStore.Entry entry = packStore.append(source);
+        VaultFile packed = relocated(vaultFile, vaultFile.getEncryptedName());
+        packed.setPackLocation(entry.packId(), entry.offset(), entry.length());
+        return packed;
+    }
+    
+    private static VaultFile relocated(VaultFile vaultFile, String encryptedFileName) {
+        VaultFile relocated = new VaultFile(vaultFile.getOriginalName(), vaultFile.getFileId(), encryptedFileName,
+            vaultFile.getSize(), vaultFile.getHash(), vaultFile.getUploadTime());
+        relocated.setTags(vaultFile.getTags());
+        relocated.setWrappedKey(vaultFile.getWrappedKey());
+        relocated.setBlockSize(vaultFile.getBlockSize());
+        if (vaultFile.isPacked()) {
+            relocated.setPackLocation(vaultFile.getPackId(), vaultFile.getPackOffset(), vaultFile.getPackLength());
+        }
+        return relocated;
+    }
+    
+    /**
+     * Verify file integrity without keeping the decrypted file
+     * 
+     * Segmented files with a Merkle hash are decrypted and hashed on all cores.
      */
     public boolean verifyFileIntegrity(VaultFile vaultFile) {
         try {
-            byte[] fileData = retrieveFile(vaultFile);
-            String currentHash = FileUtils.calculateSHA256(fileData);
-            MemoryUtils.secureWipe(fileData);
+            Path encryptedFilePath = getEncryptedFilePath(vaultFile);
+            String currentHash = null;
+            if (!vaultFile.isPacked() && !ChunkStore.isManifest(vaultFile.getEncryptedName())
+                    && vaultFile.getBlockSize() > 0 && SegmentedAead.isSegmented(encryptedFilePath)) {
+                try (FileChannel channel = FileChannel.open(encryptedFilePath, StandardOpenOption.READ)) {
+                    SegmentedAead aead = SegmentedAead.open(dataKey(vaultFile), SegmentedAead.readHeader(channel, 0));
+                    currentHash = hashSegmentsInParallel(vaultFile, channel, aead, null);
+                }
+            }
+            if (currentHash == null) {
+                currentHash = decryptTo(vaultFile, OutputStream.nullOutputStream());
+            }
             return currentHash.equals(vaultFile.getHash());
         } catch (Exception e) {
             return false;
@@ -254,35 +873,56 @@ public class FileManager {
     }
     
     /**
-     * Get vault storage statistics
+     * Check a file's integrity sequentially on the calling thread, for background sweeps
+     * 
+     * The listener is told how many bytes were read as decryption goes, so the caller can
+     * pace itself or stop by throwing. Every GCM tag is checked on the way.
+     * 
+     * @return whether the content hash matches
+     * @throws Exception if the ciphertext is missing or unreadable, or a tag fails; tag failures
+     *         are, or are caused by, a {@link java.security.GeneralSecurityException}
+     */
+    public boolean checkFileIntegrity(VaultFile vaultFile, IntConsumer readListener) throws Exception {
+        return decryptTo(vaultFile, OutputStream.nullOutputStream(), readListener).equals(vaultFile.getHash());
+    }
+    
+    /**
+     * Get vault storage statistics: the number of vault files and their original size
+     * 
+     * Exact when a metadata manager is attached: read from the metadata's running totals,
+     * which costs nothing however large the vault. Without one this is only an on-disk
+     * approximation: loose ciphertexts and deduplication manifests are counted and their
+     * sizes on disk summed, which is not the original size (a manifest is far smaller than
+     * its file), and packed files are left out, since a pack's entries are only known from
+     * the metadata.
      */
     public VaultStats getVaultStats() throws IOException {
-        Path vaultDir = Paths.get(AppConfig.FILES_DIR);
-        
-        if (!Files.exists(vaultDir)) {
-            return new VaultStats(0, 0);
+        if (metadataManager != null) {
+            VaultStatistics.Snapshot totals = metadataManager.getStatistics();
+            return new VaultStats(totals.getTotalSize(), totals.getFileCount());
         }
         
-        long totalSize = Files.walk(vaultDir)
-                .filter(Files::isRegularFile)
-                .mapToLong(path -> {
-                    try {
-                        return Files.size(path);
-                    } catch (IOException e) {
-                        return 0;
-                    }
-                })
-                .sum();
-        
-        long fileCount = Files.walk(vaultDir)
-                .filter(Files::isRegularFile)
-                .count();
+        Path packs = Paths.get(AppConfig.FILES_DIR, PackStore.PACK_DIRECTORY);
+        long totalSize = 0;
+        long fileCount = 0;
+        for (Path path : listStoredFiles()) {
+            if (path.startsWith(packs)) {
+                continue;
+            }
+            try {
+                totalSize += Files.size(path);
+                fileCount++;
+            } catch (IOException e) {
+                // Deleted during the walk
+            }
+        }
         
         return new VaultStats(totalSize, fileCount);
     }
     
     /**
-     * Vault statistics data class
+     * Vault statistics: files as the user sees them, or an on-disk approximation of them
+     * when no metadata is attached
      */
     public static class VaultStats {
         private final long totalSize;
@@ -306,6 +946,112 @@ public class FileManager {
         }
     }
     
+    /**
+     * Read-only channel over a decrypted in-memory buffer (legacy files); wiped on close
+     */
+    private static class DecryptedBufferChannel implements SeekableByteChannel {
+        private final byte[] data;
+        private long position;
+        private boolean open = true;
+        
+        DecryptedBufferChannel(byte[] data) {
+            this.data = data;
+        }
+        
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (position >= data.length) {
+                return -1;
+            }
+            int n = (int) Math.min(dst.remaining(), data.length - position);
+            dst.put(data, (int) position, n);
+            position += n;
+            return n;
+        }
+        
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+        
+        @Override
+        public synchronized long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+        
+        @Override
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("Negative position");
+            }
+            position = newPosition;
+            return this;
+        }
+        
+        @Override
+        public synchronized long size() throws IOException {
+            ensureOpen();
+            return data.length;
+        }
+        
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+        
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+        
+        @Override
+        public synchronized void close() {
+            if (open) {
+                open = false;
+                MemoryUtils.secureWipe(data);
+            }
+        }
+        
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+    
+    /**
+     * Sequential hash of a file's plaintext in the form its metadata records: a Merkle root
+     * over blocks, or a plain SHA-256 for files stored before Merkle hashing
+     */
+    private static final class ContentDigest {
+        private final MerkleHash.Hasher merkle;
+        private final MessageDigest sha256;
+        
+        ContentDigest(VaultFile vaultFile) {
+            this.merkle = vaultFile.getBlockSize() > 0 ? new MerkleHash.Hasher(vaultFile.getBlockSize()) : null;
+            this.sha256 = merkle == null ? FileUtils.newSHA256Digest() : null;
+        }
+        
+        InputStream wrap(InputStream in) {
+            return merkle != null ? merkle.hashing(in) : new DigestInputStream(in, sha256);
+        }
+        
+        void update(byte[] data) {
+            if (merkle != null) {
+                merkle.write(data, 0, data.length);
+            } else {
+                sha256.update(data);
+            }
+        }
+        
+        String encode() {
+            return FileUtils.encodeHash(merkle != null ? merkle.digest() : sha256.digest());
+        }
+    }
+    
     /**
      * Clean up resources and clear sensitive data
      */
@@ -313,6 +1059,13 @@ public class FileManager {
         if (cryptoManager != null) {
             cryptoManager.clearKeys();
         }
+        if (segmentEncryptor != null) {
+            segmentEncryptor.shutdown();
+        }
+        chunkStore.shutdown();
         encryptionKey = null;
+        synchronized (this) {
+            keyring = null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+package com.ghostvault.core;
+
+import com.ghostvault.config.AppConfig;
+import com.ghostvault.model.VaultFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves vault files into the current storage layout in the background
+ *
+ * Small segmented files are packed (see {@link PackStore}) and the remaining files of the
+ * flat layout are moved under the fan-out (see {@link VaultLayout}). Files are switched
+ * over as in {@link ReencryptionWorker}: the new copy is written, the metadata is committed
+ * - in batches, so a million files cost a few thousand journal writes - and only then is
+ * the old ciphertext deleted, so a migration can be cancelled or interrupted at any point
+ * without losing a file. Imports write loose files, so each run also packs those.
+ */
+public class LayoutMigrator {
+
+    private static final int BATCH_SIZE = 256;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * Receives per-file progress events; callbacks arrive on the worker thread
+     */
+    public interface ProgressListener {
+        void onFileMigrated(VaultFile vaultFile, int completed, int total);
+
+        void onFileFailed(VaultFile vaultFile, Exception error, int completed, int total);
+    }
+
+    private final FileManager fileManager;
+    private final MetadataManager metadataManager;
+    private volatile boolean cancelled;
+
+    public LayoutMigrator(FileManager fileManager, MetadataManager metadataManager) {
+        if (fileManager == null || metadataManager == null) {
+            throw new IllegalArgumentException("File manager and metadata manager are required");
+        }
+        this.fileManager = fileManager;
+        this.metadataManager = metadataManager;
+    }
+
+    /**
+     * Start a migration on a background thread
+     *
+     * @return completes with the number of files moved
+     */
+    public CompletableFuture<Integer> start(ProgressListener listener) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(migrate(listener));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, "GhostVault-Migrate-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return result;
+    }
+
+    /**
+     * Move every file not yet in the current layout, blocking until done or cancelled
+     *
+     * @return the number of files moved
+     */
+    public int migrate(ProgressListener listener) throws Exception {
+        List<VaultFile> candidates = new ArrayList<>();
+        for (VaultFile file : metadataManager.getAllFiles()) {
+            if (needsMigration(file)) {
+                candidates.add(file);
+            }
+        }
+
+        int total = candidates.size();
+        int completed = 0;
+        int migrated = 0;
+        List<Move> batch = new ArrayList<>(BATCH_SIZE);
+        for (VaultFile file : candidates) {
+            if (cancelled) {
+                break;
+            }
+            completed++;
+            try {
+                VaultFile moved = fileManager.packFile(file);
+                if (moved == null && VaultLayout.isFlat(file.getEncryptedName())) {
+                    moved = fileManager.fanOutFile(file);
+                }
+                if (moved != null) {
+                    batch.add(new Move(file, moved, completed));
+                }
+            } catch (Exception e) {
+                if (listener != null) {
+                    listener.onFileFailed(file, e, completed, total);
+                }
+            }
+            if (batch.size() >= BATCH_SIZE) {
+                migrated += commit(batch, listener, total);
+                batch.clear();
+            }
+        }
+        migrated += commit(batch, listener, total);
+        return migrated;
+    }
+
+    /**
+     * Stop after the file in progress; files already moved stay moved
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Loose files small enough to pack, and anything left in the flat layout
+     */
+    private static boolean needsMigration(VaultFile file) {
+        if (file.isPacked()) {
+            return false;
+        }
+        return VaultLayout.isFlat(file.getEncryptedName())
+            || (!ChunkStore.isManifest(file.getEncryptedName()) && file.getSize() < AppConfig.PACK_THRESHOLD_BYTES);
+    }
+
+    private int commit(List<Move> batch, ProgressListener listener, int total) throws Exception {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<VaultFile, VaultFile> replacements = new LinkedHashMap<>();
+        for (Move move : batch) {
+            replacements.put(move.original, move.moved);
+        }
+        Set<VaultFile> committed;
+        try {
+            // Tags may have been edited and the data key rewrapped meanwhile
+            committed = new HashSet<>(metadataManager.replaceFiles(replacements, (registered, moved) -> {
+                moved.setTags(registered.getTags());
+                moved.setWrappedKey(registered.getWrappedKey());
+            }));
+        } catch (Exception e) {
+            for (Move move : batch) {
+                discard(move);
+            }
+            throw e;
+        }
+
+        List<Move> current = new ArrayList<>(committed.size());
+        for (Move move : batch) {
+            if (committed.contains(move.moved)) {
+                current.add(move);
+            } else {
+                // Deleted or replaced while it was being moved
+                discard(move);
+            }
+        }
+
+        for (Move move : current) {
+            try {
+                remove(fileManager.getEncryptedFilePath(move.original), fileManager.getEncryptedFilePath(move.moved));
+            } catch (Exception e) {
+                // The file is readable from its new location; the old copy is only an orphan
+                System.err.println("Could not delete moved file " + move.original.getFileId() + ": " + e.getMessage());
+            }
+            if (listener != null) {
+                listener.onFileMigrated(move.moved, move.completed, total);
+            }
+        }
+        return current.size();
+    }
+
+    private void discard(Move move) {
+        try {
+            if (move.moved.isPacked()) {
+                fileManager.secureDeleteFile(move.moved);
+            } else {
+                remove(fileManager.getEncryptedFilePath(move.moved), fileManager.getEncryptedFilePath(move.original));
+            }
+        } catch (Exception e) {
+            System.err.println("Could not discard moved copy of " + move.original.getFileId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete one of two names for a ciphertext; a hard link is only unlinked, since
+     * overwriting it would wipe the other name too
+     */
+    private static void remove(Path path, Path other) throws Exception {
+        if (Files.exists(path) && Files.exists(other) && isSameFile(path, other)) {
+            Files.delete(path);
+        } else {
+            FileManager.secureDeleteFile(path);
+        }
+    }
+
+    private static boolean isSameFile(Path path, Path other) {
+        try {
+            return Files.isSameFile(path, other);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private record Move(VaultFile original, VaultFile moved, int completed) {
+    }
+}
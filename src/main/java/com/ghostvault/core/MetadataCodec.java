@@ -0,0 +1,347 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact, schema-versioned binary encoding of the metadata registry
+ *
+ * Replaces Java serialization of {@code HashMap<String, VaultFile>}: no class
+ * descriptors, no reflection on load, and a fraction of the size.
+ *
+ * Layout (version 3; version 2 has no fan-out or pack flags, version 1 no wrapped keys):
+ * <pre>
+ *   MAGIC(4) || version(1)
+ *   varint stringCount, { varint byteLength, UTF-8 bytes }*      string table
+ *   varint fileCount, { file }*                                   sorted by upload time
+ *   file = flags(1)
+ *          fileId:        16 raw bytes if canonical UUID, else varint string index
+ *          encryptedName: omitted if fileId + ".enc", fanned out if FLAG_FAN_OUT
+ *                         (see {@link VaultLayout}), else varint string index
+ *          originalName:  varint string index
+ *          size:          varlong
+ *          hash:          32 raw bytes if Base64 SHA-256, else varint string index
+ *          uploadTime:    zigzag varlong delta from previous file
+ *          tags:          varint string index
+ *          wrappedKey:    varint length, raw bytes; only if FLAG_WRAPPED_KEY
+ *          blockSize:     varint; only if FLAG_MERKLE (hash is a Merkle root over blocks)
+ *          packId, offset, length: varints; only if FLAG_PACKED
+ * </pre>
+ */
+public final class MetadataCodec {
+
+    private static final byte[] MAGIC = {'G', 'V', 'M', 'D'};
+    private static final byte VERSION = 3;
+    private static final byte VERSION_WITHOUT_LAYOUT = 2;
+    private static final byte VERSION_WITHOUT_KEYS = 1;
+
+    private static final int FLAG_UUID_ID = 1;
+    private static final int FLAG_DEFAULT_ENCRYPTED_NAME = 1 << 1;
+    private static final int FLAG_RAW_HASH = 1 << 2;
+    private static final int FLAG_WRAPPED_KEY = 1 << 3;
+    private static final int FLAG_MERKLE = 1 << 4;
+    private static final int FLAG_FAN_OUT = 1 << 5;
+    private static final int FLAG_PACKED = 1 << 6;
+
+    private static final int HASH_LENGTH = 32;
+    private static final String ENCRYPTED_SUFFIX = ".enc";
+
+    private MetadataCodec() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * Check whether data was produced by this codec (as opposed to legacy Java serialization)
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length > MAGIC.length
+            && Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC);
+    }
+
+    /**
+     * Encode the given files
+     */
+    public static byte[] encode(Collection<VaultFile> files) {
+        List<VaultFile> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(VaultFile::getUploadTime));
+
+        // Build the string table (deduplicated; tags and extensions repeat a lot)
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[][] fileStrings = new int[sorted.size()][];
+        int estimatedSize = 16;
+
+        for (int i = 0; i < sorted.size(); i++) {
+            VaultFile file = sorted.get(i);
+            int[] refs = {-1, -1, -1, -1, -1}; // id, encryptedName, originalName, hash, tags
+            if (uuidOf(file.getFileId()) == null) {
+                refs[0] = intern(file.getFileId(), stringIndex, strings);
+            }
+            if (!isDefaultName(file, false) && !isDefaultName(file, true)) {
+                refs[1] = intern(file.getEncryptedName(), stringIndex, strings);
+            }
+            refs[2] = intern(file.getOriginalName(), stringIndex, strings);
+            if (rawHashOf(file.getHash()) == null) {
+                refs[3] = intern(file.getHash(), stringIndex, strings);
+            }
+            refs[4] = intern(file.getTags(), stringIndex, strings);
+            fileStrings[i] = refs;
+            estimatedSize += 1 + 16 + 5 * 5 + 10 + HASH_LENGTH + 10;
+        }
+        for (byte[] string : strings) {
+            estimatedSize += 5 + string.length;
+        }
+        for (VaultFile file : sorted) {
+            if (file.getWrappedKey() != null) {
+                estimatedSize += 5 + file.getWrappedKey().length;
+            }
+            estimatedSize += 5 + 3 * 10;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(estimatedSize);
+        out.put(MAGIC).put(VERSION);
+
+        writeVarLong(out, strings.size());
+        for (byte[] string : strings) {
+            writeVarLong(out, string.length);
+            out.put(string);
+        }
+
+        writeVarLong(out, sorted.size());
+        long previousTime = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            VaultFile file = sorted.get(i);
+            int[] refs = fileStrings[i];
+
+            UUID uuid = uuidOf(file.getFileId());
+            byte[] rawHash = rawHashOf(file.getHash());
+            int flags = (uuid != null ? FLAG_UUID_ID : 0)
+                | (refs[1] < 0 ? FLAG_DEFAULT_ENCRYPTED_NAME : 0)
+                | (rawHash != null ? FLAG_RAW_HASH : 0)
+                | (file.getWrappedKey() != null ? FLAG_WRAPPED_KEY : 0)
+                | (file.getBlockSize() > 0 ? FLAG_MERKLE : 0)
+                | (isDefaultName(file, true) ? FLAG_FAN_OUT : 0)
+                | (file.isPacked() ? FLAG_PACKED : 0);
+            out.put((byte) flags);
+
+            if (uuid != null) {
+                out.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            } else {
+                writeVarLong(out, refs[0]);
+            }
+            if (refs[1] >= 0) {
+                writeVarLong(out, refs[1]);
+            }
+            writeVarLong(out, refs[2]);
+            writeVarLong(out, file.getSize());
+            if (rawHash != null) {
+                out.put(rawHash);
+            } else {
+                writeVarLong(out, refs[3]);
+            }
+            writeVarLong(out, zigZag(file.getUploadTime() - previousTime));
+            previousTime = file.getUploadTime();
+            writeVarLong(out, refs[4]);
+            if (file.getWrappedKey() != null) {
+                writeVarLong(out, file.getWrappedKey().length);
+                out.put(file.getWrappedKey());
+            }
+            if (file.getBlockSize() > 0) {
+                writeVarLong(out, file.getBlockSize());
+            }
+            if (file.isPacked()) {
+                writeVarLong(out, file.getPackId());
+                writeVarLong(out, file.getPackOffset());
+                writeVarLong(out, file.getPackLength());
+            }
+        }
+
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Decode files produced by {@link #encode}
+     */
+    public static List<VaultFile> decode(byte[] data) throws IOException {
+        if (!isEncoded(data)) {
+            throw new IOException("Not an encoded metadata registry");
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            in.position(MAGIC.length);
+            byte version = in.get();
+            if (version != VERSION && version != VERSION_WITHOUT_LAYOUT && version != VERSION_WITHOUT_KEYS) {
+                throw new IOException("Unsupported metadata version: " + version);
+            }
+
+            String[] strings = new String[checkedCount(readVarLong(in), in)];
+            for (int i = 0; i < strings.length; i++) {
+                int length = checkedCount(readVarLong(in), in);
+                strings[i] = new String(data, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+
+            int fileCount = checkedCount(readVarLong(in), in);
+            List<VaultFile> files = new ArrayList<>(fileCount);
+            long previousTime = 0;
+            for (int i = 0; i < fileCount; i++) {
+                int flags = in.get();
+
+                String fileId = (flags & FLAG_UUID_ID) != 0
+                    ? new UUID(in.getLong(), in.getLong()).toString()
+                    : string(strings, readVarLong(in));
+                String encryptedName;
+                if ((flags & FLAG_DEFAULT_ENCRYPTED_NAME) == 0) {
+                    encryptedName = string(strings, readVarLong(in));
+                } else if ((flags & FLAG_FAN_OUT) != 0) {
+                    encryptedName = VaultLayout.fanOut(fileId + ENCRYPTED_SUFFIX);
+                } else {
+                    encryptedName = fileId + ENCRYPTED_SUFFIX;
+                }
+                String originalName = string(strings, readVarLong(in));
+                long size = readVarLong(in);
+                String hash;
+                if ((flags & FLAG_RAW_HASH) != 0) {
+                    byte[] rawHash = new byte[HASH_LENGTH];
+                    in.get(rawHash);
+                    hash = Base64.getEncoder().encodeToString(rawHash);
+                } else {
+                    hash = string(strings, readVarLong(in));
+                }
+                long uploadTime = previousTime + unZigZag(readVarLong(in));
+                previousTime = uploadTime;
+
+                VaultFile file = new VaultFile(originalName, fileId, encryptedName, size, hash, uploadTime);
+                file.setTags(string(strings, readVarLong(in)));
+                if ((flags & FLAG_WRAPPED_KEY) != 0) {
+                    byte[] wrappedKey = new byte[checkedCount(readVarLong(in), in)];
+                    in.get(wrappedKey);
+                    file.setWrappedKey(wrappedKey);
+                }
+                if ((flags & FLAG_MERKLE) != 0) {
+                    long blockSize = readVarLong(in);
+                    if (blockSize <= 0 || blockSize > Integer.MAX_VALUE) {
+                        throw new IOException("Invalid block size: " + blockSize);
+                    }
+                    file.setBlockSize((int) blockSize);
+                }
+                if ((flags & FLAG_PACKED) != 0) {
+                    long packId = readVarLong(in);
+                    long offset = readVarLong(in);
+                    long length = readVarLong(in);
+                    if (packId <= 0 || packId > Integer.MAX_VALUE || offset < 0 || length <= 0) {
+                        throw new IOException("Invalid pack location for " + fileId);
+                    }
+                    file.setPackLocation((int) packId, offset, length);
+                }
+                files.add(file);
+            }
+            return files;
+
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupted metadata", e);
+        }
+    }
+
+    /**
+     * Whether the encrypted name is derived from the file id, flat or fanned out
+     */
+    private static boolean isDefaultName(VaultFile file, boolean fannedOut) {
+        String name = file.getFileId() + ENCRYPTED_SUFFIX;
+        return (fannedOut ? VaultLayout.fanOut(name) : name).equals(file.getEncryptedName());
+    }
+
+    private static int intern(String value, Map<String, Integer> index, List<byte[]> strings) {
+        return index.computeIfAbsent(value != null ? value : "", key -> {
+            strings.add(key.getBytes(StandardCharsets.UTF_8));
+            return strings.size() - 1;
+        });
+    }
+
+    private static String string(String[] strings, long index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string reference: " + index);
+        }
+        return strings[(int) index];
+    }
+
+    /**
+     * UUID if the id is in canonical form (so it round-trips exactly), otherwise null
+     */
+    private static UUID uuidOf(String fileId) {
+        if (fileId == null || fileId.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(fileId);
+            return uuid.toString().equals(fileId) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Raw 32-byte digest if the hash is canonical Base64 SHA-256, otherwise null
+     */
+    private static byte[] rawHashOf(String hash) {
+        if (hash == null || hash.length() != 44) {
+            return null;
+        }
+        try {
+            byte[] raw = Base64.getDecoder().decode(hash);
+            return raw.length == HASH_LENGTH && Base64.getEncoder().encodeToString(raw).equals(hash) ? raw : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int checkedCount(long count, ByteBuffer in) throws IOException {
+        // Every element takes at least one byte, which bounds allocations on corrupt input
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Invalid element count: " + count);
+        }
+        return (int) count;
+    }
+
+    static void writeVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
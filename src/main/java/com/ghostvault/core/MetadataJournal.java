@@ -0,0 +1,457 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import com.ghostvault.security.MemoryUtils;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only encrypted write-ahead journal of metadata mutations
+ *
+ * Each mutation is one AES-GCM record bound to the journal id and its sequence
+ * number (AAD), so records cannot be reordered or spliced between journals.
+ * Mutations are idempotent state assignments, which makes replaying a journal over
+ * a snapshot that already contains it harmless after a crash during compaction.
+ *
+ * Concurrent appends are group-committed: callers enqueue under the metadata lock
+ * and the first committer writes and fsyncs every queued record in one go.
+ *
+ * Layout: MAGIC(4) || journalId(16) || { length(4) || IV || ciphertext+tag }*
+ */
+class MetadataJournal implements Closeable {
+
+    private static final byte[] MAGIC = {'G', 'V', 'J', '1'};
+    private static final int JOURNAL_ID_LENGTH = 16;
+    static final int HEADER_LENGTH = MAGIC.length + JOURNAL_ID_LENGTH;
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_TAGS = 3;
+
+    private final Path path;
+    private final CryptoManager cryptoManager;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    private final Object queueLock = new Object();
+    private final Object writeLock = new Object();
+    private final Deque<PendingBatch> queue = new ArrayDeque<>();
+
+    private FileChannel channel;
+    private byte[] journalId;
+    private long nextSequence;
+
+    MetadataJournal(Path path, CryptoManager cryptoManager) {
+        this.path = path;
+        this.cryptoManager = cryptoManager;
+    }
+
+    /**
+     * A single metadata mutation
+     */
+    static final class Mutation {
+        private final byte op;
+        private final VaultFile file;
+        private final String fileId;
+        private final String tags;
+
+        private Mutation(byte op, VaultFile file, String fileId, String tags) {
+            this.op = op;
+            this.file = file;
+            this.fileId = fileId;
+            this.tags = tags;
+        }
+
+        static Mutation put(VaultFile file) {
+            return new Mutation(OP_PUT, file, file.getFileId(), file.getTags());
+        }
+
+        static Mutation remove(String fileId) {
+            return new Mutation(OP_REMOVE, null, fileId, null);
+        }
+
+        static Mutation tags(String fileId, String tags) {
+            return new Mutation(OP_TAGS, null, fileId, tags != null ? tags : "");
+        }
+
+        String getFileId() {
+            return fileId;
+        }
+
+        /**
+         * Apply this mutation to a registry
+         */
+        void applyTo(Map<String, VaultFile> registry) {
+            switch (op) {
+                case OP_PUT:
+                    registry.put(fileId, file);
+                    break;
+                case OP_REMOVE:
+                    registry.remove(fileId);
+                    break;
+                case OP_TAGS:
+                    VaultFile existing = registry.get(fileId);
+                    if (existing != null) {
+                        existing.setTags(tags);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal operation: " + op);
+            }
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            out.writeUTF(fileId);
+            if (op == OP_PUT) {
+                out.writeUTF(file.getOriginalName());
+                out.writeUTF(file.getEncryptedName());
+                out.writeLong(file.getSize());
+                out.writeUTF(file.getHash());
+                out.writeLong(file.getUploadTime());
+                out.writeUTF(tags);
+                // Optional trailer; records written before per-file keys simply end here
+                if (file.getWrappedKey() != null || file.getBlockSize() > 0 || file.isPacked()) {
+                    byte[] wrappedKey = file.getWrappedKey() != null ? file.getWrappedKey() : new byte[0];
+                    out.writeShort(wrappedKey.length);
+                    out.write(wrappedKey);
+                    out.writeInt(file.getBlockSize());
+                }
+                if (file.isPacked()) {
+                    out.writeInt(file.getPackId());
+                    out.writeLong(file.getPackOffset());
+                    out.writeLong(file.getPackLength());
+                }
+            } else if (op == OP_TAGS) {
+                out.writeUTF(tags);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        static Mutation decode(byte[] data, int length) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+            byte op = in.readByte();
+            String fileId = in.readUTF();
+            switch (op) {
+                case OP_PUT:
+                    VaultFile file = new VaultFile(in.readUTF(), fileId, in.readUTF(),
+                        in.readLong(), in.readUTF(), in.readLong());
+                    file.setTags(in.readUTF());
+                    if (in.available() > 0) {
+                        byte[] wrappedKey = new byte[in.readUnsignedShort()];
+                        in.readFully(wrappedKey);
+                        file.setWrappedKey(wrappedKey.length > 0 ? wrappedKey : null);
+                    }
+                    if (in.available() > 0) {
+                        file.setBlockSize(in.readInt());
+                    }
+                    if (in.available() > 0) {
+                        file.setPackLocation(in.readInt(), in.readLong(), in.readLong());
+                    }
+                    return put(file);
+                case OP_REMOVE:
+                    return remove(fileId);
+                case OP_TAGS:
+                    return tags(fileId, in.readUTF());
+                default:
+                    throw new IOException("Unknown journal operation: " + op);
+            }
+        }
+    }
+
+    /**
+     * Mutations waiting for a group commit
+     */
+    static final class PendingBatch {
+        private final List<Mutation> mutations;
+        private final SecretKey key;
+        private boolean done;
+        private Exception error;
+
+        private PendingBatch(List<Mutation> mutations, SecretKey key) {
+            this.mutations = mutations;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Queue mutations for the next group commit
+     *
+     * Callers must enqueue in the same order they applied the mutations in memory.
+     */
+    PendingBatch enqueue(List<Mutation> mutations, SecretKey key) {
+        if (key == null) {
+            throw new IllegalStateException("Encryption key not set");
+        }
+        PendingBatch batch = new PendingBatch(mutations, key);
+        synchronized (queueLock) {
+            queue.addLast(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Block until the batch is durable, writing it (and everything queued with it) if needed
+     */
+    void commit(PendingBatch batch) throws Exception {
+        synchronized (writeLock) {
+            if (!batch.done) {
+                List<PendingBatch> drained;
+                synchronized (queueLock) {
+                    drained = new ArrayList<>(queue);
+                    queue.clear();
+                }
+                writeBatches(drained);
+            }
+        }
+        if (batch.error != null) {
+            throw batch.error;
+        }
+    }
+
+    private void writeBatches(List<PendingBatch> batches) {
+        long startSequence = nextSequence;
+        long startSize = -1;
+        try {
+            FileChannel out = openForAppend();
+            startSize = out.size();
+
+            // Encrypt every record straight into the buffer that is written out
+            List<byte[]> plaintexts = new ArrayList<>();
+            int totalLength = 0;
+            for (PendingBatch batch : batches) {
+                for (Mutation mutation : batch.mutations) {
+                    byte[] plaintext = mutation.encode();
+                    plaintexts.add(plaintext);
+                    totalLength += 4 + CryptoManager.encryptedLength(plaintext.length);
+                }
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(totalLength);
+            try {
+                int index = 0;
+                for (PendingBatch batch : batches) {
+                    for (int i = 0; i < batch.mutations.size(); i++) {
+                        byte[] plaintext = plaintexts.get(index++);
+                        buffer.putInt(CryptoManager.encryptedLength(plaintext.length));
+                        cryptoManager.encrypt(ByteBuffer.wrap(plaintext), buffer, batch.key, recordAad(nextSequence++));
+                    }
+                }
+            } finally {
+                plaintexts.forEach(MemoryUtils::secureWipe);
+            }
+
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+
+            for (PendingBatch batch : batches) {
+                batch.done = true;
+            }
+        } catch (Exception e) {
+            // Roll back a partial append so the journal stays a clean sequence of records
+            nextSequence = startSequence;
+            try {
+                if (startSize >= 0) {
+                    channel.truncate(startSize);
+                }
+            } catch (IOException ignored) {
+                // Replay stops at the first bad record anyway
+            }
+            for (PendingBatch batch : batches) {
+                batch.error = e;
+                batch.done = true;
+            }
+        }
+    }
+
+    /**
+     * Read all valid records; a torn tail (crash mid-append) is cut off
+     *
+     * Only the final record can be torn. A bad record with anything but zero fill after it
+     * is corruption or the wrong key, and fails the replay with the file left untouched
+     * rather than dropping every mutation that follows it.
+     */
+    List<Mutation> replay(SecretKey key) throws Exception {
+        synchronized (writeLock) {
+            closeChannel();
+            List<Mutation> mutations = new ArrayList<>();
+            if (!Files.exists(path)) {
+                return mutations;
+            }
+
+            byte[] data = Files.readAllBytes(path);
+            if (data.length < HEADER_LENGTH || !Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC)) {
+                throw new IOException("Invalid metadata journal header");
+            }
+            journalId = Arrays.copyOfRange(data, MAGIC.length, HEADER_LENGTH);
+
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.position(HEADER_LENGTH);
+            long sequence = 0;
+            int validEnd = HEADER_LENGTH;
+            // Records are decrypted in place into one reused plaintext buffer
+            ByteBuffer plaintext = ByteBuffer.allocate(0);
+            try {
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt();
+                    if (length <= CryptoManager.encryptedLength(0) || length > MAX_RECORD_LENGTH
+                            || length > buffer.remaining()) {
+                        if (length > buffer.remaining() || isZeroFilled(data, validEnd)) {
+                            break;
+                        }
+                        throw new IOException("Corrupted metadata journal record " + sequence);
+                    }
+                    ByteBuffer record = buffer.slice(buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+
+                    if (plaintext.capacity() < CryptoManager.decryptedLength(length)) {
+                        MemoryUtils.secureWipe(plaintext.array());
+                        plaintext = ByteBuffer.allocate(Math.max(CryptoManager.decryptedLength(length), 2 * plaintext.capacity()));
+                    }
+                    plaintext.clear();
+                    try {
+                        cryptoManager.decrypt(record, plaintext, key, recordAad(sequence));
+                    } catch (Exception e) {
+                        if (isZeroFilled(data, buffer.position())) {
+                            break;
+                        }
+                        throw new IOException("Metadata journal record " + sequence
+                            + " cannot be decrypted and is followed by further records", e);
+                    }
+                    mutations.add(Mutation.decode(plaintext.array(), plaintext.position()));
+                    sequence++;
+                    validEnd = buffer.position();
+                }
+            } finally {
+                MemoryUtils.secureWipe(plaintext.array());
+            }
+
+            nextSequence = sequence;
+            if (validEnd < data.length) {
+                try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    truncate.truncate(validEnd);
+                    truncate.force(false);
+                }
+            }
+            return mutations;
+        }
+    }
+
+    /**
+     * Whether nothing but zero bytes, if anything, follows an offset
+     */
+    private static boolean isZeroFilled(byte[] data, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write a snapshot and start a fresh journal, excluding concurrent commits meanwhile
+     */
+    void checkpoint(SnapshotWriter writer) throws Exception {
+        synchronized (writeLock) {
+            writer.writeSnapshot();
+            closeChannel();
+            Files.deleteIfExists(path);
+            journalId = null;
+            nextSequence = 0;
+        }
+    }
+
+    /**
+     * Writes a full snapshot of the registry
+     */
+    interface SnapshotWriter {
+        void writeSnapshot() throws Exception;
+    }
+
+    /**
+     * Number of records in the current journal
+     */
+    long getRecordCount() {
+        synchronized (writeLock) {
+            return nextSequence;
+        }
+    }
+
+    boolean exists() {
+        return Files.exists(path);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    private FileChannel openForAppend() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            return channel;
+        }
+
+        if (!Files.exists(path) || Files.size(path) < HEADER_LENGTH) {
+            journalId = new byte[JOURNAL_ID_LENGTH];
+            secureRandom.nextBytes(journalId);
+            nextSequence = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).put(journalId);
+            header.flip();
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } else {
+            if (journalId == null) {
+                throw new IOException("Metadata journal must be replayed before appending");
+            }
+            channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+        return channel;
+    }
+
+    private byte[] recordAad(long sequence) {
+        return ByteBuffer.allocate(JOURNAL_ID_LENGTH + 8).put(journalId).putLong(sequence).array();
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            closeChannel();
+        }
+    }
+}
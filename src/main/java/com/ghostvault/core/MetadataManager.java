@@ -13,10 +13,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
 
 /**
  * Manages encrypted metadata for vault files with serialization support
+ * 
+ * Mutations are appended to an encrypted write-ahead journal (see {@link MetadataJournal})
+ * instead of rewriting the whole metadata file, so each add/remove/tag update costs O(1) I/O.
+ * The journal is periodically compacted into a snapshot and replayed on load.
+ * Snapshots are sharded (see {@link ShardedMetadataStore}) so unlock decrypts shards in
+ * parallel and compaction only rewrites shards that changed. Single-file snapshots from
+ * earlier versions, including Java-serialized ones, are still readable and are rewritten
+ * on first load.
+ * Counts, sizes and extension and category histograms ({@link VaultStatistics}) are kept
+ * up to date on every mutation and saved with each snapshot, so statistics never scan.
  */
 public class MetadataManager {
     
@@ -41,15 +51,31 @@ public class MetadataManager {
         public String getTags() { return vaultFile.getTags(); }
     }
     
+    // Compact once the journal holds this many records, or half the registry size if larger
+    private static final int MIN_COMPACTION_RECORDS = 1000;
+    
+    // Only these classes may appear in a legacy serialized snapshot
+    private static final ObjectInputFilter LEGACY_SNAPSHOT_FILTER = ObjectInputFilter.Config.createFilter(
+        "maxdepth=5;java.util.HashMap;java.util.Map$Entry;com.ghostvault.model.VaultFile;java.lang.String;!*");
+    
     private final String metadataFilePath;
     private final Map<String, VaultFile> fileRegistry;
     private final CryptoManager cryptoManager;
+    private final MetadataJournal journal;
+    private final ShardedMetadataStore store;
+    private final Path searchIndexPath;
+    private volatile SearchIndex searchIndex = new SearchIndex();
+    private volatile VaultStatistics statistics = new VaultStatistics();
+    private final Object mutationLock = new Object();
     private SecretKey encryptionKey;
     
     public MetadataManager(String metadataFilePath) throws Exception {
         this.metadataFilePath = metadataFilePath;
         this.fileRegistry = new ConcurrentHashMap<>();
         this.cryptoManager = new CryptoManager();
+        this.journal = new MetadataJournal(Paths.get(metadataFilePath + ".journal"), cryptoManager);
+        this.store = new ShardedMetadataStore(Paths.get(metadataFilePath), cryptoManager);
+        this.searchIndexPath = Paths.get(metadataFilePath + ".index");
         
         // Ensure metadata directory exists
         Path metadataPath = Paths.get(metadataFilePath);
@@ -69,16 +95,98 @@ public class MetadataManager {
      * Add file to metadata registry
      */
     public void addFile(VaultFile file) throws Exception {
-        fileRegistry.put(file.getFileId(), file);
-        saveMetadata();
+        MetadataJournal.PendingBatch batch;
+        synchronized (mutationLock) {
+            statistics.replace(fileRegistry.put(file.getFileId(), file), file);
+            store.markDirty(file.getFileId());
+            searchIndex.add(file);
+            batch = journal.enqueue(List.of(MetadataJournal.Mutation.put(file)), encryptionKey);
+        }
+        commit(batch);
+    }
+    
+    /**
+     * Add several files to the metadata registry with a single metadata write
+     */
+    public void addFiles(Collection<VaultFile> files) throws Exception {
+        MetadataJournal.PendingBatch batch;
+        synchronized (mutationLock) {
+            List<MetadataJournal.Mutation> mutations = new ArrayList<>(files.size());
+            for (VaultFile file : files) {
+                statistics.replace(fileRegistry.put(file.getFileId(), file), file);
+                store.markDirty(file.getFileId());
+                searchIndex.add(file);
+                mutations.add(MetadataJournal.Mutation.put(file));
+            }
+            batch = journal.enqueue(mutations, encryptionKey);
+        }
+        commit(batch);
+    }
+    
+    /**
+     * Replace files with updated copies, each only if the file is still stored where its
+     * original was
+     * 
+     * Background work (key rotation, re-encryption, packing) copies a file and commits the
+     * copy later; a file deleted, moved or re-encrypted meanwhile must not be overwritten or
+     * brought back. The check and the write happen under one lock, and merge copies fields
+     * edited meanwhile, such as tags, from the registered file onto the copy.
+     * 
+     * @param replacements original file -> updated copy
+     * @param merge called with the registered file and its copy before the copy is stored
+     * @return the copies that were committed
+     */
+    public List<VaultFile> replaceFiles(Map<VaultFile, VaultFile> replacements,
+                                        BiConsumer<VaultFile, VaultFile> merge) throws Exception {
+        List<VaultFile> replaced = new ArrayList<>(replacements.size());
+        MetadataJournal.PendingBatch batch;
+        synchronized (mutationLock) {
+            List<MetadataJournal.Mutation> mutations = new ArrayList<>(replacements.size());
+            for (Map.Entry<VaultFile, VaultFile> entry : replacements.entrySet()) {
+                VaultFile registered = fileRegistry.get(entry.getKey().getFileId());
+                if (!isStoredAt(registered, entry.getKey())) {
+                    continue;
+                }
+                VaultFile file = entry.getValue();
+                merge.accept(registered, file);
+                statistics.replace(fileRegistry.put(file.getFileId(), file), file);
+                store.markDirty(file.getFileId());
+                searchIndex.add(file);
+                mutations.add(MetadataJournal.Mutation.put(file));
+                replaced.add(file);
+            }
+            if (mutations.isEmpty()) {
+                return replaced;
+            }
+            batch = journal.enqueue(mutations, encryptionKey);
+        }
+        commit(batch);
+        return replaced;
+    }
+    
+    /**
+     * Whether the registered file is still stored where the original was; packing keeps the
+     * encrypted name, so the pack location is compared too
+     */
+    private static boolean isStoredAt(VaultFile registered, VaultFile original) {
+        return registered != null
+            && registered.getEncryptedName().equals(original.getEncryptedName())
+            && registered.getPackId() == original.getPackId()
+            && registered.getPackOffset() == original.getPackOffset();
     }
     
     /**
      * Remove file from metadata registry
      */
     public void removeFile(String fileId) throws Exception {
-        fileRegistry.remove(fileId);
-        saveMetadata();
+        MetadataJournal.PendingBatch batch;
+        synchronized (mutationLock) {
+            statistics.replace(fileRegistry.remove(fileId), null);
+            store.markDirty(fileId);
+            searchIndex.remove(fileId);
+            batch = journal.enqueue(List.of(MetadataJournal.Mutation.remove(fileId)), encryptionKey);
+        }
+        commit(batch);
     }
     
     /**
@@ -118,26 +226,52 @@ public class MetadataManager {
     }
     
     /**
-     * Search files by name or tags
+     * Search files by name or tags (case-insensitive substring, served by the search index)
      */
     public List<VaultFile> searchFiles(String query) {
         if (query == null || query.trim().isEmpty()) {
             return getAllFiles();
         }
         
-        String lowerQuery = query.toLowerCase();
-        return fileRegistry.values().stream()
-                .filter(file -> file.matchesSearch(lowerQuery))
-                .collect(Collectors.toList());
+        return searchIndex.search(query);
+    }
+    
+    /**
+     * Search files having a word in their name or tags that starts with the prefix
+     */
+    public List<VaultFile> searchFilesByPrefix(String prefix) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            return getAllFiles();
+        }
+        
+        return searchIndex.searchPrefix(prefix.trim());
     }
     
     /**
      * Update file tags
      */
     public void updateFileTags(String fileId, String tags) throws Exception {
-        VaultFile file = fileRegistry.get(fileId);
-        if (file != null) {
+        MetadataJournal.PendingBatch batch;
+        synchronized (mutationLock) {
+            VaultFile file = fileRegistry.get(fileId);
+            if (file == null) {
+                return;
+            }
             file.setTags(tags);
+            store.markDirty(fileId);
+            searchIndex.add(file);
+            batch = journal.enqueue(List.of(MetadataJournal.Mutation.tags(fileId, tags)), encryptionKey);
+        }
+        commit(batch);
+    }
+    
+    /**
+     * Make a journaled mutation durable and compact the journal when it grows too long
+     */
+    private void commit(MetadataJournal.PendingBatch batch) throws Exception {
+        journal.commit(batch);
+        
+        if (journal.getRecordCount() >= Math.max(MIN_COMPACTION_RECORDS, fileRegistry.size() / 2)) {
             saveMetadata();
         }
     }
@@ -146,18 +280,14 @@ public class MetadataManager {
      * Get files by extension
      */
     public List<VaultFile> getFilesByExtension(String extension) {
-        return fileRegistry.values().stream()
-                .filter(file -> file.getExtension().equals(extension.toLowerCase()))
-                .collect(Collectors.toList());
+        return searchIndex.searchExtension(extension);
     }
     
     /**
      * Get total vault size
      */
     public long getTotalVaultSize() {
-        return fileRegistry.values().stream()
-                .mapToLong(VaultFile::getSize)
-                .sum();
+        return statistics.snapshot().getTotalSize();
     }
     
     /**
@@ -168,46 +298,60 @@ public class MetadataManager {
     }
     
     /**
-     * Save encrypted metadata to file using serialization
+     * Save encrypted metadata snapshot and reset the journal
      */
     public void saveMetadata() throws Exception {
         if (encryptionKey == null) {
             throw new IllegalStateException("Encryption key not set");
         }
         
-        byte[] serializedData = null;
+        journal.checkpoint(this::writeSnapshot);
+    }
+    
+    /**
+     * Write changed shards and a new summary (atomically replaced), then the search index
+     */
+    private void writeSnapshot() throws Exception {
+        List<VaultFile> files;
+        BitSet dirtyShards;
+        VaultStatistics.Snapshot totals;
+        byte[] indexSnapshot;
+        synchronized (mutationLock) {
+            files = new ArrayList<>(fileRegistry.values());
+            dirtyShards = store.takeDirty();
+            totals = statistics.snapshot();
+            indexSnapshot = searchIndex.toSnapshot();
+        }
         
         try {
-            // Serialize metadata to bytes
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-                oos.writeObject(new HashMap<>(fileRegistry));
-            }
-            
-            serializedData = baos.toByteArray();
+            long generation = store.write(files, dirtyShards, totals, encryptionKey);
             
-            // Encrypt metadata
-            byte[] encryptedBytes = cryptoManager.encrypt(serializedData, encryptionKey);
-            CryptoManager.EncryptedData encrypted = CryptoManager.EncryptedData.fromCombinedData(encryptedBytes);
-            
-            // Write to file
-            FileUtils.writeEncryptedFile(Paths.get(metadataFilePath), encrypted);
-            
-        } finally {
-            // Clear sensitive data from memory
-            if (serializedData != null) {
-                MemoryUtils.secureWipe(serializedData);
+            // The index is only a cache: a failure here costs a rebuild on next unlock
+            try {
+                SearchIndexSnapshot.write(searchIndexPath, indexSnapshot, generation, summaryDigest(), encryptionKey);
+            } catch (Exception e) {
+                Files.deleteIfExists(searchIndexPath);
+                System.err.println("Failed to save search index: " + e.getMessage());
             }
+        } finally {
+            MemoryUtils.secureWipe(indexSnapshot);
         }
     }
     
     /**
-     * Load encrypted metadata from file using serialization
+     * SHA-256 of the sealed summary file, which ties a search index snapshot to it
+     */
+    private byte[] summaryDigest() throws IOException {
+        return FileUtils.newSHA256Digest().digest(Files.readAllBytes(Paths.get(metadataFilePath)));
+    }
+    
+    /**
+     * Load encrypted metadata from file, migrating a legacy snapshot if needed
      */
     public void loadMetadata() throws Exception {
         Path metadataPath = Paths.get(metadataFilePath);
         
-        if (!Files.exists(metadataPath)) {
+        if (!Files.exists(metadataPath) && !journal.exists()) {
             // No metadata file exists yet
             return;
         }
@@ -217,21 +361,79 @@ public class MetadataManager {
         }
         
         byte[] decryptedData = null;
+        boolean singleFileSnapshot = false;
         
         try {
-            // Read encrypted data
-            CryptoManager.EncryptedData encrypted = FileUtils.readEncryptedFile(metadataPath);
+            Map<String, VaultFile> loadedRegistry = new HashMap<>();
+            SearchIndex loadedIndex = null;
+            VaultStatistics loadedStatistics = null;
             
-            // Decrypt metadata
-            decryptedData = cryptoManager.decrypt(encrypted, encryptionKey);
+            if (Files.exists(metadataPath)) {
+                // Read encrypted data
+                CryptoManager.EncryptedData encrypted = FileUtils.readEncryptedFile(metadataPath);
+                
+                // Decrypt metadata
+                decryptedData = cryptoManager.decrypt(encrypted, encryptionKey);
+                
+                // Decode metadata
+                if (ShardedMetadataStore.isSummary(decryptedData)) {
+                    ShardedMetadataStore.Summary summary = ShardedMetadataStore.parseSummary(decryptedData);
+                    loadedRegistry = store.load(summary, encryptionKey);
+                    loadedIndex = SearchIndexSnapshot.read(searchIndexPath, summary.getGeneration(),
+                        summaryDigest(), encryptionKey, loadedRegistry);
+                    if (summary.getStatistics() != null
+                            && summary.getStatistics().getFileCount() == loadedRegistry.size()) {
+                        loadedStatistics = VaultStatistics.from(summary.getStatistics());
+                    }
+                } else if (MetadataCodec.isEncoded(decryptedData)) {
+                    for (VaultFile file : MetadataCodec.decode(decryptedData)) {
+                        loadedRegistry.put(file.getFileId(), file);
+                    }
+                    singleFileSnapshot = true;
+                } else {
+                    loadedRegistry.putAll(readLegacySnapshot(decryptedData));
+                    singleFileSnapshot = true;
+                }
+            }
+            
+            // Replay mutations journaled since the snapshot (crash recovery)
+            for (MetadataJournal.Mutation mutation : journal.replay(encryptionKey)) {
+                VaultFile previous = loadedRegistry.get(mutation.getFileId());
+                mutation.applyTo(loadedRegistry);
+                store.markDirty(mutation.getFileId());
+                
+                // Saved totals are brought up to date the same way
+                if (loadedStatistics != null) {
+                    VaultFile file = loadedRegistry.get(mutation.getFileId());
+                    if (file != previous) {
+                        loadedStatistics.replace(previous, file);
+                    }
+                }
+                
+                // Bring a snapshotted index up to date incrementally
+                if (loadedIndex != null) {
+                    VaultFile file = loadedRegistry.get(mutation.getFileId());
+                    if (file != null) {
+                        loadedIndex.add(file);
+                    } else {
+                        loadedIndex.remove(mutation.getFileId());
+                    }
+                }
+            }
             
-            // Deserialize metadata
-            ByteArrayInputStream bais = new ByteArrayInputStream(decryptedData);
-            try (ObjectInputStream ois = new ObjectInputStream(bais)) {
-                @SuppressWarnings("unchecked")
-                Map<String, VaultFile> loadedRegistry = (Map<String, VaultFile>) ois.readObject();
+            if (loadedIndex == null) {
+                loadedIndex = new SearchIndex();
+                loadedIndex.rebuild(loadedRegistry.values());
+            }
+            if (loadedStatistics == null) {
+                loadedStatistics = VaultStatistics.of(loadedRegistry.values());
+            }
+            
+            synchronized (mutationLock) {
                 fileRegistry.clear();
                 fileRegistry.putAll(loadedRegistry);
+                searchIndex = loadedIndex;
+                statistics = loadedStatistics;
             }
         } catch (Exception e) {
             throw new Exception("Failed to load metadata: " + e.getMessage(), e);
@@ -241,6 +443,65 @@ public class MetadataManager {
                 MemoryUtils.secureWipe(decryptedData);
             }
         }
+        
+        if (singleFileSnapshot) {
+            // Migrate to the sharded format; if this fails the next save retries it
+            store.markAllDirty();
+            try {
+                saveMetadata();
+            } catch (Exception e) {
+                System.err.println("Failed to migrate legacy metadata: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Read counts, total size and the most recent files without decrypting the shards
+     *
+     * Reflects the last checkpoint (not mutations still in the journal); returns null
+     * if there is no sharded snapshot yet.
+     */
+    public MetadataSummary loadSummary() throws Exception {
+        Path metadataPath = Paths.get(metadataFilePath);
+        if (!Files.exists(metadataPath)) {
+            return null;
+        }
+        if (encryptionKey == null) {
+            throw new IllegalStateException("Encryption key not set");
+        }
+        
+        byte[] decryptedData = cryptoManager.decrypt(FileUtils.readEncryptedFile(metadataPath), encryptionKey);
+        try {
+            if (!ShardedMetadataStore.isSummary(decryptedData)) {
+                return null;
+            }
+            ShardedMetadataStore.Summary summary = ShardedMetadataStore.parseSummary(decryptedData);
+            return new MetadataSummary(summary.getFileCount(), summary.getTotalSize(), summary.getRecentFiles(),
+                summary.getStatistics());
+        } finally {
+            MemoryUtils.secureWipe(decryptedData);
+        }
+    }
+    
+    /**
+     * Read a snapshot written with Java serialization by earlier versions
+     */
+    private static Map<String, VaultFile> readLegacySnapshot(byte[] data) throws Exception {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            ois.setObjectInputFilter(LEGACY_SNAPSHOT_FILTER);
+            Object snapshot = ois.readObject();
+            if (!(snapshot instanceof Map)) {
+                throw new IOException("Unexpected legacy metadata content");
+            }
+            Map<String, VaultFile> registry = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) snapshot).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof VaultFile)) {
+                    throw new IOException("Unexpected legacy metadata entry");
+                }
+                registry.put((String) entry.getKey(), (VaultFile) entry.getValue());
+            }
+            return registry;
+        }
     }
     
     /**
@@ -255,7 +516,7 @@ public class MetadataManager {
      */
     public boolean hasBeenInitialized() {
         Path metadataPath = Paths.get(metadataFilePath);
-        return Files.exists(metadataPath) && Files.isRegularFile(metadataPath);
+        return (Files.exists(metadataPath) && Files.isRegularFile(metadataPath)) || journal.exists();
     }
     
     /**
@@ -274,11 +535,15 @@ public class MetadataManager {
      * Get metadata statistics
      */
     public MetadataStats getMetadataStats() {
-        return new MetadataStats(
-            fileRegistry.size(),
-            fileRegistry.values().stream().mapToLong(VaultFile::getSize).sum(),
-            fileRegistry.values().stream().map(VaultFile::getExtension).distinct().count()
-        );
+        VaultStatistics.Snapshot totals = statistics.snapshot();
+        return new MetadataStats(totals.getFileCount(), totals.getTotalSize(), totals.getExtensionCount());
+    }
+    
+    /**
+     * Current counts, sizes and extension and category histograms, without scanning the registry
+     */
+    public VaultStatistics.Snapshot getStatistics() {
+        return statistics.snapshot();
     }
     
     /**
@@ -306,11 +571,55 @@ public class MetadataManager {
         }
     }
     
+    /**
+     * Snapshot summary data class
+     */
+    public static class MetadataSummary {
+        private final int fileCount;
+        private final long totalSize;
+        private final List<VaultFile> recentFiles;
+        private final VaultStatistics.Snapshot statistics;
+        
+        public MetadataSummary(int fileCount, long totalSize, List<VaultFile> recentFiles) {
+            this(fileCount, totalSize, recentFiles, null);
+        }
+        
+        public MetadataSummary(int fileCount, long totalSize, List<VaultFile> recentFiles,
+                               VaultStatistics.Snapshot statistics) {
+            this.fileCount = fileCount;
+            this.totalSize = totalSize;
+            this.recentFiles = recentFiles;
+            this.statistics = statistics;
+        }
+        
+        public int getFileCount() { return fileCount; }
+        public long getTotalSize() { return totalSize; }
+        public List<VaultFile> getRecentFiles() { return recentFiles; }
+        
+        /**
+         * Histograms at the checkpoint, or null if the summary predates them
+         */
+        public VaultStatistics.Snapshot getStatistics() { return statistics; }
+        
+        @Override
+        public String toString() {
+            return String.format("MetadataSummary{files=%d, size=%s}", 
+                fileCount, FileUtils.formatFileSize(totalSize));
+        }
+    }
+    
     /**
      * Clean up resources and clear sensitive data
      */
     public void cleanup() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            // Nothing left to flush; records are fsynced on commit
+        }
         fileRegistry.clear();
+        searchIndex.clear();
+        statistics.clear();
         if (cryptoManager != null) {
             cryptoManager.clearKeys();
         }
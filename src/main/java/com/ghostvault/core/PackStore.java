@@ -0,0 +1,226 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Append-only pack files holding the ciphertexts of small vault files
+ *
+ * A small file costs an inode, a directory entry and a block of slack on its own; packed,
+ * thousands share one file. Entries are the segmented ciphertexts copied verbatim - every
+ * segment is authenticated under the file's own data key and nothing binds it to a
+ * position - so packing needs no key and no re-encryption. The offset index is the pack
+ * location kept in each file's metadata. Packs live in files/packs/pack-&lt;n&gt;.gvp; only
+ * the newest one is appended to, and it is sealed once it reaches the size limit.
+ *
+ * Deleting a file overwrites its entry in place. Like chunk references in {@link ChunkStore},
+ * the entries still in use are derived from the metadata, not persisted, and a pack is only
+ * deleted when it provably holds no live entry.
+ */
+final class PackStore {
+
+    static final String PACK_DIRECTORY = "packs";
+
+    private static final String PACK_PREFIX = "pack-";
+    private static final String PACK_SUFFIX = ".gvp";
+
+    private final Path root;
+    private final long maxPackSize;
+
+    private volatile Supplier<? extends Collection<VaultFile>> referenceSource;
+
+    // Guarded by this
+    private int activePack;
+    private final Map<Integer, Set<Long>> liveEntries = new HashMap<>();
+    private boolean referencesLoaded;
+
+    /**
+     * Location of one entry, as recorded in {@link VaultFile#setPackLocation}
+     */
+    record Entry(int packId, long offset, long length) {
+    }
+
+    PackStore(Path filesDir, long maxPackSize) {
+        this.root = filesDir.resolve(PACK_DIRECTORY);
+        this.maxPackSize = maxPackSize;
+    }
+
+    /**
+     * Set the source of live files that entries in use are derived from
+     */
+    synchronized void setReferenceSource(Supplier<? extends Collection<VaultFile>> referenceSource) {
+        this.referenceSource = referenceSource;
+        liveEntries.clear();
+        referencesLoaded = false;
+    }
+
+    Path packPath(int packId) {
+        return root.resolve(String.format("%s%06d%s", PACK_PREFIX, packId, PACK_SUFFIX));
+    }
+
+    /**
+     * Append a loose ciphertext to the active pack and force it to disk
+     *
+     * The entry counts as live until it is deleted, so it survives until the caller has
+     * committed its location to the metadata, or discards it with {@link #delete}.
+     */
+    synchronized Entry append(Path source) throws IOException {
+        long length = Files.size(source);
+        if (length <= 0) {
+            throw new IOException("Nothing to pack: " + source.getFileName());
+        }
+
+        Files.createDirectories(root);
+        int packId = activePack();
+        Path packPath = packPath(packId);
+        if (Files.exists(packPath) && Files.size(packPath) + length > maxPackSize) {
+            packId = ++activePack;
+            packPath = packPath(packId);
+        }
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(packPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = out.size();
+            try {
+                out.position(offset);
+                long copied = 0;
+                while (copied < length) {
+                    long n = in.transferTo(copied, length - copied, out);
+                    if (n <= 0) {
+                        throw new EOFException("Source changed while packing: " + source.getFileName());
+                    }
+                    copied += n;
+                }
+                out.force(true);
+            } catch (IOException e) {
+                // Leave no partial entry behind for the next append to follow
+                out.truncate(offset);
+                throw e;
+            }
+            liveEntries.computeIfAbsent(packId, k -> new HashSet<>()).add(offset);
+            return new Entry(packId, offset, length);
+        }
+    }
+
+    /**
+     * Read a packed ciphertext
+     */
+    byte[] read(VaultFile file) throws IOException {
+        Path packPath = packPath(file.getPackId());
+        if (!Files.exists(packPath)) {
+            throw new FileNotFoundException("Pack file not found: " + packPath.getFileName());
+        }
+        if (file.getPackLength() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid pack entry length: " + file.getPackLength());
+        }
+
+        byte[] data = new byte[(int) file.getPackLength()];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try (FileChannel channel = FileChannel.open(packPath, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, file.getPackOffset() + buffer.position()) < 0) {
+                    throw new EOFException("Pack entry truncated: " + file.getFileId());
+                }
+            }
+        }
+        return data;
+    }
+
+    boolean contains(VaultFile file) {
+        try {
+            Path packPath = packPath(file.getPackId());
+            return Files.exists(packPath) && Files.size(packPath) >= file.getPackOffset() + file.getPackLength();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Securely overwrite an entry, and delete its pack if no live entry is left in it
+     */
+    synchronized void delete(VaultFile file) throws Exception {
+        int packId = file.getPackId();
+        Path packPath = packPath(packId);
+        if (Files.exists(packPath)) {
+            try (RandomAccessFile pack = new RandomAccessFile(packPath.toFile(), "rws")) {
+                long end = Math.min(pack.length(), file.getPackOffset() + file.getPackLength());
+                if (end > file.getPackOffset()) {
+                    FileManager.overwrite(pack, file.getPackOffset(), end - file.getPackOffset());
+                }
+            }
+        }
+
+        boolean complete = loadReferences();
+        Set<Long> live = liveEntries.get(packId);
+        if (live != null) {
+            live.remove(file.getPackOffset());
+        }
+        // The active pack is kept for the next append even when empty
+        if (complete && (live == null || live.isEmpty()) && packId != activePack()) {
+            liveEntries.remove(packId);
+            FileManager.secureDeleteFile(packPath);
+        }
+    }
+
+    /**
+     * Add the entries of every registered packed file to those appended since
+     *
+     * @return true if the entries cover all live files
+     */
+    private boolean loadReferences() {
+        Supplier<? extends Collection<VaultFile>> source = referenceSource;
+        if (referencesLoaded) {
+            return true;
+        }
+        if (source == null) {
+            return false;
+        }
+        for (VaultFile file : source.get()) {
+            if (file.isPacked()) {
+                liveEntries.computeIfAbsent(file.getPackId(), k -> new HashSet<>()).add(file.getPackOffset());
+            }
+        }
+        referencesLoaded = true;
+        return true;
+    }
+
+    /**
+     * The pack appended to: the highest numbered one, found once by listing the pack directory
+     */
+    private int activePack() throws IOException {
+        if (activePack == 0) {
+            int highest = 1;
+            if (Files.isDirectory(root)) {
+                try (DirectoryStream<Path> packs = Files.newDirectoryStream(root, PACK_PREFIX + "*" + PACK_SUFFIX)) {
+                    for (Path pack : packs) {
+                        String name = pack.getFileName().toString();
+                        try {
+                            highest = Math.max(highest, Integer.parseInt(
+                                name.substring(PACK_PREFIX.length(), name.length() - PACK_SUFFIX.length())));
+                        } catch (NumberFormatException e) {
+                            // Not one of ours
+                        }
+                    }
+                }
+            }
+            activePack = highest;
+        }
+        return activePack;
+    }
+}
@@ -0,0 +1,158 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rotates file keys and refreshes file encryption in the background
+ *
+ * A key rotation rewraps every data key under a new keyring generation and touches no file
+ * contents. A full refresh re-encrypts each file under a new data key, which also moves
+ * files stored before per-file keys off the vault key. Each file is switched over on its
+ * own: the new ciphertext is written and verified, the metadata is committed, and only
+ * then is the old ciphertext deleted, so a refresh can be cancelled or interrupted at any
+ * point without losing a file.
+ */
+public class ReencryptionWorker {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /**
+     * Receives per-file progress events; callbacks arrive on the worker thread
+     */
+    public interface ProgressListener {
+        void onFileReencrypted(VaultFile vaultFile, int completed, int total);
+
+        void onFileFailed(VaultFile vaultFile, Exception error, int completed, int total);
+    }
+
+    private final FileManager fileManager;
+    private final MetadataManager metadataManager;
+    private volatile boolean cancelled;
+
+    public ReencryptionWorker(FileManager fileManager, MetadataManager metadataManager) {
+        if (fileManager == null || metadataManager == null) {
+            throw new IllegalArgumentException("File manager and metadata manager are required");
+        }
+        this.fileManager = fileManager;
+        this.metadataManager = metadataManager;
+    }
+
+    /**
+     * Rotate the file keyring: rewrap every data key, persist, then drop the old generation
+     *
+     * Files deleted or moved while their keys were rewrapped are left out of the commit;
+     * their generation stays in use and is retired by a later rotation.
+     *
+     * @return the number of files whose keys were rewrapped
+     */
+    public int rotateKeys() throws Exception {
+        // A rewrapped copy is stored where its original is, so it stands in for it
+        Map<VaultFile, VaultFile> rewrapped = new LinkedHashMap<>();
+        for (VaultFile copy : fileManager.rewrapFileKeys(metadataManager.getAllFiles())) {
+            rewrapped.put(copy, copy);
+        }
+        // Tags may have been edited meanwhile
+        List<VaultFile> committed = metadataManager.replaceFiles(rewrapped,
+            (registered, copy) -> copy.setTags(registered.getTags()));
+        rewrapped.keySet().removeAll(committed);
+        fileManager.discardFileKeys(rewrapped.values());
+        fileManager.retireFileKeys(metadataManager.getAllFiles());
+        return committed.size();
+    }
+
+    /**
+     * Start a refresh on a background thread
+     *
+     * @param legacyOnly only re-encrypt files still encrypted under the vault key
+     * @return completes with the number of files re-encrypted
+     */
+    public CompletableFuture<Integer> start(boolean legacyOnly, ProgressListener listener) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(reencrypt(legacyOnly, listener));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, "GhostVault-Reencrypt-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    /**
+     * Re-encrypt files under fresh data keys, blocking until done or cancelled
+     *
+     * Deduplicated files are skipped; their chunks are shared and stay under chunk keys.
+     *
+     * @return the number of files re-encrypted
+     */
+    public int reencrypt(boolean legacyOnly, ProgressListener listener) throws Exception {
+        List<VaultFile> candidates = new ArrayList<>();
+        for (VaultFile file : metadataManager.getAllFiles()) {
+            if (FileManager.isReencryptable(file) && (!legacyOnly || file.getWrappedKey() == null)) {
+                candidates.add(file);
+            }
+        }
+
+        int total = candidates.size();
+        int completed = 0;
+        int reencrypted = 0;
+        for (VaultFile file : candidates) {
+            if (cancelled) {
+                break;
+            }
+            completed++;
+            try {
+                VaultFile refreshed = fileManager.reencryptFile(file);
+                Path newPath = fileManager.getEncryptedFilePath(refreshed);
+                if (!commit(file, refreshed)) {
+                    // Deleted or replaced while it was being re-encrypted
+                    FileManager.secureDeleteFile(newPath);
+                    fileManager.discardFileKeys(List.of(refreshed));
+                    continue;
+                }
+                // Through the file manager: a packed original is an entry, not the whole pack
+                fileManager.secureDeleteFile(file);
+                reencrypted++;
+                if (listener != null) {
+                    listener.onFileReencrypted(refreshed, completed, total);
+                }
+            } catch (Exception e) {
+                if (listener != null) {
+                    listener.onFileFailed(file, e, completed, total);
+                }
+            }
+        }
+
+        if (reencrypted > 0) {
+            fileManager.retireFileKeys(metadataManager.getAllFiles());
+        }
+        return reencrypted;
+    }
+
+    /**
+     * Stop after the file in progress; files already switched over stay switched
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private boolean commit(VaultFile original, VaultFile refreshed) throws Exception {
+        // Tags may have been edited meanwhile
+        return !metadataManager.replaceFiles(Map.of(original, refreshed),
+            (registered, copy) -> copy.setTags(registered.getTags())).isEmpty();
+    }
+}
@@ -0,0 +1,693 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incremental in-memory search index over file names, extensions and tags
+ *
+ * Substring queries use trigram postings: the postings of every trigram in the
+ * query are intersected and the few candidates are verified against lowercase
+ * copies of the fields kept by the index, so results match
+ * {@link VaultFile#matchesSearch} exactly without lowercasing every file per
+ * keystroke. Queries shorter than a trigram union the postings of the grams that
+ * contain them. A token trie answers word-prefix queries.
+ *
+ * Documents get increasing int ids, so postings stay sorted and appends are O(1).
+ * Removal only clears the live bit; the index is rebuilt once dead documents
+ * outnumber live ones.
+ *
+ * The index can be written to a compact snapshot (see {@link SearchIndexSnapshot})
+ * so unlocking does not have to rebuild it.
+ */
+public class SearchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int MIN_COMPACTION_DEAD = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Document table, indexed by doc id
+    private VaultFile[] docs = new VaultFile[64];
+    private String[] names = new String[64];
+    private String[] tags = new String[64];
+    private int docCount;
+    private final BitSet live = new BitSet();
+    private int liveCount;
+    private final Map<String, Integer> docIds = new HashMap<>();
+
+    private final GramTable grams = new GramTable();
+    private final Map<String, Postings> extensions = new HashMap<>();
+    private TrieNode tokens = new TrieNode();
+
+    /**
+     * Sorted, growable list of doc ids
+     */
+    static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            // A document adds all its terms at once, so duplicates are always adjacent
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Open-addressing map from packed gram keys to postings (no boxing on the hot path)
+     */
+    static final class GramTable {
+        long[] keys = new long[1024];
+        Postings[] values = new Postings[1024];
+        int size;
+
+        Postings get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        Postings getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            Postings postings = new Postings();
+            keys[i] = key;
+            values[i] = postings;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+            return postings;
+        }
+
+        void clear() {
+            keys = new long[1024];
+            values = new Postings[1024];
+            size = 0;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Postings[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != null) {
+                    int i = slot(oldKeys[j], mask);
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+    }
+
+    /**
+     * Token trie node with sorted children
+     */
+    static final class TrieNode {
+        char[] keys = new char[0];
+        TrieNode[] children = new TrieNode[0];
+        Postings docs;
+
+        TrieNode child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        TrieNode childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = new TrieNode();
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[at];
+        }
+    }
+
+    /**
+     * Replace the whole index content
+     */
+    public void rebuild(Collection<VaultFile> files) {
+        lock.writeLock().lock();
+        try {
+            clearInternal();
+            for (VaultFile file : files) {
+                addInternal(file);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a file, or re-index it if already present (e.g. after a tag edit)
+     */
+    public void add(VaultFile file) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(file.getFileId());
+            addInternal(file);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String fileId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(fileId);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            clearInternal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Files whose name or tags contain the query, case-insensitively, in insertion order
+     */
+    public List<VaultFile> search(String query) {
+        String q = query.toLowerCase();
+        lock.readLock().lock();
+        try {
+            if (q.isEmpty()) {
+                return collect(live);
+            }
+            if (q.length() < GRAM_LENGTH) {
+                return searchShort(q);
+            }
+
+            // Intersect the postings of every distinct trigram, smallest first
+            List<Postings> lists = new ArrayList<>(q.length());
+            for (int i = 0; i + GRAM_LENGTH <= q.length(); i++) {
+                Postings postings = grams.get(gramKey(q, i, GRAM_LENGTH));
+                if (postings == null) {
+                    return new ArrayList<>();
+                }
+                if (!lists.contains(postings)) {
+                    lists.add(postings);
+                }
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+            int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+            int count = candidates.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                count = intersect(candidates, count, lists.get(i));
+            }
+
+            List<VaultFile> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int doc = candidates[i];
+                if (live.get(doc) && (names[doc].contains(q) || tags[doc].contains(q))) {
+                    results.add(docs[doc]);
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Files with a word (in name or tags) starting with the prefix, in insertion order
+     */
+    public List<VaultFile> searchPrefix(String prefix) {
+        String p = prefix.toLowerCase();
+        lock.readLock().lock();
+        try {
+            TrieNode node = tokens;
+            for (int i = 0; i < p.length() && node != null; i++) {
+                node = node.child(p.charAt(i));
+            }
+            if (node == null) {
+                return new ArrayList<>();
+            }
+            BitSet matches = new BitSet(docCount);
+            collectSubtree(node, matches);
+            matches.and(live);
+            return collect(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Files with the given extension (lowercase, without the dot)
+     */
+    public List<VaultFile> searchExtension(String extension) {
+        lock.readLock().lock();
+        try {
+            Postings postings = extensions.get(extension.toLowerCase());
+            List<VaultFile> results = new ArrayList<>();
+            if (postings != null) {
+                for (int i = 0; i < postings.size; i++) {
+                    if (live.get(postings.ids[i])) {
+                        results.add(docs[postings.ids[i]]);
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addInternal(VaultFile file) {
+        int doc = docCount++;
+        if (doc == docs.length) {
+            int capacity = docs.length * 2;
+            docs = Arrays.copyOf(docs, capacity);
+            names = Arrays.copyOf(names, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+        }
+
+        String name = file.getOriginalName().toLowerCase();
+        String tagText = file.getTags().toLowerCase();
+        docs[doc] = file;
+        names[doc] = name;
+        tags[doc] = tagText;
+        live.set(doc);
+        liveCount++;
+        docIds.put(file.getFileId(), doc);
+
+        indexGrams(name, doc);
+        indexGrams(tagText, doc);
+        indexTokens(name, doc);
+        indexTokens(tagText, doc);
+        extensions.computeIfAbsent(file.getExtension(), key -> new Postings()).add(doc);
+    }
+
+    private void removeInternal(String fileId) {
+        Integer doc = docIds.remove(fileId);
+        if (doc != null) {
+            live.clear(doc);
+            docs[doc] = null;
+            liveCount--;
+        }
+    }
+
+    private void compactIfNeeded() {
+        int dead = docCount - liveCount;
+        if (dead > MIN_COMPACTION_DEAD && dead > liveCount) {
+            List<VaultFile> remaining = collect(live);
+            clearInternal();
+            for (VaultFile file : remaining) {
+                addInternal(file);
+            }
+        }
+    }
+
+    private void clearInternal() {
+        docs = new VaultFile[64];
+        names = new String[64];
+        tags = new String[64];
+        docCount = 0;
+        live.clear();
+        liveCount = 0;
+        docIds.clear();
+        grams.clear();
+        extensions.clear();
+        tokens = new TrieNode();
+    }
+
+    private void indexGrams(String text, int doc) {
+        if (text.isEmpty()) {
+            return;
+        }
+        if (text.length() < GRAM_LENGTH) {
+            grams.getOrCreate(gramKey(text, 0, text.length())).add(doc);
+            return;
+        }
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.getOrCreate(gramKey(text, i, GRAM_LENGTH)).add(doc);
+        }
+    }
+
+    private void indexTokens(String text, int doc) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                TrieNode node = tokens;
+                for (int j = start; j < i; j++) {
+                    node = node.childOrCreate(text.charAt(j));
+                }
+                if (node.docs == null) {
+                    node.docs = new Postings();
+                }
+                node.docs.add(doc);
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Queries of one or two characters: union every gram that contains them
+     */
+    private List<VaultFile> searchShort(String q) {
+        BitSet matches = new BitSet(docCount);
+        for (int slot = 0; slot < grams.keys.length; slot++) {
+            Postings postings = grams.values[slot];
+            if (postings != null && gramContains(grams.keys[slot], q)) {
+                for (int i = 0; i < postings.size; i++) {
+                    matches.set(postings.ids[i]);
+                }
+            }
+        }
+        matches.and(live);
+        return collect(matches);
+    }
+
+    private List<VaultFile> collect(BitSet set) {
+        List<VaultFile> results = new ArrayList<>(set.cardinality());
+        for (int doc = set.nextSetBit(0); doc >= 0; doc = set.nextSetBit(doc + 1)) {
+            results.add(docs[doc]);
+        }
+        return results;
+    }
+
+    private static void collectSubtree(TrieNode node, BitSet into) {
+        if (node.docs != null) {
+            for (int i = 0; i < node.docs.size; i++) {
+                into.set(node.docs.ids[i]);
+            }
+        }
+        for (TrieNode child : node.children) {
+            collectSubtree(child, into);
+        }
+    }
+
+    /**
+     * Intersect sorted candidates in place with sorted postings, returning the new count
+     */
+    private static int intersect(int[] candidates, int count, Postings postings) {
+        int out = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < postings.size; i++) {
+            int doc = candidates[i];
+            while (j < postings.size && postings.ids[j] < doc) {
+                j++;
+            }
+            if (j < postings.size && postings.ids[j] == doc) {
+                candidates[out++] = doc;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Pack up to three chars and the gram length into a long
+     */
+    static long gramKey(String text, int offset, int length) {
+        long key = (long) length << 48;
+        for (int i = 0; i < length; i++) {
+            key |= (long) text.charAt(offset + i) << (32 - 16 * i);
+        }
+        return key;
+    }
+
+    private static boolean gramContains(long key, String q) {
+        int length = (int) (key >>> 48);
+        for (int start = 0; start + q.length() <= length; start++) {
+            boolean match = true;
+            for (int i = 0; i < q.length() && match; i++) {
+                match = gramChar(key, start + i) == q.charAt(i);
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char gramChar(long key, int index) {
+        return (char) (key >>> (32 - 16 * index));
+    }
+
+    /**
+     * Encode the index: doc table as fileIds, delta-coded postings, trie in preorder
+     *
+     * Lowercase field copies are not stored; they are re-derived from the registry on load.
+     */
+    byte[] toSnapshot() {
+        lock.readLock().lock();
+        try {
+            SnapshotWriter out = new SnapshotWriter(Math.max(1024, docCount * 64));
+            out.writeVarLong(docCount);
+            for (int doc = 0; doc < docCount; doc++) {
+                if (live.get(doc)) {
+                    byte[] id = docs[doc].getFileId().getBytes(StandardCharsets.UTF_8);
+                    out.writeVarLong(id.length + 1L);
+                    out.write(id);
+                } else {
+                    out.writeVarLong(0);
+                }
+            }
+
+            out.writeVarLong(grams.size);
+            for (int slot = 0; slot < grams.keys.length; slot++) {
+                if (grams.values[slot] != null) {
+                    out.writeVarLong(grams.keys[slot]);
+                    writePostings(out, grams.values[slot]);
+                }
+            }
+
+            out.writeVarLong(extensions.size());
+            for (Map.Entry<String, Postings> entry : extensions.entrySet()) {
+                byte[] extension = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeVarLong(extension.length);
+                out.write(extension);
+                writePostings(out, entry.getValue());
+            }
+
+            writeTrie(out, tokens);
+            return out.toByteArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restore an index from {@link #toSnapshot()} output, binding documents to registry entries
+     *
+     * @return the index, or null if the snapshot does not describe exactly this registry
+     */
+    static SearchIndex fromSnapshot(ByteBuffer in, Map<String, VaultFile> registry) throws IOException {
+        try {
+            SearchIndex index = new SearchIndex();
+            int docCount = count(MetadataCodec.readVarLong(in), in);
+            int capacity = Math.max(64, docCount);
+            index.docs = new VaultFile[capacity];
+            index.names = new String[capacity];
+            index.tags = new String[capacity];
+            index.docCount = docCount;
+
+            for (int doc = 0; doc < docCount; doc++) {
+                int length = count(MetadataCodec.readVarLong(in), in);
+                if (length == 0) {
+                    continue;
+                }
+                byte[] id = new byte[length - 1];
+                in.get(id);
+                VaultFile file = registry.get(new String(id, StandardCharsets.UTF_8));
+                if (file == null) {
+                    return null;
+                }
+                index.docs[doc] = file;
+                index.names[doc] = file.getOriginalName().toLowerCase();
+                index.tags[doc] = file.getTags().toLowerCase();
+                index.live.set(doc);
+                index.docIds.put(file.getFileId(), doc);
+            }
+            index.liveCount = index.docIds.size();
+            if (index.liveCount != registry.size()) {
+                return null;
+            }
+
+            int gramCount = count(MetadataCodec.readVarLong(in), in);
+            for (int i = 0; i < gramCount; i++) {
+                long key = MetadataCodec.readVarLong(in);
+                readPostings(in, index.grams.getOrCreate(key), docCount);
+            }
+
+            int extensionCount = count(MetadataCodec.readVarLong(in), in);
+            for (int i = 0; i < extensionCount; i++) {
+                byte[] extension = new byte[count(MetadataCodec.readVarLong(in), in)];
+                in.get(extension);
+                Postings postings = new Postings();
+                readPostings(in, postings, docCount);
+                index.extensions.put(new String(extension, StandardCharsets.UTF_8), postings);
+            }
+
+            index.tokens = readTrie(in, docCount);
+            return index;
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated search index snapshot", e);
+        }
+    }
+
+    private static void writePostings(SnapshotWriter out, Postings postings) {
+        out.writeVarLong(postings.size);
+        int previous = 0;
+        for (int i = 0; i < postings.size; i++) {
+            out.writeVarLong(postings.ids[i] - previous);
+            previous = postings.ids[i];
+        }
+    }
+
+    private static void readPostings(ByteBuffer in, Postings postings, int docCount) throws IOException {
+        int size = count(MetadataCodec.readVarLong(in), in);
+        postings.ids = new int[Math.max(2, size)];
+        int doc = 0;
+        for (int i = 0; i < size; i++) {
+            doc += (int) MetadataCodec.readVarLong(in);
+            if (doc < 0 || doc >= docCount || (i > 0 && doc <= postings.ids[i - 1])) {
+                throw new IOException("Invalid search index postings");
+            }
+            postings.ids[i] = doc;
+        }
+        postings.size = size;
+    }
+
+    private static void writeTrie(SnapshotWriter out, TrieNode node) {
+        if (node.docs != null) {
+            writePostings(out, node.docs);
+        } else {
+            out.writeVarLong(0);
+        }
+        out.writeVarLong(node.keys.length);
+        for (int i = 0; i < node.keys.length; i++) {
+            out.writeVarLong(node.keys[i]);
+            writeTrie(out, node.children[i]);
+        }
+    }
+
+    private static TrieNode readTrie(ByteBuffer in, int docCount) throws IOException {
+        TrieNode node = new TrieNode();
+        Postings postings = new Postings();
+        readPostings(in, postings, docCount);
+        if (postings.size > 0) {
+            node.docs = postings;
+        }
+        int children = count(MetadataCodec.readVarLong(in), in);
+        node.keys = new char[children];
+        node.children = new TrieNode[children];
+        for (int i = 0; i < children; i++) {
+            node.keys[i] = (char) MetadataCodec.readVarLong(in);
+            node.children[i] = readTrie(in, docCount);
+        }
+        return node;
+    }
+
+    private static int count(long value, ByteBuffer in) throws IOException {
+        // Every element takes at least one byte, which bounds allocations on corrupt input
+        if (value < 0 || value > in.remaining() + 1L) {
+            throw new IOException("Invalid search index count: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Growable byte sink for varint-heavy snapshot encoding
+     */
+    private static final class SnapshotWriter {
+        private byte[] buffer;
+        private int position;
+
+        SnapshotWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void write(byte[] data) {
+            ensure(data.length);
+            System.arraycopy(data, 0, buffer, position, data.length);
+            position += data.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+}
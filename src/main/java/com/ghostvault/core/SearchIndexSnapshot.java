@@ -0,0 +1,130 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.MemoryUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Encrypted on-disk snapshot of the {@link SearchIndex}
+ *
+ * A snapshot is bound to one metadata summary by its generation and the SHA-256 of
+ * the sealed summary file, so it is only ever used with the exact registry it was
+ * built from. Anything else (older generation, restored backup, corruption) simply
+ * means a rebuild. Mutations journaled after the summary are applied incrementally.
+ *
+ * Layout: MAGIC(4) || version(1) || generation(8) || summaryDigest(32) || IV(12) || ciphertext+tag,
+ * with everything before the IV as AAD. The file is memory-mapped and decrypted from
+ * the mapping straight into a single heap buffer.
+ */
+final class SearchIndexSnapshot {
+
+    private static final byte[] MAGIC = {'G', 'V', 'S', 'I'};
+    private static final byte VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + 8 + DIGEST_LENGTH;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private SearchIndexSnapshot() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * Seal and atomically replace the snapshot
+     */
+    static void write(Path path, byte[] encodedIndex, long generation, byte[] summaryDigest,
+                      SecretKey key) throws Exception {
+        byte[] header = header(generation, summaryDigest);
+        byte[] iv = new byte[IV_LENGTH];
+        SECURE_RANDOM.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(header);
+        byte[] ciphertext = cipher.doFinal(encodedIndex);
+
+        Path tempPath = Paths.get(path + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {ByteBuffer.wrap(header), ByteBuffer.wrap(iv), ByteBuffer.wrap(ciphertext)};
+            long remaining = header.length + iv.length + ciphertext.length;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load the snapshot if it matches the given summary
+     *
+     * @return the index, or null if there is no usable snapshot for this summary
+     */
+    static SearchIndex read(Path path, long generation, byte[] summaryDigest, SecretKey key,
+                            Map<String, VaultFile> registry) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        byte[] plaintext = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + IV_LENGTH + TAG_BITS / 8 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            byte[] header = new byte[HEADER_LENGTH];
+            mapped.get(header);
+            if (!Arrays.equals(header, header(generation, summaryDigest))) {
+                // Stale or foreign snapshot
+                return null;
+            }
+            byte[] iv = new byte[IV_LENGTH];
+            mapped.get(iv);
+
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(header);
+            plaintext = new byte[cipher.getOutputSize(mapped.remaining())];
+            int length = cipher.doFinal(mapped, ByteBuffer.wrap(plaintext));
+
+            return SearchIndex.fromSnapshot(ByteBuffer.wrap(plaintext, 0, length), registry);
+
+        } catch (Exception e) {
+            // A snapshot is only a cache; any problem means rebuilding it
+            return null;
+        } finally {
+            if (plaintext != null) {
+                MemoryUtils.secureWipe(plaintext);
+            }
+        }
+    }
+
+    private static byte[] header(long generation, byte[] summaryDigest) {
+        if (summaryDigest.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Summary digest must be SHA-256");
+        }
+        return ByteBuffer.allocate(HEADER_LENGTH)
+            .put(MAGIC).put(VERSION).putLong(generation).put(summaryDigest).array();
+    }
+}
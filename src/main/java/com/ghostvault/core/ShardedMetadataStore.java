@@ -0,0 +1,464 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import com.ghostvault.security.MemoryUtils;
+import com.ghostvault.util.FileUtils;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encrypted, sharded on-disk form of the metadata registry
+ *
+ * Files are spread over shards by a stable hash of their fileId. Each shard is
+ * encoded with {@link MetadataCodec} and sealed separately with its own IV, so
+ * shards decrypt in parallel on load and a checkpoint only rewrites the shards
+ * that changed. The metadata file itself becomes a small summary holding the
+ * generation of every shard plus counts, sizes, the {@link VaultStatistics} totals
+ * and the most recent files, which can be read without touching the shards.
+ *
+ * Shards are written copy-on-write under a new generation and the summary is
+ * swapped in atomically last, so a crash leaves the previous consistent set.
+ *
+ * Shard file: {@code <metadata>.shards/shard-<index>-<generation>.enc} holding
+ * IV || ciphertext+tag with AAD = MAGIC || index(4) || generation(8).
+ */
+class ShardedMetadataStore {
+
+    static final int SHARD_COUNT = 64;
+    static final int RECENT_FILES = 20;
+
+    private static final byte[] SUMMARY_MAGIC = {'G', 'V', 'M', 'S'};
+    private static final byte SUMMARY_VERSION = 2;
+    // Version 1 summaries have no statistics section
+    private static final byte SUMMARY_VERSION_NO_STATISTICS = 1;
+    private static final String SHARD_PREFIX = "shard-";
+    private static final String SHARD_SUFFIX = ".enc";
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final Path summaryPath;
+    private final Path shardDir;
+    private final CryptoManager cryptoManager;
+
+    // Guarded by this
+    private final BitSet dirtyShards = new BitSet(SHARD_COUNT);
+    private long generation;
+    private long[] shardGenerations = new long[SHARD_COUNT];
+
+    ShardedMetadataStore(Path summaryPath, CryptoManager cryptoManager) {
+        this.summaryPath = summaryPath;
+        this.shardDir = Paths.get(summaryPath + ".shards");
+        this.cryptoManager = cryptoManager;
+    }
+
+    /**
+     * Counts, sizes and recent files as recorded at the last checkpoint
+     */
+    static final class Summary {
+        private final long generation;
+        private final long[] shardGenerations;
+        private final int[] shardCounts;
+        private final long[] shardBytes;
+        private final VaultStatistics.Snapshot statistics;
+        private final List<VaultFile> recentFiles;
+
+        private Summary(long generation, long[] shardGenerations, int[] shardCounts, long[] shardBytes,
+                        VaultStatistics.Snapshot statistics, List<VaultFile> recentFiles) {
+            this.generation = generation;
+            this.shardGenerations = shardGenerations;
+            this.shardCounts = shardCounts;
+            this.shardBytes = shardBytes;
+            this.statistics = statistics;
+            this.recentFiles = recentFiles;
+        }
+
+        long getGeneration() {
+            return generation;
+        }
+
+        int getFileCount() {
+            return Arrays.stream(shardCounts).sum();
+        }
+
+        long getTotalSize() {
+            return Arrays.stream(shardBytes).sum();
+        }
+
+        /**
+         * Totals at the checkpoint, or null for a summary written before they were kept
+         */
+        VaultStatistics.Snapshot getStatistics() {
+            return statistics;
+        }
+
+        List<VaultFile> getRecentFiles() {
+            return recentFiles;
+        }
+    }
+
+    static int shardOf(String fileId) {
+        // String.hashCode is specified, so the mapping is stable across runs and JVMs
+        int h = fileId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), SHARD_COUNT);
+    }
+
+    static boolean isSummary(byte[] data) {
+        return data != null && data.length > SUMMARY_MAGIC.length
+            && Arrays.equals(Arrays.copyOf(data, SUMMARY_MAGIC.length), SUMMARY_MAGIC);
+    }
+
+    synchronized void markDirty(String fileId) {
+        dirtyShards.set(shardOf(fileId));
+    }
+
+    synchronized void markAllDirty() {
+        dirtyShards.set(0, SHARD_COUNT);
+    }
+
+    /**
+     * Take the set of shards changed since the last checkpoint
+     *
+     * Call under the same lock that guards mutations so the set matches the registry copy.
+     */
+    synchronized BitSet takeDirty() {
+        BitSet taken = (BitSet) dirtyShards.clone();
+        dirtyShards.clear();
+        return taken;
+    }
+
+    /**
+     * Parse a decrypted summary
+     */
+    static Summary parseSummary(byte[] data) throws IOException {
+        if (!isSummary(data)) {
+            throw new IOException("Not a metadata summary");
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(data);
+            in.position(SUMMARY_MAGIC.length);
+            byte version = in.get();
+            if (version != SUMMARY_VERSION && version != SUMMARY_VERSION_NO_STATISTICS) {
+                throw new IOException("Unsupported metadata summary version: " + version);
+            }
+
+            long generation = MetadataCodec.readVarLong(in);
+            int shardCount = (int) MetadataCodec.readVarLong(in);
+            if (shardCount < 1 || shardCount > in.remaining()) {
+                throw new IOException("Invalid shard count: " + shardCount);
+            }
+            long[] shardGenerations = new long[shardCount];
+            int[] shardCounts = new int[shardCount];
+            long[] shardBytes = new long[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shardGenerations[i] = MetadataCodec.readVarLong(in);
+                shardCounts[i] = (int) MetadataCodec.readVarLong(in);
+                shardBytes[i] = MetadataCodec.readVarLong(in);
+            }
+
+            VaultStatistics.Snapshot statistics = null;
+            if (version == SUMMARY_VERSION) {
+                long length = MetadataCodec.readVarLong(in);
+                if (length < 0 || length > in.remaining()) {
+                    throw new IOException("Invalid statistics length: " + length);
+                }
+                ByteBuffer section = in.slice();
+                section.limit((int) length);
+                statistics = VaultStatistics.Snapshot.decode(section);
+                in.position(in.position() + (int) length);
+            }
+
+            byte[] recent = new byte[in.remaining()];
+            in.get(recent);
+            return new Summary(generation, shardGenerations, shardCounts, shardBytes, statistics,
+                MetadataCodec.decode(recent));
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated metadata summary", e);
+        }
+    }
+
+    /**
+     * Load every shard named by the summary, decrypting them in parallel
+     */
+    Map<String, VaultFile> load(Summary summary, SecretKey key) throws Exception {
+        int shardCount = summary.shardGenerations.length;
+        List<List<VaultFile>> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(null);
+        }
+
+        forEachShard(shardCount, shard -> {
+            long shardGeneration = summary.shardGenerations[shard];
+            if (shardGeneration == 0) {
+                shards.set(shard, List.of());
+                return;
+            }
+            byte[] sealed = Files.readAllBytes(shardPath(shard, shardGeneration));
+            byte[] plaintext = cryptoManager.decrypt(sealed, key, shardAad(shard, shardGeneration));
+            try {
+                List<VaultFile> files = MetadataCodec.decode(plaintext);
+                if (files.size() != summary.shardCounts[shard]) {
+                    throw new IOException("Metadata shard " + shard + " does not match the summary");
+                }
+                shards.set(shard, files);
+            } finally {
+                MemoryUtils.secureWipe(plaintext);
+            }
+        });
+
+        Map<String, VaultFile> registry = new HashMap<>(Math.max(16, summary.getFileCount() * 4 / 3 + 1));
+        for (List<VaultFile> shard : shards) {
+            for (VaultFile file : shard) {
+                registry.put(file.getFileId(), file);
+            }
+        }
+
+        synchronized (this) {
+            generation = summary.generation;
+            if (shardCount == SHARD_COUNT) {
+                shardGenerations = summary.shardGenerations.clone();
+            } else {
+                // Written with a different layout; reshard on the next checkpoint
+                shardGenerations = new long[SHARD_COUNT];
+                dirtyShards.set(0, SHARD_COUNT);
+            }
+        }
+        deleteStaleShards();
+        return registry;
+    }
+
+    /**
+     * Write the dirty shards and a new summary
+     *
+     * @param files a consistent copy of the whole registry
+     * @param dirty shards to rewrite, from {@link #takeDirty()}
+     * @param statistics totals taken together with the registry copy
+     * @return the generation of the new summary
+     */
+    long write(Collection<VaultFile> files, BitSet dirty, VaultStatistics.Snapshot statistics,
+               SecretKey key) throws Exception {
+        long newGeneration;
+        long[] newShardGenerations;
+        synchronized (this) {
+            newGeneration = generation + 1;
+            newShardGenerations = shardGenerations.clone();
+        }
+
+        int[] shardCounts = new int[SHARD_COUNT];
+        long[] shardBytes = new long[SHARD_COUNT];
+        List<List<VaultFile>> dirtyFiles = new ArrayList<>(SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            dirtyFiles.add(dirty.get(i) ? new ArrayList<>() : null);
+        }
+        PriorityQueue<VaultFile> recent = new PriorityQueue<>(Comparator.comparingLong(VaultFile::getUploadTime));
+
+        for (VaultFile file : files) {
+            int shard = shardOf(file.getFileId());
+            shardCounts[shard]++;
+            shardBytes[shard] += file.getSize();
+            if (dirtyFiles.get(shard) != null) {
+                dirtyFiles.get(shard).add(file);
+            }
+            recent.add(file);
+            if (recent.size() > RECENT_FILES) {
+                recent.poll();
+            }
+        }
+
+        try {
+            Files.createDirectories(shardDir);
+            forEachShard(SHARD_COUNT, shard -> {
+                List<VaultFile> shardFiles = dirtyFiles.get(shard);
+                if (shardFiles == null) {
+                    return;
+                }
+                if (shardFiles.isEmpty()) {
+                    newShardGenerations[shard] = 0;
+                    return;
+                }
+                byte[] plaintext = MetadataCodec.encode(shardFiles);
+                try {
+                    byte[] sealed = cryptoManager.encrypt(plaintext, key, shardAad(shard, newGeneration));
+                    writeDurably(shardPath(shard, newGeneration), sealed);
+                    newShardGenerations[shard] = newGeneration;
+                } finally {
+                    MemoryUtils.secureWipe(plaintext);
+                }
+            });
+
+            // Commit point: the summary names the new shard set
+            byte[] summary = encodeSummary(newGeneration, newShardGenerations, shardCounts, shardBytes,
+                statistics, new ArrayList<>(recent));
+            try {
+                byte[] sealed = cryptoManager.encrypt(summary, key);
+                Path tempPath = Paths.get(summaryPath + ".tmp");
+                FileUtils.writeEncryptedFile(tempPath, CryptoManager.EncryptedData.fromCombinedData(sealed));
+                Files.move(tempPath, summaryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                MemoryUtils.secureWipe(summary);
+            }
+        } catch (Exception e) {
+            synchronized (this) {
+                dirtyShards.or(dirty);
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            generation = newGeneration;
+            shardGenerations = newShardGenerations;
+        }
+        deleteStaleShards();
+        return newGeneration;
+    }
+
+    /**
+     * Shard directory, so callers copying or wiping the vault can include it
+     */
+    Path getShardDirectory() {
+        return shardDir;
+    }
+
+    private static byte[] encodeSummary(long generation, long[] shardGenerations, int[] shardCounts,
+                                        long[] shardBytes, VaultStatistics.Snapshot statistics,
+                                        List<VaultFile> recentFiles) {
+        byte[] recent = MetadataCodec.encode(recentFiles);
+        byte[] totals = statistics.encode();
+        ByteBuffer out = ByteBuffer.allocate(SUMMARY_MAGIC.length + 1 + 20 + SHARD_COUNT * 30
+            + 10 + totals.length + recent.length);
+        out.put(SUMMARY_MAGIC).put(SUMMARY_VERSION);
+        MetadataCodec.writeVarLong(out, generation);
+        MetadataCodec.writeVarLong(out, SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            MetadataCodec.writeVarLong(out, shardGenerations[i]);
+            MetadataCodec.writeVarLong(out, shardCounts[i]);
+            MetadataCodec.writeVarLong(out, shardBytes[i]);
+        }
+        MetadataCodec.writeVarLong(out, totals.length);
+        out.put(totals);
+        out.put(recent);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Remove shard files no longer named by the current summary (superseded or orphaned by a crash)
+     */
+    private void deleteStaleShards() {
+        if (!Files.isDirectory(shardDir)) {
+            return;
+        }
+        long[] current;
+        synchronized (this) {
+            current = shardGenerations.clone();
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(shardDir, SHARD_PREFIX + "*" + SHARD_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                String[] parts = name.substring(SHARD_PREFIX.length(), name.length() - SHARD_SUFFIX.length()).split("-");
+                boolean live = false;
+                try {
+                    int shard = Integer.parseInt(parts[0]);
+                    live = parts.length == 2 && shard < current.length
+                        && current[shard] == Long.parseLong(parts[1]);
+                } catch (NumberFormatException e) {
+                    // Not ours; treat as stale
+                }
+                if (!live) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            // Stale shards are only wasted space; the next checkpoint retries
+        }
+    }
+
+    private Path shardPath(int shard, long shardGeneration) {
+        return shardDir.resolve(SHARD_PREFIX + shard + "-" + shardGeneration + SHARD_SUFFIX);
+    }
+
+    private static byte[] shardAad(int shard, long shardGeneration) {
+        return ByteBuffer.allocate(SUMMARY_MAGIC.length + 12)
+            .put(SUMMARY_MAGIC).putInt(shard).putLong(shardGeneration).array();
+    }
+
+    private static void writeDurably(Path path, byte[] data) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    private interface ShardTask {
+        void run(int shard) throws Exception;
+    }
+
+    /**
+     * Run a task for every shard index on a short-lived pool sized to the machine
+     */
+    private static void forEachShard(int shardCount, ShardTask task) throws Exception {
+        int threads = Math.min(shardCount, Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (int shard = 0; shard < shardCount; shard++) {
+                task.run(shard);
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "GhostVault-Metadata-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                int index = shard;
+                futures.add(executor.submit(() -> {
+                    task.run(index);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ghostvault.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Where ciphertexts live under the files directory
+ *
+ * Files are stored under a two-level fan-out on the first four hex digits of their
+ * name, files/&lt;ab&gt;/&lt;cd&gt;/&lt;abcd...&gt;.enc, so no directory grows past a few
+ * hundred entries however large the vault. The fan-out is part of the encrypted name
+ * kept in the metadata; names without it are files from the flat layout of earlier
+ * versions, which {@link LayoutMigrator} moves over. Small files are packed (see
+ * {@link PackStore}) and deduplicated chunks have a tree of their own.
+ */
+final class VaultLayout {
+
+    private static final int FAN_OUT_DIGITS = 2;
+    private static final int FAN_OUT_DEPTH = 2;
+
+    private VaultLayout() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * The encrypted name of a new file in the fan-out layout: ab/cd/abcd...
+     */
+    static String fanOut(String name) {
+        if (name.length() <= FAN_OUT_DIGITS * FAN_OUT_DEPTH) {
+            return name;
+        }
+        return name.substring(0, 2) + '/' + name.substring(2, 4) + '/' + name;
+    }
+
+    /**
+     * Whether an encrypted name is still in the flat layout
+     */
+    static boolean isFlat(String encryptedName) {
+        return encryptedName.indexOf('/') < 0;
+    }
+
+    /**
+     * Every ciphertext, manifest and pack file, leaving out the chunk tree and temporary files
+     *
+     * Walks only as deep as the fan-out, so the cost is one listing per fan-out directory.
+     */
+    static List<Path> listStoredFiles(Path filesDir) throws IOException {
+        if (!Files.isDirectory(filesDir)) {
+            return List.of();
+        }
+        Path chunks = filesDir.resolve(ChunkStore.CHUNK_DIRECTORY);
+        try (Stream<Path> walk = Files.walk(filesDir, FAN_OUT_DEPTH + 1)) {
+            return walk.filter(path -> !path.startsWith(chunks))
+                .filter(Files::isRegularFile)
+                .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                .collect(Collectors.toList());
+        }
+    }
+}
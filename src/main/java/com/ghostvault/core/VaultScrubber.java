@@ -0,0 +1,485 @@
+package com.ghostvault.core;
+
+import com.ghostvault.audit.AuditManager;
+import com.ghostvault.config.AppConfig;
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Background sweep that re-verifies every vault file to catch bit-rot
+ *
+ * A pass walks the metadata in file id order and decrypts each file on the scrubber
+ * thread alone, which checks every GCM tag and the content hash. Reads are paced to a
+ * bandwidth budget and the sweep waits while the user is busy, so it never competes with
+ * the UI. Progress is checkpointed, sealed under the vault key, every few files; a pass
+ * cut short by logout or restart resumes after the last file checked instead of starting
+ * over. Damaged files are logged to the audit trail and reported to the listener.
+ */
+public class VaultScrubber {
+
+    private static final byte[] MAGIC = {'G', 'V', 'S', 'C'};
+    private static final byte VERSION = 1;
+    private static final byte[] AAD = "GhostVault-ScrubCheckpoint".getBytes(StandardCharsets.UTF_8);
+
+    private static final int CHECKPOINT_FILES = 32;
+    private static final long CHECKPOINT_MILLIS = 30_000;
+    private static final long BUSY_POLL_MILLIS = 500;
+    private static final long SCHEDULE_POLL_MINUTES = 1;
+
+    /**
+     * Receives scrub results; callbacks arrive on the scrubber thread
+     */
+    public interface ScrubListener {
+        void onCorruptFile(VaultFile vaultFile, String reason);
+
+        void onPassCompleted(Report report);
+    }
+
+    /**
+     * Outcome of a completed pass
+     */
+    public static final class Report {
+        private final long startedAt;
+        private final long completedAt;
+        private final int filesChecked;
+        private final long bytesChecked;
+        private final List<String> corruptFileIds;
+
+        Report(long startedAt, long completedAt, int filesChecked, long bytesChecked, List<String> corruptFileIds) {
+            this.startedAt = startedAt;
+            this.completedAt = completedAt;
+            this.filesChecked = filesChecked;
+            this.bytesChecked = bytesChecked;
+            this.corruptFileIds = Collections.unmodifiableList(new ArrayList<>(corruptFileIds));
+        }
+
+        public long getStartedAt() { return startedAt; }
+        public long getCompletedAt() { return completedAt; }
+        public int getFilesChecked() { return filesChecked; }
+        public long getBytesChecked() { return bytesChecked; }
+        public List<String> getCorruptFileIds() { return corruptFileIds; }
+
+        public boolean isClean() {
+            return corruptFileIds.isEmpty();
+        }
+    }
+
+    private final FileManager fileManager;
+    private final MetadataManager metadataManager;
+    private final AuditManager auditManager;
+    private final Path checkpointPath;
+    private final SecretKey checkpointKey;
+    private final CryptoManager cryptoManager = new CryptoManager();
+
+    private volatile double bytesPerSecond;
+    private volatile long intervalMillis;
+    private volatile BooleanSupplier busySignal = () -> false;
+    private volatile ScrubListener listener;
+    private volatile boolean stopped;
+    private final Object lifecycle = new Object();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param auditManager    receives scrub results, or null
+     * @param checkpointPath  where pass progress is kept between runs
+     * @param checkpointKey   seals the checkpoint, normally the vault key
+     */
+    public VaultScrubber(FileManager fileManager, MetadataManager metadataManager, AuditManager auditManager,
+                         Path checkpointPath, SecretKey checkpointKey) {
+        if (fileManager == null || metadataManager == null || checkpointPath == null || checkpointKey == null) {
+            throw new IllegalArgumentException("File manager, metadata manager and checkpoint are required");
+        }
+        this.fileManager = fileManager;
+        this.metadataManager = metadataManager;
+        this.auditManager = auditManager;
+        this.checkpointPath = checkpointPath;
+        this.checkpointKey = checkpointKey;
+        setBandwidthLimit(AppConfig.SCRUB_BANDWIDTH_MB_PER_SECOND);
+        setInterval(AppConfig.SCRUB_INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * Cap the read rate of a pass, in megabytes per second
+     */
+    public void setBandwidthLimit(double megabytesPerSecond) {
+        if (!(megabytesPerSecond > 0)) {
+            throw new IllegalArgumentException("Bandwidth limit must be positive");
+        }
+        this.bytesPerSecond = megabytesPerSecond * 1024 * 1024;
+    }
+
+    /**
+     * Time from the end of one pass to the start of the next
+     */
+    public void setInterval(long interval, TimeUnit unit) {
+        this.intervalMillis = unit.toMillis(interval);
+    }
+
+    /**
+     * While this returns true the scrubber waits, even in the middle of a file
+     */
+    public void setBusySignal(BooleanSupplier busySignal) {
+        this.busySignal = busySignal != null ? busySignal : () -> false;
+    }
+
+    public void setListener(ScrubListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start scrubbing in the background: an unfinished pass resumes right away, otherwise
+     * the next pass starts once the interval has passed since the last one completed
+     */
+    public void start() {
+        synchronized (lifecycle) {
+            if (scheduler != null) {
+                return;
+            }
+            stopped = false;
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "GhostVault-Scrubber");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::runIfDue, 0, SCHEDULE_POLL_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Stop after checkpointing; a pass in progress resumes on the next start
+     */
+    public void stop() {
+        stopped = true;
+        synchronized (lifecycle) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                try {
+                    scheduler.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                scheduler = null;
+            }
+        }
+    }
+
+    private void runIfDue() {
+        try {
+            Checkpoint checkpoint = loadCheckpoint();
+            long lastCompletedAt = checkpoint.last != null ? checkpoint.last.getCompletedAt() : 0;
+            if (checkpoint.inProgress() || System.currentTimeMillis() - lastCompletedAt >= intervalMillis) {
+                runPass();
+            }
+        } catch (Exception e) {
+            if (auditManager != null && !stopped) {
+                auditManager.logError("SCRUB_FAILED", e.getMessage(), null, "Vault integrity scrub");
+            }
+        }
+    }
+
+    /**
+     * Run (or resume) a full pass on the calling thread
+     *
+     * @return the report, or null if the scrubber was stopped before the pass finished
+     */
+    public synchronized Report runPass() throws Exception {
+        Checkpoint checkpoint = loadCheckpoint();
+        if (!checkpoint.inProgress()) {
+            checkpoint.begin(System.currentTimeMillis());
+        }
+
+        List<VaultFile> files = new ArrayList<>(metadataManager.getAllFiles());
+        files.sort(Comparator.comparing(VaultFile::getFileId));
+
+        int sinceSave = 0;
+        long lastSave = System.currentTimeMillis();
+        for (VaultFile file : files) {
+            if (checkpoint.lastFileId != null && file.getFileId().compareTo(checkpoint.lastFileId) <= 0) {
+                continue;
+            }
+
+            String reason;
+            try {
+                waitWhileBusy();
+                reason = check(file);
+            } catch (CancellationException | InterruptedException e) {
+                // Clear the interrupt so the checkpoint write is not aborted with it
+                boolean interrupted = Thread.interrupted() || e instanceof InterruptedException;
+                try {
+                    saveCheckpoint(checkpoint);
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return null;
+            }
+
+            if (reason != null && isCurrent(file)) {
+                checkpoint.corruptFileIds.add(file.getFileId());
+                report(file, reason);
+            }
+            checkpoint.advance(file);
+
+            if (++sinceSave >= CHECKPOINT_FILES || System.currentTimeMillis() - lastSave >= CHECKPOINT_MILLIS) {
+                saveCheckpoint(checkpoint);
+                sinceSave = 0;
+                lastSave = System.currentTimeMillis();
+            }
+        }
+
+        Report report = checkpoint.complete(System.currentTimeMillis());
+        saveCheckpoint(checkpoint);
+        if (auditManager != null) {
+            auditManager.logSecurityEvent("INTEGRITY_SCRUB_COMPLETED", "Vault integrity scrub completed",
+                report.isClean() ? AuditManager.AuditSeverity.INFO : AuditManager.AuditSeverity.WARNING, null,
+                "files_checked=" + report.getFilesChecked() + ", bytes_checked=" + report.getBytesChecked()
+                    + ", corrupt=" + report.getCorruptFileIds().size());
+        }
+        ScrubListener current = listener;
+        if (current != null) {
+            current.onPassCompleted(report);
+        }
+        return report;
+    }
+
+    /**
+     * Result of the last completed pass, or null if none has completed yet
+     */
+    public Report getLastReport() throws Exception {
+        return loadCheckpoint().last;
+    }
+
+    /**
+     * Check one file, paced to the budget
+     *
+     * @return why the file is damaged, or null if it is intact
+     */
+    private String check(VaultFile file) throws InterruptedException {
+        Pacer pacer = new Pacer();
+        try {
+            return fileManager.checkFileIntegrity(file, pacer::onRead) ? null : "Content hash mismatch";
+        } catch (CancellationException e) {
+            throw e;
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            return "Encrypted file missing";
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted() || stopped) {
+                throw new InterruptedException("Scrub stopped");
+            }
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof GeneralSecurityException) {
+                    return "Authentication failed: " + cause.getMessage();
+                }
+                if (cause instanceof EOFException) {
+                    return "Encrypted file truncated";
+                }
+            }
+            return "Unreadable: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Files deleted or replaced while they were read are not damage
+     */
+    private boolean isCurrent(VaultFile file) {
+        VaultFile current = metadataManager.getFile(file.getFileId());
+        return current != null && current.getEncryptedName().equals(file.getEncryptedName());
+    }
+
+    private void report(VaultFile file, String reason) {
+        if (auditManager != null) {
+            auditManager.logFileOperation("SCRUB", file.getOriginalName(), file.getFileId(), file.getSize(), false, reason);
+        }
+        ScrubListener current = listener;
+        if (current != null) {
+            current.onCorruptFile(file, reason);
+        }
+    }
+
+    private void waitWhileBusy() throws InterruptedException {
+        while (busySignal.getAsBoolean()) {
+            if (stopped) {
+                throw new CancellationException("Scrub stopped");
+            }
+            Thread.sleep(BUSY_POLL_MILLIS);
+        }
+        if (stopped) {
+            throw new CancellationException("Scrub stopped");
+        }
+    }
+
+    /**
+     * Sleeps as reads get ahead of the budget; time spent waiting for the user is not credited
+     */
+    private final class Pacer {
+        private long startNanos = System.nanoTime();
+        private long bytes;
+
+        void onRead(int count) {
+            try {
+                if (stopped) {
+                    throw new CancellationException("Scrub stopped");
+                }
+                if (busySignal.getAsBoolean()) {
+                    waitWhileBusy();
+                    startNanos = System.nanoTime();
+                    bytes = 0;
+                }
+                bytes += count;
+                long aheadNanos = (long) (bytes / bytesPerSecond * 1e9) - (System.nanoTime() - startNanos);
+                if (aheadNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Scrub stopped");
+            }
+        }
+    }
+
+    private Checkpoint loadCheckpoint() throws Exception {
+        if (!Files.exists(checkpointPath)) {
+            return new Checkpoint();
+        }
+        byte[] plaintext;
+        try {
+            plaintext = cryptoManager.decrypt(Files.readAllBytes(checkpointPath), checkpointKey, AAD);
+        } catch (GeneralSecurityException e) {
+            // Sealed under another vault key or damaged; start over rather than fail every pass
+            return new Checkpoint();
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plaintext))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readByte() != VERSION) {
+                return new Checkpoint();
+            }
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.startedAt = in.readLong();
+            checkpoint.lastFileId = in.readBoolean() ? in.readUTF() : null;
+            checkpoint.filesChecked = in.readInt();
+            checkpoint.bytesChecked = in.readLong();
+            int corrupt = in.readInt();
+            for (int i = 0; i < corrupt; i++) {
+                checkpoint.corruptFileIds.add(in.readUTF());
+            }
+            if (in.readBoolean()) {
+                long startedAt = in.readLong();
+                long completedAt = in.readLong();
+                int filesChecked = in.readInt();
+                long bytesChecked = in.readLong();
+                List<String> corruptFileIds = new ArrayList<>();
+                for (int i = in.readInt(); i > 0; i--) {
+                    corruptFileIds.add(in.readUTF());
+                }
+                checkpoint.last = new Report(startedAt, completedAt, filesChecked, bytesChecked, corruptFileIds);
+            }
+            return checkpoint;
+        } finally {
+            cryptoManager.zeroize(plaintext);
+        }
+    }
+
+    private void saveCheckpoint(Checkpoint checkpoint) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(checkpoint.startedAt);
+            out.writeBoolean(checkpoint.lastFileId != null);
+            if (checkpoint.lastFileId != null) {
+                out.writeUTF(checkpoint.lastFileId);
+            }
+            out.writeInt(checkpoint.filesChecked);
+            out.writeLong(checkpoint.bytesChecked);
+            out.writeInt(checkpoint.corruptFileIds.size());
+            for (String fileId : checkpoint.corruptFileIds) {
+                out.writeUTF(fileId);
+            }
+            Report last = checkpoint.last;
+            out.writeBoolean(last != null);
+            if (last != null) {
+                out.writeLong(last.getStartedAt());
+                out.writeLong(last.getCompletedAt());
+                out.writeInt(last.getFilesChecked());
+                out.writeLong(last.getBytesChecked());
+                out.writeInt(last.getCorruptFileIds().size());
+                for (String fileId : last.getCorruptFileIds()) {
+                    out.writeUTF(fileId);
+                }
+            }
+        }
+        byte[] plaintext = buffer.toByteArray();
+        try {
+            byte[] sealed = cryptoManager.encrypt(plaintext, checkpointKey, AAD);
+            Path tempPath = Paths.get(checkpointPath + ".tmp");
+            Files.write(tempPath, sealed);
+            Files.move(tempPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            cryptoManager.zeroize(plaintext);
+        }
+    }
+
+    /**
+     * Progress of the pass in flight (startedAt > 0) and the totals of the last completed one
+     */
+    private static final class Checkpoint {
+        private long startedAt;
+        private String lastFileId;
+        private int filesChecked;
+        private long bytesChecked;
+        private final List<String> corruptFileIds = new ArrayList<>();
+        private Report last;
+
+        boolean inProgress() {
+            return startedAt > 0;
+        }
+
+        void begin(long now) {
+            startedAt = now;
+            lastFileId = null;
+            filesChecked = 0;
+            bytesChecked = 0;
+            corruptFileIds.clear();
+        }
+
+        void advance(VaultFile file) {
+            lastFileId = file.getFileId();
+            filesChecked++;
+            bytesChecked += file.getSize();
+        }
+
+        Report complete(long now) {
+            last = new Report(startedAt, now, filesChecked, bytesChecked, corruptFileIds);
+            begin(0);
+            return last;
+        }
+    }
+}
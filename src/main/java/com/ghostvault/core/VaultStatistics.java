@@ -0,0 +1,248 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running totals over the metadata registry
+ *
+ * File count, total size and per-extension and per-category histograms are adjusted on
+ * every add and remove, so reading them never walks the registry or the files directory.
+ * The totals are saved in the metadata summary at each checkpoint.
+ */
+public final class VaultStatistics {
+
+    private long fileCount;
+    private long totalSize;
+    // {files, bytes} per key
+    private final Map<String, long[]> extensions = new HashMap<>();
+    private final Map<VaultFile.FileCategory, long[]> categories = new EnumMap<>(VaultFile.FileCategory.class);
+    private Snapshot snapshot;
+
+    VaultStatistics() {
+    }
+
+    /**
+     * Totals over a whole registry, for when none were saved
+     */
+    static VaultStatistics of(Collection<VaultFile> files) {
+        VaultStatistics statistics = new VaultStatistics();
+        for (VaultFile file : files) {
+            statistics.add(file);
+        }
+        return statistics;
+    }
+
+    /**
+     * Resume from totals saved at a checkpoint
+     */
+    static VaultStatistics from(Snapshot saved) {
+        VaultStatistics statistics = new VaultStatistics();
+        statistics.fileCount = saved.fileCount;
+        statistics.totalSize = saved.totalSize;
+        for (Map.Entry<String, Long> entry : saved.filesByExtension.entrySet()) {
+            statistics.extensions.put(entry.getKey(),
+                new long[] {entry.getValue(), saved.bytesByExtension.getOrDefault(entry.getKey(), 0L)});
+        }
+        for (Map.Entry<VaultFile.FileCategory, Long> entry : saved.filesByCategory.entrySet()) {
+            statistics.categories.put(entry.getKey(),
+                new long[] {entry.getValue(), saved.bytesByCategory.getOrDefault(entry.getKey(), 0L)});
+        }
+        statistics.snapshot = saved;
+        return statistics;
+    }
+
+    synchronized void add(VaultFile file) {
+        adjust(file, 1);
+    }
+
+    synchronized void remove(VaultFile file) {
+        adjust(file, -1);
+    }
+
+    /**
+     * Account for a registry put that may have replaced an earlier entry
+     */
+    synchronized void replace(VaultFile previous, VaultFile file) {
+        if (previous != null) {
+            adjust(previous, -1);
+        }
+        if (file != null) {
+            adjust(file, 1);
+        }
+    }
+
+    synchronized void clear() {
+        fileCount = 0;
+        totalSize = 0;
+        extensions.clear();
+        categories.clear();
+        snapshot = null;
+    }
+
+    /**
+     * Current totals; the copy is made once per change, so repeated reads are O(1)
+     */
+    public synchronized Snapshot snapshot() {
+        if (snapshot == null) {
+            Map<String, Long> filesByExtension = new HashMap<>();
+            Map<String, Long> bytesByExtension = new HashMap<>();
+            extensions.forEach((extension, bucket) -> {
+                filesByExtension.put(extension, bucket[0]);
+                bytesByExtension.put(extension, bucket[1]);
+            });
+            Map<VaultFile.FileCategory, Long> filesByCategory = new EnumMap<>(VaultFile.FileCategory.class);
+            Map<VaultFile.FileCategory, Long> bytesByCategory = new EnumMap<>(VaultFile.FileCategory.class);
+            categories.forEach((category, bucket) -> {
+                filesByCategory.put(category, bucket[0]);
+                bytesByCategory.put(category, bucket[1]);
+            });
+            snapshot = new Snapshot(fileCount, totalSize, filesByExtension, bytesByExtension,
+                filesByCategory, bytesByCategory);
+        }
+        return snapshot;
+    }
+
+    private void adjust(VaultFile file, int sign) {
+        fileCount += sign;
+        totalSize += sign * file.getSize();
+        adjust(extensions, file.getExtension(), file.getSize(), sign);
+        adjust(categories, file.getCategory(), file.getSize(), sign);
+        snapshot = null;
+    }
+
+    private static <K> void adjust(Map<K, long[]> histogram, K key, long size, int sign) {
+        long[] bucket = histogram.computeIfAbsent(key, k -> new long[2]);
+        bucket[0] += sign;
+        bucket[1] += sign * size;
+        if (bucket[0] <= 0) {
+            histogram.remove(key);
+        }
+    }
+
+    /**
+     * Immutable view of the totals at one point in time
+     */
+    public static final class Snapshot {
+        private final long fileCount;
+        private final long totalSize;
+        private final Map<String, Long> filesByExtension;
+        private final Map<String, Long> bytesByExtension;
+        private final Map<VaultFile.FileCategory, Long> filesByCategory;
+        private final Map<VaultFile.FileCategory, Long> bytesByCategory;
+
+        private Snapshot(long fileCount, long totalSize,
+                         Map<String, Long> filesByExtension, Map<String, Long> bytesByExtension,
+                         Map<VaultFile.FileCategory, Long> filesByCategory,
+                         Map<VaultFile.FileCategory, Long> bytesByCategory) {
+            this.fileCount = fileCount;
+            this.totalSize = totalSize;
+            this.filesByExtension = Collections.unmodifiableMap(filesByExtension);
+            this.bytesByExtension = Collections.unmodifiableMap(bytesByExtension);
+            this.filesByCategory = Collections.unmodifiableMap(filesByCategory);
+            this.bytesByCategory = Collections.unmodifiableMap(bytesByCategory);
+        }
+
+        public int getFileCount() { return (int) fileCount; }
+        public long getTotalSize() { return totalSize; }
+
+        /**
+         * Number of distinct extensions, counting files without one as a single extension ""
+         */
+        public int getExtensionCount() { return filesByExtension.size(); }
+
+        public Map<String, Long> getFilesByExtension() { return filesByExtension; }
+        public Map<String, Long> getBytesByExtension() { return bytesByExtension; }
+        public Map<VaultFile.FileCategory, Long> getFilesByCategory() { return filesByCategory; }
+        public Map<VaultFile.FileCategory, Long> getBytesByCategory() { return bytesByCategory; }
+
+        /**
+         * Encode as varints: count, size, then (name, files, bytes) per extension and per category
+         */
+        byte[] encode() {
+            int capacity = 2 * 10 + 2 * 10;
+            for (String extension : filesByExtension.keySet()) {
+                capacity += 30 + extension.length() * 3;
+            }
+            capacity += filesByCategory.size() * 50;
+
+            ByteBuffer out = ByteBuffer.allocate(capacity);
+            MetadataCodec.writeVarLong(out, fileCount);
+            MetadataCodec.writeVarLong(out, totalSize);
+            MetadataCodec.writeVarLong(out, filesByExtension.size());
+            for (Map.Entry<String, Long> entry : filesByExtension.entrySet()) {
+                writeString(out, entry.getKey());
+                MetadataCodec.writeVarLong(out, entry.getValue());
+                MetadataCodec.writeVarLong(out, bytesByExtension.get(entry.getKey()));
+            }
+            MetadataCodec.writeVarLong(out, filesByCategory.size());
+            for (Map.Entry<VaultFile.FileCategory, Long> entry : filesByCategory.entrySet()) {
+                writeString(out, entry.getKey().name());
+                MetadataCodec.writeVarLong(out, entry.getValue());
+                MetadataCodec.writeVarLong(out, bytesByCategory.get(entry.getKey()));
+            }
+            return Arrays.copyOf(out.array(), out.position());
+        }
+
+        static Snapshot decode(ByteBuffer in) throws IOException {
+            long fileCount = MetadataCodec.readVarLong(in);
+            long totalSize = MetadataCodec.readVarLong(in);
+            Map<String, Long> filesByExtension = new HashMap<>();
+            Map<String, Long> bytesByExtension = new HashMap<>();
+            for (long i = checkedCount(in); i > 0; i--) {
+                String extension = readString(in);
+                filesByExtension.put(extension, MetadataCodec.readVarLong(in));
+                bytesByExtension.put(extension, MetadataCodec.readVarLong(in));
+            }
+            Map<VaultFile.FileCategory, Long> filesByCategory = new EnumMap<>(VaultFile.FileCategory.class);
+            Map<VaultFile.FileCategory, Long> bytesByCategory = new EnumMap<>(VaultFile.FileCategory.class);
+            for (long i = checkedCount(in); i > 0; i--) {
+                VaultFile.FileCategory category;
+                try {
+                    category = VaultFile.FileCategory.valueOf(readString(in));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown file category in statistics", e);
+                }
+                filesByCategory.put(category, MetadataCodec.readVarLong(in));
+                bytesByCategory.put(category, MetadataCodec.readVarLong(in));
+            }
+            return new Snapshot(fileCount, totalSize, filesByExtension, bytesByExtension,
+                filesByCategory, bytesByCategory);
+        }
+
+        private static void writeString(ByteBuffer out, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            MetadataCodec.writeVarLong(out, bytes.length);
+            out.put(bytes);
+        }
+
+        private static String readString(ByteBuffer in) throws IOException {
+            byte[] bytes = new byte[(int) checkedCount(in)];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static long checkedCount(ByteBuffer in) throws IOException {
+            long count = MetadataCodec.readVarLong(in);
+            if (count < 0 || count > in.remaining()) {
+                throw new IOException("Invalid count in statistics: " + count);
+            }
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("VaultStatistics{files=%d, size=%d, extensions=%d}",
+                fileCount, totalSize, filesByExtension.size());
+        }
+    }
+}
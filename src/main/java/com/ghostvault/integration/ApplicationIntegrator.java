@@ -12,10 +12,17 @@ import com.ghostvault.ui.*;
 import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.PasswordField;
+import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
 
 import javax.crypto.SecretKey;
+import java.util.Arrays;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -125,6 +132,7 @@ public class ApplicationIntegrator {
         // Data management
         fileManager = new FileManager(AppConfig.VAULT_DIR);
         metadataManager = new MetadataManager(AppConfig.METADATA_FILE);
+        fileManager.setMetadataManager(metadataManager);
         
         // Audit and session management
         auditManager = new AuditManager();
@@ -526,14 +534,22 @@ public class ApplicationIntegrator {
             return;
         }
         
+        // Key derivation, detection and key unwrapping all run off the FX thread
         CompletableFuture.supplyAsync(() -> {
             return errorHandler.handleWithRecovery("password_validation", 
-                () -> passwordManager.detectPassword(password.toCharArray()), 
+                () -> {
+                    char[] chars = password.toCharArray();
+                    try {
+                        return passwordManager.authenticate(chars);
+                    } finally {
+                        Arrays.fill(chars, '\0');
+                    }
+                }, 
                 null);
-        }, backgroundExecutor).thenAccept(passwordType -> {
+        }, backgroundExecutor).thenAccept(result -> {
             Platform.runLater(() -> {
-                switch (passwordType) {
-                    case MASTER -> handleMasterPasswordLogin(password);
+                switch (result.getType()) {
+                    case MASTER -> handleMasterPasswordLogin(result.getKey());
                     case PANIC -> handlePanicPasswordLogin();
                     case DECOY -> handleDecoyPasswordLogin(password);
                     case INVALID -> handleInvalidPassword();
@@ -552,10 +568,10 @@ public class ApplicationIntegrator {
     /**
      * Handle master password login
      */
-    private void handleMasterPasswordLogin(String password) {
+    private void handleMasterPasswordLogin(SecretKey vaultKey) {
         try {
-            // Unwrap Vault Master Key
-            currentKey = passwordManager.unwrapVMK(password.toCharArray());
+            // Vault Master Key, unwrapped during authentication
+            currentKey = vaultKey;
             
             // Reset security attempts on successful login
             securityAttemptManager.resetAttempts();
@@ -581,6 +597,9 @@ public class ApplicationIntegrator {
             // Show vault interface
             showVaultInterface(false); // false = not decoy mode
             
+            // Finish a KDF upgrade the master login started
+            Platform.runLater(this::showPasswordUpgradeDialog);
+            
         } catch (Exception e) {
             errorHandler.handleError("Master login", e);
             securityAttemptManager.recordFailedAttempt("Master password validation failed", "System");
@@ -852,6 +871,74 @@ public class ApplicationIntegrator {
         });
     }
     
+    /**
+     * Ask for the passwords still on the old KDF parameters
+     * 
+     * Until every password is upgraded each login derives its key twice, and the panic
+     * and decoy passwords are rarely entered, so the upgrade is finished here at once.
+     */
+    private void showPasswordUpgradeDialog() {
+        Set<PasswordManager.PasswordType> pending = passwordManager.getPendingUpgrades();
+        pending.remove(PasswordManager.PasswordType.MASTER);
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.initOwner(primaryStage);
+        dialog.setTitle("Security Upgrade");
+        dialog.setHeaderText("Re-enter your other passwords to finish upgrading key derivation.\n"
+            + "Until then every login takes about twice as long.");
+        
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        PasswordField panicField = new PasswordField();
+        PasswordField decoyField = new PasswordField();
+        int row = 0;
+        if (pending.contains(PasswordManager.PasswordType.PANIC)) {
+            grid.addRow(row++, new Label("Panic password:"), panicField);
+        }
+        if (pending.contains(PasswordManager.PasswordType.DECOY)) {
+            grid.addRow(row, new Label("Decoy password:"), decoyField);
+        }
+        dialog.getDialogPane().setContent(grid);
+        ButtonType upgradeButton = new ButtonType("Upgrade", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().setAll(upgradeButton, new ButtonType("Later", ButtonBar.ButtonData.CANCEL_CLOSE));
+        
+        dialog.showAndWait().filter(response -> response == upgradeButton).ifPresent(response -> {
+            char[] panic = panicField.getText().toCharArray();
+            char[] decoy = decoyField.getText().toCharArray();
+            panicField.clear();
+            decoyField.clear();
+            CompletableFuture.supplyAsync(() -> {
+                try {
+                    boolean upgraded = true;
+                    if (pending.contains(PasswordManager.PasswordType.PANIC)) {
+                        upgraded &= panic.length > 0 && passwordManager.upgradePassword(PasswordManager.PasswordType.PANIC, panic);
+                    }
+                    if (pending.contains(PasswordManager.PasswordType.DECOY)) {
+                        upgraded &= decoy.length > 0 && passwordManager.upgradePassword(PasswordManager.PasswordType.DECOY, decoy);
+                    }
+                    return upgraded;
+                } catch (Exception e) {
+                    System.err.println("⚠️ Password upgrade failed: " + e.getMessage());
+                    return false;
+                } finally {
+                    Arrays.fill(panic, '\0');
+                    Arrays.fill(decoy, '\0');
+                }
+            }, backgroundExecutor).thenAccept(upgraded -> Platform.runLater(() -> {
+                if (upgraded) {
+                    notificationManager.showSuccess("Security Upgrade", "All passwords now use the new key derivation");
+                } else {
+                    notificationManager.showWarning("Security Upgrade",
+                        "Some passwords did not match and were not upgraded; you will be asked again next login");
+                }
+            }));
+        });
+    }
+    
     /**
      * Show login error
      */
@@ -18,6 +18,11 @@ public class VaultFile implements Serializable {
     private final String hash;
     private final long uploadTime;
     private String tags;
+    private byte[] wrappedKey;
+    private int blockSize;
+    private int packId;
+    private long packOffset;
+    private long packLength;
     
     public VaultFile(String originalName, String fileId, String encryptedName, 
                      long size, String hash, long uploadTime) {
@@ -39,11 +44,49 @@ public class VaultFile implements Serializable {
     public long getUploadTime() { return uploadTime; }
     public String getTags() { return tags; }
     
+    /**
+     * Data key wrapped by the vault keyring, or null if the file is encrypted under the vault key
+     */
+    public byte[] getWrappedKey() { return wrappedKey; }
+    
+    /**
+     * Block size the hash is a Merkle root over, or 0 if the hash is a plain SHA-256
+     */
+    public int getBlockSize() { return blockSize; }
+    
+    /**
+     * Pack file holding the ciphertext, or 0 if it is stored as a file of its own
+     */
+    public int getPackId() { return packId; }
+    public long getPackOffset() { return packOffset; }
+    public long getPackLength() { return packLength; }
+    
+    public boolean isPacked() {
+        return packId > 0;
+    }
+    
     // Setters
     public void setTags(String tags) { 
         this.tags = tags != null ? tags : ""; 
     }
     
+    public void setWrappedKey(byte[] wrappedKey) {
+        this.wrappedKey = wrappedKey;
+    }
+    
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+    
+    /**
+     * Record where the ciphertext lies within a pack file
+     */
+    public void setPackLocation(int packId, long offset, long length) {
+        this.packId = packId;
+        this.packOffset = offset;
+        this.packLength = length;
+    }
+    
     /**
      * Get file extension from original name
      */
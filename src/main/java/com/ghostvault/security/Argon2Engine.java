@@ -0,0 +1,375 @@
+package com.ghostvault.security;
+
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Argon2id (RFC 9106, version 0x13) with each lane filled on its own thread
+ *
+ * Bouncy Castle's Argon2BytesGenerator computes the same function, but it fills the lanes
+ * one after another, so raising parallelism changes the output without shortening the
+ * wall time. Here every slice of memory is filled by one task per lane, and the tasks meet
+ * at the slice boundaries, which is where the algorithm lets lanes synchronize. The output
+ * does not depend on the number of threads, and the tests check it against Bouncy Castle.
+ */
+final class Argon2Engine {
+
+    static final int VERSION = 0x13;
+
+    private static final int TYPE_ID = 2;
+    private static final int SYNC_POINTS = 4;
+    private static final int BLOCK_WORDS = 128;
+    private static final int BLOCK_BYTES = 1024;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final ExecutorService LANES = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "GhostVault-Argon2-" + THREAD_COUNTER.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int lanes;
+    private final int passes;
+    private final int segmentLength;
+    private final int laneLength;
+    private final int blockCount;
+    private final long[] memory;
+
+    private Argon2Engine(int memoryKb, int iterations, int parallelism) {
+        int blocks = Math.max(memoryKb, 2 * SYNC_POINTS * parallelism);
+        this.lanes = parallelism;
+        this.passes = iterations;
+        this.segmentLength = blocks / (parallelism * SYNC_POINTS);
+        this.laneLength = segmentLength * SYNC_POINTS;
+        this.blockCount = laneLength * parallelism;
+        if ((long) blockCount * BLOCK_WORDS > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Argon2 memory too large: " + memoryKb + " KB");
+        }
+        this.memory = new long[blockCount * BLOCK_WORDS];
+    }
+
+    /**
+     * Compute an Argon2id tag
+     *
+     * @param memoryKb memory cost in KiB (one 1 KiB block each)
+     * @param iterations number of passes over memory
+     * @param parallelism number of lanes, filled concurrently
+     */
+    static byte[] hash(byte[] password, byte[] salt, int memoryKb, int iterations, int parallelism, int outLength)
+            throws GeneralSecurityException {
+        if (parallelism < 1 || iterations < 1 || outLength < 4 || salt.length < 8) {
+            throw new IllegalArgumentException("Invalid Argon2 parameters");
+        }
+
+        Argon2Engine engine = new Argon2Engine(memoryKb, iterations, parallelism);
+        byte[] h0 = initialHash(password, salt, memoryKb, iterations, parallelism, outLength);
+        try {
+            engine.initialize(h0);
+            engine.fill();
+            return engine.finish(outLength);
+        } finally {
+            Arrays.fill(h0, (byte) 0);
+            Arrays.fill(engine.memory, 0L);
+        }
+    }
+
+    private static byte[] initialHash(byte[] password, byte[] salt, int memoryKb, int iterations,
+                                      int parallelism, int outLength) {
+        Blake2bDigest digest = new Blake2bDigest(512);
+        updateInt(digest, parallelism);
+        updateInt(digest, outLength);
+        updateInt(digest, memoryKb);
+        updateInt(digest, iterations);
+        updateInt(digest, VERSION);
+        updateInt(digest, TYPE_ID);
+        updateInt(digest, password.length);
+        digest.update(password, 0, password.length);
+        updateInt(digest, salt.length);
+        digest.update(salt, 0, salt.length);
+        updateInt(digest, 0); // no secret
+        updateInt(digest, 0); // no associated data
+
+        byte[] h0 = new byte[64];
+        digest.doFinal(h0, 0);
+        return h0;
+    }
+
+    private void initialize(byte[] h0) {
+        byte[] block = new byte[BLOCK_BYTES];
+        byte[] suffix = new byte[8];
+        for (int lane = 0; lane < lanes; lane++) {
+            for (int i = 0; i < 2; i++) {
+                intToLittleEndian(i, suffix, 0);
+                intToLittleEndian(lane, suffix, 4);
+                variableHash(block, h0, suffix);
+                int offset = (lane * laneLength + i) * BLOCK_WORDS;
+                for (int w = 0; w < BLOCK_WORDS; w++) {
+                    memory[offset + w] = littleEndianToLong(block, w * 8);
+                }
+            }
+        }
+        Arrays.fill(block, (byte) 0);
+    }
+
+    private void fill() throws GeneralSecurityException {
+        for (int pass = 0; pass < passes; pass++) {
+            for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                if (lanes == 1) {
+                    fillSegment(pass, 0, slice);
+                    continue;
+                }
+
+                List<Callable<Void>> tasks = new ArrayList<>(lanes);
+                for (int lane = 0; lane < lanes; lane++) {
+                    int p = pass, l = lane, s = slice;
+                    tasks.add(() -> {
+                        fillSegment(p, l, s);
+                        return null;
+                    });
+                }
+                try {
+                    for (Future<Void> future : LANES.invokeAll(tasks)) {
+                        future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new GeneralSecurityException("Key derivation interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new GeneralSecurityException("Key derivation failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    private void fillSegment(int pass, int lane, int slice) {
+        long[] r = new long[BLOCK_WORDS];
+        long[] q = new long[BLOCK_WORDS];
+
+        // Argon2id: the first half of the first pass takes its references from a
+        // password-independent stream so it leaks nothing through memory access timing
+        boolean independent = pass == 0 && slice < SYNC_POINTS / 2;
+        long[] zero = null;
+        long[] input = null;
+        long[] addresses = null;
+        if (independent) {
+            zero = new long[BLOCK_WORDS];
+            input = new long[BLOCK_WORDS];
+            addresses = new long[BLOCK_WORDS];
+            input[0] = pass;
+            input[1] = lane;
+            input[2] = slice;
+            input[3] = blockCount;
+            input[4] = passes;
+            input[5] = TYPE_ID;
+        }
+
+        int start = 0;
+        if (pass == 0 && slice == 0) {
+            start = 2;
+            if (independent) {
+                nextAddresses(zero, input, addresses, r, q);
+            }
+        }
+
+        int current = lane * laneLength + slice * segmentLength + start;
+        int previous = current % laneLength == 0 ? current + laneLength - 1 : current - 1;
+        for (int i = start; i < segmentLength; i++, current++, previous++) {
+            if (current % laneLength == 1) {
+                previous = current - 1;
+            }
+
+            long pseudoRandom;
+            if (independent) {
+                if (i % BLOCK_WORDS == 0) {
+                    nextAddresses(zero, input, addresses, r, q);
+                }
+                pseudoRandom = addresses[i % BLOCK_WORDS];
+            } else {
+                pseudoRandom = memory[previous * BLOCK_WORDS];
+            }
+
+            int refLane = pass == 0 && slice == 0 ? lane : (int) ((pseudoRandom >>> 32) % lanes);
+            int refIndex = referenceIndex(pass, slice, i, pseudoRandom & 0xFFFFFFFFL, refLane == lane);
+            int reference = refLane * laneLength + refIndex;
+            fillBlock(memory, previous * BLOCK_WORDS, memory, reference * BLOCK_WORDS,
+                memory, current * BLOCK_WORDS, pass != 0, r, q);
+        }
+    }
+
+    private static void nextAddresses(long[] zero, long[] input, long[] addresses, long[] r, long[] q) {
+        input[6]++;
+        fillBlock(zero, 0, input, 0, addresses, 0, false, r, q);
+        fillBlock(zero, 0, addresses, 0, addresses, 0, false, r, q);
+    }
+
+    private int referenceIndex(int pass, int slice, int index, long pseudoRandom, boolean sameLane) {
+        int areaSize;
+        if (pass == 0) {
+            if (slice == 0) {
+                areaSize = index - 1;
+            } else if (sameLane) {
+                areaSize = slice * segmentLength + index - 1;
+            } else {
+                areaSize = slice * segmentLength + (index == 0 ? -1 : 0);
+            }
+        } else if (sameLane) {
+            areaSize = laneLength - segmentLength + index - 1;
+        } else {
+            areaSize = laneLength - segmentLength + (index == 0 ? -1 : 0);
+        }
+
+        long relative = (pseudoRandom * pseudoRandom) >>> 32;
+        relative = areaSize - 1 - (((long) areaSize * relative) >>> 32);
+        int startPosition = pass != 0 && slice != SYNC_POINTS - 1 ? (slice + 1) * segmentLength : 0;
+        return (int) ((startPosition + relative) % laneLength);
+    }
+
+    private byte[] finish(int outLength) {
+        long[] last = new long[BLOCK_WORDS];
+        for (int lane = 0; lane < lanes; lane++) {
+            int offset = (lane * laneLength + laneLength - 1) * BLOCK_WORDS;
+            for (int w = 0; w < BLOCK_WORDS; w++) {
+                last[w] ^= memory[offset + w];
+            }
+        }
+
+        byte[] block = new byte[BLOCK_BYTES];
+        for (int w = 0; w < BLOCK_WORDS; w++) {
+            longToLittleEndian(last[w], block, w * 8);
+        }
+        byte[] tag = new byte[outLength];
+        variableHash(tag, block);
+        Arrays.fill(block, (byte) 0);
+        Arrays.fill(last, 0L);
+        return tag;
+    }
+
+    /**
+     * Compression function G: out = P(x ^ y) ^ x ^ y, optionally xored into out's old value
+     */
+    private static void fillBlock(long[] x, int xOff, long[] y, int yOff, long[] out, int outOff,
+                                  boolean withXor, long[] r, long[] q) {
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            r[i] = x[xOff + i] ^ y[yOff + i];
+            q[i] = r[i];
+        }
+
+        for (int i = 0; i < 8; i++) {
+            int b = 16 * i;
+            round(q, b, b + 1, b + 2, b + 3, b + 4, b + 5, b + 6, b + 7,
+                b + 8, b + 9, b + 10, b + 11, b + 12, b + 13, b + 14, b + 15);
+        }
+        for (int i = 0; i < 8; i++) {
+            int c = 2 * i;
+            round(q, c, c + 1, c + 16, c + 17, c + 32, c + 33, c + 48, c + 49,
+                c + 64, c + 65, c + 80, c + 81, c + 96, c + 97, c + 112, c + 113);
+        }
+
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            out[outOff + i] = withXor ? out[outOff + i] ^ q[i] ^ r[i] : q[i] ^ r[i];
+        }
+    }
+
+    private static void round(long[] v, int v0, int v1, int v2, int v3, int v4, int v5, int v6, int v7,
+                              int v8, int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+        g(v, v0, v4, v8, v12);
+        g(v, v1, v5, v9, v13);
+        g(v, v2, v6, v10, v14);
+        g(v, v3, v7, v11, v15);
+        g(v, v0, v5, v10, v15);
+        g(v, v1, v6, v11, v12);
+        g(v, v2, v7, v8, v13);
+        g(v, v3, v4, v9, v14);
+    }
+
+    private static void g(long[] v, int a, int b, int c, int d) {
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+    }
+
+    private static long blaMka(long x, long y) {
+        return x + y + 2 * (x & 0xFFFFFFFFL) * (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Variable-length hash H' built from BLAKE2b
+     */
+    private static void variableHash(byte[] out, byte[]... parts) {
+        if (out.length <= 64) {
+            Blake2bDigest digest = new Blake2bDigest(out.length * 8);
+            updateInt(digest, out.length);
+            for (byte[] part : parts) {
+                digest.update(part, 0, part.length);
+            }
+            digest.doFinal(out, 0);
+            return;
+        }
+
+        Blake2bDigest digest = new Blake2bDigest(512);
+        byte[] v = new byte[64];
+        updateInt(digest, out.length);
+        for (byte[] part : parts) {
+            digest.update(part, 0, part.length);
+        }
+        digest.doFinal(v, 0);
+        System.arraycopy(v, 0, out, 0, 32);
+
+        int r = (out.length + 31) / 32 - 2;
+        int position = 32;
+        for (int i = 2; i <= r; i++) {
+            digest.update(v, 0, v.length);
+            digest.doFinal(v, 0);
+            System.arraycopy(v, 0, out, position, 32);
+            position += 32;
+        }
+
+        Blake2bDigest last = new Blake2bDigest((out.length - position) * 8);
+        last.update(v, 0, v.length);
+        last.doFinal(out, position);
+        Arrays.fill(v, (byte) 0);
+    }
+
+    private static void updateInt(Blake2bDigest digest, int value) {
+        byte[] bytes = new byte[4];
+        intToLittleEndian(value, bytes, 0);
+        digest.update(bytes, 0, 4);
+    }
+
+    private static void intToLittleEndian(int value, byte[] out, int offset) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static void longToLittleEndian(long value, byte[] out, int offset) {
+        for (int i = 0; i < 8; i++) {
+            out[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static long littleEndianToLong(byte[] in, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (in[offset + i] & 0xFFL);
+        }
+        return value;
+    }
+}
@@ -5,6 +5,8 @@ import com.ghostvault.config.AppConfig;
 import javax.crypto.*;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.DrbgParameters;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -20,6 +22,10 @@ import java.util.Arrays;
  * - Provides built-in authentication without separate HMAC
  * - Simpler and more secure API
  * 
+ * Each thread reuses one Cipher instance and draws IVs from its own DRBG, and the
+ * ByteBuffer methods encrypt and decrypt in place without intermediate arrays, so
+ * small records (audit entries, journal records) cost no allocations of their own.
+ * 
  * @version 2.0.0 - AEAD Implementation
  */
 public class CryptoManager {
@@ -29,6 +35,13 @@ public class CryptoManager {
     private static final String AEAD_TRANSFORMATION = "AES/GCM/NoPadding";
     private static final int GCM_IV_LENGTH = 12; // 96 bits (recommended for GCM)
     private static final int GCM_TAG_LENGTH = 128; // 128 bits authentication tag
+    private static final int GCM_TAG_BYTES = GCM_TAG_LENGTH / 8;
+    
+    // Cipher.getInstance is a provider lookup; each thread keeps one and re-initializes it
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<>();
+    
+    // IVs come from a per-thread DRBG so concurrent callers do not contend on one generator
+    private static final ThreadLocal<IvGenerator> IV_GENERATORS = ThreadLocal.withInitial(IvGenerator::new);
     
     private SecretKey masterKey;
     private final SecureRandom secureRandom;
@@ -73,29 +86,88 @@ public class CryptoManager {
             throw new IllegalArgumentException("Key cannot be null");
         }
         
-        // Generate random IV (12 bytes for GCM)
-        byte[] iv = new byte[GCM_IV_LENGTH];
-        secureRandom.nextBytes(iv);
-        
-        // Initialize cipher
-        Cipher cipher = Cipher.getInstance(AEAD_TRANSFORMATION);
-        GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, key, gcmSpec);
+        // Write IV and ciphertext+tag straight into the result
+        byte[] result = new byte[encryptedLength(plaintext.length)];
+        IV_GENERATORS.get().next(result, 0);
+        Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, result, 0, GCM_IV_LENGTH), aad);
+        cipher.doFinal(plaintext, 0, plaintext.length, result, GCM_IV_LENGTH);
         
-        // Add AAD if provided
-        if (aad != null && aad.length > 0) {
-            cipher.updateAAD(aad);
+        return result;
+    }
+    
+    /**
+     * Encrypt the remaining bytes of src into dst as IV (12 bytes) || ciphertext+tag
+     * 
+     * src is consumed and dst advanced; nothing is allocated on the way, so callers can
+     * encrypt into pooled or direct buffers.
+     * 
+     * @return number of bytes written to dst
+     * @throws ShortBufferException if dst has less than {@link #encryptedLength} bytes remaining
+     */
+    public int encrypt(ByteBuffer src, ByteBuffer dst, SecretKey key, byte[] aad) throws GeneralSecurityException {
+        if (src == null || dst == null) {
+            throw new IllegalArgumentException("Buffers cannot be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        int length = encryptedLength(src.remaining());
+        if (dst.remaining() < length) {
+            throw new ShortBufferException("Output buffer needs " + length + " bytes");
         }
         
-        // Encrypt (includes authentication tag)
-        byte[] ciphertextWithTag = cipher.doFinal(plaintext);
-        
-        // Combine IV + ciphertext+tag
-        byte[] result = new byte[GCM_IV_LENGTH + ciphertextWithTag.length];
-        System.arraycopy(iv, 0, result, 0, GCM_IV_LENGTH);
-        System.arraycopy(ciphertextWithTag, 0, result, GCM_IV_LENGTH, ciphertextWithTag.length);
+        IvGenerator ivGenerator = IV_GENERATORS.get();
+        byte[] iv = ivGenerator.next();
+        Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv), aad);
+        dst.put(iv);
+        return GCM_IV_LENGTH + cipher.doFinal(src, dst);
+    }
+    
+    /**
+     * Decrypt the remaining bytes of src (IV || ciphertext+tag) into dst
+     * 
+     * Nothing is written to dst unless the tag verifies.
+     * 
+     * @return number of plaintext bytes written to dst
+     * @throws ShortBufferException if dst has less than {@link #decryptedLength} bytes remaining
+     */
+    public int decrypt(ByteBuffer src, ByteBuffer dst, SecretKey key, byte[] aad) throws GeneralSecurityException {
+        if (src == null || dst == null) {
+            throw new IllegalArgumentException("Buffers cannot be null");
+        }
+        if (src.remaining() < GCM_IV_LENGTH + GCM_TAG_BYTES) {
+            throw new IllegalArgumentException("Invalid ciphertext format");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        int length = decryptedLength(src.remaining());
+        if (dst.remaining() < length) {
+            throw new ShortBufferException("Output buffer needs " + length + " bytes");
+        }
         
-        return result;
+        byte[] iv = IV_GENERATORS.get().scratch();
+        src.get(iv);
+        Cipher cipher = initCipher(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv), aad);
+        try {
+            return cipher.doFinal(src, dst);
+        } catch (AEADBadTagException e) {
+            throw authenticationFailure(e);
+        }
+    }
+    
+    /**
+     * Size of IV || ciphertext+tag for a plaintext of the given length
+     */
+    public static int encryptedLength(int plaintextLength) {
+        return GCM_IV_LENGTH + plaintextLength + GCM_TAG_BYTES;
+    }
+    
+    /**
+     * Size of the plaintext inside IV || ciphertext+tag of the given length
+     */
+    public static int decryptedLength(int ciphertextLength) {
+        return ciphertextLength - GCM_IV_LENGTH - GCM_TAG_BYTES;
     }
     
     /**
@@ -113,13 +185,16 @@ public class CryptoManager {
             throw new IllegalStateException("Crypto manager not initialized with master key");
         }
         
-        byte[] combined = encrypt(plaintext, masterKey, null);
+        if (plaintext == null) {
+            throw new IllegalArgumentException("Plaintext cannot be null");
+        }
         
-        // Split into IV and ciphertext for EncryptedData compatibility
-        byte[] iv = Arrays.copyOfRange(combined, 0, GCM_IV_LENGTH);
-        byte[] ciphertextWithTag = Arrays.copyOfRange(combined, GCM_IV_LENGTH, combined.length);
+        // IV and ciphertext are kept apart for EncryptedData compatibility
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        IV_GENERATORS.get().next(iv, 0);
+        Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv), null);
         
-        return new EncryptedData(ciphertextWithTag, iv, null); // No separate HMAC in GCM
+        return new EncryptedData(cipher.doFinal(plaintext), iv, true); // No separate HMAC in GCM
     }
     
     /**
@@ -132,34 +207,23 @@ public class CryptoManager {
      * @throws GeneralSecurityException if authentication fails or decryption error
      */
     public byte[] decrypt(byte[] ivAndCiphertext, SecretKey key, byte[] aad) throws GeneralSecurityException {
-        if (ivAndCiphertext == null || ivAndCiphertext.length < GCM_IV_LENGTH + 16) {
+        if (ivAndCiphertext == null || ivAndCiphertext.length < GCM_IV_LENGTH + GCM_TAG_BYTES) {
             throw new IllegalArgumentException("Invalid ciphertext format");
         }
         if (key == null) {
             throw new IllegalArgumentException("Key cannot be null");
         }
         
-        // Extract IV and ciphertext+tag
-        byte[] iv = Arrays.copyOfRange(ivAndCiphertext, 0, GCM_IV_LENGTH);
-        byte[] ciphertextWithTag = Arrays.copyOfRange(ivAndCiphertext, GCM_IV_LENGTH, ivAndCiphertext.length);
-        
-        // Initialize cipher
-        Cipher cipher = Cipher.getInstance(AEAD_TRANSFORMATION);
-        GCMParameterSpec gcmSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.DECRYPT_MODE, key, gcmSpec);
-        
-        // Add AAD if provided
-        if (aad != null && aad.length > 0) {
-            cipher.updateAAD(aad);
-        }
+        // IV and ciphertext+tag are read in place
+        Cipher cipher = initCipher(Cipher.DECRYPT_MODE, key,
+            new GCMParameterSpec(GCM_TAG_LENGTH, ivAndCiphertext, 0, GCM_IV_LENGTH), aad);
         
         // Decrypt and verify authentication tag
         // Will throw AEADBadTagException if authentication fails
         try {
-            return cipher.doFinal(ciphertextWithTag);
-        } catch (javax.crypto.AEADBadTagException e) {
-            throw new GeneralSecurityException("Decryption failed: Invalid key or corrupted data. " +
-                "This usually indicates the wrong password was used or the data has been tampered with.", e);
+            return cipher.doFinal(ivAndCiphertext, GCM_IV_LENGTH, ivAndCiphertext.length - GCM_IV_LENGTH);
+        } catch (AEADBadTagException e) {
+            throw authenticationFailure(e);
         }
     }
     
@@ -178,24 +242,50 @@ public class CryptoManager {
             throw new IllegalStateException("Crypto manager not initialized with master key");
         }
         
-        // Combine IV and ciphertext
-        byte[] combined = new byte[encryptedData.getIv().length + encryptedData.getCiphertext().length];
-        System.arraycopy(encryptedData.getIv(), 0, combined, 0, encryptedData.getIv().length);
-        System.arraycopy(encryptedData.getCiphertext(), 0, combined, encryptedData.getIv().length, encryptedData.getCiphertext().length);
-        
-        return decrypt(combined, masterKey, null);
+        return decrypt(encryptedData, masterKey);
     }
     
     /**
      * Decrypt data with provided key (EncryptedData format)
      */
     public byte[] decrypt(EncryptedData encryptedData, SecretKey key) throws GeneralSecurityException {
-        // Combine IV and ciphertext
-        byte[] combined = new byte[encryptedData.getIv().length + encryptedData.getCiphertext().length];
-        System.arraycopy(encryptedData.getIv(), 0, combined, 0, encryptedData.getIv().length);
-        System.arraycopy(encryptedData.getCiphertext(), 0, combined, encryptedData.getIv().length, encryptedData.getCiphertext().length);
+        // Read the fields directly; the getters hand out copies
+        if (encryptedData.iv.length != GCM_IV_LENGTH || encryptedData.ciphertext.length < GCM_TAG_BYTES) {
+            throw new IllegalArgumentException("Invalid ciphertext format");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
         
-        return decrypt(combined, key, null);
+        Cipher cipher = initCipher(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, encryptedData.iv), null);
+        try {
+            return cipher.doFinal(encryptedData.ciphertext);
+        } catch (AEADBadTagException e) {
+            throw authenticationFailure(e);
+        }
+    }
+    
+    /**
+     * This thread's cipher, initialized for one operation
+     */
+    private static Cipher initCipher(int mode, SecretKey key, GCMParameterSpec spec, byte[] aad) throws GeneralSecurityException {
+        Cipher cipher = CIPHERS.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(AEAD_TRANSFORMATION);
+            CIPHERS.set(cipher);
+        }
+        cipher.init(mode, key, spec);
+        
+        // Add AAD if provided
+        if (aad != null && aad.length > 0) {
+            cipher.updateAAD(aad);
+        }
+        return cipher;
+    }
+    
+    private static GeneralSecurityException authenticationFailure(AEADBadTagException e) {
+        return new GeneralSecurityException("Decryption failed: Invalid key or corrupted data. " +
+            "This usually indicates the wrong password was used or the data has been tampered with.", e);
     }
     
     /**
@@ -264,6 +354,42 @@ public class CryptoManager {
         return masterKey;
     }
     
+    /**
+     * Per-thread IV source backed by its own DRBG instance
+     */
+    private static final class IvGenerator {
+        private final SecureRandom random;
+        private final byte[] iv = new byte[GCM_IV_LENGTH];
+        
+        IvGenerator() {
+            SecureRandom drbg;
+            try {
+                drbg = SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+            } catch (NoSuchAlgorithmException e) {
+                drbg = new SecureRandom();
+            }
+            this.random = drbg;
+        }
+        
+        /**
+         * Fresh IV in a buffer reused by this thread; GCMParameterSpec copies it
+         */
+        byte[] next() {
+            random.nextBytes(iv);
+            return iv;
+        }
+        
+        void next(byte[] out, int offset) {
+            random.nextBytes(iv);
+            System.arraycopy(iv, 0, out, offset, GCM_IV_LENGTH);
+        }
+        
+        byte[] scratch() {
+            return iv;
+        }
+    }
+    
     /**
      * Container for encrypted data (backward compatibility)
      * Note: HMAC field is deprecated and unused in GCM mode
@@ -283,6 +409,15 @@ public class CryptoManager {
             this.hmac = hmac != null ? hmac.clone() : null;
         }
         
+        /**
+         * Take ownership of freshly created arrays without copying them
+         */
+        private EncryptedData(byte[] ciphertext, byte[] iv, boolean owned) {
+            this.ciphertext = ciphertext;
+            this.iv = iv;
+            this.hmac = null;
+        }
+        
         public byte[] getCiphertext() {
             return ciphertext.clone();
         }
@@ -310,14 +445,14 @@ public class CryptoManager {
          * Create EncryptedData from combined data (IV + ciphertext)
          */
         public static EncryptedData fromCombinedData(byte[] combinedData) {
-            if (combinedData == null || combinedData.length < GCM_IV_LENGTH + 16) {
+            if (combinedData == null || combinedData.length < GCM_IV_LENGTH + GCM_TAG_BYTES) {
                 throw new IllegalArgumentException("Invalid encrypted data format");
             }
             
             byte[] iv = Arrays.copyOfRange(combinedData, 0, GCM_IV_LENGTH);
             byte[] ciphertext = Arrays.copyOfRange(combinedData, GCM_IV_LENGTH, combinedData.length);
             
-            return new EncryptedData(ciphertext, iv, null);
+            return new EncryptedData(ciphertext, iv, true);
         }
     }
 }
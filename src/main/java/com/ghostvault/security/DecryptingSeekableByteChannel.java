@@ -0,0 +1,187 @@
+package com.ghostvault.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only random-access view over a segmented vault file
+ *
+ * Only the segments a read touches are decrypted and authenticated. A small LRU
+ * cache of decrypted segments keeps sequential and nearby reads cheap; evicted
+ * segments are wiped. Use {@link java.nio.channels.Channels#newInputStream} for a
+ * matching InputStream.
+ */
+public class DecryptingSeekableByteChannel implements SeekableByteChannel {
+
+    public static final int DEFAULT_CACHED_SEGMENTS = 8;
+
+    private final FileChannel channel;
+    private final SegmentedAead aead;
+    private final Cipher cipher;
+    private final long payloadLength;
+    private final long segmentCount;
+    private final long plaintextSize;
+    private final byte[] ciphertext;
+    private final Map<Long, byte[]> cache;
+
+    private long position;
+    private boolean open = true;
+
+    /**
+     * Open a vault file for random-access decryption with the default cache size
+     */
+    public DecryptingSeekableByteChannel(Path path, SecretKey key) throws IOException, GeneralSecurityException {
+        this(FileChannel.open(path, StandardOpenOption.READ), key, DEFAULT_CACHED_SEGMENTS);
+    }
+
+    /**
+     * Wrap an open file channel; the channel is closed together with this view
+     */
+    public DecryptingSeekableByteChannel(FileChannel channel, SecretKey key, int cachedSegments)
+            throws IOException, GeneralSecurityException {
+        if (cachedSegments < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one segment");
+        }
+
+        this.channel = channel;
+        try {
+            this.aead = SegmentedAead.open(key, SegmentedAead.readHeader(channel, 0));
+            this.cipher = SegmentedAead.newCipher();
+            this.payloadLength = channel.size() - SegmentedAead.HEADER_LENGTH;
+            this.segmentCount = aead.segmentCount(payloadLength);
+            this.plaintextSize = aead.plaintextLength(payloadLength);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.ciphertext = new byte[aead.getCiphertextSegmentSize()];
+        this.cache = new LinkedHashMap<>(cachedSegments + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                if (size() > cachedSegments) {
+                    Arrays.fill(eldest.getValue(), (byte) 0);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= plaintextSize) {
+            return -1;
+        }
+
+        int total = 0;
+        while (dst.hasRemaining() && position < plaintextSize) {
+            long index = position / aead.getSegmentSize();
+            int offset = (int) (position % aead.getSegmentSize());
+            byte[] segment = segment(index);
+
+            int n = Math.min(dst.remaining(), segment.length - offset);
+            dst.put(segment, offset, n);
+            position += n;
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Return the decrypted segment, reading and authenticating it on a cache miss
+     */
+    private byte[] segment(long index) throws IOException {
+        byte[] cached = cache.get(index);
+        if (cached != null) {
+            return cached;
+        }
+
+        long offset = index * aead.getCiphertextSegmentSize();
+        int length = (int) Math.min(aead.getCiphertextSegmentSize(), payloadLength - offset);
+        ByteBuffer buffer = ByteBuffer.wrap(ciphertext, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, SegmentedAead.HEADER_LENGTH + offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated segmented file");
+            }
+        }
+
+        byte[] plaintext = new byte[length - SegmentedAead.TAG_LENGTH];
+        try {
+            aead.decryptSegment(cipher, index, index == segmentCount - 1, ciphertext, 0, length, plaintext, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        cache.put(index, plaintext);
+        return plaintext;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return plaintextSize;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        for (byte[] segment : cache.values()) {
+            Arrays.fill(segment, (byte) 0);
+        }
+        cache.clear();
+        channel.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package com.ghostvault.security;
 
-import de.mkammerer.argon2.Argon2;
-import de.mkammerer.argon2.Argon2Factory;
-
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
@@ -19,7 +16,9 @@ import java.util.Arrays;
  * 
  * SECURITY IMPROVEMENTS:
  * - Argon2id is memory-hard and resistant to GPU/ASIC attacks
- * - Automatic benchmarking to determine safe parameters
+ * - Argon2id lanes are filled on separate threads, so parallelism buys hardness
+ *   without adding unlock time
+ * - Calibration of memory and passes to a target latency on the actual machine
  * - KDF parameters stored in metadata for future-proofing
  * - Secure char[] handling throughout
  * 
@@ -123,13 +122,20 @@ public class KDF {
     private static final int DEFAULT_ARGON2_PARALLELISM = 4;     // 4 threads
     private static final int DEFAULT_PBKDF2_ITERATIONS = 600000; // 600k iterations (OWASP 2023)
     
+    // Calibration bounds
+    private static final long DEFAULT_TARGET_MS = 500;
+    private static final int MIN_ARGON2_ITERATIONS = DEFAULT_ARGON2_ITERATIONS;
+    private static final int MAX_ARGON2_ITERATIONS = 10;
+    private static final int MAX_ARGON2_PARALLELISM = 16;
+    private static final long MAX_ARGON2_MEMORY = 1048576;       // 1 GB
+    
     private static final int KEY_LENGTH = 32; // 256 bits
     private static final int SALT_LENGTH = 32; // 256 bits
     
     /**
      * Derive a key using the specified parameters
      * 
-     * @param password Password as char array (will be zeroized after use)
+     * @param password Password as char array (left intact; the caller wipes it)
      * @param params KDF parameters
      * @return Derived key (32 bytes)
      */
@@ -141,9 +147,9 @@ public class KDF {
             throw new IllegalArgumentException("KDF parameters cannot be null");
         }
         
-        // TEMPORARY FIX: Always use PBKDF2 since Argon2 library doesn't provide
-        // deterministic hashing with explicit salt in the current API
-        // TODO: Fix Argon2 implementation or switch to a different Argon2 library
+        if (params.getAlgorithm() == Algorithm.ARGON2ID) {
+            return deriveKeyArgon2(password, params);
+        }
         return deriveKeyPBKDF2(password, params);
     }
     
@@ -151,9 +157,13 @@ public class KDF {
      * Derive key using Argon2id
      */
     private static byte[] deriveKeyArgon2(char[] password, KdfParams params) throws GeneralSecurityException {
-        // TEMPORARY: Argon2 library doesn't provide deterministic hashing with explicit salt
-        // Fall back to PBKDF2 which works correctly
-        return deriveKeyPBKDF2(password, params);
+        byte[] passwordBytes = charArrayToBytes(password);
+        try {
+            return Argon2Engine.hash(passwordBytes, params.getSalt(), params.getMemory(),
+                params.getIterations(), params.getParallelism(), KEY_LENGTH);
+        } finally {
+            Arrays.fill(passwordBytes, (byte) 0);
+        }
     }
     
     /**
@@ -161,17 +171,10 @@ public class KDF {
      */
     private static byte[] deriveKeyPBKDF2(char[] password, KdfParams params) throws GeneralSecurityException {
         try {
-            // If params were created for Argon2, pbkdf2Iterations will be 0
-            // Use a reasonable default in that case
-            int iterations = params.getPbkdf2Iterations();
-            if (iterations == 0) {
-                iterations = DEFAULT_PBKDF2_ITERATIONS; // Use default PBKDF2 iterations
-            }
-            
             PBEKeySpec spec = new PBEKeySpec(
                 password,
                 params.getSalt(),
-                iterations,
+                params.getPbkdf2Iterations(),
                 KEY_LENGTH * 8 // bits
             );
             
@@ -182,7 +185,7 @@ public class KDF {
             spec.clearPassword();
             
             return hash;
-            
+        
         } catch (Exception e) {
             throw new GeneralSecurityException("PBKDF2 key derivation failed", e);
         }
@@ -214,9 +217,16 @@ public class KDF {
      * @return Benchmark result with recommended parameters
      */
     public static BenchmarkResult benchmark() {
+        return benchmark(DEFAULT_TARGET_MS);
+    }
+    
+    /**
+     * Benchmark and determine recommended KDF parameters for a target derivation time
+     */
+    public static BenchmarkResult benchmark(long targetMs) {
         // Try Argon2id first
         try {
-            return benchmarkArgon2();
+            return benchmarkArgon2(targetMs);
         } catch (Exception e) {
             // Fallback to PBKDF2 if Argon2 not available
             System.err.println("Argon2 not available, falling back to PBKDF2: " + e.getMessage());
@@ -225,54 +235,48 @@ public class KDF {
     }
     
     /**
-     * Benchmark Argon2id
+     * Calibrate Argon2id on this machine
+     * 
+     * One lane per core, so the cores share the work of each derivation. Memory is the
+     * lever attackers find most expensive, so it is doubled while a single pass stays well
+     * inside the target; the remaining budget then goes to passes. The defaults are the
+     * floor, so a slow machine gets them even if they overshoot the target.
      */
-    private static BenchmarkResult benchmarkArgon2() {
-        Argon2 argon2 = Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
-        // Use a fixed salt for benchmarking - actual salt will be provided during real usage
-        byte[] salt = new byte[SALT_LENGTH];
-        // Use a deterministic salt for benchmarking to ensure consistency
-        System.arraycopy("GhostVault_Benchmark_Salt_32B".getBytes(), 0, salt, 0, Math.min(32, "GhostVault_Benchmark_Salt_32B".getBytes().length));
-        char[] testPassword = "BenchmarkPassword123!".toCharArray();
+    private static BenchmarkResult benchmarkArgon2(long targetMs) throws GeneralSecurityException {
+        byte[] salt = benchmarkSalt();
+        byte[] testPassword = "BenchmarkPassword123!".getBytes(StandardCharsets.UTF_8);
         
-        try {
-            // Start with conservative parameters
-            int memory = DEFAULT_ARGON2_MEMORY;
-            int iterations = DEFAULT_ARGON2_ITERATIONS;
-            int parallelism = DEFAULT_ARGON2_PARALLELISM;
-            
-            // Benchmark
-            long startTime = System.currentTimeMillis();
-            argon2.hash(iterations, memory, parallelism, testPassword);
-            long duration = System.currentTimeMillis() - startTime;
-            
-            // Adjust parameters if too fast (target ~500ms)
-            if (duration < 300) {
-                // Increase memory if too fast
-                memory = Math.min(memory * 2, 131072); // Cap at 128MB
-                
-                // Re-benchmark
-                startTime = System.currentTimeMillis();
-                argon2.hash(iterations, memory, parallelism, testPassword);
-                duration = System.currentTimeMillis() - startTime;
-            }
-            
-            KdfParams params = new KdfParams(Algorithm.ARGON2ID, salt, memory, iterations, parallelism);
-            return new BenchmarkResult(params, duration);
-            
-        } finally {
-            MemoryUtils.secureWipe(testPassword);
+        int parallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_ARGON2_PARALLELISM));
+        long maxMemory = Math.min(MAX_ARGON2_MEMORY, Runtime.getRuntime().maxMemory() / 4 / 1024);
+        
+        int memory = DEFAULT_ARGON2_MEMORY;
+        long passMs = timeArgon2(testPassword, salt, memory, parallelism);
+        while (memory * 2L <= maxMemory && passMs * 2 * MIN_ARGON2_ITERATIONS <= targetMs) {
+            memory *= 2;
+            passMs = timeArgon2(testPassword, salt, memory, parallelism);
         }
+        
+        int iterations = (int) Math.max(MIN_ARGON2_ITERATIONS,
+            Math.min(MAX_ARGON2_ITERATIONS, targetMs / Math.max(1, passMs)));
+        
+        KdfParams params = new KdfParams(Algorithm.ARGON2ID, salt, memory, iterations, parallelism);
+        return new BenchmarkResult(params, passMs * iterations);
+    }
+    
+    private static long timeArgon2(byte[] password, byte[] salt, int memory, int parallelism)
+            throws GeneralSecurityException {
+        long startTime = System.nanoTime();
+        byte[] hash = Argon2Engine.hash(password, salt, memory, 1, parallelism, KEY_LENGTH);
+        long duration = (System.nanoTime() - startTime) / 1_000_000;
+        Arrays.fill(hash, (byte) 0);
+        return duration;
     }
     
     /**
      * Benchmark PBKDF2 (fallback)
      */
     private static BenchmarkResult benchmarkPBKDF2() {
-        // Use a fixed salt for benchmarking - actual salt will be provided during real usage
-        byte[] salt = new byte[SALT_LENGTH];
-        // Use a deterministic salt for benchmarking to ensure consistency
-        System.arraycopy("GhostVault_Benchmark_Salt_32B".getBytes(), 0, salt, 0, Math.min(32, "GhostVault_Benchmark_Salt_32B".getBytes().length));
+        byte[] salt = benchmarkSalt();
         char[] testPassword = "BenchmarkPassword123!".toCharArray();
         
         try {
@@ -288,7 +292,7 @@ public class KDF {
             
             KdfParams params = new KdfParams(Algorithm.PBKDF2, salt, iterations);
             return new BenchmarkResult(params, duration);
-            
+        
         } catch (Exception e) {
             // Use default parameters if benchmark fails
             KdfParams params = new KdfParams(Algorithm.PBKDF2, salt, DEFAULT_PBKDF2_ITERATIONS);
@@ -298,6 +302,16 @@ public class KDF {
         }
     }
     
+    /**
+     * Fixed salt for benchmarking - actual salt will be provided during real usage
+     */
+    private static byte[] benchmarkSalt() {
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] label = "GhostVault_Benchmark_Salt_32B".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(label, 0, salt, 0, Math.min(SALT_LENGTH, label.length));
+        return salt;
+    }
+    
     /**
      * Get default KDF parameters with provided salt (for first-time setup)
      */
@@ -306,75 +320,49 @@ public class KDF {
             throw new IllegalArgumentException("Salt must be exactly " + SALT_LENGTH + " bytes");
         }
         
-        // Try to use Argon2id by default
-        try {
-            Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
-            return new KdfParams(
-                Algorithm.ARGON2ID,
-                salt,
-                DEFAULT_ARGON2_MEMORY,
-                DEFAULT_ARGON2_ITERATIONS,
-                DEFAULT_ARGON2_PARALLELISM
-            );
-        } catch (Exception e) {
-            // Fallback to PBKDF2
-            return new KdfParams(Algorithm.PBKDF2, salt, DEFAULT_PBKDF2_ITERATIONS);
-        }
+        return new KdfParams(
+            Algorithm.ARGON2ID,
+            salt,
+            DEFAULT_ARGON2_MEMORY,
+            DEFAULT_ARGON2_ITERATIONS,
+            DEFAULT_ARGON2_PARALLELISM
+        );
     }
     
     /**
      * Get default KDF parameters (for first-time setup)
      */
     public static KdfParams getDefaultParams() {
-        byte[] salt = generateSalt();
-        
-        // Try to use Argon2id by default
-        try {
-            Argon2Factory.create(Argon2Factory.Argon2Types.ARGON2id);
-            return new KdfParams(
-                Algorithm.ARGON2ID,
-                salt,
-                DEFAULT_ARGON2_MEMORY,
-                DEFAULT_ARGON2_ITERATIONS,
-                DEFAULT_ARGON2_PARALLELISM
-            );
-        } catch (Exception e) {
-            // Fallback to PBKDF2
-            return new KdfParams(Algorithm.PBKDF2, salt, DEFAULT_PBKDF2_ITERATIONS);
-        }
+        return getDefaultParams(generateSalt());
     }
     
     /**
-     * Convert char[] to byte[] securely (UTF-8 encoding)
+     * Parameters that reproduce keys from configurations stored before Argon2id was wired in
+     * 
+     * Those configurations recorded Argon2id parameters, but every key was actually derived
+     * with PBKDF2 at the default iteration count.
      */
-    private static byte[] charArrayToBytes(char[] chars) {
-        CharBuffer charBuffer = CharBuffer.wrap(chars);
-        ByteBuffer byteBuffer = StandardCharsets.UTF_8.encode(charBuffer);
-        byte[] bytes = Arrays.copyOfRange(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit());
-        
-        // Clear buffers
-        Arrays.fill(charBuffer.array(), '\u0000');
-        Arrays.fill(byteBuffer.array(), (byte) 0);
-        
-        return bytes;
+    public static KdfParams getLegacyParams(byte[] salt) {
+        return new KdfParams(Algorithm.PBKDF2, salt, DEFAULT_PBKDF2_ITERATIONS);
     }
     
     /**
-     * Extract raw hash bytes from Argon2 encoded string
-     * Argon2 format: $argon2id$v=19$m=memory,t=iterations,p=parallelism$salt$hash
+     * Whether keys derived with these parameters should be re-derived with Argon2id
      */
-    private static byte[] extractHashFromEncoded(String encoded) {
-        // Split by $ delimiter
-        String[] parts = encoded.split("\\$");
-        
-        // The hash is the last part (Base64 encoded)
-        if (parts.length < 6) {
-            throw new IllegalArgumentException("Invalid Argon2 encoded string");
-        }
+    public static boolean needsUpgrade(KdfParams params) {
+        return params.getAlgorithm() != Algorithm.ARGON2ID;
+    }
+    
+    /**
+     * Convert char[] to byte[] securely (UTF-8 encoding); the caller's array is left intact
+     */
+    private static byte[] charArrayToBytes(char[] chars) {
+        ByteBuffer byteBuffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars));
+        byte[] bytes = Arrays.copyOfRange(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit());
         
-        String hashBase64 = parts[parts.length - 1];
+        // Clear buffer
+        Arrays.fill(byteBuffer.array(), (byte) 0);
         
-        // Decode from Base64 (Argon2 uses Base64 without padding)
-        return java.util.Base64.getDecoder().decode(hashBase64);
+        return bytes;
     }
 }
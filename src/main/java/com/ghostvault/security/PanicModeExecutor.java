@@ -8,6 +8,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Executes panic mode with CRYPTOGRAPHIC ERASURE FIRST approach
@@ -123,6 +124,8 @@ public class PanicModeExecutor {
         try {
             String[] configFiles = {
                 "metadata.enc",
+                "metadata.enc.journal",
+                "metadata.enc.index",
                 "audit.log.enc",
                 "config.enc",
                 ".salt"
@@ -138,6 +141,22 @@ public class PanicModeExecutor {
                 }
             }
             
+            // Metadata shards named by metadata.enc
+            Path shardDir = vaultRoot.resolve("metadata.enc.shards");
+            if (Files.isDirectory(shardDir)) {
+                try (Stream<Path> shards = Files.list(shardDir)) {
+                    for (Path shard : (Iterable<Path>) shards::iterator) {
+                        if (!dryRun) {
+                            Files.delete(shard);
+                        }
+                    }
+                }
+                if (!dryRun) {
+                    Files.delete(shardDir);
+                }
+                log("✓ Deleted: metadata.enc.shards");
+            }
+            
         } catch (Exception e) {
             log("ERROR deleting metadata: " + e.getMessage());
         }
@@ -159,16 +178,16 @@ public class PanicModeExecutor {
             log("NOTE: Physical overwrite has limited effectiveness on modern storage");
             log("      Cryptographic erasure (Phase 1) is the primary defense");
             
-            // Overwrite encrypted files
+            // Overwrite encrypted files, including deduplicated chunks in subdirectories
             Path filesDir = vaultRoot.resolve("files");
             if (Files.exists(filesDir) && Files.isDirectory(filesDir)) {
-                Files.list(filesDir).forEach(file -> {
+                Files.walk(filesDir).forEach(file -> {
                     try {
                         if (Files.isRegularFile(file)) {
                             if (!dryRun) {
                                 SecureDeletion.secureDelete(file.toFile());
                             }
-                            log("✓ Overwritten: " + file.getFileName());
+                            log("✓ Overwritten: " + filesDir.relativize(file));
                         }
                     } catch (Exception e) {
                         log("  Warning: Could not overwrite " + file.getFileName());
@@ -0,0 +1,340 @@
+package com.ghostvault.security;
+
+import com.ghostvault.util.MerkleHash;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-core encryptor for the segmented AEAD format
+ *
+ * The calling thread reads plaintext segments in order and hands them to a fixed
+ * worker pool; GCM segments are independent, so they encrypt in parallel. The same
+ * thread then commits finished segments to the output strictly in index order.
+ * At most {@code maxInFlight} segments are pending at once, which bounds memory
+ * and applies back-pressure to the reader when the disk is the bottleneck.
+ *
+ * Output is byte-for-byte the same format as {@link SegmentedAead#newEncryptingStream}.
+ * Each worker can also hash its plaintext segment as a {@link MerkleHash} leaf, so
+ * large files are hashed on all cores too, and the reverse direction decrypts and
+ * hashes an existing file's segments in parallel. When both ends are files, each
+ * worker reads, hashes, encrypts and writes its own segment in one fused pass.
+ */
+public class ParallelSegmentEncryptor {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
+
+    /**
+     * Create an encryptor using all available cores
+     */
+    public ParallelSegmentEncryptor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelSegmentEncryptor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread required");
+        }
+        this.maxInFlight = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "GhostVault-Encrypt-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Encrypt everything from the input stream into the channel using the default segment size
+     *
+     * @return number of plaintext bytes encrypted
+     */
+    public long encrypt(InputStream in, WritableByteChannel out, SecretKey key) throws IOException, GeneralSecurityException {
+        return encrypt(in, out, SegmentedAead.create(key), null);
+    }
+
+    /**
+     * Encrypt as above and add each plaintext segment, in order, as a leaf to the Merkle builder
+     */
+    public long encrypt(InputStream in, WritableByteChannel out, SecretKey key, MerkleHash.Builder leaves)
+            throws IOException, GeneralSecurityException {
+        return encrypt(in, out, SegmentedAead.create(key), leaves);
+    }
+
+    /**
+     * Encrypt everything from the input stream into the channel with the given file context
+     */
+    public long encrypt(InputStream in, WritableByteChannel out, SegmentedAead aead) throws IOException, GeneralSecurityException {
+        return encrypt(in, out, aead, null);
+    }
+
+    /**
+     * Encrypt a plaintext file into an output file, fused into one pass per segment on the workers
+     *
+     * Each worker reads its segment positionally from the source, hashes it and writes the
+     * ciphertext to its slot in the output (see {@link SegmentedAead#encryptSegment(Cipher, long,
+     * long, FileChannel, FileChannel, long, boolean)}), so the calling thread only collects leaf
+     * hashes in order. Output starts at the output channel's current position, which is left at
+     * its end. The source must not change while it is read.
+     *
+     * @param leaves receives each segment's Merkle leaf in order, or null
+     * @return number of plaintext bytes encrypted
+     */
+    public long encrypt(FileChannel source, FileChannel out, SegmentedAead aead, MerkleHash.Builder leaves)
+            throws IOException, GeneralSecurityException {
+        long plaintextLength = source.size();
+        long segments = aead.plaintextSegmentCount(plaintextLength);
+        long base = out.position();
+        Deque<Future<EncryptedSegment>> inFlight = new ArrayDeque<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+
+        try {
+            aead.writeHeader(out, base);
+            for (long index = 0; index < segments; index++) {
+                long segmentIndex = index;
+                inFlight.addLast(executor.submit(() -> abandoned.get() ? null : new EncryptedSegment(null,
+                    aead.encryptSegment(cipher(), segmentIndex, plaintextLength, source, out, base, leaves != null))));
+
+                while (inFlight.size() >= maxInFlight) {
+                    addLeaf(leaves, await(inFlight.removeFirst()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                addLeaf(leaves, await(inFlight.removeFirst()));
+            }
+            return aead.finishFile(source, plaintextLength, out, base);
+
+        } finally {
+            abandon(inFlight, abandoned);
+        }
+    }
+
+    private long encrypt(InputStream in, WritableByteChannel out, SegmentedAead aead, MerkleHash.Builder leaves)
+            throws IOException, GeneralSecurityException {
+        Deque<Future<EncryptedSegment>> inFlight = new ArrayDeque<>();
+        int segmentSize = aead.getSegmentSize();
+        long total = 0;
+
+        try {
+            writeFully(out, aead.getHeader());
+
+            byte[] current = in.readNBytes(segmentSize);
+            long index = 0;
+            while (true) {
+                // A full segment is only known not to be last once more data follows it
+                byte[] next = current.length == segmentSize ? in.readNBytes(segmentSize) : null;
+                boolean last = next == null || next.length == 0;
+
+                inFlight.addLast(submit(aead, index++, last, current, leaves != null));
+                total += current.length;
+
+                while (inFlight.size() >= maxInFlight) {
+                    commit(out, await(inFlight.removeFirst()), leaves);
+                }
+
+                if (last) {
+                    break;
+                }
+                current = next;
+            }
+
+            while (!inFlight.isEmpty()) {
+                commit(out, await(inFlight.removeFirst()), leaves);
+            }
+            return total;
+
+        } finally {
+            for (Future<EncryptedSegment> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+    }
+
+    private Future<EncryptedSegment> submit(SegmentedAead aead, long index, boolean last, byte[] plaintext, boolean hash) {
+        return executor.submit(() -> {
+            try {
+                byte[] ciphertext = new byte[plaintext.length + SegmentedAead.TAG_LENGTH];
+                aead.encryptSegment(cipher(), index, last, plaintext, 0, plaintext.length, ciphertext, 0);
+                byte[] leaf = hash ? MerkleHash.leaf(plaintext, 0, plaintext.length) : null;
+                return new EncryptedSegment(ciphertext, leaf);
+            } finally {
+                Arrays.fill(plaintext, (byte) 0);
+            }
+        });
+    }
+
+    private static void commit(WritableByteChannel out, EncryptedSegment segment, MerkleHash.Builder leaves) throws IOException {
+        writeFully(out, segment.ciphertext);
+        addLeaf(leaves, segment);
+    }
+
+    private static void addLeaf(MerkleHash.Builder leaves, EncryptedSegment segment) {
+        if (leaves != null) {
+            leaves.addLeaf(segment.leaf);
+        }
+    }
+
+    /**
+     * Decrypt every segment of a segmented file on the worker pool, hashing each as a Merkle leaf
+     *
+     * With an output array (sized to the whole plaintext) each segment is decrypted straight
+     * to its offset; without one the plaintext is wiped after hashing, as for an integrity check.
+     * Every segment is authenticated, so a tampered file fails here before the root is compared.
+     *
+     * @return the Merkle root over the file's segments
+     */
+    public byte[] decryptAndHash(FileChannel channel, SegmentedAead aead, byte[] output)
+            throws IOException, GeneralSecurityException {
+        long payloadLength = channel.size() - SegmentedAead.HEADER_LENGTH;
+        long segments = aead.segmentCount(payloadLength);
+        int ciphertextSegmentSize = aead.getCiphertextSegmentSize();
+        MerkleHash.Builder leaves = new MerkleHash.Builder();
+        Deque<Future<EncryptedSegment>> inFlight = new ArrayDeque<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+
+        try {
+            for (long index = 0; index < segments; index++) {
+                long position = SegmentedAead.HEADER_LENGTH + index * ciphertextSegmentSize;
+                int length = (int) Math.min(ciphertextSegmentSize, channel.size() - position);
+                boolean last = index == segments - 1;
+                long segmentIndex = index;
+                inFlight.addLast(executor.submit(() -> {
+                    if (abandoned.get()) {
+                        return null;
+                    }
+                    byte[] ciphertext = new byte[length];
+                    ByteBuffer buffer = ByteBuffer.wrap(ciphertext);
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0) {
+                            throw new IOException("Unexpected end of segmented file");
+                        }
+                    }
+                    int plaintextOffset = (int) (segmentIndex * aead.getSegmentSize());
+                    byte[] plaintext = output != null ? output : new byte[length - SegmentedAead.TAG_LENGTH];
+                    int offset = output != null ? plaintextOffset : 0;
+                    int written = aead.decryptSegment(cipher(), segmentIndex, last, ciphertext, 0, length, plaintext, offset);
+                    byte[] leaf = MerkleHash.leaf(plaintext, offset, written);
+                    if (output == null) {
+                        Arrays.fill(plaintext, (byte) 0);
+                    }
+                    return new EncryptedSegment(null, leaf);
+                }));
+
+                while (inFlight.size() >= maxInFlight) {
+                    leaves.addLeaf(await(inFlight.removeFirst()).leaf);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                leaves.addLeaf(await(inFlight.removeFirst()).leaf);
+            }
+            return leaves.root();
+
+        } finally {
+            abandon(inFlight, abandoned);
+        }
+    }
+
+    /**
+     * Skip the segments not started yet and wait for the running ones before returning
+     *
+     * These segments do positional I/O on the caller's channels, so they are not cancelled
+     * with an interrupt, which would close the channels. Nor is cancel(false) enough: a
+     * cancelled future no longer waits for its running task, which would still be using the
+     * channels after the caller has closed them.
+     */
+    private static void abandon(Deque<Future<EncryptedSegment>> inFlight, AtomicBoolean abandoned) {
+        abandoned.set(true);
+        boolean interrupted = false;
+        for (Future<EncryptedSegment> pending : inFlight) {
+            while (true) {
+                try {
+                    pending.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = SegmentedAead.newCipher();
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static EncryptedSegment await(Future<EncryptedSegment> future) throws IOException, GeneralSecurityException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Encryption interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Segment encryption failed", cause);
+        }
+    }
+
+    private static void writeFully(WritableByteChannel out, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * A finished segment: ciphertext to write (when encrypting) and the plaintext leaf hash
+     */
+    private static final class EncryptedSegment {
+        private final byte[] ciphertext;
+        private final byte[] leaf;
+
+        EncryptedSegment(byte[] ciphertext, byte[] leaf) {
+            this.ciphertext = ciphertext;
+            this.leaf = leaf;
+        }
+    }
+
+    /**
+     * Stop the worker threads; in-progress encryptions are allowed to finish
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
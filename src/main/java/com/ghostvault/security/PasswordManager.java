@@ -11,12 +11,16 @@ import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Manages password authentication with cryptographic-erasure-capable design
  * 
  * SECURITY IMPROVEMENTS v2.0:
  * - Uses Argon2id KDF with parameter storage
+ * - Vaults on older KDF parameters are upgraded in place, each password as it is entered
  * - Master/Decoy: KEK-wrapped VMK (allows vault access)
  * - Panic: Verifier-only (no key recovery possible - enables crypto-erasure)
  * - Constant-time password detection with timing parity
@@ -30,6 +34,26 @@ public class PasswordManager {
         MASTER, PANIC, DECOY, INVALID
     }
     
+    /**
+     * Outcome of {@link PasswordManager#authenticate(char[])}
+     */
+    public static final class AuthenticationResult {
+        private final PasswordType type;
+        private final SecretKey key;
+        
+        private AuthenticationResult(PasswordType type, SecretKey key) {
+            this.type = type;
+            this.key = key;
+        }
+        
+        public PasswordType getType() { return type; }
+        
+        /**
+         * VMK for the master password, DVMK for the decoy password, null otherwise
+         */
+        public SecretKey getKey() { return key; }
+    }
+    
     /**
      * Password configuration with KEK wrapping
      */
@@ -50,16 +74,30 @@ public class PasswordManager {
         private final byte[] decoyVerifier;
         private final byte[] wrappedDVMK;
         
+        // KDF parameters of passwords not yet upgraded (absent in older configurations)
+        private final byte[] legacyKdfParamsSerialized;
+        private final int legacySlots;
+        
         public PasswordConfiguration(byte[] kdfParams, 
                                    byte[] masterVerifier, byte[] wrappedVMK,
                                    byte[] panicVerifier,
                                    byte[] decoyVerifier, byte[] wrappedDVMK) {
+            this(kdfParams, masterVerifier, wrappedVMK, panicVerifier, decoyVerifier, wrappedDVMK, null, 0);
+        }
+        
+        public PasswordConfiguration(byte[] kdfParams, 
+                                   byte[] masterVerifier, byte[] wrappedVMK,
+                                   byte[] panicVerifier,
+                                   byte[] decoyVerifier, byte[] wrappedDVMK,
+                                   byte[] legacyKdfParams, int legacySlots) {
             this.kdfParamsSerialized = kdfParams.clone();
             this.masterVerifier = masterVerifier.clone();
             this.wrappedVMK = wrappedVMK.clone();
             this.panicVerifier = panicVerifier.clone();
             this.decoyVerifier = decoyVerifier.clone();
             this.wrappedDVMK = wrappedDVMK.clone();
+            this.legacyKdfParamsSerialized = legacyKdfParams != null ? legacyKdfParams.clone() : null;
+            this.legacySlots = legacySlots;
         }
         
         public byte[] getKdfParams() { return kdfParamsSerialized.clone(); }
@@ -68,12 +106,17 @@ public class PasswordManager {
         public byte[] getPanicVerifier() { return panicVerifier.clone(); }
         public byte[] getDecoyVerifier() { return decoyVerifier.clone(); }
         public byte[] getWrappedDVMK() { return wrappedDVMK.clone(); }
+        public byte[] getLegacyKdfParams() { return legacyKdfParamsSerialized != null ? legacyKdfParamsSerialized.clone() : null; }
+        public int getLegacySlots() { return legacySlots; }
     }
     
     private final String vaultPath;
     private final CryptoManager cryptoManager;
     private final ConfigurationValidator configValidator;
-    private KDF.KdfParams kdfParams;
+    private KDF.KdfParams kdfParams;        // null until calibrated when upgrading an old vault
+    private KDF.KdfParams legacyKdfParams;  // params of the passwords in legacySlots
+    private int legacySlots;                // bit per PasswordType ordinal
+    private volatile CompletableFuture<KDF.KdfParams> calibration; // params for the upgrade, off the login path
     private byte[] masterVerifier;
     private byte[] wrappedVMK;
     private byte[] panicVerifier;
@@ -174,6 +217,20 @@ public class PasswordManager {
                 
                 // Deserialize KDF params
                 this.kdfParams = deserializeKdfParams(config.getKdfParams());
+                byte[] legacyParams = config.getLegacyKdfParams();
+                this.legacyKdfParams = legacyParams != null ? deserializeKdfParams(legacyParams) : null;
+                this.legacySlots = legacyParams != null ? config.getLegacySlots() : 0;
+                
+                // Every password starts on the old params; each moves as it is next entered
+                if (legacyKdfParams == null && KDF.needsUpgrade(kdfParams)) {
+                    this.legacyKdfParams = kdfParams;
+                    this.legacySlots = slotBit(PasswordType.MASTER) | slotBit(PasswordType.PANIC) | slotBit(PasswordType.DECOY);
+                    this.kdfParams = null;
+                    System.out.println("🔄 KDF parameters are outdated; passwords will be upgraded on next use");
+                }
+                if (kdfParams == null) {
+                    startCalibration();
+                }
                 
                 // Load verifiers and wrapped keys
                 this.masterVerifier = config.getMasterVerifier();
@@ -243,21 +300,9 @@ public class PasswordManager {
         KDF.KdfParams benchmarkParams = benchmark.getRecommendedParams();
         
         // Create KDF params with our consistent vault salt
-        if (benchmarkParams.getAlgorithm() == KDF.Algorithm.ARGON2ID) {
-            this.kdfParams = new KDF.KdfParams(
-                benchmarkParams.getAlgorithm(),
-                vaultSalt,
-                benchmarkParams.getMemory(),
-                benchmarkParams.getIterations(),
-                benchmarkParams.getParallelism()
-            );
-        } else {
-            this.kdfParams = new KDF.KdfParams(
-                benchmarkParams.getAlgorithm(),
-                vaultSalt,
-                benchmarkParams.getPbkdf2Iterations()
-            );
-        }
+        this.kdfParams = withSalt(benchmarkParams, vaultSalt);
+        this.legacyKdfParams = null;
+        this.legacySlots = 0;
 
         
         // Generate Vault Master Keys
@@ -289,13 +334,7 @@ public class PasswordManager {
                 this.isConfigured = true;
                 
                 // Create backup and checksum after successful initialization
-                try {
-                    configValidator.createBackup();
-                    configValidator.createChecksum(Paths.get(AppConfig.CONFIG_FILE));
-                    System.out.println("✅ Configuration backup and checksum created");
-                } catch (Exception e) {
-                    System.err.println("⚠️ Failed to create configuration backup: " + e.getMessage());
-                }
+                createBackupAndChecksum();
                 
                 // Verify password detection works
                 PasswordType testResult = detectPassword(masterPassword);
@@ -324,23 +363,46 @@ public class PasswordManager {
      * to prevent timing side-channels from revealing which password was entered.
      */
     public PasswordType detectPassword(char[] password) throws Exception {
+        return authenticate(password).getType();
+    }
+    
+    /**
+     * Detect password type and unwrap its vault key with a single key derivation
+     * 
+     * Login used to derive the KEK twice, once to detect the password and again to unwrap
+     * the VMK. Here the KEK is derived once and used for both. Timing parity is kept: all
+     * three verifiers are always compared, exactly one unwrap is always attempted (for a
+     * panic or invalid password it is bound to fail), and the delay and jitter cover all
+     * of it. Blocks for the KDF plus the delay, so call it off the UI thread.
+     */
+    public AuthenticationResult authenticate(char[] password) throws Exception {
         if (!isConfigured) {
             addTimingDelay();
-            return PasswordType.INVALID;
+            return new AuthenticationResult(PasswordType.INVALID, null);
         }
         
         byte[] kek = null;
+        byte[] legacyKek = null;
         byte[] verifier = null;
+        byte[] legacyVerifier = null;
+        byte[] keyBytes = null;
         
         try {
-            // Derive KEK from password
-            kek = KDF.deriveKey(password, kdfParams);
-            verifier = createVerifier(kek);
+            // Derive KEK from password; while an upgrade is under way every attempt also
+            // derives with the old params, so the work does not depend on the password
+            if (kdfParams != null) {
+                kek = KDF.deriveKey(password, kdfParams);
+                verifier = createVerifier(kek);
+            }
+            if (legacyKdfParams != null) {
+                legacyKek = KDF.deriveKey(password, legacyKdfParams);
+                legacyVerifier = createVerifier(legacyKek);
+            }
             
             // CRITICAL: Always perform ALL comparisons (constant-time)
-            boolean isMaster = MessageDigest.isEqual(verifier, masterVerifier);
-            boolean isPanic = MessageDigest.isEqual(verifier, panicVerifier);
-            boolean isDecoy = MessageDigest.isEqual(verifier, decoyVerifier);
+            boolean isMaster = MessageDigest.isEqual(slotVerifier(PasswordType.MASTER, verifier, legacyVerifier), masterVerifier);
+            boolean isPanic = MessageDigest.isEqual(slotVerifier(PasswordType.PANIC, verifier, legacyVerifier), panicVerifier);
+            boolean isDecoy = MessageDigest.isEqual(slotVerifier(PasswordType.DECOY, verifier, legacyVerifier), decoyVerifier);
             
             // Determine result (order matters for priority)
             PasswordType result;
@@ -354,16 +416,204 @@ public class PasswordManager {
                 result = PasswordType.INVALID;
             }
             
+            // Always attempt one unwrap so every outcome does the same work
+            PasswordType unwrapSlot = result == PasswordType.DECOY ? PasswordType.DECOY : PasswordType.MASTER;
+            SecretKey kekKey = cryptoManager.keyFromBytes(isLegacy(unwrapSlot) ? legacyKek : kek);
+            try {
+                keyBytes = cryptoManager.decrypt(unwrapSlot == PasswordType.DECOY ? wrappedDVMK : wrappedVMK, kekKey, null);
+            } catch (GeneralSecurityException e) {
+                if (result == PasswordType.MASTER || result == PasswordType.DECOY) {
+                    throw e;
+                }
+            }
+            SecretKey key = result == PasswordType.MASTER || result == PasswordType.DECOY
+                ? cryptoManager.keyFromBytes(keyBytes) : null;
+            
             // Add timing delay to mask differences
             addTimingDelay();
             
-            return result;
+            // Outside the timed section: by now the caller learns the outcome anyway
+            if (result != PasswordType.INVALID && isLegacy(result)) {
+                upgradeSlot(result, password, kek, keyBytes);
+            }
+            if (result != PasswordType.INVALID && legacySlots != 0) {
+                System.err.println("⚠️ KDF upgrade incomplete for " + getPendingUpgrades()
+                    + ": every login derives its key twice until these passwords are upgraded");
+            }
+            
+            return new AuthenticationResult(result, key);
             
         } finally {
             // Zeroize sensitive data
             if (kek != null) cryptoManager.zeroize(kek);
+            if (legacyKek != null) cryptoManager.zeroize(legacyKek);
             if (verifier != null) cryptoManager.zeroize(verifier);
+            if (legacyVerifier != null) cryptoManager.zeroize(legacyVerifier);
+            if (keyBytes != null) cryptoManager.zeroize(keyBytes);
+        }
+    }
+    
+    /**
+     * Passwords still on the legacy KDF params
+     * 
+     * Until this is empty every login derives with both the old and the new params, so a
+     * master session should ask for these and pass them to {@link #upgradePassword}.
+     */
+    public Set<PasswordType> getPendingUpgrades() {
+        Set<PasswordType> pending = EnumSet.noneOf(PasswordType.class);
+        for (PasswordType slot : new PasswordType[] {PasswordType.MASTER, PasswordType.PANIC, PasswordType.DECOY}) {
+            if (isLegacy(slot)) {
+                pending.add(slot);
+            }
         }
+        return pending;
+    }
+    
+    /**
+     * Upgrade a password still on the legacy KDF params without logging in with it
+     * 
+     * Lets the panic and decoy passwords, which are rarely entered, move over together with
+     * the master password. Entering the panic password here only upgrades it.
+     * 
+     * @return true if the slot is upgraded, false if the password does not match it
+     */
+    public synchronized boolean upgradePassword(PasswordType slot, char[] password) throws Exception {
+        if (slot == PasswordType.INVALID || !isLegacy(slot)) {
+            return false;
+        }
+        
+        byte[] legacyKek = KDF.deriveKey(password, legacyKdfParams);
+        byte[] verifier = null;
+        byte[] keyBytes = null;
+        try {
+            verifier = createVerifier(legacyKek);
+            byte[] expected = slot == PasswordType.MASTER ? masterVerifier
+                : slot == PasswordType.PANIC ? panicVerifier : decoyVerifier;
+            if (!MessageDigest.isEqual(verifier, expected)) {
+                return false;
+            }
+            if (slot != PasswordType.PANIC) {
+                keyBytes = cryptoManager.decrypt(slot == PasswordType.DECOY ? wrappedDVMK : wrappedVMK,
+                    cryptoManager.keyFromBytes(legacyKek), null);
+            }
+            return upgradeSlot(slot, password, null, keyBytes);
+        } finally {
+            cryptoManager.zeroize(legacyKek);
+            if (verifier != null) cryptoManager.zeroize(verifier);
+            if (keyBytes != null) cryptoManager.zeroize(keyBytes);
+        }
+    }
+    
+    /**
+     * Move one password from the legacy KDF params to the current ones
+     * 
+     * Only the password being entered can be re-derived, so a slot is upgraded when its
+     * password is used or passed to {@link #upgradePassword}; the legacy params are dropped
+     * once no slot needs them. A failure leaves the stored configuration as it was and
+     * does not fail the login.
+     */
+    private synchronized boolean upgradeSlot(PasswordType slot, char[] password, byte[] kek, byte[] keyBytes) {
+        byte[] newKek = null;
+        try {
+            if (kdfParams == null) {
+                this.kdfParams = upgradeParams();
+                System.out.println("🔧 Upgrading to KDF parameters: " + kdfParams);
+            }
+            newKek = kek != null ? kek.clone() : KDF.deriveKey(password, kdfParams);
+            SecretKey newKey = cryptoManager.keyFromBytes(newKek);
+            
+            switch (slot) {
+                case MASTER:
+                    this.wrappedVMK = cryptoManager.encrypt(keyBytes, newKey, null);
+                    this.masterVerifier = createVerifier(newKek);
+                    break;
+                case DECOY:
+                    this.wrappedDVMK = cryptoManager.encrypt(keyBytes, newKey, null);
+                    this.decoyVerifier = createVerifier(newKek);
+                    break;
+                case PANIC:
+                    this.panicVerifier = createVerifier(newKek);
+                    break;
+                default:
+                    return false;
+            }
+            
+            this.legacySlots &= ~slotBit(slot);
+            if (legacySlots == 0) {
+                this.legacyKdfParams = null;
+            }
+            
+            savePasswordConfiguration();
+            createBackupAndChecksum();
+            System.out.println("✅ Upgraded " + slot + " password to " + kdfParams);
+            return true;
+            
+        } catch (Exception e) {
+            System.err.println("⚠️ Failed to upgrade KDF parameters: " + e.getMessage());
+            return false;
+        } finally {
+            if (newKek != null) cryptoManager.zeroize(newKek);
+        }
+    }
+    
+    /**
+     * Benchmark the new KDF params in the background while the password is being typed
+     */
+    private void startCalibration() {
+        CompletableFuture<KDF.KdfParams> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                future.complete(KDF.benchmark().getRecommendedParams());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, "GhostVault-KdfCalibration");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        this.calibration = future;
+    }
+    
+    /**
+     * The calibrated params if the benchmark has finished, otherwise the defaults; the
+     * login never waits for calibration
+     */
+    private KDF.KdfParams upgradeParams() {
+        KDF.KdfParams calibrated = null;
+        CompletableFuture<KDF.KdfParams> pending = calibration;
+        if (pending != null) {
+            try {
+                calibrated = pending.getNow(null);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ KDF calibration failed, using defaults: " + e.getMessage());
+            }
+        }
+        byte[] salt = cryptoManager.generateSecureRandom(32);
+        return calibrated != null ? withSalt(calibrated, salt) : KDF.getDefaultParams(salt);
+    }
+    
+    private static int slotBit(PasswordType slot) {
+        return 1 << slot.ordinal();
+    }
+    
+    private boolean isLegacy(PasswordType slot) {
+        return (legacySlots & slotBit(slot)) != 0;
+    }
+    
+    private byte[] slotVerifier(PasswordType slot, byte[] verifier, byte[] legacyVerifier) {
+        return isLegacy(slot) ? legacyVerifier : verifier;
+    }
+    
+    private KDF.KdfParams paramsFor(PasswordType slot) {
+        return isLegacy(slot) ? legacyKdfParams : kdfParams;
+    }
+    
+    private static KDF.KdfParams withSalt(KDF.KdfParams params, byte[] salt) {
+        if (params.getAlgorithm() == KDF.Algorithm.ARGON2ID) {
+            return new KDF.KdfParams(params.getAlgorithm(), salt,
+                params.getMemory(), params.getIterations(), params.getParallelism());
+        }
+        return new KDF.KdfParams(params.getAlgorithm(), salt, params.getPbkdf2Iterations());
     }
     
     /**
@@ -377,7 +627,7 @@ public class PasswordManager {
         
         try {
             // Derive KEK
-            kek = KDF.deriveKey(masterPassword, kdfParams);
+            kek = KDF.deriveKey(masterPassword, paramsFor(PasswordType.MASTER));
             
             // Verify it's the master password
             byte[] verifier = createVerifier(kek);
@@ -409,7 +659,7 @@ public class PasswordManager {
         
         try {
             // Derive KEK
-            kek = KDF.deriveKey(decoyPassword, kdfParams);
+            kek = KDF.deriveKey(decoyPassword, paramsFor(PasswordType.DECOY));
             
             // Verify it's the decoy password
             byte[] verifier = createVerifier(kek);
@@ -548,7 +798,9 @@ public class PasswordManager {
             wrappedVMK,
             panicVerifier,
             decoyVerifier,
-            wrappedDVMK
+            wrappedDVMK,
+            legacyKdfParams != null ? serializeKdfParams(legacyKdfParams) : null,
+            legacySlots
         );
         
         // Serialize to bytes
@@ -563,6 +815,19 @@ public class PasswordManager {
         System.out.println("✓ Password configuration saved successfully (" + baos.size() + " bytes)");
     }
     
+    /**
+     * Refresh the configuration checksum and backup after a save
+     */
+    private void createBackupAndChecksum() {
+        try {
+            configValidator.createChecksum(Paths.get(AppConfig.CONFIG_FILE));
+            configValidator.createBackup();
+            System.out.println("✅ Configuration backup and checksum created");
+        } catch (Exception e) {
+            System.err.println("⚠️ Failed to create configuration backup: " + e.getMessage());
+        }
+    }
+    
     /**
      * Serialize KDF parameters
      */
@@ -577,6 +842,7 @@ public class PasswordManager {
                 dos.writeInt(params.getMemory());
                 dos.writeInt(params.getIterations());
                 dos.writeInt(params.getParallelism());
+                dos.writeInt(Argon2Engine.VERSION);
             } else {
                 dos.writeInt(params.getPbkdf2Iterations());
             }
@@ -601,6 +867,11 @@ public class PasswordManager {
                 int memory = dis.readInt();
                 int iterations = dis.readInt();
                 int parallelism = dis.readInt();
+                
+                // Older configurations stop here; their keys were derived with PBKDF2
+                if (dis.available() < 4 || dis.readInt() != Argon2Engine.VERSION) {
+                    return KDF.getLegacyParams(salt);
+                }
                 return new KDF.KdfParams(algorithm, salt, memory, iterations, parallelism);
             } else {
                 int iterations = dis.readInt();
@@ -673,7 +944,7 @@ public class PasswordManager {
      * Get KDF parameters (for metadata storage)
      */
     public KDF.KdfParams getKdfParams() {
-        return kdfParams;
+        return kdfParams != null ? kdfParams : legacyKdfParams;
     }
     
     /**
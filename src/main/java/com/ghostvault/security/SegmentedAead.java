@@ -0,0 +1,636 @@
+package com.ghostvault.security;
+
+import com.ghostvault.util.MerkleHash;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Segmented AES-GCM container format for large vault files
+ *
+ * Instead of encrypting a whole file as one GCM message, the plaintext is split
+ * into fixed-size segments that are encrypted and authenticated independently.
+ * Peak memory is one segment regardless of file size, and any segment can be
+ * decrypted on its own for random access.
+ *
+ * Layout:
+ * <pre>
+ *   header  = MAGIC(4) || VERSION(1) || segmentSize(4) || salt(16) || noncePrefix(7)
+ *   segment = AES-GCM(segmentKey, nonce_i, aad_i, plaintext_i) (ciphertext || 16-byte tag)
+ *   nonce_i = noncePrefix(7) || i(4) || lastFlag(1)
+ *   aad_i   = header || i(4)
+ * </pre>
+ *
+ * The segment key is derived per file from the vault key and the random salt
+ * (HMAC-SHA256), so segment nonces never repeat under the same key. The last-segment
+ * flag in the nonce detects truncation; the index in nonce and AAD detects reordering.
+ * Every file has at least one (possibly empty) final segment.
+ */
+public final class SegmentedAead {
+
+    private static final byte[] MAGIC = {'G', 'V', 'S', 'E'};
+    private static final byte VERSION = 1;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024; // 64KB
+    public static final int MIN_SEGMENT_SIZE = 4 * 1024;
+    public static final int MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    public static final int SALT_LENGTH = 16;
+    public static final int NONCE_PREFIX_LENGTH = 7;
+    public static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + SALT_LENGTH + NONCE_PREFIX_LENGTH;
+    public static final int TAG_LENGTH = 16;
+
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final long MAX_SEGMENTS = 0xFFFFFFFFL;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte[] KEY_INFO = "GhostVault segment key v1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    // Per-thread direct buffers for one plaintext segment and its ciphertext
+    private static final ThreadLocal<ByteBuffer[]> DIRECT_BUFFERS = new ThreadLocal<>();
+
+    private final byte[] header;
+    private final int segmentSize;
+    private final byte[] noncePrefix;
+    private final SecretKey segmentKey;
+
+    private SegmentedAead(byte[] header, int segmentSize, byte[] noncePrefix, SecretKey segmentKey) {
+        this.header = header;
+        this.segmentSize = segmentSize;
+        this.noncePrefix = noncePrefix;
+        this.segmentKey = segmentKey;
+    }
+
+    /**
+     * Create a context for a new file with a fresh random salt and nonce prefix
+     */
+    public static SegmentedAead create(SecretKey key, int segmentSize) throws GeneralSecurityException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        SECURE_RANDOM.nextBytes(salt);
+        SECURE_RANDOM.nextBytes(noncePrefix);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC).put(VERSION).putInt(segmentSize).put(salt).put(noncePrefix);
+
+        return new SegmentedAead(header.array(), segmentSize, noncePrefix, deriveSegmentKey(key, salt));
+    }
+
+    /**
+     * Create a context for a new file with the default segment size
+     */
+    public static SegmentedAead create(SecretKey key) throws GeneralSecurityException {
+        return create(key, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open a context for an existing file from its header bytes
+     */
+    public static SegmentedAead open(SecretKey key, byte[] header) throws GeneralSecurityException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (!isHeader(header)) {
+            throw new GeneralSecurityException("Not a segmented vault file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(header, MAGIC.length + 1, HEADER_LENGTH - MAGIC.length - 1);
+        int segmentSize = buffer.getInt();
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        buffer.get(salt).get(noncePrefix);
+
+        return new SegmentedAead(Arrays.copyOf(header, HEADER_LENGTH), segmentSize, noncePrefix,
+            deriveSegmentKey(key, salt));
+    }
+
+    /**
+     * Check whether the given bytes start with a valid segmented header
+     */
+    public static boolean isHeader(byte[] header) {
+        if (header == null || header.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        if (header[MAGIC.length] != VERSION) {
+            return false;
+        }
+        int segmentSize = ByteBuffer.wrap(header, MAGIC.length + 1, 4).getInt();
+        return segmentSize >= MIN_SEGMENT_SIZE && segmentSize <= MAX_SEGMENT_SIZE;
+    }
+
+    /**
+     * Check whether a file on disk uses the segmented format (legacy files are a single GCM blob)
+     */
+    public static boolean isSegmented(Path path) throws IOException {
+        if (Files.size(path) < HEADER_LENGTH + TAG_LENGTH) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return isHeader(readHeader(channel, 0));
+        }
+    }
+
+    /**
+     * Read header bytes from a channel at the given position
+     */
+    public static byte[] readHeader(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated segmented header");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Create a new AES-GCM cipher instance for segment operations
+     *
+     * Cipher instances are not thread-safe; use one per thread.
+     */
+    public static Cipher newCipher() throws GeneralSecurityException {
+        return Cipher.getInstance(TRANSFORMATION);
+    }
+
+    public byte[] getHeader() {
+        return header.clone();
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int getCiphertextSegmentSize() {
+        return segmentSize + TAG_LENGTH;
+    }
+
+    /**
+     * Number of segments stored in a ciphertext payload of the given length (header excluded)
+     */
+    public long segmentCount(long payloadLength) throws GeneralSecurityException {
+        if (payloadLength < TAG_LENGTH) {
+            throw new GeneralSecurityException("Truncated segmented payload");
+        }
+        long segments = (payloadLength + getCiphertextSegmentSize() - 1) / getCiphertextSegmentSize();
+        long lastLength = payloadLength - (segments - 1) * getCiphertextSegmentSize();
+        if (lastLength < TAG_LENGTH) {
+            throw new GeneralSecurityException("Truncated segmented payload");
+        }
+        return segments;
+    }
+
+    /**
+     * Plaintext length of a ciphertext payload of the given length (header excluded)
+     */
+    public long plaintextLength(long payloadLength) throws GeneralSecurityException {
+        return payloadLength - segmentCount(payloadLength) * TAG_LENGTH;
+    }
+
+    /**
+     * Number of segments a plaintext of the given length is stored in
+     */
+    public long plaintextSegmentCount(long plaintextLength) {
+        return plaintextLength == 0 ? 1 : (plaintextLength + segmentSize - 1) / segmentSize;
+    }
+
+    /**
+     * Encrypt one segment
+     *
+     * @return number of ciphertext bytes written (plaintext length + tag)
+     */
+    public int encryptSegment(Cipher cipher, long index, boolean last,
+                              byte[] plaintext, int offset, int length,
+                              byte[] output, int outputOffset) throws GeneralSecurityException {
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Segment too large: " + length);
+        }
+        if (!last && length != segmentSize) {
+            throw new IllegalArgumentException("Only the last segment may be partial");
+        }
+        initCipher(cipher, Cipher.ENCRYPT_MODE, index, last);
+        return cipher.doFinal(plaintext, offset, length, output, outputOffset);
+    }
+
+    /**
+     * Encrypt one segment from the plaintext buffer's remaining bytes into the output buffer
+     *
+     * @return number of ciphertext bytes written (plaintext length + tag)
+     */
+    public int encryptSegment(Cipher cipher, long index, boolean last,
+                              ByteBuffer plaintext, ByteBuffer output) throws GeneralSecurityException {
+        int length = plaintext.remaining();
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Segment too large: " + length);
+        }
+        if (!last && length != segmentSize) {
+            throw new IllegalArgumentException("Only the last segment may be partial");
+        }
+        initCipher(cipher, Cipher.ENCRYPT_MODE, index, last);
+        return cipher.doFinal(plaintext, output);
+    }
+
+    /**
+     * Encrypt segment {@code index} of a plaintext file straight into its slot in the output file
+     *
+     * The plaintext is read from the source into a direct buffer that both the Merkle leaf
+     * hash and the cipher read from, and the ciphertext is written from a second direct
+     * buffer, so the segment crosses memory once and never passes through the heap.
+     * Different segments may be encrypted concurrently on different threads.
+     *
+     * @param plaintextLength length of the whole source, which must not change meanwhile
+     * @param outputBase      position of this file's header in the output
+     * @param hash            whether to hash the plaintext as a Merkle leaf
+     * @return the segment's leaf hash, or null if not hashing
+     */
+    public byte[] encryptSegment(Cipher cipher, long index, long plaintextLength, FileChannel source,
+                                 FileChannel output, long outputBase, boolean hash)
+            throws IOException, GeneralSecurityException {
+        long offset = index * segmentSize;
+        int length = (int) Math.min(segmentSize, plaintextLength - offset);
+        boolean last = index == plaintextSegmentCount(plaintextLength) - 1;
+
+        ByteBuffer[] buffers = directBuffers();
+        ByteBuffer plaintext = buffers[0];
+        ByteBuffer ciphertext = buffers[1];
+        try {
+            plaintext.clear().limit(length);
+            while (plaintext.hasRemaining()) {
+                if (source.read(plaintext, offset + plaintext.position()) < 0) {
+                    throw new IOException("Source file changed while it was being encrypted");
+                }
+            }
+            plaintext.flip();
+            byte[] leaf = hash ? MerkleHash.leaf(plaintext.duplicate()) : null;
+
+            ciphertext.clear();
+            encryptSegment(cipher, index, last, plaintext, ciphertext);
+            ciphertext.flip();
+            long position = outputBase + HEADER_LENGTH + index * getCiphertextSegmentSize();
+            while (ciphertext.hasRemaining()) {
+                output.write(ciphertext, position + ciphertext.position());
+            }
+            return leaf;
+        } finally {
+            wipe(plaintext);
+        }
+    }
+
+    /**
+     * Encrypt a whole plaintext file on the calling thread, one fused pass per segment
+     *
+     * Output starts at the output channel's current position, which is left at its end.
+     *
+     * @param leaves receives each segment's Merkle leaf in order, or null
+     * @return number of plaintext bytes encrypted
+     */
+    public long encryptFile(FileChannel source, FileChannel output, MerkleHash.Builder leaves)
+            throws IOException, GeneralSecurityException {
+        long plaintextLength = source.size();
+        long segments = plaintextSegmentCount(plaintextLength);
+        long base = output.position();
+        writeHeader(output, base);
+
+        Cipher cipher = newCipher();
+        for (long index = 0; index < segments; index++) {
+            byte[] leaf = encryptSegment(cipher, index, plaintextLength, source, output, base, leaves != null);
+            if (leaves != null) {
+                leaves.addLeaf(leaf);
+            }
+        }
+        return finishFile(source, plaintextLength, output, base);
+    }
+
+    /**
+     * Write this file's header at the given output position
+     */
+    public void writeHeader(FileChannel output, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        while (buffer.hasRemaining()) {
+            output.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Check the source was not modified while its segments were encrypted and move the
+     * output position past the ciphertext
+     *
+     * @return the plaintext length
+     */
+    public long finishFile(FileChannel source, long plaintextLength, FileChannel output, long outputBase)
+            throws IOException {
+        if (source.size() != plaintextLength) {
+            throw new IOException("Source file changed while it was being encrypted");
+        }
+        output.position(outputBase + HEADER_LENGTH + plaintextLength
+            + plaintextSegmentCount(plaintextLength) * TAG_LENGTH);
+        return plaintextLength;
+    }
+
+    private ByteBuffer[] directBuffers() {
+        ByteBuffer[] buffers = DIRECT_BUFFERS.get();
+        if (buffers == null || buffers[0].capacity() < segmentSize) {
+            buffers = new ByteBuffer[] {
+                ByteBuffer.allocateDirect(segmentSize),
+                ByteBuffer.allocateDirect(segmentSize + TAG_LENGTH)
+            };
+            DIRECT_BUFFERS.set(buffers);
+        }
+        return buffers;
+    }
+
+    private static void wipe(ByteBuffer buffer) {
+        buffer.clear();
+        while (buffer.remaining() >= Long.BYTES) {
+            buffer.putLong(0L);
+        }
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Decrypt and authenticate one segment
+     *
+     * @return number of plaintext bytes written
+     * @throws GeneralSecurityException if the segment was tampered with, reordered or truncated
+     */
+    public int decryptSegment(Cipher cipher, long index, boolean last,
+                              byte[] ciphertext, int offset, int length,
+                              byte[] output, int outputOffset) throws GeneralSecurityException {
+        if (length < TAG_LENGTH || length > getCiphertextSegmentSize()) {
+            throw new GeneralSecurityException("Invalid segment length: " + length);
+        }
+        initCipher(cipher, Cipher.DECRYPT_MODE, index, last);
+        try {
+            return cipher.doFinal(ciphertext, offset, length, output, outputOffset);
+        } catch (javax.crypto.AEADBadTagException e) {
+            throw new GeneralSecurityException("Segment " + index + " failed authentication: " +
+                "wrong key or corrupted data", e);
+        }
+    }
+
+    private void initCipher(Cipher cipher, int mode, long index, boolean last) throws GeneralSecurityException {
+        if (index < 0 || index > MAX_SEGMENTS) {
+            throw new GeneralSecurityException("Segment index out of range: " + index);
+        }
+
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+
+        cipher.init(mode, segmentKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(header);
+        cipher.updateAAD(new byte[] {nonce[7], nonce[8], nonce[9], nonce[10]});
+    }
+
+    private static SecretKey deriveSegmentKey(SecretKey key, byte[] salt) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+        mac.update(KEY_INFO);
+        mac.update(salt);
+        byte[] derived = mac.doFinal();
+        try {
+            return new SecretKeySpec(derived, "AES");
+        } finally {
+            Arrays.fill(derived, (byte) 0);
+        }
+    }
+
+    /**
+     * Wrap an output stream so that everything written to it is stored in segmented format
+     *
+     * The final segment is only written on close(), so the stream must always be closed.
+     */
+    public static OutputStream newEncryptingStream(OutputStream out, SecretKey key) throws GeneralSecurityException, IOException {
+        return new EncryptingOutputStream(out, create(key), null);
+    }
+
+    /**
+     * Like {@link #newEncryptingStream(OutputStream, SecretKey)}, reporting the ciphertext as it is written
+     */
+    public static OutputStream newEncryptingStream(OutputStream out, SecretKey key, SegmentListener listener)
+            throws GeneralSecurityException, IOException {
+        return new EncryptingOutputStream(out, create(key), listener);
+    }
+
+    /**
+     * Receives the header and each ciphertext segment of an encrypting stream, in order
+     */
+    public interface SegmentListener {
+        void onHeader(byte[] header);
+
+        void onSegment(long index, byte[] ciphertext, int offset, int length);
+    }
+
+    /**
+     * Wrap an input stream of segmented ciphertext (header included) and return the plaintext
+     */
+    public static InputStream newDecryptingStream(InputStream in, SecretKey key) throws GeneralSecurityException, IOException {
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        return new DecryptingInputStream(in, open(key, header));
+    }
+
+    /**
+     * Streaming encryptor buffering at most one plaintext segment
+     */
+    static class EncryptingOutputStream extends FilterOutputStream {
+        private final SegmentedAead aead;
+        private final SegmentListener listener;
+        private final Cipher cipher;
+        private final byte[] plaintext;
+        private final byte[] ciphertext;
+        private int buffered;
+        private long segmentIndex;
+        private boolean closed;
+
+        EncryptingOutputStream(OutputStream out, SegmentedAead aead, SegmentListener listener)
+                throws GeneralSecurityException, IOException {
+            super(out);
+            this.aead = aead;
+            this.listener = listener;
+            this.cipher = newCipher();
+            this.plaintext = new byte[aead.getSegmentSize()];
+            this.ciphertext = new byte[aead.getCiphertextSegmentSize()];
+            out.write(aead.header);
+            if (listener != null) {
+                listener.onHeader(aead.getHeader());
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (len > 0) {
+                // A full buffer is only flushed once more data arrives, so we know it is not the last segment
+                if (buffered == plaintext.length) {
+                    writeSegment(false);
+                }
+                int chunk = Math.min(len, plaintext.length - buffered);
+                System.arraycopy(b, off, plaintext, buffered, chunk);
+                buffered += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        private void writeSegment(boolean last) throws IOException {
+            try {
+                long index = segmentIndex++;
+                int written = aead.encryptSegment(cipher, index, last, plaintext, 0, buffered, ciphertext, 0);
+                out.write(ciphertext, 0, written);
+                if (listener != null) {
+                    listener.onSegment(index, ciphertext, 0, written);
+                }
+                buffered = 0;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Segment encryption failed", e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Partial segments cannot be flushed without ending the stream
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeSegment(true);
+                out.flush();
+            } finally {
+                Arrays.fill(plaintext, (byte) 0);
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Streaming decryptor holding at most one ciphertext segment plus one byte of lookahead
+     */
+    static class DecryptingInputStream extends InputStream {
+        private final InputStream in;
+        private final SegmentedAead aead;
+        private final Cipher cipher;
+        private final byte[] ciphertext;
+        private final byte[] plaintext;
+        private int ciphertextLength;
+        private int plaintextLength;
+        private int position;
+        private long segmentIndex;
+        private boolean lastSegmentRead;
+
+        DecryptingInputStream(InputStream in, SegmentedAead aead) throws GeneralSecurityException {
+            this.in = in;
+            this.aead = aead;
+            this.cipher = newCipher();
+            // One extra byte of lookahead tells us whether the current segment is the last one
+            this.ciphertext = new byte[aead.getCiphertextSegmentSize() + 1];
+            this.plaintext = new byte[aead.getSegmentSize()];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == plaintextLength) {
+                if (lastSegmentRead) {
+                    return -1;
+                }
+                nextSegment();
+            }
+            int n = Math.min(len, plaintextLength - position);
+            System.arraycopy(plaintext, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private void nextSegment() throws IOException {
+            int segmentLength = aead.getCiphertextSegmentSize();
+
+            // Carry over the lookahead byte from the previous read
+            int available = ciphertextLength > segmentLength ? 1 : 0;
+            if (available == 1) {
+                ciphertext[0] = ciphertext[segmentLength];
+            }
+            ciphertextLength = available + in.readNBytes(ciphertext, available, ciphertext.length - available);
+
+            boolean last = ciphertextLength <= segmentLength;
+            int length = Math.min(ciphertextLength, segmentLength);
+            if (length < TAG_LENGTH) {
+                throw new EOFException("Truncated segmented file");
+            }
+
+            try {
+                plaintextLength = aead.decryptSegment(cipher, segmentIndex++, last, ciphertext, 0, length, plaintext, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            position = 0;
+            lastSegmentRead = last;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(plaintext, (byte) 0);
+            plaintextLength = 0;
+            position = 0;
+            in.close();
+        }
+    }
+}
@@ -140,6 +140,13 @@ public class SessionManager {
         }
     }
     
+    /**
+     * Time of the last recorded user activity, in epoch milliseconds
+     */
+    public long getLastActivityTime() {
+        return lastActivityTime.get();
+    }
+    
     /**
      * Record mouse activity
      */
@@ -246,7 +246,7 @@ public class BackupRestoreController {
                     progressBar.setProgress(-1); // Indeterminate progress
                 });
                 
-                return backupManager.verifyBackup(backupFile, currentKey);
+                return backupManager.verifyBackup(backupFile, currentKey, VaultBackupManager.VerificationMode.DEEP);
             }
             
             @Override
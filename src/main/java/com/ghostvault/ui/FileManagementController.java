@@ -467,8 +467,9 @@ public class FileManagementController {
                 updateMessage("Securely deleting file...");
                 updateProgress(0.3, 1.0);
                 
-                // Secure delete from vault
-                fileManager.secureDeleteFile(selectedFile);
+                // Secure delete from vault, from where the file is now if it was moved since
+                VaultFile current = metadataManager.getFile(selectedFile.getFileId());
+                fileManager.secureDeleteFile(current != null ? current : selectedFile);
                 
                 updateMessage("Updating metadata...");
                 updateProgress(0.8, 1.0);
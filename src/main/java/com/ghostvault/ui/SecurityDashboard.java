@@ -1,6 +1,7 @@
 package com.ghostvault.ui;
 
 import com.ghostvault.audit.AuditManager;
+import com.ghostvault.core.VaultScrubber;
 import com.ghostvault.security.ThreatDetectionEngine;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -42,6 +43,7 @@ public class SecurityDashboard {
     private String currentThreatLevel = "LOW";
     private int activeSessions = 1;
     private int totalFiles = 0;
+    private volatile VaultScrubber.Report lastScrubReport;
     
     public SecurityDashboard(AuditManager auditManager, ThreatDetectionEngine threatEngine) {
         this.auditManager = auditManager;
@@ -371,6 +373,11 @@ public class SecurityDashboard {
             "🛡️ " + LocalDateTime.now().minusMinutes(60).format(DateTimeFormatter.ofPattern("HH:mm")) + " - Security scan completed"
         );
         
+        VaultScrubber.Report report = lastScrubReport;
+        if (report != null) {
+            recentActivityList.getItems().add(0, "🛡️ " + formatTime(report.getCompletedAt()) + " - " + integritySummary(report));
+        }
+        
         activityPanel.getChildren().addAll(activityTitle, recentActivityList);
         return activityPanel;
     }
@@ -481,6 +488,9 @@ public class SecurityDashboard {
         if (totalFiles > 0) score += 5; // Has protected files
         if (currentThreatLevel.equals("LOW")) score += 15; // Low threat level
         
+        VaultScrubber.Report report = lastScrubReport;
+        if (report != null && !report.isClean()) score -= 20; // Damaged files found by the integrity scan
+        
         return Math.min(100, score);
     }
     
@@ -521,6 +531,37 @@ public class SecurityDashboard {
         }
     }
     
+    /**
+     * Show the result of the last background integrity scan
+     */
+    public void updateIntegrityStatus(VaultScrubber.Report report) {
+        VaultScrubber.Report previous = lastScrubReport;
+        this.lastScrubReport = report;
+        if (report != null && (previous == null || previous.getCompletedAt() != report.getCompletedAt())) {
+            addSecurityEvent(integritySummary(report));
+        }
+    }
+    
+    /**
+     * Report a file the integrity scan found damaged
+     */
+    public void reportDamagedFile(String fileName, String reason) {
+        addSecurityEvent("Integrity check failed: " + fileName + " (" + reason + ")");
+    }
+    
+    private static String integritySummary(VaultScrubber.Report report) {
+        if (report.isClean()) {
+            return "Integrity scan passed: " + report.getFilesChecked() + " files verified";
+        }
+        return "Integrity scan found " + report.getCorruptFileIds().size() + " damaged of "
+            + report.getFilesChecked() + " files";
+    }
+    
+    private static String formatTime(long epochMillis) {
+        return LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(epochMillis), java.time.ZoneId.systemDefault())
+            .format(DateTimeFormatter.ofPattern("HH:mm"));
+    }
+    
     /**
      * Hide dashboard
      */
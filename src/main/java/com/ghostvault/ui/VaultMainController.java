@@ -1,15 +1,19 @@
 package com.ghostvault.ui;
 
 import com.ghostvault.backup.VaultBackupManager;
+import com.ghostvault.core.BatchImportService;
 import com.ghostvault.core.DecoyManager;
 import com.ghostvault.core.FileManager;
+import com.ghostvault.core.LayoutMigrator;
 import com.ghostvault.core.MetadataManager;
+import com.ghostvault.core.VaultScrubber;
 import com.ghostvault.model.VaultFile;
 import com.ghostvault.security.SessionManager;
 import com.ghostvault.ui.preview.EnhancedPreviewRouter;
 import com.ghostvault.ui.preview.DefaultPreviewComponentFactory;
 import com.ghostvault.ui.preview.PreviewSettings;
 import com.ghostvault.audit.AuditManager;
+import com.ghostvault.config.AppConfig;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -39,10 +43,13 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Optimized controller for the main vault interface
@@ -50,6 +57,9 @@ import java.util.stream.Collectors;
  */
 public class VaultMainController implements Initializable {
     
+    // Text previews beyond this size only decrypt the head of the file
+    private static final int TEXT_PREVIEW_MAX_BYTES = 2 * 1024 * 1024;
+    
     // FXML Controls
     @FXML private Button uploadButton;
     @FXML private Button downloadButton;
@@ -107,10 +117,16 @@ public class VaultMainController implements Initializable {
     
     // State Management
     private boolean isDecoyMode = false;
+    private volatile BatchImportService activeImport;
+    private volatile boolean operationInProgress;
+    private VaultScrubber scrubber;
+    private LayoutMigrator layoutMigrator;
     private boolean isDashboardVisible = false;
     private final ObservableList<String> fileList = FXCollections.observableArrayList();
     private final ObservableList<String> filteredFileList = FXCollections.observableArrayList();
     private List<VaultFile> allVaultFiles = FXCollections.observableArrayList();
+    private final Map<String, Integer> fileListPositions = new HashMap<>();
+    private final Map<String, Path> orphanedPaths = new HashMap<>(); // display name -> ciphertext
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -136,6 +152,11 @@ public class VaultMainController implements Initializable {
             logMessage("🔐 Encryption key initialized for file operations");
         }
         
+        // Chunk references are counted against the metadata registry
+        if (fileManager != null && metadataManager != null) {
+            fileManager.setMetadataManager(metadataManager);
+        }
+        
         // Initialize encryption key for metadata operations
         if (metadataManager != null && encryptionKey != null) {
             metadataManager.setEncryptionKey(encryptionKey);
@@ -143,6 +164,11 @@ public class VaultMainController implements Initializable {
             
             // Load existing metadata
             try {
+                MetadataManager.MetadataSummary summary = metadataManager.loadSummary();
+                if (summary != null) {
+                    logMessage("📋 Opening vault: " + summary.getFileCount() + " files, " +
+                        formatFileSize(summary.getTotalSize()));
+                }
                 metadataManager.loadMetadata();
                 logMessage("📋 Metadata loaded successfully");
             } catch (Exception e) {
@@ -187,10 +213,70 @@ public class VaultMainController implements Initializable {
             logMessage("⚠ Failed to initialize Enhanced Preview System: " + e.getMessage());
         }
         
+        startScrubber();
+        startLayoutMigration();
+        
         refreshFileList();
         updateStatus();
     }
     
+    /**
+     * Re-verify the vault in the background, yielding whenever the user is working
+     */
+    private void startScrubber() {
+        if (fileManager == null || metadataManager == null || encryptionKey == null) {
+            return;
+        }
+        try {
+            scrubber = new VaultScrubber(fileManager, metadataManager, auditManager,
+                Paths.get(AppConfig.SCRUB_CHECKPOINT_FILE), encryptionKey);
+            scrubber.setBusySignal(() -> operationInProgress || activeImport != null
+                || (sessionManager != null && System.currentTimeMillis() - sessionManager.getLastActivityTime()
+                    < AppConfig.SCRUB_IDLE_SECONDS * 1000L));
+            scrubber.setListener(new VaultScrubber.ScrubListener() {
+                @Override
+                public void onCorruptFile(VaultFile vaultFile, String reason) {
+                    logMessage("⚠ Integrity check failed: " + vaultFile.getOriginalName() + " (" + reason + ")");
+                    if (securityDashboard != null) {
+                        securityDashboard.reportDamagedFile(vaultFile.getOriginalName(), reason);
+                    }
+                }
+                
+                @Override
+                public void onPassCompleted(VaultScrubber.Report report) {
+                    logMessage("🛡 Integrity scan complete: " + report.getFilesChecked() + " files, "
+                        + report.getCorruptFileIds().size() + " damaged");
+                    if (securityDashboard != null) {
+                        securityDashboard.updateIntegrityStatus(report);
+                    }
+                }
+            });
+            scrubber.start();
+        } catch (Exception e) {
+            logMessage("⚠ Failed to start integrity scrubber: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Pack small files and move files off the flat layout in the background
+     */
+    private void startLayoutMigration() {
+        if (fileManager == null || metadataManager == null || encryptionKey == null) {
+            return;
+        }
+        LayoutMigrator migrator = new LayoutMigrator(fileManager, metadataManager);
+        layoutMigrator = migrator;
+        migrator.start(null).whenComplete((moved, error) -> {
+            if (error != null) {
+                logMessage("⚠ Storage layout migration failed: " + error.getMessage());
+            } else if (moved > 0 && !migrator.isCancelled()) {
+                logMessage("📦 Storage layout updated for " + moved + " file(s)");
+                // The list holds the files' previous locations
+                Platform.runLater(this::refreshFileList);
+            }
+        });
+    }
+    
     /**
      * Initialize for decoy vault mode
      */
@@ -539,46 +625,80 @@ public class VaultMainController implements Initializable {
     
     /**
      * Process multiple file uploads with progress tracking
+     * 
+     * Files are encrypted by a background BatchImportService so the UI never blocks,
+     * and metadata is written once per group of files instead of once per file.
      */
     private void processFileUploads(List<File> files) {
+        if (fileManager == null || metadataManager == null) {
+            logMessage("⚠ File manager or metadata manager not initialized");
+            return;
+        }
+        if (activeImport != null) {
+            showWarning("Upload In Progress", "Please wait for the current upload to finish");
+            return;
+        }
+        
         showOperationProgress("Uploading files...");
         logMessage("📁 Processing " + files.size() + " file(s) for upload...");
         
-        int successCount = 0;
-        int totalFiles = files.size();
+        BatchImportService importService = new BatchImportService(fileManager, metadataManager);
+        activeImport = importService;
         
-        for (int i = 0; i < files.size(); i++) {
-            File file = files.get(i);
-            updateOperationProgress("Encrypting: " + file.getName(), (double) i / totalFiles);
+        int totalFiles = files.size();
+        // Per-file log lines are only useful for small batches; large ones report progress steps
+        boolean logEachFile = totalFiles <= 50;
+        int progressStep = Math.max(1, totalFiles / 100);
+        
+        BatchImportService.ImportListener listener = new BatchImportService.ImportListener() {
+            @Override
+            public void onFileImported(File source, VaultFile vaultFile, int completed, int total) {
+                if (logEachFile) {
+                    logMessage("✓ Uploaded and encrypted: " + source.getName());
+                }
+                if (completed % progressStep == 0 || completed == total) {
+                    updateOperationProgress("Encrypting " + completed + "/" + total, (double) completed / total);
+                }
+            }
             
+            @Override
+            public void onFileFailed(File source, Exception error, int completed, int total) {
+                logMessage("✗ Failed to upload " + source.getName() + ": " + error.getMessage());
+            }
+        };
+        
+        Thread importThread = new Thread(() -> {
             try {
-                if (fileManager != null && metadataManager != null) {
-                    logMessage("🔐 Encrypting: " + file.getName());
+                BatchImportService.BatchImportResult result = importService.importFiles(files, listener);
+                
+                Platform.runLater(() -> {
+                    activeImport = null;
+                    hideOperationProgress();
                     
-                    // Store encrypted file and get metadata
-                    VaultFile vaultFile = fileManager.storeFile(file);
-                    metadataManager.addFile(vaultFile);
+                    if (result.isCancelled()) {
+                        logMessage("⚠ Upload cancelled after " + result.getSuccessCount() + " file(s)");
+                    }
                     
-                    successCount++;
-                    logMessage("✓ Uploaded and encrypted: " + file.getName());
-                } else {
-                    logMessage("⚠ File manager or metadata manager not initialized");
-                    break;
-                }
+                    if (result.getSuccessCount() > 0) {
+                        logMessage("🔄 Refreshing file list...");
+                        refreshFileList();
+                        showNotification("Upload Complete", "Successfully uploaded " + result.getSuccessCount() + " file(s)");
+                    } else {
+                        logMessage("❌ No files were uploaded successfully");
+                    }
+                });
             } catch (Exception e) {
-                logMessage("✗ Failed to upload " + file.getName() + ": " + e.getMessage());
+                Platform.runLater(() -> {
+                    activeImport = null;
+                    hideOperationProgress();
+                    logMessage("✗ Failed to save file metadata: " + e.getMessage());
+                    showError("Upload Failed", "Error: " + e.getMessage());
+                    refreshFileList();
+                });
             }
-        }
-        
-        hideOperationProgress();
-        
-        if (successCount > 0) {
-            logMessage("🔄 Refreshing file list...");
-            refreshFileList();
-            showNotification("Upload Complete", "Successfully uploaded " + successCount + " file(s)");
-        } else {
-            logMessage("❌ No files were uploaded successfully");
-        }
+        }, "GhostVault-Upload");
+        importThread.setDaemon(true);
+        importThread.start();
     }
     
     /**
@@ -631,6 +751,14 @@ public class VaultMainController implements Initializable {
                 if (selectedDisplayName.contains("(orphaned)")) {
                     handleOrphanedFileDownload(selectedDisplayName);
                     return;
+                } else if (selectedDisplayName.contains("(orphaned pack)")) {
+                    showWarning("Recovery Not Available",
+                        "A pack holds many small files and cannot be split without their metadata.");
+                    return;
+                } else if (selectedDisplayName.contains("(orphaned manifest)")) {
+                    showWarning("Recovery Not Available",
+                        "A deduplicated file cannot be reassembled from its chunks without its metadata.");
+                    return;
                 } else {
                     logMessage("✗ Could not find file metadata for: " + selectedDisplayName);
                     showWarning("File Not Found", "Could not find metadata for the selected file.");
@@ -647,12 +775,8 @@ public class VaultMainController implements Initializable {
             showOperationProgress("Decrypting file...");
             logMessage("🔓 Decrypting: " + targetFile.getOriginalName());
             
-            // Retrieve and decrypt file
-            byte[] decryptedData = fileManager.retrieveFile(targetFile);
-            Files.write(saveLocation.toPath(), decryptedData);
-            
-            // Secure memory cleanup
-            Arrays.fill(decryptedData, (byte) 0);
+            // Stream-decrypt file to the chosen location
+            fileManager.exportFile(targetFile, saveLocation);
             
             hideOperationProgress();
             logMessage("✓ Downloaded and decrypted: " + targetFile.getOriginalName());
@@ -682,7 +806,9 @@ public class VaultMainController implements Initializable {
                 "⚠️ WARNING:\n" +
                 "• Original filename is unknown\n" +
                 "• File type cannot be determined\n" +
-                "• File may be corrupted or incomplete\n\n" +
+                "• File may be corrupted or incomplete\n" +
+                "• Files stored with their own key need that key from the metadata;\n" +
+                "  only files encrypted under the vault key can be decrypted\n\n" +
                 "Do you want to attempt recovery anyway?");
             
             if (!proceed) {
@@ -690,12 +816,11 @@ public class VaultMainController implements Initializable {
                 return;
             }
             
-            // Attempt to decrypt the orphaned file
-            String encryptedFilePath = System.getProperty("user.home") + "/.ghostvault/files/" + uuidPart + ".enc";
-            File encryptedFile = new File(encryptedFilePath);
+            // Attempt to decrypt the orphaned file where it was found
+            File encryptedFile = orphanedFile(selectedDisplayName);
             
-            if (!encryptedFile.exists()) {
-                logMessage("✗ Encrypted file not found: " + encryptedFilePath);
+            if (encryptedFile == null || !encryptedFile.exists()) {
+                logMessage("✗ Encrypted file not found: " + uuidPart);
                 showError("File Not Found", "The encrypted file could not be located on disk.");
                 return;
             }
@@ -717,7 +842,7 @@ public class VaultMainController implements Initializable {
                     com.ghostvault.model.VaultFile tempVaultFile = new com.ghostvault.model.VaultFile(
                         "unknown_file",
                         uuidPart,
-                        uuidPart + ".enc",
+                        Paths.get(AppConfig.FILES_DIR).relativize(encryptedFile.toPath()).toString().replace('\\', '/'),
                         encryptedFile.length(),
                         "unknown",
                         System.currentTimeMillis()
@@ -800,8 +925,15 @@ public class VaultMainController implements Initializable {
             showOperationProgress("Loading file for preview...");
             logMessage("👁️ Loading file for preview: " + targetFile.getOriginalName());
             
-            // Retrieve and decrypt file
-            byte[] decryptedData = fileManager.retrieveFile(targetFile);
+            // Large text files are paged in: only the first segments are decrypted
+            byte[] decryptedData;
+            if (isTextOrCodeFile(extension) && targetFile.getSize() > TEXT_PREVIEW_MAX_BYTES) {
+                decryptedData = fileManager.readRange(targetFile, 0, TEXT_PREVIEW_MAX_BYTES);
+                logMessage("ℹ Showing first " + formatFileSize(TEXT_PREVIEW_MAX_BYTES) + " of " +
+                    formatFileSize(targetFile.getSize()));
+            } else {
+                decryptedData = fileManager.retrieveFile(targetFile);
+            }
             
             hideOperationProgress();
             
@@ -1413,16 +1545,17 @@ public class VaultMainController implements Initializable {
             try {
                 showOperationProgress("Securely deleting file...");
                 
+                // The file may have been moved since the list was loaded
+                VaultFile current = metadataManager.getFile(targetFile.getFileId());
+                if (current != null) {
+                    targetFile = current;
+                }
+                
                 // Remove from metadata first
                 metadataManager.removeFile(targetFile.getFileId());
                 
-                // Secure delete the encrypted file
-                String encryptedFilePath = System.getProperty("user.home") + "/.ghostvault/files/" + targetFile.getEncryptedName();
-                File encryptedFile = new File(encryptedFilePath);
-                if (encryptedFile.exists()) {
-                    // Perform secure deletion (multiple overwrite passes)
-                    secureDeleteFile(encryptedFile);
-                }
+                // Secure delete the encrypted file (and any deduplicated chunks only it used)
+                fileManager.secureDeleteFile(targetFile);
                 
                 hideOperationProgress();
                 refreshFileList();
@@ -1772,6 +1905,21 @@ public class VaultMainController implements Initializable {
         
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
             filteredFileList.addAll(fileList);
+        } else if (!isDecoyMode && metadataManager != null && !fileListPositions.isEmpty()) {
+            // Served by the metadata search index; keep the list order
+            List<Integer> positions = new ArrayList<>();
+            for (VaultFile match : metadataManager.searchFiles(searchTerm)) {
+                Integer position = fileListPositions.get(match.getFileId());
+                if (position != null) {
+                    positions.add(position);
+                }
+            }
+            Collections.sort(positions);
+            List<String> filtered = new ArrayList<>(positions.size());
+            for (int position : positions) {
+                filtered.add(fileList.get(position));
+            }
+            filteredFileList.addAll(filtered);
         } else {
             String lowerSearchTerm = searchTerm.toLowerCase();
             List<String> filtered = fileList.stream()
@@ -1791,6 +1939,8 @@ public class VaultMainController implements Initializable {
     private void refreshFileList() {
         fileList.clear();
         allVaultFiles.clear();
+        fileListPositions.clear();
+        orphanedPaths.clear();
         
         if (isDecoyMode) {
             refreshDecoyFileList();
@@ -1809,10 +1959,12 @@ public class VaultMainController implements Initializable {
             if (vaultFiles != null && !vaultFiles.isEmpty()) {
                 allVaultFiles.addAll(vaultFiles);
                 
+                List<String> displayNames = new ArrayList<>(vaultFiles.size());
                 for (VaultFile vaultFile : vaultFiles) {
-                    String displayName = vaultFile.getIcon() + " " + vaultFile.getDisplayName();
-                    fileList.add(displayName);
+                    fileListPositions.put(vaultFile.getFileId(), displayNames.size());
+                    displayNames.add(vaultFile.getIcon() + " " + vaultFile.getDisplayName());
                 }
+                fileList.addAll(displayNames);
                 
                 logMessage("📁 Loaded " + fileList.size() + " file(s) from vault");
             } else {
@@ -1838,53 +1990,87 @@ public class VaultMainController implements Initializable {
         updateStatus();
     }
     
+    /**
+     * The ciphertext an orphaned list entry was found at, or null if the list has been reloaded
+     */
+    private File orphanedFile(String displayName) {
+        Path path = orphanedPaths.get(displayName);
+        return path != null ? path.toFile() : null;
+    }
+    
     /**
      * Check for encrypted files without metadata (orphaned files)
      */
     private void checkForOrphanedFiles() {
         try {
-            String vaultFilesPath = System.getProperty("user.home") + "/.ghostvault/files";
-            File vaultDir = new File(vaultFilesPath);
+            // Walks the fan-out directories and packs, not the deduplicated chunks
+            List<File> orphanedFiles = new ArrayList<>();
+            
+            for (Path path : fileManager.listStoredFiles()) {
+                File file = path.toFile();
+                String displayName;
+                if (file.getName().endsWith(".enc")) {
+                    displayName = "🔒 " + file.getName().replace(".enc", "") + " (orphaned)";
+                } else if (file.getName().endsWith(".gvp")) {
+                    // Offered for cleanup only: its entries cannot be told apart without metadata
+                    displayName = "📦 " + file.getName().replace(".gvp", "") + " (orphaned pack)";
+                } else if (file.getName().endsWith(".gvc")) {
+                    // Cleanup only as well: the chunk keys and order are in the metadata
+                    displayName = "🧩 " + file.getName().replace(".gvc", "") + " (orphaned manifest)";
+                } else {
+                    continue;
+                }
+                orphanedFiles.add(file);
+                orphanedPaths.put(displayName, path);
+                fileList.add(displayName);
+            }
+            int orphanedCount = orphanedFiles.size();
+            
+            // With no metadata left, no manifest refers to the chunks either
+            File chunkDirectory = fileManager.getChunkDirectory().toFile();
+            boolean orphanedChunks = chunkDirectory.isDirectory();
+            if (orphanedChunks) {
+                orphanedFiles.add(chunkDirectory);
+            }
             
-            if (vaultDir.exists() && vaultDir.isDirectory()) {
-                File[] files = vaultDir.listFiles();
-                if (files != null && files.length > 0) {
-                    List<File> orphanedFiles = new ArrayList<>();
+            if (!orphanedFiles.isEmpty()) {
+                logMessage("⚠ Found " + orphanedCount + " orphaned encrypted file(s)"
+                    + (orphanedChunks ? " and orphaned deduplicated chunks" : ""));
+                
+                // Offer to clean up orphaned files
+                Platform.runLater(() -> {
+                    boolean cleanup = showConfirmation("Orphaned Files Detected", 
+                        "Found " + orphanedCount + " encrypted file(s) without metadata" +
+                        (orphanedChunks ? ", plus the deduplicated chunks of such files" : "") + ".\n\n" +
+                        "These files cannot be properly decrypted and may be from:\n" +
+                        "• Previous vault sessions with lost metadata\n" +
+                        "• Corrupted or incomplete uploads\n" +
+                        "• Failed restore operations\n\n" +
+                        "Would you like to clean up these orphaned files?\n" +
+                        "(This will permanently delete the encrypted files)");
                     
-                    for (File file : files) {
-                        if (file.isFile() && file.getName().endsWith(".enc")) {
-                            orphanedFiles.add(file);
-                            String displayName = "🔒 " + file.getName().replace(".enc", "") + " (orphaned)";
-                            fileList.add(displayName);
-                        }
+                    if (cleanup) {
+                        cleanupOrphanedFiles(orphanedFiles);
                     }
-                    
-                    if (!orphanedFiles.isEmpty()) {
-                        logMessage("⚠ Found " + orphanedFiles.size() + " orphaned encrypted file(s)");
-                        
-                        // Offer to clean up orphaned files
-                        Platform.runLater(() -> {
-                            boolean cleanup = showConfirmation("Orphaned Files Detected", 
-                                "Found " + orphanedFiles.size() + " encrypted file(s) without metadata.\n\n" +
-                                "These files cannot be properly decrypted and may be from:\n" +
-                                "• Previous vault sessions with lost metadata\n" +
-                                "• Corrupted or incomplete uploads\n" +
-                                "• Failed restore operations\n\n" +
-                                "Would you like to clean up these orphaned files?\n" +
-                                "(This will permanently delete the encrypted files)");
-                            
-                            if (cleanup) {
-                                cleanupOrphanedFiles(orphanedFiles);
-                            }
-                        });
-                    }
-                }
+                });
             }
         } catch (Exception e) {
             logMessage("⚠ Error checking for orphaned files: " + e.getMessage());
         }
     }
     
+    /**
+     * Delete a directory and everything in it
+     * 
+     * @return whether the directory is gone
+     */
+    private static boolean deleteDirectory(Path directory) throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        return !Files.exists(directory);
+    }
+    
     /**
      * Clean up orphaned encrypted files
      */
@@ -1896,7 +2082,7 @@ public class VaultMainController implements Initializable {
             int deletedCount = 0;
             for (File file : orphanedFiles) {
                 try {
-                    if (file.delete()) {
+                    if (file.isDirectory() ? deleteDirectory(file.toPath()) : file.delete()) {
                         deletedCount++;
                         logMessage("✓ Deleted orphaned file: " + file.getName());
                     } else {
@@ -1984,41 +2170,13 @@ public class VaultMainController implements Initializable {
         return fileChooser;
     }
     
-    /**
-     * Perform secure file deletion with multiple overwrite passes
-     */
-    private void secureDeleteFile(File file) throws Exception {
-        if (!file.exists()) return;
-        
-        long fileSize = file.length();
-        byte[] randomData = new byte[1024];
-        
-        // Perform 3 overwrite passes
-        for (int pass = 0; pass < 3; pass++) {
-            try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw")) {
-                long remaining = fileSize;
-                while (remaining > 0) {
-                    new java.security.SecureRandom().nextBytes(randomData);
-                    int writeSize = (int) Math.min(randomData.length, remaining);
-                    raf.write(randomData, 0, writeSize);
-                    remaining -= writeSize;
-                }
-                raf.getFD().sync(); // Force write to disk
-            }
-        }
-        
-        // Finally delete the file
-        if (!file.delete()) {
-            throw new Exception("Failed to delete file after secure overwrite");
-        }
-    }
-    
     /**
      * Attempt to recover orphaned files by trying to decrypt them with current key
      */
     private void attemptOrphanedFileRecovery(String selectedDisplayName) {
         try {
-            String encryptedFileName = selectedDisplayName.replace("🔒 ", "").replace(" (orphaned)", "") + ".enc";
+            File encryptedFile = orphanedFile(selectedDisplayName);
+            String encryptedFileName = encryptedFile != null ? encryptedFile.getName() : selectedDisplayName;
             
             boolean confirmed = showConfirmation("Attempt File Recovery", 
                 "Try to decrypt this orphaned file with the current encryption key?\n\n" +
@@ -2031,10 +2189,7 @@ public class VaultMainController implements Initializable {
             showOperationProgress("Attempting file recovery...");
             logMessage("🔧 Attempting to recover: " + encryptedFileName);
             
-            String vaultFilesPath = System.getProperty("user.home") + "/.ghostvault/files";
-            File encryptedFile = new File(vaultFilesPath, encryptedFileName);
-            
-            if (!encryptedFile.exists()) {
+            if (encryptedFile == null || !encryptedFile.exists()) {
                 hideOperationProgress();
                 logMessage("✗ Encrypted file not found: " + encryptedFileName);
                 showError("File Not Found", "The encrypted file could not be found.");
@@ -2125,11 +2280,9 @@ public class VaultMainController implements Initializable {
      */
     private void showOrphanedFileProperties(String selectedDisplayName) {
         try {
-            String encryptedFileName = selectedDisplayName.replace("🔒 ", "").replace(" (orphaned)", "") + ".enc";
-            String vaultFilesPath = System.getProperty("user.home") + "/.ghostvault/files";
-            File encryptedFile = new File(vaultFilesPath, encryptedFileName);
-            
-            if (encryptedFile.exists()) {
+            File encryptedFile = orphanedFile(selectedDisplayName);
+            String encryptedFileName = encryptedFile != null ? encryptedFile.getName() : selectedDisplayName;
+            if (encryptedFile != null && encryptedFile.exists()) {
                 String properties = String.format(
                     "Orphaned File Properties\n\n" +
                     "Status: ⚠ Missing Metadata\n" +
@@ -2294,6 +2447,13 @@ public class VaultMainController implements Initializable {
             
             // Update dashboard metrics
             securityDashboard.updateMetrics(fileCount, securityScore, threatLevel, 1);
+            if (scrubber != null) {
+                try {
+                    securityDashboard.updateIntegrityStatus(scrubber.getLastReport());
+                } catch (Exception e) {
+                    logMessage("⚠ Could not read integrity scan status: " + e.getMessage());
+                }
+            }
             
             logMessage("📊 Dashboard updated with real vault data: " + fileCount + " files, security score: " + securityScore);
         }
@@ -2495,9 +2655,7 @@ public class VaultMainController implements Initializable {
                 fileCountLabel.setText("📁 " + displayedCount + " of " + totalCount + " files");
             }
             
-            // Calculate total vault size from actual VaultFile objects
-            long totalSize = allVaultFiles.stream().mapToLong(VaultFile::getSize).sum();
-            vaultSizeLabel.setText("💾 " + formatFileSize(totalSize));
+            vaultSizeLabel.setText("💾 " + formatFileSize(totalVaultSize()));
             
             if (isDecoyMode) {
                 encryptionLabel.setText("🎭 Decoy Mode Active");
@@ -2519,21 +2677,24 @@ public class VaultMainController implements Initializable {
      * Calculate total vault size
      */
     private String calculateVaultSize() {
-        if (allVaultFiles.isEmpty()) {
-            return "0.0";
+        return String.format("%.1f", totalVaultSize() / (1024.0 * 1024.0));
+    }
+    
+    /**
+     * Total plaintext size, from the metadata's running totals outside decoy mode
+     */
+    private long totalVaultSize() {
+        if (!isDecoyMode && metadataManager != null) {
+            return metadataManager.getTotalVaultSize();
         }
-        
-        long totalBytes = allVaultFiles.stream()
-            .mapToLong(VaultFile::getSize)
-            .sum();
-        
-        return String.format("%.1f", totalBytes / (1024.0 * 1024.0));
+        return allVaultFiles.stream().mapToLong(VaultFile::getSize).sum();
     }
     
     /**
      * Show operation progress
      */
     private void showOperationProgress(String operation) {
+        operationInProgress = true;
         Platform.runLater(() -> {
             operationProgress.setVisible(true);
             operationStatusLabel.setText(operation);
@@ -2553,6 +2714,7 @@ public class VaultMainController implements Initializable {
      * Hide operation progress
      */
     private void hideOperationProgress() {
+        operationInProgress = false;
         Platform.runLater(() -> {
             operationProgress.setVisible(false);
             operationStatusLabel.setText("");
@@ -2589,6 +2751,24 @@ public class VaultMainController implements Initializable {
      * Clear sensitive data from memory
      */
     private void clearSensitiveData() {
+        // Stop any running upload; files already encrypted are still committed
+        BatchImportService importService = activeImport;
+        if (importService != null) {
+            importService.cancel();
+        }
+        
+        // Checkpoint the integrity scan before the key goes away
+        if (scrubber != null) {
+            scrubber.stop();
+            scrubber = null;
+        }
+        
+        // Files already moved stay moved; the rest are moved on the next unlock
+        if (layoutMigrator != null) {
+            layoutMigrator.cancel();
+            layoutMigrator = null;
+        }
+        
         if (encryptionKey != null) {
             encryptionKey = null;
         }
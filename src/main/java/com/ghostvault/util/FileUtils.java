@@ -53,13 +53,30 @@ public class FileUtils {
     public static String calculateSHA256(byte[] data) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
-            return Base64.getEncoder().encodeToString(hash);
+            return encodeHash(digest.digest(data));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 algorithm not available", e);
         }
     }
     
+    /**
+     * Create a SHA-256 digest for incremental (streaming) hashing
+     */
+    public static MessageDigest newSHA256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+    
+    /**
+     * Encode a raw digest the same way calculateSHA256 does (Base64)
+     */
+    public static String encodeHash(byte[] hash) {
+        return Base64.getEncoder().encodeToString(hash);
+    }
+    
     /**
      * Format file size for display
      */
@@ -0,0 +1,200 @@
+package com.ghostvault.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merkle tree digest over fixed-size blocks of a file's plaintext
+ *
+ * Leaves are hashed independently, so a large file can be hashed on all cores and
+ * each block checked on its own. The tree follows RFC 6962: leaf = SHA-256(0x00 || block),
+ * node = SHA-256(0x01 || left || right), and a tree over n leaves splits at the largest
+ * power of two below n. Empty input has a single empty leaf.
+ */
+public final class MerkleHash {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(FileUtils::newSHA256Digest);
+
+    private MerkleHash() {
+        // Utility class - prevent instantiation
+    }
+
+    /**
+     * Hash one block as a leaf; safe to call from any thread
+     */
+    public static byte[] leaf(byte[] data, int offset, int length) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(LEAF_PREFIX);
+        digest.update(data, offset, length);
+        return digest.digest();
+    }
+
+    /**
+     * Hash a block's remaining bytes as a leaf, consuming them; safe to call from any thread
+     */
+    public static byte[] leaf(ByteBuffer block) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(LEAF_PREFIX);
+        digest.update(block);
+        return digest.digest();
+    }
+
+    private static byte[] node(byte[] left, byte[] right) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    /**
+     * Root of the whole input hashed sequentially
+     */
+    public static byte[] of(byte[] data, int blockSize) {
+        Hasher hasher = new Hasher(blockSize);
+        hasher.write(data, 0, data.length);
+        return hasher.digest();
+    }
+
+    /**
+     * Folds leaves, given in order, into the root while keeping only O(log n) subtree roots
+     */
+    public static final class Builder {
+        private final List<byte[]> subtrees = new ArrayList<>();
+        private final List<Long> sizes = new ArrayList<>();
+        private long leafCount;
+
+        public void addLeaf(byte[] leaf) {
+            byte[] hash = leaf;
+            long size = 1;
+            // Merge equal-sized perfect subtrees, like carrying in a binary counter
+            while (!sizes.isEmpty() && sizes.get(sizes.size() - 1) == size) {
+                hash = node(subtrees.remove(subtrees.size() - 1), hash);
+                sizes.remove(sizes.size() - 1);
+                size *= 2;
+            }
+            subtrees.add(hash);
+            sizes.add(size);
+            leafCount++;
+        }
+
+        public long getLeafCount() {
+            return leafCount;
+        }
+
+        public byte[] root() {
+            if (subtrees.isEmpty()) {
+                throw new IllegalStateException("No leaves added");
+            }
+            byte[] root = subtrees.get(subtrees.size() - 1);
+            for (int i = subtrees.size() - 2; i >= 0; i--) {
+                root = node(subtrees.get(i), root);
+            }
+            return root;
+        }
+    }
+
+    /**
+     * Sequential hasher that splits written bytes into blocks
+     */
+    public static final class Hasher extends OutputStream {
+        private final byte[] block;
+        private final Builder builder = new Builder();
+        private int filled;
+
+        public Hasher(int blockSize) {
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("Block size must be positive");
+            }
+            this.block = new byte[blockSize];
+        }
+
+        @Override
+        public void write(int b) {
+            block[filled++] = (byte) b;
+            if (filled == block.length) {
+                flushBlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            while (length > 0) {
+                int n = Math.min(length, block.length - filled);
+                System.arraycopy(data, offset, block, filled, n);
+                filled += n;
+                offset += n;
+                length -= n;
+                if (filled == block.length) {
+                    flushBlock();
+                }
+            }
+        }
+
+        /**
+         * Finish with the partial (or only, empty) last block and return the root
+         */
+        public byte[] digest() {
+            if (filled > 0 || builder.getLeafCount() == 0) {
+                flushBlock();
+            }
+            return builder.root();
+        }
+
+        /**
+         * Pass an input stream through this hasher, like {@link java.security.DigestInputStream}
+         */
+        public InputStream hashing(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b >= 0) {
+                        write(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = in.read(buffer, offset, length);
+                    if (n > 0) {
+                        write(buffer, offset, n);
+                    }
+                    return n;
+                }
+
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    // Skipped bytes would be missing from the hash
+                    byte[] discard = new byte[(int) Math.min(n, 8192)];
+                    int read = read(discard, 0, discard.length);
+                    return Math.max(read, 0);
+                }
+            };
+        }
+
+        private void flushBlock() {
+            builder.addLeaf(leaf(block, 0, filled));
+            Arrays.fill(block, 0, filled, (byte) 0);
+            filled = 0;
+        }
+    }
+}
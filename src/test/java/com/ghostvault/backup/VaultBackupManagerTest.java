@@ -1,7 +1,7 @@
 package com.ghostvault.backup;
 
 import com.ghostvault.audit.AuditManager;
-import com.ghostvault.config.AppConfig;
+import com.ghostvault.core.BackupOptions;
 import com.ghostvault.core.FileManager;
 import com.ghostvault.core.MetadataManager;
 import com.ghostvault.exception.BackupException;
@@ -13,6 +13,7 @@ import javax.crypto.SecretKey;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -33,12 +34,13 @@ class VaultBackupManagerTest {
     private MetadataManager metadataManager;
     private AuditManager auditManager;
     private SecretKey testKey;
+    private Path vaultDir;
     
     @BeforeEach
     void setUp() throws Exception {
         // Set up temporary vault directory
-        AppConfig.VAULT_DIR = tempDir.resolve("vault").toString();
-        Files.createDirectories(Path.of(AppConfig.VAULT_DIR));
+        vaultDir = tempDir.resolve("vault");
+        Files.createDirectories(vaultDir);
         
         // Create mock dependencies
         cryptoManager = mock(CryptoManager.class);
@@ -47,7 +49,8 @@ class VaultBackupManagerTest {
         auditManager = mock(AuditManager.class);
         
         // Create test key
-        testKey = CryptoManager.generateKey();
+        CryptoManager realCrypto = new CryptoManager();
+        testKey = realCrypto.keyFromBytes(realCrypto.generateSecureRandom(32));
         
         // Set up crypto manager mocks
         when(cryptoManager.encrypt(any(byte[].class), eq(testKey)))
@@ -67,7 +70,7 @@ class VaultBackupManagerTest {
             .thenReturn("test_checksum");
         
         // Create backup manager
-        backupManager = new VaultBackupManager(cryptoManager, fileManager, metadataManager, auditManager);
+        backupManager = new VaultBackupManager(cryptoManager, fileManager, metadataManager, auditManager, vaultDir);
     }
     
     @Test
@@ -136,7 +139,7 @@ class VaultBackupManagerTest {
         backupManager.createBackup(backupFile, testKey, null);
         
         // Clear vault directory to simulate restore scenario
-        deleteDirectory(Path.of(AppConfig.VAULT_DIR));
+        deleteDirectory(vaultDir);
         
         AtomicInteger progressCalls = new AtomicInteger(0);
         AtomicReference<String> lastMessage = new AtomicReference<>();
@@ -152,7 +155,7 @@ class VaultBackupManagerTest {
         });
         
         // Verify vault was restored
-        assertTrue(Files.exists(Path.of(AppConfig.VAULT_DIR)));
+        assertTrue(Files.exists(vaultDir));
         
         // Verify progress callback was called
         assertTrue(progressCalls.get() > 0);
@@ -208,7 +211,7 @@ class VaultBackupManagerTest {
         
         assertNotNull(info);
         assertTrue(info.isValid());
-        assertEquals("1.0", info.getVersion());
+        assertEquals("2.1", info.getVersion());
         assertNotNull(info.getCreationDate());
         assertTrue(info.getFileCount() >= 0);
         assertTrue(info.getTotalSize() >= 0);
@@ -244,7 +247,7 @@ class VaultBackupManagerTest {
     @DisplayName("Should handle backup with empty vault")
     void testBackupEmptyVault() throws Exception {
         // Ensure vault directory exists but is empty
-        Path vaultPath = Path.of(AppConfig.VAULT_DIR);
+        Path vaultPath = vaultDir;
         Files.createDirectories(vaultPath);
         
         File backupFile = tempDir.resolve("empty_vault_backup.gvbackup").toFile();
@@ -354,7 +357,7 @@ class VaultBackupManagerTest {
         
         // Create two backup managers for concurrent operations
         VaultBackupManager backupManager2 = new VaultBackupManager(
-            cryptoManager, fileManager, metadataManager, auditManager);
+            cryptoManager, fileManager, metadataManager, auditManager, vaultDir);
         
         // Run backups concurrently
         Thread thread1 = new Thread(() -> {
@@ -384,11 +387,236 @@ class VaultBackupManagerTest {
         assertTrue(backupFile2.exists());
     }
     
+    @Test
+    @DisplayName("Should restore streamed backup byte for byte")
+    void testStreamedBackupRoundTrip() throws Exception {
+        createTestVaultStructure();
+        byte[] large = new byte[3 * 1024 * 1024 + 17];
+        new java.util.Random(7).nextBytes(large);
+        Files.createDirectories(vaultDir.resolve("files/chunks/ab"));
+        Files.write(vaultDir.resolve("files/chunks/ab/abcd.chk"), large);
+        
+        File backupFile = tempDir.resolve("roundtrip.gvbackup").toFile();
+        backupManager.createBackup(backupFile, testKey, null);
+        assertFalse(tempDir.resolve("roundtrip.gvbackup.tmp").toFile().exists());
+        
+        deleteDirectory(vaultDir);
+        backupManager.restoreBackup(backupFile, testKey, null);
+        
+        assertArrayEquals(large, Files.readAllBytes(vaultDir.resolve("files/chunks/ab/abcd.chk")));
+        assertEquals("encrypted file 1", Files.readString(vaultDir.resolve("files/test1.enc")));
+        assertEquals("salt data", Files.readString(vaultDir.resolve("config/.salt")));
+    }
+    
+    @Test
+    @DisplayName("Should reject truncated backup")
+    void testRestoreTruncatedBackup() throws Exception {
+        createTestVaultStructure();
+        File backupFile = tempDir.resolve("truncated.gvbackup").toFile();
+        backupManager.createBackup(backupFile, testKey, null);
+        
+        byte[] data = Files.readAllBytes(backupFile.toPath());
+        Files.write(backupFile.toPath(), java.util.Arrays.copyOf(data, data.length - 10));
+        
+        assertThrows(BackupException.class, () -> backupManager.restoreBackup(backupFile, testKey, null));
+    }
+    
+    @Test
+    @DisplayName("Incremental chain should restore the latest state including deletions")
+    void testIncrementalChainRestore() throws Exception {
+        createTestVaultStructure();
+        File full = tempDir.resolve("full.gvbackup").toFile();
+        backupManager.createBackup(full, testKey, null);
+        
+        // Day 1: one new file, one deleted
+        Files.write(vaultDir.resolve("files/test3.enc"), "encrypted file 3".getBytes());
+        Files.delete(vaultDir.resolve("files/test2.enc"));
+        File day1 = tempDir.resolve("day1.gvbackup").toFile();
+        backupManager.createBackup(day1, testKey, BackupOptions.incrementalBackup(full), null);
+        
+        // Day 2: metadata rewritten in place
+        Files.write(vaultDir.resolve("metadata.enc"), "encrypted metadata v2".getBytes());
+        File day2 = tempDir.resolve("day2.gvbackup").toFile();
+        backupManager.createBackup(day2, testKey, BackupOptions.incrementalBackup(day1), null);
+        
+        assertTrue(day1.length() < full.length(), "Incremental should only hold changes");
+        assertEquals("full.gvbackup", backupManager.verifyBackup(day1, testKey).getParentBackup());
+        assertNull(backupManager.verifyBackup(full, testKey).getParentBackup());
+        
+        deleteDirectory(vaultDir);
+        backupManager.restoreBackup(day2, testKey, null);
+        
+        assertEquals("encrypted file 1", Files.readString(vaultDir.resolve("files/test1.enc")));
+        assertEquals("encrypted file 3", Files.readString(vaultDir.resolve("files/test3.enc")));
+        assertFalse(Files.exists(vaultDir.resolve("files/test2.enc")));
+        assertEquals("encrypted metadata v2", Files.readString(vaultDir.resolve("metadata.enc")));
+        assertEquals("salt data", Files.readString(vaultDir.resolve("config/.salt")));
+    }
+    
+    @Test
+    @DisplayName("Differential backup should be relative to the full backup")
+    void testDifferentialBackup() throws Exception {
+        createTestVaultStructure();
+        File full = tempDir.resolve("full.gvbackup").toFile();
+        backupManager.createBackup(full, testKey, null);
+        
+        Files.write(vaultDir.resolve("files/test3.enc"), "encrypted file 3".getBytes());
+        File day1 = tempDir.resolve("day1.gvbackup").toFile();
+        backupManager.createBackup(day1, testKey, BackupOptions.incrementalBackup(full), null);
+        
+        Files.write(vaultDir.resolve("files/test4.enc"), "encrypted file 4".getBytes());
+        File diff = tempDir.resolve("diff.gvbackup").toFile();
+        backupManager.createBackup(diff, testKey, BackupOptions.differentialBackup(day1), null);
+        
+        assertEquals("full.gvbackup", backupManager.verifyBackup(diff, testKey).getParentBackup());
+        
+        // Restoring needs only the full backup and the differential
+        assertTrue(day1.delete());
+        deleteDirectory(vaultDir);
+        backupManager.restoreBackup(diff, testKey, null);
+        
+        assertEquals("encrypted file 3", Files.readString(vaultDir.resolve("files/test3.enc")));
+        assertEquals("encrypted file 4", Files.readString(vaultDir.resolve("files/test4.enc")));
+    }
+    
+    @Test
+    @DisplayName("Should reject an incremental backup whose parent is missing or replaced")
+    void testBrokenChain() throws Exception {
+        createTestVaultStructure();
+        File full = tempDir.resolve("full.gvbackup").toFile();
+        backupManager.createBackup(full, testKey, null);
+        
+        Files.write(vaultDir.resolve("files/test3.enc"), "encrypted file 3".getBytes());
+        File day1 = tempDir.resolve("day1.gvbackup").toFile();
+        backupManager.createBackup(day1, testKey, BackupOptions.incrementalBackup(full), null);
+        
+        // A different full backup under the parent's name
+        backupManager.createBackup(full, testKey, null);
+        assertThrows(BackupException.class, () -> backupManager.restoreBackup(day1, testKey, null));
+        
+        assertTrue(full.delete());
+        assertThrows(BackupException.class, () -> backupManager.restoreBackup(day1, testKey, null));
+        assertTrue(Files.exists(vaultDir.resolve("files/test3.enc")), "Vault should be untouched");
+    }
+    
+    @Test
+    @DisplayName("Restore should stage in parallel and swap the vault in by rename")
+    void testStagedRestoreSwap() throws Exception {
+        createLargeTestVaultStructure();
+        byte[] large = new byte[2 * 1024 * 1024 + 5];
+        new java.util.Random(3).nextBytes(large);
+        Files.write(vaultDir.resolve("files/large.enc"), large);
+        for (int i = 0; i < 200; i++) {
+            Files.write(vaultDir.resolve("files/small" + i + ".enc"), ("small " + i).getBytes());
+        }
+        
+        File backupFile = tempDir.resolve("staged.gvbackup").toFile();
+        backupManager.createBackup(backupFile, testKey, null);
+        
+        Files.write(vaultDir.resolve("files/after.enc"), "added after backup".getBytes());
+        backupManager.restoreBackup(backupFile, testKey, null);
+        
+        assertArrayEquals(large, Files.readAllBytes(vaultDir.resolve("files/large.enc")));
+        for (int i = 0; i < 200; i++) {
+            assertEquals("small " + i, Files.readString(vaultDir.resolve("files/small" + i + ".enc")));
+        }
+        assertFalse(Files.exists(vaultDir.resolve("files/after.enc")));
+        
+        // The replaced vault is kept beside the restored one; nothing staged is left over
+        try (java.util.stream.Stream<Path> siblings = Files.list(vaultDir.getParent())) {
+            List<String> names = siblings.map(path -> path.getFileName().toString()).collect(java.util.stream.Collectors.toList());
+            Path previous = vaultDir.resolveSibling(names.stream()
+                .filter(name -> name.startsWith("vault_backup_")).findFirst().orElseThrow());
+            assertTrue(Files.exists(previous.resolve("files/after.enc")));
+            assertTrue(names.stream().noneMatch(name -> name.contains(".restore_")));
+        }
+    }
+    
+    @Test
+    @DisplayName("Verification modes should read only as much of the backup as they need")
+    void testVerificationModes() throws Exception {
+        createTestVaultStructure();
+        byte[] large = new byte[4 * 1024 * 1024];
+        new java.util.Random(5).nextBytes(large);
+        Files.write(vaultDir.resolve("files/large.enc"), large);
+        File backupFile = tempDir.resolve("verify.gvbackup").toFile();
+        backupManager.createBackup(backupFile, testKey, null);
+        
+        VaultBackupManager.BackupInfo quick = backupManager.verifyBackup(backupFile, testKey, VaultBackupManager.VerificationMode.QUICK);
+        VaultBackupManager.BackupInfo deep = backupManager.verifyBackup(backupFile, testKey, VaultBackupManager.VerificationMode.DEEP);
+        assertTrue(quick.isValid());
+        assertEquals(3, quick.getFileCount());
+        assertEquals(0, quick.getSegmentsVerified());
+        assertTrue(deep.isValid(), deep.getErrorMessage());
+        assertTrue(deep.getSegmentsVerified() > 64);
+        
+        // A flipped byte in the payload is only found by reading the segment
+        byte[] data = Files.readAllBytes(backupFile.toPath());
+        data[data.length / 2] ^= 1;
+        Files.write(backupFile.toPath(), data);
+        assertTrue(backupManager.verifyBackup(backupFile, testKey, VaultBackupManager.VerificationMode.QUICK).isValid());
+        assertFalse(backupManager.verifyBackup(backupFile, testKey, VaultBackupManager.VerificationMode.SAMPLE).isValid());
+        assertFalse(backupManager.verifyBackup(backupFile, testKey, VaultBackupManager.VerificationMode.DEEP).isValid());
+        
+        // Truncation is found from the table of contents alone
+        Files.write(backupFile.toPath(), java.util.Arrays.copyOf(data, data.length - 100));
+        assertFalse(backupManager.verifyBackup(backupFile, testKey, VaultBackupManager.VerificationMode.QUICK).isValid());
+    }
+    
+    @Test
+    @DisplayName("Table of contents should not verify another backup's payload")
+    void testTableOfContentsBoundToPayload() throws Exception {
+        createTestVaultStructure();
+        File first = tempDir.resolve("first.gvbackup").toFile();
+        File second = tempDir.resolve("second.gvbackup").toFile();
+        backupManager.createBackup(first, testKey, null);
+        backupManager.createBackup(second, testKey, null);
+        
+        // First payload followed by the second backup's table of contents and footer
+        byte[] a = Files.readAllBytes(first.toPath());
+        byte[] b = Files.readAllBytes(second.toPath());
+        int payloadEnd = a.length - 16 - (int) java.nio.ByteBuffer.wrap(a, a.length - 16, 8).getLong();
+        int tocStart = b.length - 16 - (int) java.nio.ByteBuffer.wrap(b, b.length - 16, 8).getLong();
+        java.io.ByteArrayOutputStream spliced = new java.io.ByteArrayOutputStream();
+        spliced.write(a, 0, payloadEnd);
+        spliced.write(b, tocStart, b.length - tocStart);
+        Files.write(first.toPath(), spliced.toByteArray());
+        
+        assertFalse(backupManager.verifyBackup(first, testKey, VaultBackupManager.VerificationMode.QUICK).isValid());
+    }
+    
+    @Test
+    @DisplayName("Backup result should report compression and throughput")
+    void testBackupResultStats() throws Exception {
+        createTestVaultStructure();
+        
+        File compressed = tempDir.resolve("compressed.gvbackup").toFile();
+        com.ghostvault.core.BackupResult result = backupManager.createBackup(compressed, testKey, null);
+        BackupOptions stored = BackupOptions.fullBackup();
+        stored.compressBackup = false;
+        File uncompressed = tempDir.resolve("stored.gvbackup").toFile();
+        com.ghostvault.core.BackupResult storedResult = backupManager.createBackup(uncompressed, testKey, stored, null);
+        
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getStats().getFilesBackedUp());
+        // Vault entries are ciphertext and stored; only manifest, index and digests are deflated
+        assertEquals(3, result.getStats().getEntriesCompressed());
+        assertEquals(0, storedResult.getStats().getEntriesCompressed());
+        assertEquals(storedResult.getStats().getBytesBackedUp(), result.getStats().getBytesBackedUp());
+        assertEquals(compressed.length(), result.getStats().getFinalBackupSize());
+        assertTrue(result.getStats().getThroughputMBps() >= 0);
+        assertTrue(compressed.length() <= uncompressed.length());
+        
+        deleteDirectory(vaultDir);
+        backupManager.restoreBackup(compressed, testKey, null);
+        assertTrue(Files.exists(vaultDir.resolve("metadata.enc")));
+    }
+    
     /**
      * Create test vault structure
      */
     private void createTestVaultStructure() throws Exception {
-        Path vaultPath = Path.of(AppConfig.VAULT_DIR);
+        Path vaultPath = vaultDir;
         
         // Create directories
         Files.createDirectories(vaultPath.resolve("files"));
@@ -406,7 +634,7 @@ class VaultBackupManagerTest {
      * Create large test vault structure
      */
     private void createLargeTestVaultStructure() throws Exception {
-        Path vaultPath = Path.of(AppConfig.VAULT_DIR);
+        Path vaultPath = vaultDir;
         
         // Create directories
         Files.createDirectories(vaultPath.resolve("files"));
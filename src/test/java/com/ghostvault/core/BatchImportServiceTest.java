@@ -0,0 +1,220 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for concurrent batch import with grouped metadata commits
+ */
+@DisplayName("BatchImportService Tests")
+class BatchImportServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileManager fileManager;
+    private MetadataManager metadataManager;
+    private SecretKey testKey;
+    private final List<VaultFile> stored = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+
+        fileManager = new FileManager(tempDir.toString());
+        fileManager.setEncryptionKey(testKey);
+        metadataManager = new MetadataManager(tempDir.resolve("metadata.enc").toString());
+        metadataManager.setEncryptionKey(testKey);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (VaultFile file : stored) {
+            Files.deleteIfExists(fileManager.getEncryptedFilePath(file));
+        }
+        fileManager.cleanup();
+    }
+
+    @Test
+    @DisplayName("Should import all files and commit metadata in groups")
+    void testImportWithGroupedCommits() throws Exception {
+        List<File> files = createFiles(25);
+        AtomicInteger commits = new AtomicInteger();
+        AtomicInteger progressEvents = new AtomicInteger();
+
+        BatchImportService service = new BatchImportService(fileManager, metadataManager, 4, 10);
+        BatchImportService.BatchImportResult result = service.importFiles(files, new BatchImportService.ImportListener() {
+            @Override
+            public void onFileImported(File source, VaultFile vaultFile, int completed, int total) {
+                progressEvents.incrementAndGet();
+            }
+
+            @Override
+            public void onFileFailed(File source, Exception error, int completed, int total) {
+                fail("Unexpected failure: " + error.getMessage());
+            }
+
+            @Override
+            public void onCommitted(int committedFiles) {
+                commits.incrementAndGet();
+            }
+        });
+        stored.addAll(result.getImportedFiles());
+
+        assertEquals(25, result.getSuccessCount());
+        assertEquals(25, progressEvents.get());
+        assertEquals(3, commits.get(), "Expected commits at 10, 20 and the final remainder");
+
+        MetadataManager reloaded = new MetadataManager(metadataManager.getMetadataFile());
+        reloaded.setEncryptionKey(testKey);
+        reloaded.loadMetadata();
+        assertEquals(25, reloaded.getFileCount());
+    }
+
+    @Test
+    @DisplayName("Should report per-file failures without failing the batch")
+    void testFailuresReported() throws Exception {
+        List<File> files = createFiles(3);
+        files.add(tempDir.resolve("missing.txt").toFile());
+
+        BatchImportService.BatchImportResult result =
+            new BatchImportService(fileManager, metadataManager).importFiles(files, null);
+        stored.addAll(result.getImportedFiles());
+
+        assertEquals(3, result.getSuccessCount());
+        assertEquals(1, result.getFailureCount());
+        assertEquals(3, metadataManager.getFileCount());
+    }
+
+    @Test
+    @DisplayName("Should skip all files when cancelled before starting")
+    void testCancelledBatch() throws Exception {
+        BatchImportService service = new BatchImportService(fileManager, metadataManager);
+        service.cancel();
+
+        BatchImportService.BatchImportResult result = service.importFiles(createFiles(5), null);
+
+        assertTrue(result.isCancelled());
+        assertEquals(0, result.getSuccessCount());
+        assertEquals(0, metadataManager.getFileCount());
+    }
+
+    @Test
+    @DisplayName("Should commit files still in progress when the importing thread is interrupted")
+    void testInterruptedBatch() throws Exception {
+        List<File> files = createFiles(20);
+        BatchImportService service = new BatchImportService(fileManager, metadataManager, 2, 100);
+        BatchImportService.BatchImportResult[] result = new BatchImportService.BatchImportResult[1];
+        AtomicReference<Thread> importer = new AtomicReference<>();
+        importer.set(new Thread(() -> {
+            try {
+                result[0] = service.importFiles(files, new BatchImportService.ImportListener() {
+                    @Override
+                    public void onFileImported(File source, VaultFile vaultFile, int completed, int total) {
+                        if (completed == 2) {
+                            importer.get().interrupt();
+                        }
+                        // Keep this file in progress past the interrupt, ignoring it
+                        long end = System.nanoTime() + 200_000_000L;
+                        while (System.nanoTime() < end) {
+                            Thread.onSpinWait();
+                        }
+                    }
+
+                    @Override
+                    public void onFileFailed(File source, Exception error, int completed, int total) {
+                    }
+                });
+            } catch (Exception e) {
+                fail(e);
+            }
+        }));
+        importer.get().start();
+        importer.get().join(30_000);
+
+        assertNotNull(result[0]);
+        stored.addAll(result[0].getImportedFiles());
+        assertTrue(result[0].isCancelled());
+        assertTrue(result[0].getSuccessCount() < files.size());
+        // Every ciphertext written is registered; none is left orphaned
+        assertEquals(result[0].getSuccessCount(), metadataManager.getFileCount());
+        for (VaultFile file : result[0].getImportedFiles()) {
+            assertNotNull(metadataManager.getFile(file.getFileId()));
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep every imported file readable across key rotations during the import")
+    void testRotationDuringImport() throws Exception {
+        List<File> files = createFiles(25);
+        ReencryptionWorker worker = new ReencryptionWorker(fileManager, metadataManager);
+        List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+
+        BatchImportService service = new BatchImportService(fileManager, metadataManager, 4, 10);
+        BatchImportService.BatchImportResult result = service.importFiles(files, new BatchImportService.ImportListener() {
+            @Override
+            public void onFileImported(File source, VaultFile vaultFile, int completed, int total) {
+                // Rotate before the first commit and with a commit behind and files pending
+                if (completed == 5 || completed == 15) {
+                    try {
+                        worker.rotateKeys();
+                    } catch (Exception e) {
+                        errors.add(e);
+                    }
+                }
+            }
+
+            @Override
+            public void onFileFailed(File source, Exception error, int completed, int total) {
+                errors.add(error);
+            }
+        });
+        stored.addAll(result.getImportedFiles());
+        assertTrue(errors.isEmpty(), () -> "Unexpected failure: " + errors);
+        assertEquals(25, result.getSuccessCount());
+
+        // A fresh file manager reads the keyring as saved
+        MetadataManager reloaded = new MetadataManager(metadataManager.getMetadataFile());
+        reloaded.setEncryptionKey(testKey);
+        reloaded.loadMetadata();
+        FileManager reopened = new FileManager(tempDir.toString());
+        reopened.setEncryptionKey(testKey);
+        try {
+            for (VaultFile file : reloaded.getAllFiles()) {
+                String index = file.getOriginalName().replaceAll("\\D", "");
+                assertEquals("Batch import test content " + index, new String(reopened.retrieveFile(file)));
+            }
+        } finally {
+            reopened.cleanup();
+        }
+    }
+
+        private List<File> createFiles(int count) throws Exception {
+        Path sourceDir = Files.createDirectories(tempDir.resolve("source"));
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = sourceDir.resolve("file_" + i + ".txt");
+            Files.writeString(file, "Batch import test content " + i);
+            files.add(file.toFile());
+        }
+        return files;
+    }
+}
@@ -0,0 +1,177 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for content-defined chunking and the deduplicating chunk store
+ */
+@DisplayName("Chunk Store Tests")
+class ChunkStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SecretKey key;
+    private ChunkStore store;
+    private final List<VaultFile> registry = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        CryptoManager cryptoManager = new CryptoManager();
+        key = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+        store = new ChunkStore(tempDir, 2);
+        store.setKey(key);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    @DisplayName("Chunk boundaries should resynchronize after an insertion")
+    void testBoundariesSurviveInsertion() throws Exception {
+        long[] gear = new Random(1).longs(256).toArray();
+        ContentDefinedChunker chunker = new ContentDefinedChunker(gear, 2048, 8192, 32768);
+        byte[] data = randomBytes(1 << 20, 7);
+        byte[] edited = new byte[data.length + 100];
+        System.arraycopy(data, 0, edited, 0, 5000);
+        System.arraycopy(data, 5000, edited, 5100, data.length - 5000);
+
+        Set<String> original = chunkDigests(chunker, data);
+        Set<String> shifted = chunkDigests(chunker, edited);
+        shifted.retainAll(original);
+
+        assertTrue(original.size() > 60, "Average chunk size should be near 8KB");
+        assertTrue(shifted.size() >= original.size() - 3, "Only chunks around the edit should change");
+    }
+
+    @Test
+    @DisplayName("Identical content should be stored once and read back intact")
+    void testDeduplication() throws Exception {
+        byte[] data = randomBytes(12 * 1024 * 1024, 3);
+        byte[] edited = data.clone();
+        edited[6 * 1024 * 1024] ^= 1;
+
+        long size = store.store("a", new ByteArrayInputStream(data), tempDir.resolve("a.gvc"));
+        int afterFirst = countChunks();
+        store.store("b", new ByteArrayInputStream(edited), tempDir.resolve("b.gvc"));
+        int afterSecond = countChunks();
+
+        assertEquals(data.length, size);
+        assertTrue(afterFirst >= 4);
+        assertTrue(afterSecond - afterFirst <= 2, "Only the edited chunk should be new");
+        assertArrayEquals(data, read("a"));
+        assertArrayEquals(edited, read("b"));
+
+        try (SeekableByteChannel channel = store.open("b", tempDir.resolve("b.gvc"))) {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            channel.position(6 * 1024 * 1024 - 8).read(buffer);
+            assertEquals(edited[6 * 1024 * 1024], buffer.get(8));
+        }
+    }
+
+    @Test
+    @DisplayName("Deleting should only collect chunks no other file references")
+    void testGarbageCollection() throws Exception {
+        byte[] data = randomBytes(10 * 1024 * 1024, 5);
+        store.store("a", new ByteArrayInputStream(data), tempDir.resolve("a.gvc"));
+        store.store("b", new ByteArrayInputStream(data), tempDir.resolve("b.gvc"));
+        registry.add(new VaultFile("a.bin", "a", "a.gvc", data.length, "h", 1));
+        registry.add(new VaultFile("b.bin", "b", "b.gvc", data.length, "h", 2));
+
+        // A fresh session has to learn the references from the registered manifests
+        ChunkStore reopened = new ChunkStore(tempDir, 1);
+        reopened.setKey(key);
+        reopened.setReferenceSource(() -> registry);
+        int chunks = countChunks();
+
+        registry.remove(0);
+        reopened.delete("a", tempDir.resolve("a.gvc"));
+        assertFalse(Files.exists(tempDir.resolve("a.gvc")));
+        assertEquals(chunks, countChunks());
+
+        reopened.delete("b", tempDir.resolve("b.gvc"));
+        assertEquals(0, countChunks());
+        reopened.shutdown();
+    }
+
+    @Test
+    @DisplayName("Without a reference source chunks should be kept")
+    void testNoReferenceSourceKeepsChunks() throws Exception {
+        store.store("a", new ByteArrayInputStream(randomBytes(9 * 1024 * 1024, 9)), tempDir.resolve("a.gvc"));
+        int chunks = countChunks();
+
+        store.delete("a", tempDir.resolve("a.gvc"));
+        assertFalse(Files.exists(tempDir.resolve("a.gvc")));
+        assertEquals(chunks, countChunks());
+    }
+
+    @Test
+    @DisplayName("A manifest should not open for another file")
+    void testManifestBoundToFile() throws Exception {
+        store.store("a", new ByteArrayInputStream(randomBytes(9 * 1024 * 1024, 11)), tempDir.resolve("a.gvc"));
+        Files.copy(tempDir.resolve("a.gvc"), tempDir.resolve("b.gvc"));
+
+        assertThrows(SecurityException.class, () -> store.open("b", tempDir.resolve("b.gvc")));
+    }
+
+    private byte[] read(String fileId) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SeekableByteChannel channel = store.open(fileId, tempDir.resolve(fileId + ".gvc"))) {
+            Channels.newInputStream(channel).transferTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    private int countChunks() throws Exception {
+        Path chunks = tempDir.resolve("chunks");
+        if (!Files.exists(chunks)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(chunks)) {
+            return (int) files.filter(path -> path.toString().endsWith(".chk")).count();
+        }
+    }
+
+    private static Set<String> chunkDigests(ContentDefinedChunker chunker, byte[] data) throws Exception {
+        Set<String> digests = new HashSet<>();
+        chunker.split(new ByteArrayInputStream(data), (buffer, offset, length) -> {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(buffer, offset, length);
+            digests.add(HexFormat.of().formatHex(digest.digest()));
+        });
+        return digests;
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
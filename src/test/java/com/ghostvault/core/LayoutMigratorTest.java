@@ -0,0 +1,222 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import com.ghostvault.security.SegmentedAead;
+import com.ghostvault.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the fan-out layout, pack files and the background layout migration
+ */
+@DisplayName("LayoutMigrator Tests")
+class LayoutMigratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileManager fileManager;
+    private MetadataManager metadataManager;
+    private SecretKey testKey;
+    private final List<Path> created = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+
+        fileManager = new FileManager(tempDir.toString());
+        fileManager.setEncryptionKey(testKey);
+        metadataManager = new MetadataManager(tempDir.resolve("metadata.enc").toString());
+        metadataManager.setEncryptionKey(testKey);
+        fileManager.setMetadataManager(metadataManager);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (VaultFile file : metadataManager.getAllFiles()) {
+            fileManager.secureDeleteFile(file);
+        }
+        for (Path path : created) {
+            Files.deleteIfExists(path);
+        }
+        fileManager.cleanup();
+    }
+
+    @Test
+    @DisplayName("Should store new files under the fan-out")
+    void testStoreUsesFanOut() throws Exception {
+        VaultFile file = store("fanned.txt", "fanned out");
+
+        String id = file.getFileId();
+        assertEquals(id.substring(0, 2) + "/" + id.substring(2, 4) + "/" + id + ".enc", file.getEncryptedName());
+        assertTrue(Files.exists(fileManager.getEncryptedFilePath(file)));
+        assertTrue(fileManager.listStoredFiles().contains(fileManager.getEncryptedFilePath(file)));
+        assertEquals("fanned out", new String(fileManager.retrieveFile(file)));
+    }
+
+    @Test
+    @DisplayName("Should pack small flat files and fan out large ones")
+    void testMigrateFlatFiles() throws Exception {
+        String large = "x".repeat(100 * 1024);
+        VaultFile small = storeFlat("small.txt", "small content");
+        VaultFile big = storeFlat("big.txt", large);
+        Path smallPath = fileManager.getEncryptedFilePath(small);
+        Path bigPath = fileManager.getEncryptedFilePath(big);
+
+        LayoutMigrator migrator = new LayoutMigrator(fileManager, metadataManager);
+        assertEquals(2, migrator.start(null).get(30, TimeUnit.SECONDS));
+
+        VaultFile packed = metadataManager.getFile(small.getFileId());
+        assertTrue(packed.isPacked());
+        assertFalse(Files.exists(smallPath), "The loose copy should be deleted once packed");
+        assertEquals("small content", new String(fileManager.retrieveFile(packed)));
+        assertTrue(fileManager.verifyFileIntegrity(packed));
+
+        VaultFile fanned = metadataManager.getFile(big.getFileId());
+        assertFalse(fanned.isPacked(), "Files above the threshold stay loose");
+        assertFalse(VaultLayout.isFlat(fanned.getEncryptedName()));
+        assertFalse(Files.exists(bigPath));
+        assertEquals(large, new String(fileManager.retrieveFile(fanned)));
+
+        // Nothing is left to move
+        assertEquals(0, new LayoutMigrator(fileManager, metadataManager).migrate(null));
+
+        MetadataManager reloaded = new MetadataManager(tempDir.resolve("metadata.enc").toString());
+        reloaded.setEncryptionKey(testKey);
+        reloaded.loadMetadata();
+        VaultFile restored = reloaded.getFile(small.getFileId());
+        assertEquals(packed.getPackId(), restored.getPackId());
+        assertEquals(packed.getPackOffset(), restored.getPackOffset());
+        assertEquals(packed.getPackLength(), restored.getPackLength());
+        assertEquals("small content", new String(fileManager.retrieveFile(restored)));
+    }
+
+    @Test
+    @DisplayName("Should pack loose imports and keep tags edited meanwhile")
+    void testPackLooseFiles() throws Exception {
+        VaultFile first = store("first.txt", "first");
+        VaultFile second = store("second.txt", "second");
+        metadataManager.updateFileTags(second.getFileId(), "kept");
+
+        assertEquals(2, new LayoutMigrator(fileManager, metadataManager).migrate(null));
+
+        VaultFile packedFirst = metadataManager.getFile(first.getFileId());
+        VaultFile packedSecond = metadataManager.getFile(second.getFileId());
+        assertTrue(packedFirst.isPacked());
+        assertTrue(packedSecond.isPacked());
+        assertFalse(Files.exists(fileManager.getEncryptedFilePath(first)));
+        assertEquals("kept", packedSecond.getTags());
+        assertEquals("first", new String(fileManager.retrieveFile(packedFirst)));
+        try (InputStream in = fileManager.openInputStream(packedSecond)) {
+            assertEquals("second", new String(in.readAllBytes()));
+        }
+    }
+
+    @Test
+    @DisplayName("Should wipe a deleted packed entry without touching its neighbours")
+    void testDeletePackedFile() throws Exception {
+        VaultFile first = store("first.txt", "first entry");
+        VaultFile second = store("second.txt", "second entry");
+        new LayoutMigrator(fileManager, metadataManager).migrate(null);
+        VaultFile packedFirst = metadataManager.getFile(first.getFileId());
+        VaultFile packedSecond = metadataManager.getFile(second.getFileId());
+
+        fileManager.secureDeleteFile(packedFirst);
+        metadataManager.removeFile(packedFirst.getFileId());
+
+        assertThrows(Exception.class, () -> fileManager.retrieveFile(packedFirst));
+        assertEquals("second entry", new String(fileManager.retrieveFile(packedSecond)));
+    }
+
+    @Test
+    @DisplayName("Should not bring back a file deleted while it was being moved")
+    void testDeleteDuringMove() throws Exception {
+        VaultFile doomed = store("doomed.txt", "doomed");
+        VaultFile edited = store("edited.txt", "edited");
+        fileManager.cleanup();
+        fileManager = new FileManager(tempDir.toString()) {
+            @Override
+            VaultFile packFile(VaultFile vaultFile) throws IOException {
+                VaultFile packed = super.packFile(vaultFile);
+                try {
+                    // The user acts between the move and its commit
+                    if (vaultFile.equals(doomed)) {
+                        metadataManager.removeFile(doomed.getFileId());
+                        FileManager.secureDeleteFile(fileManager.getEncryptedFilePath(doomed));
+                    } else {
+                        metadataManager.updateFileTags(edited.getFileId(), "edited meanwhile");
+                    }
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+                return packed;
+            }
+        };
+        fileManager.setEncryptionKey(testKey);
+        fileManager.setMetadataManager(metadataManager);
+
+        assertEquals(1, new LayoutMigrator(fileManager, metadataManager).migrate(null));
+
+        assertNull(metadataManager.getFile(doomed.getFileId()), "A deleted file must stay deleted");
+        VaultFile packed = metadataManager.getFile(edited.getFileId());
+        assertTrue(packed.isPacked());
+        assertEquals("edited meanwhile", packed.getTags());
+        assertEquals("edited", new String(fileManager.retrieveFile(packed)));
+    }
+
+        @Test
+    @DisplayName("Should not migrate anything after cancel")
+    void testCancel() throws Exception {
+        VaultFile file = storeFlat("flat.txt", "flat");
+
+        LayoutMigrator migrator = new LayoutMigrator(fileManager, metadataManager);
+        migrator.cancel();
+        assertTrue(migrator.isCancelled());
+        assertEquals(0, migrator.migrate(null));
+        assertEquals(file.getEncryptedName(), metadataManager.getFile(file.getFileId()).getEncryptedName());
+        assertEquals("flat", new String(fileManager.retrieveFile(file)));
+    }
+
+    private VaultFile store(String name, String content) throws Exception {
+        File source = tempDir.resolve(name).toFile();
+        Files.writeString(source.toPath(), content);
+        VaultFile file = fileManager.storeFile(source);
+        metadataManager.addFile(file);
+        return file;
+    }
+
+    /**
+     * A file as stored by earlier versions, directly in the files directory
+     */
+    private VaultFile storeFlat(String name, String content) throws Exception {
+        String fileId = UUID.randomUUID().toString();
+        VaultFile file = new VaultFile(name, fileId, fileId + ".enc", content.length(),
+            FileUtils.calculateSHA256(content.getBytes()), System.currentTimeMillis());
+        Path path = fileManager.getEncryptedFilePath(file);
+        created.add(path);
+        try (OutputStream out = SegmentedAead.newEncryptingStream(Files.newOutputStream(path), testKey)) {
+            out.write(content.getBytes());
+        }
+        metadataManager.addFile(file);
+        return file;
+    }
+}
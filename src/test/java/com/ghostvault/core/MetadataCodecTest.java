@@ -0,0 +1,140 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import com.ghostvault.util.FileUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the binary metadata snapshot codec
+ */
+@DisplayName("Metadata Codec Tests")
+class MetadataCodecTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should round-trip canonical and non-canonical fields")
+    void testRoundTrip() throws Exception {
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String id = UUID.randomUUID().toString();
+            String encryptedName = i % 5 == 0 ? VaultLayout.fanOut(id + ".enc") : id + ".enc";
+            VaultFile file = new VaultFile("report_" + i + ".pdf", id, encryptedName, 1024L * i,
+                FileUtils.calculateSHA256(("content " + i).getBytes()), 1_700_000_000_000L + i * 1000L);
+            file.setTags(i % 2 == 0 ? "work" : "");
+            if (i % 3 == 0) {
+                file.setWrappedKey(new byte[] {0, 0, 0, 1, (byte) i, 42});
+            }
+            if (i % 4 == 0) {
+                file.setBlockSize(64 * 1024);
+            }
+            if (i % 7 == 0) {
+                file.setPackLocation(1 + i / 20, 4096L * i, 300 + i);
+            }
+            files.add(file);
+        }
+        // Non-canonical id, encrypted name and hash, unicode and an out-of-order timestamp
+        VaultFile odd = new VaultFile("naïve 文件.txt", "legacy-id", "other.bin", 0, "not-a-hash", 5L);
+        odd.setTags("ünïcode");
+        files.add(odd);
+
+        List<VaultFile> decoded = MetadataCodec.decode(MetadataCodec.encode(files));
+
+        assertEquals(files.size(), decoded.size());
+        Map<String, VaultFile> byId = new HashMap<>();
+        decoded.forEach(file -> byId.put(file.getFileId(), file));
+        for (VaultFile expected : files) {
+            VaultFile actual = byId.get(expected.getFileId());
+            assertNotNull(actual);
+            assertEquals(expected.getOriginalName(), actual.getOriginalName());
+            assertEquals(expected.getEncryptedName(), actual.getEncryptedName());
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getHash(), actual.getHash());
+            assertEquals(expected.getUploadTime(), actual.getUploadTime());
+            assertEquals(expected.getTags(), actual.getTags());
+            assertArrayEquals(expected.getWrappedKey(), actual.getWrappedKey());
+            assertEquals(expected.getBlockSize(), actual.getBlockSize());
+            assertEquals(expected.getPackId(), actual.getPackId());
+            assertEquals(expected.getPackOffset(), actual.getPackOffset());
+            assertEquals(expected.getPackLength(), actual.getPackLength());
+        }
+    }
+
+    @Test
+    @DisplayName("Should be much smaller than Java serialization")
+    void testCompactness() throws Exception {
+        Map<String, VaultFile> registry = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String id = UUID.randomUUID().toString();
+            registry.put(id, new VaultFile("photo_" + i + ".jpg", id, id + ".enc", 2_000_000L + i,
+                FileUtils.calculateSHA256(new byte[] {(byte) i}), 1_700_000_000_000L + i * 60_000L));
+        }
+
+        int encoded = MetadataCodec.encode(registry.values()).length;
+        int serialized = serialize(registry).length;
+        assertTrue(encoded * 2 < serialized, "encoded=" + encoded + " serialized=" + serialized);
+    }
+
+    @Test
+    @DisplayName("Should reject truncated data")
+    void testTruncatedData() {
+        VaultFile file = new VaultFile("a.txt", "a", "a.enc", 1, "h", 1L);
+        byte[] encoded = MetadataCodec.encode(List.of(file));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 2);
+
+        assertThrows(IOException.class, () -> MetadataCodec.decode(truncated));
+        assertThrows(IOException.class, () -> MetadataCodec.decode(new byte[] {1, 2, 3}));
+    }
+
+    @Test
+    @DisplayName("Should load and migrate a legacy serialized snapshot")
+    void testLegacyMigration() throws Exception {
+        CryptoManager cryptoManager = new CryptoManager();
+        SecretKey key = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+        Path metadataPath = tempDir.resolve("metadata.enc");
+
+        HashMap<String, VaultFile> legacy = new HashMap<>();
+        legacy.put("a", new VaultFile("a.txt", "a", "a.enc", 10, "hash-a", 1000L));
+        byte[] encrypted = cryptoManager.encrypt(serialize(legacy), key);
+        FileUtils.writeEncryptedFile(metadataPath, CryptoManager.EncryptedData.fromCombinedData(encrypted));
+
+        MetadataManager manager = new MetadataManager(metadataPath.toString());
+        manager.setEncryptionKey(key);
+        manager.loadMetadata();
+        assertEquals("a.txt", manager.getFile("a").getOriginalName());
+
+        byte[] rewritten = cryptoManager.decrypt(FileUtils.readEncryptedFile(metadataPath), key);
+        assertTrue(ShardedMetadataStore.isSummary(rewritten), "Legacy snapshot should be rewritten in the new format");
+
+        MetadataManager reloaded = new MetadataManager(metadataPath.toString());
+        reloaded.setEncryptionKey(key);
+        reloaded.loadMetadata();
+        assertEquals(1, reloaded.getFileCount());
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,188 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the MetadataManager write-ahead journal
+ */
+@DisplayName("Metadata Journal Tests")
+class MetadataJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SecretKey testKey;
+    private Path metadataPath;
+    private Path journalPath;
+
+    @BeforeEach
+    void setUp() {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+        metadataPath = tempDir.resolve("metadata.enc");
+        journalPath = tempDir.resolve("metadata.enc.journal");
+    }
+
+    @Test
+    @DisplayName("Mutations should be journaled and replayed on load")
+    void testReplayAfterRestart() throws Exception {
+        MetadataManager manager = newManager();
+        manager.addFile(vaultFile("a"));
+        manager.addFile(vaultFile("b"));
+        manager.addFile(vaultFile("c"));
+        manager.removeFile("b");
+        manager.updateFileTags("c", "important");
+        manager.cleanup();
+
+        assertTrue(Files.exists(journalPath));
+        assertFalse(Files.exists(metadataPath), "No snapshot should be written for small mutation counts");
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(2, reloaded.getFileCount());
+        assertNull(reloaded.getFile("b"));
+        assertEquals("important", reloaded.getFile("c").getTags());
+    }
+
+    @Test
+    @DisplayName("Snapshot should absorb the journal on save")
+    void testCompactionOnSave() throws Exception {
+        MetadataManager manager = newManager();
+        manager.addFile(vaultFile("a"));
+        manager.saveMetadata();
+
+        assertTrue(Files.exists(metadataPath));
+        assertFalse(Files.exists(journalPath));
+
+        manager.addFile(vaultFile("b"));
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(2, reloaded.getFileCount());
+    }
+
+    @Test
+    @DisplayName("Torn journal tail should be ignored and truncated")
+    void testTornTailRecovery() throws Exception {
+        MetadataManager manager = newManager();
+        manager.addFile(vaultFile("a"));
+        manager.addFile(vaultFile("b"));
+        manager.cleanup();
+
+        long validSize = Files.size(journalPath);
+        Files.write(journalPath, new byte[] {0, 0, 0, 50, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(2, reloaded.getFileCount());
+        assertEquals(validSize, Files.size(journalPath));
+
+        // Appends continue cleanly after recovery
+        reloaded.addFile(vaultFile("c"));
+        MetadataManager again = newManager();
+        again.loadMetadata();
+        assertEquals(3, again.getFileCount());
+    }
+
+    @Test
+    @DisplayName("Corrupted middle record should fail the load and keep later records")
+    void testCorruptedMiddleRecord() throws Exception {
+        MetadataManager manager = newManager();
+        for (String id : new String[] {"a", "b", "c", "d", "e"}) {
+            manager.addFile(vaultFile(id));
+        }
+        manager.cleanup();
+
+        // Flip a byte inside the third record
+        byte[] data = Files.readAllBytes(journalPath);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int offset = MetadataJournal.HEADER_LENGTH;
+        for (int i = 0; i < 2; i++) {
+            offset += 4 + buffer.getInt(offset);
+        }
+        data[offset + 4 + buffer.getInt(offset) / 2] ^= 1;
+        Files.write(journalPath, data);
+
+        assertThrows(Exception.class, () -> newManager().loadMetadata());
+        assertArrayEquals(data, Files.readAllBytes(journalPath), "The journal should be left untouched");
+
+        // With the record restored every mutation is still there
+        data[offset + 4 + buffer.getInt(offset) / 2] ^= 1;
+        Files.write(journalPath, data);
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(5, reloaded.getFileCount());
+        assertNotNull(reloaded.getFile("e"));
+    }
+
+    @Test
+    @DisplayName("Corrupted final record should be cut off as a torn tail")
+    void testCorruptedFinalRecord() throws Exception {
+        MetadataManager manager = newManager();
+        manager.addFile(vaultFile("a"));
+        manager.addFile(vaultFile("b"));
+        manager.cleanup();
+
+        byte[] data = Files.readAllBytes(journalPath);
+        data[data.length - 1] ^= 1;
+        Files.write(journalPath, data);
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(1, reloaded.getFileCount());
+        assertNotNull(reloaded.getFile("a"));
+    }
+
+    @Test
+    @DisplayName("Concurrent mutations should all become durable")
+    void testConcurrentGroupCommit() throws Exception {
+        MetadataManager manager = newManager();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String id = "file-" + i;
+                tasks.add(executor.submit(() -> {
+                    manager.addFile(vaultFile(id));
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(200, reloaded.getFileCount());
+    }
+
+    private MetadataManager newManager() throws Exception {
+        MetadataManager manager = new MetadataManager(metadataPath.toString());
+        manager.setEncryptionKey(testKey);
+        return manager;
+    }
+
+    private static VaultFile vaultFile(String id) {
+        return new VaultFile(id + ".txt", id, id + ".enc", 100, "hash-" + id, 1000L);
+    }
+}
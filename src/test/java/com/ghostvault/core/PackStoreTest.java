@@ -0,0 +1,102 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for appending, reading and deleting pack entries
+ */
+@DisplayName("PackStore Tests")
+class PackStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should roll over to a new pack at the size limit")
+    void testRollOver() throws Exception {
+        PackStore store = new PackStore(tempDir, 1000);
+        List<VaultFile> files = new ArrayList<>();
+        store.setReferenceSource(() -> files);
+
+        VaultFile first = packed(store, "first", 600);
+        VaultFile second = packed(store, "second", 600);
+
+        assertEquals(1, first.getPackId());
+        assertEquals(2, second.getPackId(), "An entry should not push a pack past its limit");
+        assertEquals(0, second.getPackOffset());
+        assertArrayEquals(content(600, 'f'), store.read(first));
+        assertArrayEquals(content(600, 's'), store.read(second));
+    }
+
+    @Test
+    @DisplayName("Should delete a sealed pack once its last entry is gone")
+    void testDeleteEmptiedPack() throws Exception {
+        PackStore store = new PackStore(tempDir, 1000);
+        List<VaultFile> files = new ArrayList<>();
+        store.setReferenceSource(() -> files);
+
+        VaultFile first = packed(store, "first", 400);
+        VaultFile second = packed(store, "second", 400);
+        VaultFile third = packed(store, "third", 400);
+        files.add(first);
+        files.add(second);
+        files.add(third);
+        assertEquals(first.getPackId(), second.getPackId());
+
+        files.remove(first);
+        store.delete(first);
+        assertTrue(Files.exists(store.packPath(first.getPackId())), "The pack still holds a live entry");
+        assertArrayEquals(content(400, 's'), store.read(second));
+        assertFalse(Arrays.equals(content(400, 'f'), store.read(first)), "A deleted entry should be overwritten");
+
+        files.remove(second);
+        store.delete(second);
+        assertFalse(Files.exists(store.packPath(second.getPackId())));
+
+        // The active pack is kept for the next append
+        files.remove(third);
+        store.delete(third);
+        assertTrue(Files.exists(store.packPath(third.getPackId())));
+    }
+
+    @Test
+    @DisplayName("Should keep appending to the highest existing pack")
+    void testResumeActivePack() throws Exception {
+        PackStore store = new PackStore(tempDir, 1000);
+        store.setReferenceSource(List::of);
+        packed(store, "first", 600);
+        packed(store, "second", 600);
+
+        PackStore reopened = new PackStore(tempDir, 1000);
+        reopened.setReferenceSource(List::of);
+        VaultFile third = packed(reopened, "third", 100);
+        assertEquals(2, third.getPackId());
+        assertEquals(600, third.getPackOffset());
+    }
+
+    private VaultFile packed(PackStore store, String name, int length) throws Exception {
+        Path source = tempDir.resolve(name + ".enc");
+        Files.write(source, content(length, name.charAt(0)));
+        PackStore.Entry entry = store.append(source);
+        VaultFile file = new VaultFile(name, name, name + ".enc", length, "hash", 0);
+        file.setPackLocation(entry.packId(), entry.offset(), entry.length());
+        return file;
+    }
+
+    private static byte[] content(int length, char fill) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) fill);
+        return data;
+    }
+}
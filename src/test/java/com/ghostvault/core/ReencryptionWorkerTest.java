@@ -0,0 +1,189 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import com.ghostvault.security.SegmentedAead;
+import com.ghostvault.util.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for per-file data keys, key rotation and re-encryption
+ */
+@DisplayName("ReencryptionWorker Tests")
+class ReencryptionWorkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileManager fileManager;
+    private MetadataManager metadataManager;
+    private SecretKey testKey;
+    private final List<Path> created = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+
+        fileManager = new FileManager(tempDir.toString());
+        fileManager.setEncryptionKey(testKey);
+        metadataManager = new MetadataManager(tempDir.resolve("metadata.enc").toString());
+        metadataManager.setEncryptionKey(testKey);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (VaultFile file : metadataManager.getAllFiles()) {
+            Files.deleteIfExists(fileManager.getEncryptedFilePath(file));
+        }
+        for (Path path : created) {
+            Files.deleteIfExists(path);
+        }
+        fileManager.cleanup();
+    }
+
+    @Test
+    @DisplayName("Should encrypt each file under its own wrapped data key")
+    void testPerFileDataKeys() throws Exception {
+        VaultFile first = store("first.txt", "same content");
+        VaultFile second = store("second.txt", "same content");
+
+        assertNotNull(first.getWrappedKey());
+        assertNotNull(second.getWrappedKey());
+        assertFalse(Arrays.equals(first.getWrappedKey(), second.getWrappedKey()));
+        assertEquals("same content", new String(fileManager.retrieveFile(first)));
+
+        // The file can no longer be read with the vault key alone
+        VaultFile unwrapped = copyWithoutKey(first);
+        assertThrows(Exception.class, () -> fileManager.retrieveFile(unwrapped));
+    }
+
+    @Test
+    @DisplayName("Should rotate keys without rewriting file contents")
+    void testRotateKeys() throws Exception {
+        VaultFile file = store("rotate.txt", "rotated content");
+        byte[] ciphertextBefore = Files.readAllBytes(fileManager.getEncryptedFilePath(file));
+        byte[] wrappedBefore = file.getWrappedKey().clone();
+
+        ReencryptionWorker worker = new ReencryptionWorker(fileManager, metadataManager);
+        assertEquals(1, worker.rotateKeys());
+
+        VaultFile rotated = metadataManager.getFile(file.getFileId());
+        assertEquals(FileKeyring.generationOf(wrappedBefore) + 1, FileKeyring.generationOf(rotated.getWrappedKey()));
+        assertArrayEquals(ciphertextBefore, Files.readAllBytes(fileManager.getEncryptedFilePath(rotated)));
+        assertEquals("rotated content", new String(fileManager.retrieveFile(rotated)));
+
+        // Reloading the keyring and metadata reads the file with the new generation only
+        assertTrue(Files.exists(tempDir.resolve(FileKeyring.FILE_NAME)));
+        fileManager.setEncryptionKey(testKey);
+        metadataManager.loadMetadata();
+        assertEquals("rotated content", new String(fileManager.retrieveFile(metadataManager.getFile(file.getFileId()))));
+
+        VaultFile stale = copyWithoutKey(file);
+        stale.setWrappedKey(wrappedBefore);
+        assertThrows(Exception.class, () -> fileManager.retrieveFile(stale));
+    }
+
+    @Test
+    @DisplayName("Should not bring back a file deleted during a key rotation")
+    void testRotateKeysSkipsDeletedFiles() throws Exception {
+        List<VaultFile> victims = new ArrayList<>();
+        fileManager.cleanup();
+        fileManager = new FileManager(tempDir.toString()) {
+            @Override
+            public synchronized List<VaultFile> rewrapFileKeys(Collection<VaultFile> files) throws Exception {
+                List<VaultFile> rewrapped = super.rewrapFileKeys(files);
+                // Deleted and retagged after the registry was read, before the commit
+                metadataManager.removeFile(victims.get(0).getFileId());
+                metadataManager.updateFileTags(victims.get(1).getFileId(), "edited");
+                return rewrapped;
+            }
+        };
+        fileManager.setEncryptionKey(testKey);
+        victims.add(store("deleted.txt", "deleted content"));
+        victims.add(store("tagged.txt", "tagged content"));
+        byte[] wrappedBefore = victims.get(1).getWrappedKey().clone();
+
+        assertEquals(1, new ReencryptionWorker(fileManager, metadataManager).rotateKeys());
+
+        assertNull(metadataManager.getFile(victims.get(0).getFileId()));
+        VaultFile rotated = metadataManager.getFile(victims.get(1).getFileId());
+        assertEquals("edited", rotated.getTags());
+        assertEquals(FileKeyring.generationOf(wrappedBefore) + 1, FileKeyring.generationOf(rotated.getWrappedKey()));
+        assertEquals("tagged content", new String(fileManager.retrieveFile(rotated)));
+    }
+
+    @Test
+    @DisplayName("Should move legacy files onto data keys in the background")
+    void testReencryptLegacyFiles() throws Exception {
+        VaultFile legacy = storeUnderVaultKey("legacy.txt", "legacy content");
+        VaultFile current = store("current.txt", "current content");
+        Path legacyPath = fileManager.getEncryptedFilePath(legacy);
+
+        ReencryptionWorker worker = new ReencryptionWorker(fileManager, metadataManager);
+        int reencrypted = worker.start(true, null).get(30, TimeUnit.SECONDS);
+
+        assertEquals(1, reencrypted);
+        VaultFile refreshed = metadataManager.getFile(legacy.getFileId());
+        assertNotNull(refreshed.getWrappedKey());
+        assertNotEquals(legacy.getEncryptedName(), refreshed.getEncryptedName());
+        assertFalse(Files.exists(legacyPath), "Old ciphertext should be deleted");
+        assertEquals("legacy content", new String(fileManager.retrieveFile(refreshed)));
+        assertSame(current, metadataManager.getFile(current.getFileId()));
+    }
+
+    @Test
+    @DisplayName("Should leave the original readable until the new copy is committed")
+    void testOriginalReadableUntilCommit() throws Exception {
+        VaultFile file = store("removed.txt", "removed content");
+        VaultFile refreshed = fileManager.reencryptFile(file);
+        created.add(fileManager.getEncryptedFilePath(refreshed));
+
+        assertEquals("removed content", new String(fileManager.retrieveFile(refreshed)));
+        // The original is untouched until the caller commits the new copy
+        assertEquals("removed content", new String(fileManager.retrieveFile(file)));
+    }
+
+    private VaultFile store(String name, String content) throws Exception {
+        File source = tempDir.resolve(name).toFile();
+        Files.writeString(source.toPath(), content);
+        VaultFile file = fileManager.storeFile(source);
+        metadataManager.addFile(file);
+        return file;
+    }
+
+    private VaultFile storeUnderVaultKey(String name, String content) throws Exception {
+        String fileId = UUID.randomUUID().toString();
+        VaultFile file = new VaultFile(name, fileId, fileId + ".enc", content.length(),
+            FileUtils.calculateSHA256(content.getBytes()), System.currentTimeMillis());
+        try (OutputStream out = SegmentedAead.newEncryptingStream(
+                Files.newOutputStream(fileManager.getEncryptedFilePath(file)), testKey)) {
+            out.write(content.getBytes());
+        }
+        metadataManager.addFile(file);
+        return file;
+    }
+
+    private static VaultFile copyWithoutKey(VaultFile file) {
+        return new VaultFile(file.getOriginalName(), file.getFileId(), file.getEncryptedName(),
+            file.getSize(), file.getHash(), file.getUploadTime());
+    }
+}
@@ -0,0 +1,145 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import com.ghostvault.util.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the persisted search index snapshot
+ */
+@DisplayName("Search Index Snapshot Tests")
+class SearchIndexSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SecretKey testKey;
+    private Path metadataPath;
+
+    @BeforeEach
+    void setUp() {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+        metadataPath = tempDir.resolve("metadata.enc");
+    }
+
+    @Test
+    @DisplayName("Restored index should answer queries like the original")
+    void testEncodeDecodeEquivalence() throws Exception {
+        Map<String, VaultFile> registry = new HashMap<>();
+        SearchIndex index = new SearchIndex();
+        for (int i = 0; i < 1000; i++) {
+            VaultFile file = new VaultFile("Invoice_" + i + (i % 3 == 0 ? ".pdf" : ".png"),
+                "id" + i, "id" + i + ".enc", i, "h", i);
+            file.setTags(i % 7 == 0 ? "tax 2023" : "");
+            registry.put(file.getFileId(), file);
+            index.add(file);
+        }
+        for (int i = 0; i < 1000; i += 10) {
+            registry.remove("id" + i);
+            index.remove("id" + i);
+        }
+
+        SearchIndex restored = SearchIndex.fromSnapshot(ByteBuffer.wrap(index.toSnapshot()), registry);
+        assertNotNull(restored);
+        assertEquals(index.size(), restored.size());
+        for (String query : new String[] {"invoice_1", "9.p", "x", "tax", "_99"}) {
+            assertEquals(index.search(query), restored.search(query), "Query: " + query);
+        }
+        assertEquals(index.searchPrefix("20"), restored.searchPrefix("20"));
+        assertEquals(index.searchExtension("pdf"), restored.searchExtension("pdf"));
+
+        // Documents not in the registry make the snapshot unusable
+        registry.remove("id1");
+        assertNull(SearchIndex.fromSnapshot(ByteBuffer.wrap(index.toSnapshot()), registry));
+    }
+
+    @Test
+    @DisplayName("Snapshot should only load for the summary it was written with")
+    void testBoundToSummary() throws Exception {
+        MetadataManager manager = newManager();
+        manager.addFiles(files(0, 50));
+        manager.saveMetadata();
+        Path indexPath = tempDir.resolve("metadata.enc.index");
+        assertTrue(Files.exists(indexPath));
+
+        byte[] digest = FileUtils.newSHA256Digest().digest(Files.readAllBytes(metadataPath));
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        Map<String, VaultFile> registry = new HashMap<>();
+        reloaded.getAllFiles().forEach(file -> registry.put(file.getFileId(), file));
+
+        assertNotNull(SearchIndexSnapshot.read(indexPath, 1, digest, testKey, registry));
+        assertNull(SearchIndexSnapshot.read(indexPath, 2, digest, testKey, registry));
+        byte[] otherDigest = Arrays.copyOf(digest, digest.length);
+        otherDigest[0] ^= 1;
+        assertNull(SearchIndexSnapshot.read(indexPath, 1, otherDigest, testKey, registry));
+    }
+
+    @Test
+    @DisplayName("Journaled mutations should be applied on top of the snapshot")
+    void testIncrementalCatchUp() throws Exception {
+        MetadataManager manager = newManager();
+        manager.addFiles(files(0, 100));
+        manager.saveMetadata();
+
+        // Journaled only, newer than the index snapshot
+        manager.addFile(new VaultFile("fresh-upload.txt", "new", "new.enc", 1, "h", 500));
+        manager.removeFile("f3");
+        manager.updateFileTags("f4", "renamed-tag");
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(1, reloaded.searchFiles("fresh-up").size());
+        assertTrue(reloaded.searchFiles("file_3.").isEmpty());
+        assertEquals("f4", reloaded.searchFiles("renamed").get(0).getFileId());
+        assertEquals(99, reloaded.searchFiles("file_").size());
+    }
+
+    @Test
+    @DisplayName("Corrupted snapshot should fall back to a rebuild")
+    void testCorruptedSnapshot() throws Exception {
+        MetadataManager manager = newManager();
+        manager.addFiles(files(0, 20));
+        manager.saveMetadata();
+
+        Path indexPath = tempDir.resolve("metadata.enc.index");
+        byte[] data = Files.readAllBytes(indexPath);
+        data[data.length - 1] ^= 1;
+        Files.write(indexPath, data);
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(20, reloaded.searchFiles("file_").size());
+    }
+
+    private List<VaultFile> files(int from, int to) {
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            files.add(new VaultFile("file_" + i + ".txt", "f" + i, "f" + i + ".enc", i, "h", i));
+        }
+        return files;
+    }
+
+    private MetadataManager newManager() throws Exception {
+        MetadataManager manager = new MetadataManager(metadataPath.toString());
+        manager.setEncryptionKey(testKey);
+        return manager;
+    }
+}
@@ -0,0 +1,107 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the in-memory metadata search index
+ */
+@DisplayName("Search Index Tests")
+class SearchIndexTest {
+
+    private SearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SearchIndex();
+    }
+
+    @Test
+    @DisplayName("Substring search should match VaultFile.matchesSearch exactly")
+    void testMatchesLinearScan() {
+        Random random = new Random(42);
+        String[] words = {"Report", "budget", "IMG", "holiday", "draft", "Q3", "final", "notes", "ab", "x"};
+        String[] extensions = {"pdf", "jpg", "txt", "docx", "mp4"};
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String name = words[random.nextInt(words.length)] + "_" + words[random.nextInt(words.length)]
+                + "-" + i + "." + extensions[random.nextInt(extensions.length)];
+            VaultFile file = new VaultFile(name, "id-" + i, "id-" + i + ".enc", i, "h", i);
+            if (random.nextBoolean()) {
+                file.setTags(words[random.nextInt(words.length)]);
+            }
+            files.add(file);
+        }
+        index.rebuild(files);
+
+        String[] queries = {"a", "x", "AB", "rep", "report_", "_q3-1", "img_fin", ".pdf", "ft_", "12", "zzz", "s-19"};
+        for (String query : queries) {
+            Set<String> expected = files.stream().filter(f -> f.matchesSearch(query))
+                .map(VaultFile::getFileId).collect(Collectors.toSet());
+            Set<String> actual = index.search(query).stream()
+                .map(VaultFile::getFileId).collect(Collectors.toSet());
+            assertEquals(expected, actual, "Query: " + query);
+        }
+    }
+
+    @Test
+    @DisplayName("Index should follow add, remove and tag edits")
+    void testIncrementalUpdates() {
+        VaultFile report = new VaultFile("Annual Report.pdf", "1", "1.enc", 10, "h", 1);
+        VaultFile photo = new VaultFile("beach.jpg", "2", "2.enc", 10, "h", 2);
+        index.add(report);
+        index.add(photo);
+
+        assertEquals(List.of(report), index.search("report"));
+        assertEquals(List.of(photo), index.searchExtension("JPG"));
+
+        photo.setTags("vacation");
+        index.add(photo);
+        assertEquals(List.of(photo), index.search("vacat"));
+        assertEquals(2, index.size());
+
+        index.remove("1");
+        assertTrue(index.search("report").isEmpty());
+        assertTrue(index.searchExtension("pdf").isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    @DisplayName("Prefix search should match word starts only")
+    void testPrefixSearch() {
+        VaultFile a = new VaultFile("tax-return 2023.pdf", "a", "a.enc", 1, "h", 1);
+        VaultFile b = new VaultFile("syntax_notes.txt", "b", "b.enc", 1, "h", 2);
+        index.add(a);
+        index.add(b);
+
+        assertEquals(List.of(a), index.searchPrefix("tax"));
+        assertEquals(List.of(a), index.searchPrefix("20"));
+        assertEquals(List.of(a, b), index.search("tax"));
+        assertTrue(index.searchPrefix("ntax").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Removed documents should be compacted away")
+    void testCompaction() {
+        for (int i = 0; i < 5000; i++) {
+            index.add(new VaultFile("file" + i + ".txt", "id" + i, "id" + i + ".enc", 1, "h", i));
+        }
+        for (int i = 0; i < 4900; i++) {
+            index.remove("id" + i);
+        }
+
+        assertEquals(100, index.size());
+        assertEquals(100, index.search("file").size());
+        assertEquals(1, index.search("file4999.").size());
+    }
+}
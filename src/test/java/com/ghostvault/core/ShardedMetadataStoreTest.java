@@ -0,0 +1,150 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the sharded metadata snapshot
+ */
+@DisplayName("Sharded Metadata Store Tests")
+class ShardedMetadataStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SecretKey testKey;
+    private Path metadataPath;
+    private Path shardDir;
+
+    @BeforeEach
+    void setUp() {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+        metadataPath = tempDir.resolve("metadata.enc");
+        shardDir = tempDir.resolve("metadata.enc.shards");
+    }
+
+    @Test
+    @DisplayName("Should spread files over shards and reload them all")
+    void testShardedRoundTrip() throws Exception {
+        MetadataManager manager = newManager();
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            files.add(vaultFile(UUID.randomUUID().toString(), i));
+        }
+        manager.addFiles(files);
+        manager.saveMetadata();
+
+        assertTrue(shardFiles().size() > ShardedMetadataStore.SHARD_COUNT / 2);
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals(2000, reloaded.getFileCount());
+        for (VaultFile file : files) {
+            assertEquals(file.getHash(), reloaded.getFile(file.getFileId()).getHash());
+        }
+    }
+
+    @Test
+    @DisplayName("Should only rewrite shards that changed")
+    void testIncrementalCheckpoint() throws Exception {
+        MetadataManager manager = newManager();
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            files.add(vaultFile(UUID.randomUUID().toString(), i));
+        }
+        manager.addFiles(files);
+        manager.saveMetadata();
+        Set<String> before = shardFiles();
+
+        manager.updateFileTags(files.get(0).getFileId(), "changed");
+        manager.saveMetadata();
+        Set<String> after = shardFiles();
+
+        assertEquals(before.size(), after.size());
+        Set<String> rewritten = after.stream().filter(name -> !before.contains(name)).collect(Collectors.toSet());
+        assertEquals(1, rewritten.size(), "Only the touched shard should be rewritten");
+        String expectedPrefix = "shard-" + ShardedMetadataStore.shardOf(files.get(0).getFileId()) + "-";
+        assertTrue(rewritten.iterator().next().startsWith(expectedPrefix));
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        assertEquals("changed", reloaded.getFile(files.get(0).getFileId()).getTags());
+    }
+
+    @Test
+    @DisplayName("Summary should be readable without loading shards")
+    void testSummary() throws Exception {
+        MetadataManager manager = newManager();
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            files.add(vaultFile(UUID.randomUUID().toString(), i));
+        }
+        manager.addFiles(files);
+        manager.saveMetadata();
+
+        MetadataManager reloaded = newManager();
+        MetadataManager.MetadataSummary summary = reloaded.loadSummary();
+        assertNotNull(summary);
+        assertEquals(100, summary.getFileCount());
+        assertEquals(100 * 1000L, summary.getTotalSize());
+        assertEquals(ShardedMetadataStore.RECENT_FILES, summary.getRecentFiles().size());
+        assertTrue(summary.getRecentFiles().stream().allMatch(file -> file.getUploadTime() >= 80));
+        assertEquals(0, reloaded.getFileCount(), "Summary must not populate the registry");
+    }
+
+    @Test
+    @DisplayName("Swapped shard files should fail authentication")
+    void testShardSwapDetected() throws Exception {
+        MetadataManager manager = newManager();
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            files.add(vaultFile(UUID.randomUUID().toString(), i));
+        }
+        manager.addFiles(files);
+        manager.saveMetadata();
+
+        List<Path> shards = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(shardDir)) {
+            stream.sorted().limit(2).forEach(shards::add);
+        }
+        byte[] first = Files.readAllBytes(shards.get(0));
+        Files.write(shards.get(0), Files.readAllBytes(shards.get(1)));
+        Files.write(shards.get(1), first);
+
+        MetadataManager reloaded = newManager();
+        assertThrows(Exception.class, reloaded::loadMetadata);
+    }
+
+    private Set<String> shardFiles() throws Exception {
+        try (Stream<Path> stream = Files.list(shardDir)) {
+            return stream.map(path -> path.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+
+    private MetadataManager newManager() throws Exception {
+        MetadataManager manager = new MetadataManager(metadataPath.toString());
+        manager.setEncryptionKey(testKey);
+        return manager;
+    }
+
+    private static VaultFile vaultFile(String id, long uploadTime) {
+        return new VaultFile(id + ".txt", id, id + ".enc", 1000, "hash-" + id, uploadTime);
+    }
+}
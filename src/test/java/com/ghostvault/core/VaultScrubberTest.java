@@ -0,0 +1,172 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the background integrity scrubber
+ */
+@DisplayName("VaultScrubber Tests")
+class VaultScrubberTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileManager fileManager;
+    private MetadataManager metadataManager;
+    private SecretKey testKey;
+    private Path checkpoint;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+
+        fileManager = new FileManager(tempDir.toString());
+        fileManager.setEncryptionKey(testKey);
+        metadataManager = new MetadataManager(tempDir.resolve("metadata.enc").toString());
+        metadataManager.setEncryptionKey(testKey);
+        checkpoint = tempDir.resolve("scrub.enc");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (VaultFile file : metadataManager.getAllFiles()) {
+            Files.deleteIfExists(fileManager.getEncryptedFilePath(file));
+        }
+        fileManager.cleanup();
+    }
+
+    @Test
+    @DisplayName("Should pass a healthy vault and keep the report")
+    void testCleanPass() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            store("clean" + i + ".txt", 1000 + i);
+        }
+
+        VaultScrubber scrubber = newScrubber();
+        VaultScrubber.Report report = scrubber.runPass();
+
+        assertNotNull(report);
+        assertTrue(report.isClean());
+        assertEquals(5, report.getFilesChecked());
+        assertEquals(report.getCompletedAt(), newScrubber().getLastReport().getCompletedAt());
+    }
+
+    @Test
+    @DisplayName("Should report corrupted and missing files")
+    void testDetectsDamage() throws Exception {
+        store("intact.txt", 5000);
+        VaultFile flipped = store("flipped.bin", 200_000);
+        VaultFile missing = store("missing.txt", 100);
+
+        Path flippedPath = fileManager.getEncryptedFilePath(flipped);
+        byte[] ciphertext = Files.readAllBytes(flippedPath);
+        ciphertext[ciphertext.length / 2] ^= 0x10;
+        Files.write(flippedPath, ciphertext);
+        Files.delete(fileManager.getEncryptedFilePath(missing));
+
+        List<String> reasons = new ArrayList<>();
+        VaultScrubber scrubber = newScrubber();
+        scrubber.setListener(new VaultScrubber.ScrubListener() {
+            @Override
+            public void onCorruptFile(VaultFile vaultFile, String reason) {
+                reasons.add(vaultFile.getOriginalName() + ": " + reason);
+            }
+
+            @Override
+            public void onPassCompleted(VaultScrubber.Report report) {
+            }
+        });
+        VaultScrubber.Report report = scrubber.runPass();
+
+        assertEquals(3, report.getFilesChecked());
+        assertEquals(2, report.getCorruptFileIds().size());
+        assertTrue(report.getCorruptFileIds().contains(flipped.getFileId()));
+        assertTrue(report.getCorruptFileIds().contains(missing.getFileId()));
+        assertTrue(reasons.stream().anyMatch(r -> r.startsWith("flipped.bin: Authentication failed")), reasons.toString());
+        assertTrue(reasons.contains("missing.txt: Encrypted file missing"), reasons.toString());
+    }
+
+    @Test
+    @DisplayName("Should resume an interrupted pass from its checkpoint")
+    void testResumeFromCheckpoint() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            store("resume" + i + ".txt", 100 + i);
+        }
+
+        // Stop part way through, as a logout would
+        VaultScrubber first = newScrubber();
+        AtomicInteger polls = new AtomicInteger();
+        first.setBusySignal(() -> {
+            if (polls.incrementAndGet() > 100) {
+                first.stop();
+            }
+            return false;
+        });
+        assertNull(first.runPass());
+        assertTrue(Files.exists(checkpoint));
+        assertNull(first.getLastReport());
+
+        // A new scrubber, as after a restart, finishes the same pass
+        VaultScrubber.Report report = newScrubber().runPass();
+        assertEquals(40, report.getFilesChecked());
+        assertTrue(report.isClean());
+
+        // The checkpoint is sealed under the vault key
+        byte[] sealed = Files.readAllBytes(checkpoint);
+        assertFalse(new String(sealed, StandardCharsets.ISO_8859_1).contains("GVSC"));
+        CryptoManager cryptoManager = new CryptoManager();
+        SecretKey otherKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+        VaultScrubber foreign = new VaultScrubber(fileManager, metadataManager, null, checkpoint, otherKey);
+        assertNull(foreign.getLastReport());
+    }
+
+    @Test
+    @DisplayName("Should stay within the bandwidth budget")
+    void testBandwidthLimit() throws Exception {
+        store("paced.bin", 1024 * 1024);
+
+        VaultScrubber scrubber = newScrubber();
+        scrubber.setBandwidthLimit(4.0);
+        long start = System.nanoTime();
+        scrubber.runPass();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // 1 MB at 4 MB/s takes at least a quarter of a second
+        assertTrue(elapsedMillis >= 200, "Finished in " + elapsedMillis + " ms");
+    }
+
+    private VaultScrubber newScrubber() {
+        VaultScrubber scrubber = new VaultScrubber(fileManager, metadataManager, null, checkpoint, testKey);
+        scrubber.setBandwidthLimit(1024);
+        return scrubber;
+    }
+
+    private VaultFile store(String name, int size) throws Exception {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        File source = tempDir.resolve(name).toFile();
+        Files.write(source.toPath(), content);
+        VaultFile file = fileManager.storeFile(source);
+        metadataManager.addFile(file);
+        return file;
+    }
+}
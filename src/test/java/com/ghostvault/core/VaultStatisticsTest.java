@@ -0,0 +1,127 @@
+package com.ghostvault.core;
+
+import com.ghostvault.model.VaultFile;
+import com.ghostvault.security.CryptoManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the running vault statistics
+ */
+@DisplayName("Vault Statistics Tests")
+class VaultStatisticsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SecretKey testKey;
+
+    @BeforeEach
+    void setUp() {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+    }
+
+    @Test
+    @DisplayName("Should track adds, replacements and removals like a full recount")
+    void testIncrementalMatchesRecount() throws Exception {
+        MetadataManager manager = newManager();
+        List<VaultFile> files = new ArrayList<>();
+        String[] names = {"a.txt", "b.TXT", "c.java", "d.png", "notes", "e.pdf", "f.mp3"};
+        for (int i = 0; i < names.length; i++) {
+            files.add(vaultFile(names[i], 100L * (i + 1)));
+        }
+        manager.addFiles(files);
+        manager.removeFile(files.get(2).getFileId());
+        // Same id, new name and size
+        VaultFile renamed = new VaultFile("a.png", files.get(0).getFileId(), "renamed.enc", 5000, "hash", 1);
+        manager.addFile(renamed);
+
+        VaultStatistics.Snapshot totals = manager.getStatistics();
+        assertSnapshotEquals(VaultStatistics.of(manager.getAllFiles()).snapshot(), totals);
+        assertEquals(6, totals.getFileCount());
+        assertEquals(5000 + 200 + 400 + 500 + 600 + 700, totals.getTotalSize());
+        assertEquals(1L, totals.getFilesByExtension().get("txt"));
+        assertEquals(2L, totals.getFilesByExtension().get("png"));
+        assertEquals(5400L, totals.getBytesByExtension().get("png"));
+        assertFalse(totals.getFilesByExtension().containsKey("java"), "Emptied buckets should be dropped");
+        assertTrue(totals.getFilesByExtension().containsKey(""));
+        assertEquals(totals.getExtensionCount(), manager.getMetadataStats().getUniqueExtensions());
+        assertEquals(totals.getTotalSize(), manager.getTotalVaultSize());
+        assertSame(totals, manager.getStatistics(), "Unchanged totals should not be copied again");
+    }
+
+    @Test
+    @DisplayName("Should save totals in the summary and resume them with journaled changes")
+    void testPersistedWithSummary() throws Exception {
+        MetadataManager manager = newManager();
+        List<VaultFile> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(vaultFile("file" + i + (i % 2 == 0 ? ".txt" : ".jpg"), 1000));
+        }
+        manager.addFiles(files);
+        manager.saveMetadata();
+
+        MetadataManager.MetadataSummary summary = newManager().loadSummary();
+        assertNotNull(summary.getStatistics());
+        assertEquals(25L, summary.getStatistics().getFilesByExtension().get("jpg"));
+        assertEquals(25L, summary.getStatistics().getFilesByCategory().get(VaultFile.FileCategory.IMAGE));
+
+        // Only in the journal when the vault is reopened
+        manager.removeFile(files.get(1).getFileId());
+        manager.addFile(vaultFile("song.mp3", 3000));
+
+        MetadataManager reloaded = newManager();
+        reloaded.loadMetadata();
+        VaultStatistics.Snapshot totals = reloaded.getStatistics();
+        assertSnapshotEquals(manager.getStatistics(), totals);
+        assertSnapshotEquals(VaultStatistics.of(reloaded.getAllFiles()).snapshot(), totals);
+        assertEquals(24L, totals.getFilesByExtension().get("jpg"));
+        assertEquals(3000L, totals.getBytesByCategory().get(VaultFile.FileCategory.MEDIA));
+    }
+
+    @Test
+    @DisplayName("Should round-trip the encoded totals")
+    void testEncodeRoundTrip() throws Exception {
+        VaultStatistics statistics = new VaultStatistics();
+        statistics.add(vaultFile("résumé.docx", 12345));
+        statistics.add(vaultFile("Makefile", 7));
+        statistics.add(vaultFile("clip.mp4", 1L << 40));
+
+        VaultStatistics.Snapshot snapshot = statistics.snapshot();
+        VaultStatistics.Snapshot decoded = VaultStatistics.Snapshot.decode(ByteBuffer.wrap(snapshot.encode()));
+        assertSnapshotEquals(snapshot, decoded);
+        assertSnapshotEquals(snapshot, VaultStatistics.from(decoded).snapshot());
+    }
+
+    private static void assertSnapshotEquals(VaultStatistics.Snapshot expected, VaultStatistics.Snapshot actual) {
+        assertEquals(expected.getFileCount(), actual.getFileCount());
+        assertEquals(expected.getTotalSize(), actual.getTotalSize());
+        assertEquals(expected.getFilesByExtension(), actual.getFilesByExtension());
+        assertEquals(expected.getBytesByExtension(), actual.getBytesByExtension());
+        assertEquals(expected.getFilesByCategory(), actual.getFilesByCategory());
+        assertEquals(expected.getBytesByCategory(), actual.getBytesByCategory());
+    }
+
+    private MetadataManager newManager() throws Exception {
+        MetadataManager manager = new MetadataManager(tempDir.resolve("metadata.enc").toString());
+        manager.setEncryptionKey(testKey);
+        return manager;
+    }
+
+    private static VaultFile vaultFile(String name, long size) {
+        String id = UUID.randomUUID().toString();
+        return new VaultFile(name, id, id + ".enc", size, "hash-" + id, System.currentTimeMillis());
+    }
+}
@@ -6,9 +6,16 @@ import org.junit.jupiter.api.DisplayName;
 
 import javax.crypto.AEADBadTagException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -245,4 +252,76 @@ class CryptoManagerAEADTest {
         byte[] decrypted = cryptoManager.decrypt(combined, testKey, null);
         assertArrayEquals(plaintext, decrypted);
     }
+    
+    @Test
+    @DisplayName("Should encrypt and decrypt between ByteBuffers in the byte[] format")
+    void testByteBufferRoundTrip() throws GeneralSecurityException {
+        // Arrange
+        byte[] plaintext = "Buffer message".getBytes(StandardCharsets.UTF_8);
+        byte[] aad = "record-7".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer ciphertext = ByteBuffer.allocateDirect(CryptoManager.encryptedLength(plaintext.length) + 4);
+        ciphertext.putInt(42);
+        
+        // Act
+        int written = cryptoManager.encrypt(ByteBuffer.wrap(plaintext), ciphertext, testKey, aad);
+        ciphertext.flip().position(4);
+        byte[] combined = new byte[ciphertext.remaining()];
+        ciphertext.duplicate().get(combined);
+        ByteBuffer decrypted = ByteBuffer.allocate(CryptoManager.decryptedLength(written));
+        int read = cryptoManager.decrypt(ciphertext, decrypted, testKey, aad);
+        
+        // Assert
+        assertEquals(CryptoManager.encryptedLength(plaintext.length), written);
+        assertEquals(plaintext.length, read);
+        assertArrayEquals(plaintext, decrypted.array());
+        assertArrayEquals(plaintext, cryptoManager.decrypt(combined, testKey, aad));
+    }
+    
+    @Test
+    @DisplayName("Should reject tampered buffers and short output buffers")
+    void testByteBufferFailures() throws GeneralSecurityException {
+        // Arrange
+        byte[] plaintext = "Buffer message".getBytes(StandardCharsets.UTF_8);
+        byte[] ciphertext = cryptoManager.encrypt(plaintext, testKey, null);
+        ciphertext[ciphertext.length - 1] ^= 0x01;
+        
+        // Act & Assert
+        ByteBuffer output = ByteBuffer.allocate(plaintext.length);
+        assertThrows(GeneralSecurityException.class,
+            () -> cryptoManager.decrypt(ByteBuffer.wrap(ciphertext), output, testKey, null));
+        assertEquals(0, output.position());
+        assertThrows(ShortBufferException.class,
+            () -> cryptoManager.encrypt(ByteBuffer.wrap(plaintext), ByteBuffer.allocate(plaintext.length), testKey, null));
+    }
+    
+    @Test
+    @DisplayName("Should encrypt concurrently with per-thread ciphers")
+    void testConcurrentUse() throws Exception {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        
+        // Act
+        try {
+            for (int t = 0; t < 8; t++) {
+                byte[] plaintext = ("Thread message " + t).getBytes(StandardCharsets.UTF_8);
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        byte[] ciphertext = cryptoManager.encrypt(plaintext, testKey, null);
+                        if (!Arrays.equals(plaintext, cryptoManager.decrypt(ciphertext, testKey, null))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            
+            // Assert
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package com.ghostvault.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for random-access decryption of segmented vault files
+ */
+@DisplayName("DecryptingSeekableByteChannel Tests")
+class DecryptingSeekableByteChannelTest {
+
+    private static final int SEGMENT = SegmentedAead.DEFAULT_SEGMENT_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private SecretKey testKey;
+    private byte[] plaintext;
+    private Path encryptedFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+
+        plaintext = new byte[5 * SEGMENT + 1234];
+        new Random(42).nextBytes(plaintext);
+
+        encryptedFile = tempDir.resolve("file.enc");
+        try (OutputStream out = SegmentedAead.newEncryptingStream(Files.newOutputStream(encryptedFile), testKey)) {
+            out.write(plaintext);
+        }
+    }
+
+    @Test
+    @DisplayName("Should report plaintext size")
+    void testSize() throws Exception {
+        try (DecryptingSeekableByteChannel channel = new DecryptingSeekableByteChannel(encryptedFile, testKey)) {
+            assertEquals(plaintext.length, channel.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Should read arbitrary ranges across segment boundaries")
+    void testRandomAccessReads() throws Exception {
+        long[][] ranges = {{0, 10}, {SEGMENT - 5, 10}, {3L * SEGMENT + 7, 2 * SEGMENT}, {plaintext.length - 3, 3}};
+
+        try (DecryptingSeekableByteChannel channel = new DecryptingSeekableByteChannel(encryptedFile, testKey)) {
+            for (long[] range : ranges) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) range[1]);
+                channel.position(range[0]);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // fill buffer
+                }
+                byte[] expected = Arrays.copyOfRange(plaintext, (int) range[0], (int) (range[0] + range[1]));
+                assertArrayEquals(expected, buffer.array(), "Mismatch at offset " + range[0]);
+            }
+
+            channel.position(plaintext.length);
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should stream the full plaintext through an InputStream")
+    void testInputStream() throws Exception {
+        try (InputStream in = Channels.newInputStream(new DecryptingSeekableByteChannel(encryptedFile, testKey))) {
+            assertArrayEquals(plaintext, in.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("Should only fail reads that touch a corrupted segment")
+    void testCorruptionIsolatedToSegment() throws Exception {
+        byte[] raw = Files.readAllBytes(encryptedFile);
+        raw[SegmentedAead.HEADER_LENGTH + 2 * (SEGMENT + SegmentedAead.TAG_LENGTH) + 10] ^= 0x01;
+        Files.write(encryptedFile, raw);
+
+        try (DecryptingSeekableByteChannel channel = new DecryptingSeekableByteChannel(encryptedFile, testKey)) {
+            ByteBuffer first = ByteBuffer.allocate(100);
+            channel.read(first);
+            assertArrayEquals(Arrays.copyOf(plaintext, 100), first.array());
+
+            channel.position(2L * SEGMENT + 1);
+            assertThrows(IOException.class, () -> channel.read(ByteBuffer.allocate(10)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject writes")
+    void testReadOnly() throws Exception {
+        try (DecryptingSeekableByteChannel channel = new DecryptingSeekableByteChannel(encryptedFile, testKey)) {
+            assertThrows(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+        }
+    }
+}
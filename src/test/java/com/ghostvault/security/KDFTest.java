@@ -1,5 +1,7 @@
 package com.ghostvault.security;
 
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
@@ -256,4 +258,84 @@ class KDFTest {
         assertNotNull(key);
         assertEquals(32, key.length);
     }
+    
+    @Test
+    @DisplayName("Multi-lane Argon2id should match the Bouncy Castle reference")
+    void testArgon2MatchesReference() throws GeneralSecurityException {
+        // Arrange
+        char[] password = "Пароль密码🔐".toCharArray();
+        byte[] salt = KDF.generateSalt();
+        int[][] cases = {
+            // memory KB, iterations, parallelism
+            {64, 1, 1}, {256, 3, 1}, {256, 2, 4}, {1000, 3, 3}, {2048, 1, 8}, {32, 2, 2}
+        };
+        
+        for (int[] c : cases) {
+            KDF.KdfParams params = new KDF.KdfParams(KDF.Algorithm.ARGON2ID, salt, c[0], c[1], c[2]);
+            Argon2BytesGenerator reference = new Argon2BytesGenerator();
+            reference.init(new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                .withSalt(salt)
+                .withMemoryAsKB(c[0])
+                .withIterations(c[1])
+                .withParallelism(c[2])
+                .build());
+            byte[] expected = new byte[32];
+            reference.generateBytes(password, expected);
+            
+            // Act
+            byte[] key = KDF.deriveKey(password, params);
+            
+            // Assert
+            assertArrayEquals(expected, key, "Mismatch for " + params);
+        }
+    }
+    
+    @Test
+    @DisplayName("Argon2id should not wipe the caller's password")
+    void testArgon2LeavesPasswordIntact() throws GeneralSecurityException {
+        // Arrange
+        char[] password = "TestPassword".toCharArray();
+        KDF.KdfParams params = new KDF.KdfParams(KDF.Algorithm.ARGON2ID, KDF.generateSalt(), 256, 1, 2);
+        
+        // Act
+        byte[] key1 = KDF.deriveKey(password, params);
+        byte[] key2 = KDF.deriveKey(password, params);
+        
+        // Assert
+        assertArrayEquals("TestPassword".toCharArray(), password);
+        assertArrayEquals(key1, key2);
+    }
+    
+    @Test
+    @DisplayName("Calibration should use Argon2id on every core within bounds")
+    void testCalibration() {
+        // Act
+        KDF.BenchmarkResult result = KDF.benchmark(200);
+        KDF.KdfParams params = result.getRecommendedParams();
+        
+        // Assert
+        assertEquals(KDF.Algorithm.ARGON2ID, params.getAlgorithm());
+        assertEquals(Math.min(Runtime.getRuntime().availableProcessors(), 16), params.getParallelism());
+        assertTrue(params.getMemory() >= 65536);
+        assertTrue(params.getIterations() >= 3 && params.getIterations() <= 10);
+        assertFalse(KDF.needsUpgrade(params));
+    }
+    
+    @Test
+    @DisplayName("Legacy parameters should derive with PBKDF2 and be flagged for upgrade")
+    void testLegacyParams() throws GeneralSecurityException {
+        // Arrange
+        char[] password = "TestPassword".toCharArray();
+        byte[] salt = KDF.generateSalt();
+        KDF.KdfParams legacy = KDF.getLegacyParams(salt);
+        
+        // Act
+        byte[] key = KDF.deriveKey(password, legacy);
+        byte[] pbkdf2 = KDF.deriveKey(password, new KDF.KdfParams(KDF.Algorithm.PBKDF2, salt, 600000));
+        
+        // Assert
+        assertArrayEquals(pbkdf2, key);
+        assertTrue(KDF.needsUpgrade(legacy));
+    }
 }
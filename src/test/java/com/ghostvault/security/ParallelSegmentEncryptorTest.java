@@ -0,0 +1,162 @@
+package com.ghostvault.security;
+
+import com.ghostvault.util.MerkleHash;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the parallel segment encryption pipeline
+ */
+@DisplayName("ParallelSegmentEncryptor Tests")
+class ParallelSegmentEncryptorTest {
+
+    private static final int SEGMENT = SegmentedAead.DEFAULT_SEGMENT_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private ParallelSegmentEncryptor encryptor;
+    private SecretKey testKey;
+
+    @BeforeEach
+    void setUp() {
+        CryptoManager cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+        encryptor = new ParallelSegmentEncryptor(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        encryptor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Output should decrypt with the sequential segmented reader")
+    void testCompatibleWithSequentialFormat() throws Exception {
+        int[] sizes = {0, 1, SEGMENT, SEGMENT + 1, 20 * SEGMENT, 37 * SEGMENT + 999};
+
+        for (int size : sizes) {
+            byte[] plaintext = new byte[size];
+            new Random(size).nextBytes(plaintext);
+
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            long written = encryptor.encrypt(new ByteArrayInputStream(plaintext), Channels.newChannel(sink), testKey);
+            assertEquals(size, written);
+
+            try (InputStream in = SegmentedAead.newDecryptingStream(new ByteArrayInputStream(sink.toByteArray()), testKey)) {
+                assertArrayEquals(plaintext, in.readAllBytes(), "Round trip failed for size " + size);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Merkle roots built in parallel should match the sequential hash")
+    void testMerkleRoots() throws Exception {
+        int[] sizes = {0, 1, SEGMENT, 5 * SEGMENT, 37 * SEGMENT + 999};
+
+        for (int size : sizes) {
+            byte[] plaintext = new byte[size];
+            new Random(size).nextBytes(plaintext);
+            byte[] expected = MerkleHash.of(plaintext, SEGMENT);
+
+            Path path = tempDir.resolve("file-" + size);
+            MerkleHash.Builder leaves = new MerkleHash.Builder();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                encryptor.encrypt(new ByteArrayInputStream(plaintext), channel, testKey, leaves);
+            }
+            assertArrayEquals(expected, leaves.root(), "Encrypt root differs for size " + size);
+
+            byte[] decrypted = new byte[size];
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                SegmentedAead aead = SegmentedAead.open(testKey, SegmentedAead.readHeader(channel, 0));
+                assertArrayEquals(expected, encryptor.decryptAndHash(channel, aead, decrypted), "Decrypt root differs for size " + size);
+                assertArrayEquals(expected, encryptor.decryptAndHash(channel, aead, null));
+            }
+            assertArrayEquals(plaintext, decrypted);
+        }
+    }
+
+    @Test
+    @DisplayName("Fused file-to-file encryption should match the sequential hash and format")
+    void testFusedFileEncryption() throws Exception {
+        int[] sizes = {0, 1, SEGMENT, 5 * SEGMENT, 37 * SEGMENT + 999};
+
+        for (int size : sizes) {
+            byte[] plaintext = new byte[size];
+            new Random(size).nextBytes(plaintext);
+            Path source = Files.write(tempDir.resolve("plain-" + size), plaintext);
+            Path target = tempDir.resolve("fused-" + size);
+
+            MerkleHash.Builder leaves = new MerkleHash.Builder();
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                assertEquals(size, encryptor.encrypt(in, out, SegmentedAead.create(testKey), leaves));
+                assertEquals(Files.size(target), out.position());
+            }
+            assertArrayEquals(MerkleHash.of(plaintext, SEGMENT), leaves.root(), "Hash differs for size " + size);
+
+            try (InputStream in = SegmentedAead.newDecryptingStream(Files.newInputStream(target), testKey)) {
+                assertArrayEquals(plaintext, in.readAllBytes(), "Round trip failed for size " + size);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Tampered segments should fail parallel decryption")
+    void testTamperedSegment() throws Exception {
+        byte[] plaintext = new byte[8 * SEGMENT];
+        new Random(7).nextBytes(plaintext);
+        Path path = tempDir.resolve("tampered");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            encryptor.encrypt(new ByteArrayInputStream(plaintext), channel, testKey);
+        }
+        byte[] ciphertext = Files.readAllBytes(path);
+        ciphertext[SegmentedAead.HEADER_LENGTH + 5 * SEGMENT] ^= 1;
+        Files.write(path, ciphertext);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            SegmentedAead aead = SegmentedAead.open(testKey, SegmentedAead.readHeader(channel, 0));
+            assertThrows(Exception.class, () -> encryptor.decryptAndHash(channel, aead, null));
+        }
+    }
+
+    @Test
+    @DisplayName("A failed parallel decryption should leave the caller's channel open")
+    void testFailureKeepsChannelOpen() throws Exception {
+        byte[] plaintext = new byte[64 * SEGMENT];
+        new Random(11).nextBytes(plaintext);
+        Path path = tempDir.resolve("early-tamper");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            encryptor.encrypt(new ByteArrayInputStream(plaintext), channel, testKey);
+        }
+        byte[] ciphertext = Files.readAllBytes(path);
+        ciphertext[SegmentedAead.HEADER_LENGTH + 5] ^= 1;
+        Files.write(path, ciphertext);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            SegmentedAead aead = SegmentedAead.open(testKey, SegmentedAead.readHeader(channel, 0));
+            for (int attempt = 0; attempt < 20; attempt++) {
+                // Segments still being read when the first one fails must not be interrupted
+                assertThrows(GeneralSecurityException.class, () -> encryptor.decryptAndHash(channel, aead, null));
+                assertTrue(channel.isOpen());
+            }
+        }
+    }
+}
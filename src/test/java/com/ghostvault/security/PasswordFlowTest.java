@@ -5,9 +5,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.ghostvault.config.AppConfig;
+import com.ghostvault.config.ConfigurationValidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 
 /**
  * Test to verify the complete password flow works correctly
@@ -106,4 +113,129 @@ public class PasswordFlowTest {
         
         System.out.println("=== All Password Flow Tests Passed! ===\n");
     }
+    
+    @Test
+    public void testAuthenticateReturnsUnwrappedKey() throws Exception {
+        PasswordManager pm = new PasswordManager(TEST_VAULT_PATH);
+        
+        char[] masterPwd = "TestMaster123!".toCharArray();
+        char[] panicPwd = "TestPanic123!".toCharArray();
+        char[] decoyPwd = "TestDecoy123!".toCharArray();
+        pm.initializePasswords(masterPwd, panicPwd, decoyPwd);
+        
+        // One derivation yields the same keys as the separate unwrap calls
+        PasswordManager.AuthenticationResult master = pm.authenticate(masterPwd);
+        assertEquals(PasswordManager.PasswordType.MASTER, master.getType());
+        assertArrayEquals(pm.unwrapVMK(masterPwd).getEncoded(), master.getKey().getEncoded());
+        
+        PasswordManager.AuthenticationResult decoy = pm.authenticate(decoyPwd);
+        assertEquals(PasswordManager.PasswordType.DECOY, decoy.getType());
+        assertArrayEquals(pm.unwrapDVMK(decoyPwd).getEncoded(), decoy.getKey().getEncoded());
+        
+        PasswordManager.AuthenticationResult panic = pm.authenticate(panicPwd);
+        assertEquals(PasswordManager.PasswordType.PANIC, panic.getType());
+        assertNull(panic.getKey());
+        
+        PasswordManager.AuthenticationResult invalid = pm.authenticate("WrongPassword123!".toCharArray());
+        assertEquals(PasswordManager.PasswordType.INVALID, invalid.getType());
+        assertNull(invalid.getKey());
+    }
+    
+    @Test
+    public void testLegacyConfigurationUpgradesInPlace() throws Exception {
+        char[] masterPwd = "TestMaster123!".toCharArray();
+        char[] panicPwd = "TestPanic123!".toCharArray();
+        char[] decoyPwd = "TestDecoy123!".toCharArray();
+        writeLegacyConfiguration(masterPwd, panicPwd, decoyPwd);
+        
+        PasswordManager pm = new PasswordManager(TEST_VAULT_PATH);
+        byte[] vmk = pm.unwrapVMK(masterPwd).getEncoded();
+        byte[] dvmk = pm.unwrapDVMK(decoyPwd).getEncoded();
+        assertEquals(KDF.Algorithm.PBKDF2, pm.getKdfParams().getAlgorithm());
+        
+        // Entering the master password moves it to calibrated Argon2id
+        PasswordManager.AuthenticationResult master = pm.authenticate(masterPwd);
+        assertEquals(PasswordManager.PasswordType.MASTER, master.getType());
+        assertArrayEquals(vmk, master.getKey().getEncoded());
+        
+        // After a reload the upgraded master and the still-legacy decoy both work
+        PasswordManager reloaded = new PasswordManager(TEST_VAULT_PATH);
+        assertEquals(KDF.Algorithm.ARGON2ID, reloaded.getKdfParams().getAlgorithm());
+        assertArrayEquals(vmk, reloaded.authenticate(masterPwd).getKey().getEncoded());
+        assertEquals(PasswordManager.PasswordType.PANIC, reloaded.detectPassword(panicPwd));
+        PasswordManager.AuthenticationResult decoy = reloaded.authenticate(decoyPwd);
+        assertEquals(PasswordManager.PasswordType.DECOY, decoy.getType());
+        assertArrayEquals(dvmk, decoy.getKey().getEncoded());
+        assertEquals(PasswordManager.PasswordType.INVALID, reloaded.detectPassword("WrongPassword123!".toCharArray()));
+        
+        // With every slot upgraded the legacy params are gone
+        PasswordManager upgraded = new PasswordManager(TEST_VAULT_PATH);
+        assertArrayEquals(dvmk, upgraded.unwrapDVMK(decoyPwd).getEncoded());
+        assertArrayEquals(vmk, upgraded.unwrapVMK(masterPwd).getEncoded());
+    }
+    
+    @Test
+    public void testPendingPasswordsUpgradeTogether() throws Exception {
+        char[] masterPwd = "TestMaster123!".toCharArray();
+        char[] panicPwd = "TestPanic123!".toCharArray();
+        char[] decoyPwd = "TestDecoy123!".toCharArray();
+        writeLegacyConfiguration(masterPwd, panicPwd, decoyPwd);
+        
+        PasswordManager pm = new PasswordManager(TEST_VAULT_PATH);
+        byte[] dvmk = pm.unwrapDVMK(decoyPwd).getEncoded();
+        assertEquals(3, pm.getPendingUpgrades().size());
+        assertEquals(PasswordManager.PasswordType.MASTER, pm.authenticate(masterPwd).getType());
+        assertFalse(pm.getPendingUpgrades().contains(PasswordManager.PasswordType.MASTER));
+        
+        // A master session passes the rarely used passwords in right away
+        assertFalse(pm.upgradePassword(PasswordManager.PasswordType.PANIC, decoyPwd));
+        assertTrue(pm.upgradePassword(PasswordManager.PasswordType.PANIC, panicPwd));
+        assertTrue(pm.upgradePassword(PasswordManager.PasswordType.DECOY, decoyPwd));
+        assertTrue(pm.getPendingUpgrades().isEmpty());
+        assertFalse(pm.upgradePassword(PasswordManager.PasswordType.DECOY, decoyPwd), "Nothing left to upgrade");
+        
+        PasswordManager reloaded = new PasswordManager(TEST_VAULT_PATH);
+        assertTrue(reloaded.getPendingUpgrades().isEmpty());
+        assertEquals(KDF.Algorithm.ARGON2ID, reloaded.getKdfParams().getAlgorithm());
+        assertEquals(PasswordManager.PasswordType.PANIC, reloaded.detectPassword(panicPwd));
+        assertArrayEquals(dvmk, reloaded.authenticate(decoyPwd).getKey().getEncoded());
+    }
+    
+    /**
+     * Write a configuration the way releases before Argon2id did: Argon2id parameters
+     * recorded, keys actually derived with PBKDF2
+     */
+    private void writeLegacyConfiguration(char[] masterPwd, char[] panicPwd, char[] decoyPwd) throws Exception {
+        CryptoManager crypto = new CryptoManager();
+        byte[] salt = KDF.generateSalt();
+        KDF.KdfParams legacy = KDF.getLegacyParams(salt);
+        
+        ByteArrayOutputStream params = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(params)) {
+            dos.writeUTF(KDF.Algorithm.ARGON2ID.name());
+            dos.writeInt(salt.length);
+            dos.write(salt);
+            dos.writeInt(65536);
+            dos.writeInt(3);
+            dos.writeInt(4);
+        }
+        
+        byte[] masterKek = KDF.deriveKey(masterPwd, legacy);
+        byte[] panicKek = KDF.deriveKey(panicPwd, legacy);
+        byte[] decoyKek = KDF.deriveKey(decoyPwd, legacy);
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        PasswordManager.PasswordConfiguration config = new PasswordManager.PasswordConfiguration(
+            params.toByteArray(),
+            sha.digest(masterKek), crypto.encrypt(crypto.generateSecureRandom(32), crypto.keyFromBytes(masterKek), null),
+            sha.digest(panicKek),
+            sha.digest(decoyKek), crypto.encrypt(crypto.generateSecureRandom(32), crypto.keyFromBytes(decoyKek), null));
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(config);
+        }
+        Files.createDirectories(Paths.get(AppConfig.CONFIG_FILE).getParent());
+        Files.write(Paths.get(AppConfig.CONFIG_FILE), bytes.toByteArray());
+        new ConfigurationValidator().createChecksum(Paths.get(AppConfig.CONFIG_FILE));
+    }
 }
@@ -0,0 +1,159 @@
+package com.ghostvault.security;
+
+import com.ghostvault.util.MerkleHash;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the segmented AES-GCM file container format
+ */
+@DisplayName("SegmentedAead Tests")
+class SegmentedAeadTest {
+
+    private static final int SEGMENT = SegmentedAead.DEFAULT_SEGMENT_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private CryptoManager cryptoManager;
+    private SecretKey testKey;
+
+    @BeforeEach
+    void setUp() {
+        cryptoManager = new CryptoManager();
+        testKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+    }
+
+    @Test
+    @DisplayName("Should round-trip data at and around segment boundaries")
+    void testRoundTripBoundaries() throws Exception {
+        int[] sizes = {0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 3 * SEGMENT, 3 * SEGMENT + 17};
+
+        for (int size : sizes) {
+            byte[] plaintext = randomBytes(size);
+            byte[] ciphertext = encrypt(plaintext);
+
+            assertTrue(SegmentedAead.isHeader(ciphertext), "Header expected for size " + size);
+            SegmentedAead aead = SegmentedAead.open(testKey, Arrays.copyOf(ciphertext, SegmentedAead.HEADER_LENGTH));
+            assertEquals(size, aead.plaintextLength(ciphertext.length - SegmentedAead.HEADER_LENGTH));
+            assertArrayEquals(plaintext, decrypt(ciphertext), "Round trip failed for size " + size);
+        }
+    }
+
+    @Test
+    @DisplayName("Should detect tampering inside a segment")
+    void testTamperDetection() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(2 * SEGMENT + 10));
+        ciphertext[SegmentedAead.HEADER_LENGTH + SEGMENT + 100] ^= 0x01;
+
+        assertThrows(IOException.class, () -> decrypt(ciphertext));
+    }
+
+    @Test
+    @DisplayName("Should detect truncation at a segment boundary")
+    void testTruncationDetection() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(3 * SEGMENT));
+        int twoSegments = SegmentedAead.HEADER_LENGTH + 2 * (SEGMENT + SegmentedAead.TAG_LENGTH);
+        byte[] truncated = Arrays.copyOf(ciphertext, twoSegments);
+
+        assertThrows(IOException.class, () -> decrypt(truncated));
+    }
+
+    @Test
+    @DisplayName("Should detect reordered segments")
+    void testReorderDetection() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(3 * SEGMENT + 5));
+        int segmentLength = SEGMENT + SegmentedAead.TAG_LENGTH;
+        int first = SegmentedAead.HEADER_LENGTH;
+        int second = first + segmentLength;
+
+        byte[] swapped = ciphertext.clone();
+        System.arraycopy(ciphertext, first, swapped, second, segmentLength);
+        System.arraycopy(ciphertext, second, swapped, first, segmentLength);
+
+        assertThrows(IOException.class, () -> decrypt(swapped));
+    }
+
+    @Test
+    @DisplayName("Should fail to decrypt with wrong key")
+    void testWrongKey() throws Exception {
+        byte[] ciphertext = encrypt(randomBytes(100));
+        SecretKey wrongKey = cryptoManager.keyFromBytes(cryptoManager.generateSecureRandom(32));
+
+        assertThrows(IOException.class, () -> {
+            try (InputStream in = SegmentedAead.newDecryptingStream(new ByteArrayInputStream(ciphertext), wrongKey)) {
+                in.readAllBytes();
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Should not recognise legacy single-blob ciphertext as segmented")
+    void testLegacyFormatNotDetected() throws Exception {
+        byte[] legacy = cryptoManager.encrypt(randomBytes(1000), testKey);
+
+        assertFalse(SegmentedAead.isHeader(legacy));
+    }
+
+    @Test
+    @DisplayName("Fused file encryption should match the stream format and hash")
+    void testEncryptFile() throws Exception {
+        int[] sizes = {0, 1, SEGMENT - 1, SEGMENT, 3 * SEGMENT, 3 * SEGMENT + 7};
+
+        for (int size : sizes) {
+            byte[] plaintext = randomBytes(size);
+            Path source = Files.write(tempDir.resolve("plain-" + size), plaintext);
+            Path target = tempDir.resolve("cipher-" + size);
+
+            MerkleHash.Builder leaves = new MerkleHash.Builder();
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                assertEquals(size, SegmentedAead.create(testKey).encryptFile(in, out, leaves));
+                assertEquals(Files.size(target), out.position());
+            }
+
+            assertArrayEquals(plaintext, decrypt(Files.readAllBytes(target)), "Round trip failed for size " + size);
+            assertArrayEquals(MerkleHash.of(plaintext, SEGMENT), leaves.root(), "Hash differs for size " + size);
+        }
+    }
+
+    private byte[] encrypt(byte[] plaintext) throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = SegmentedAead.newEncryptingStream(sink, testKey)) {
+            // Odd-sized writes exercise buffering across segment boundaries
+            for (int offset = 0; offset < plaintext.length; offset += 1000) {
+                out.write(plaintext, offset, Math.min(1000, plaintext.length - offset));
+            }
+        }
+        return sink.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] ciphertext) throws Exception {
+        try (InputStream in = SegmentedAead.newDecryptingStream(new ByteArrayInputStream(ciphertext), testKey)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,82 @@
+package com.ghostvault.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the Merkle tree file hash
+ */
+@DisplayName("MerkleHash Tests")
+class MerkleHashTest {
+
+    private static final int BLOCK = 16;
+
+    @Test
+    @DisplayName("Should follow the RFC 6962 tree shape")
+    void testTreeShape() throws Exception {
+        byte[] data = new byte[3 * BLOCK];
+        new Random(1).nextBytes(data);
+
+        byte[] a = MerkleHash.leaf(data, 0, BLOCK);
+        byte[] b = MerkleHash.leaf(data, BLOCK, BLOCK);
+        byte[] c = MerkleHash.leaf(data, 2 * BLOCK, BLOCK);
+        // Three leaves split as (a, b) and c
+        byte[] expected = node(node(a, b), c);
+
+        assertArrayEquals(expected, MerkleHash.of(data, BLOCK));
+        assertArrayEquals(a, MerkleHash.of(Arrays.copyOf(data, BLOCK), BLOCK));
+    }
+
+    @Test
+    @DisplayName("Should hash empty input as a single empty leaf")
+    void testEmptyInput() {
+        assertArrayEquals(MerkleHash.leaf(new byte[0], 0, 0), MerkleHash.of(new byte[0], BLOCK));
+        assertThrows(IllegalStateException.class, () -> new MerkleHash.Builder().root());
+    }
+
+    @Test
+    @DisplayName("Streaming and leaf-by-leaf hashing should agree")
+    void testBuilderMatchesHasher() throws Exception {
+        for (int size : new int[] {1, BLOCK - 1, BLOCK, 7 * BLOCK + 3, 64 * BLOCK}) {
+            byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+
+            MerkleHash.Builder builder = new MerkleHash.Builder();
+            for (int offset = 0; offset < size; offset += BLOCK) {
+                builder.addLeaf(MerkleHash.leaf(data, offset, Math.min(BLOCK, size - offset)));
+            }
+
+            MerkleHash.Hasher hasher = new MerkleHash.Hasher(BLOCK);
+            try (InputStream in = hasher.hashing(new ByteArrayInputStream(data))) {
+                in.readAllBytes();
+            }
+
+            assertArrayEquals(builder.root(), hasher.digest(), "Mismatch for size " + size);
+            assertArrayEquals(builder.root(), MerkleHash.of(data, BLOCK));
+        }
+    }
+
+    @Test
+    @DisplayName("Should not collide with a plain hash of the same data")
+    void testDiffersFromPlainHash() throws Exception {
+        byte[] data = "merkle".getBytes();
+        assertFalse(MessageDigest.isEqual(MessageDigest.getInstance("SHA-256").digest(data),
+            MerkleHash.of(data, BLOCK)));
+    }
+
+    private static byte[] node(byte[] left, byte[] right) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) 1);
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+}